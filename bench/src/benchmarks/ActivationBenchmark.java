@@ -0,0 +1,72 @@
+package benchmarks;
+
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.Sigmoid;
+import org.openjdk.jmh.annotations.*;
+import utils.DataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each sigmoid implementation on its own (over a spread of
+ * weighted inputs), in single-sample prediction and in a mini-batch update
+ * of a 784-90-5 network. Accuracy on setB is reported by
+ * models.SigmoidComparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivationBenchmark {
+
+    @Param({"EXACT", "TABLE", "RATIONAL"})
+    public Sigmoid sigmoid;
+
+    private final double[] inputs = new double[4096];
+    private NeuralNetwork nn;
+    private NeuralNetwork.Scratch scratch;
+    private DataSet data;
+    private List<Integer> batch;
+    private int next;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = (i - inputs.length / 2) / 200.0;
+        }
+        nn = new NeuralNetwork(784, 90, 5);
+        nn.setInferenceSigmoid(sigmoid);
+        nn.setTrainingSigmoid(sigmoid);
+        scratch = nn.newScratch();
+        data = Synthetic.dataSet(256, 5, 42);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            batch.add(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4096)
+    public double sigmoid() {
+        double sum = 0;
+        for (double x : inputs) {
+            sum += sigmoid.applyAsDouble(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int classify() {
+        next = (next + 1) % data.size();
+        return nn.classify(data.getFeatureData(), next * data.getFeatureCount(), scratch);
+    }
+
+    @Benchmark
+    public void updateWithBatch() {
+        nn.updateWithBatch(data, batch, 0.01, 0.005, data.size());
+    }
+}
@@ -0,0 +1,363 @@
+package benchmarks;
+
+import org.apache.commons.math3.stat.inference.TTest;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * <pre>
+ * Performance regression gate; compares JMH results (JSON) against a
+ * committed baseline and exits with status 1 if any benchmark regressed.
+ *
+ *   BenchmarkComparison [options] baseline.json results.json
+ *   BenchmarkComparison [options] --run baseline.json [-- JMH options]
+ *
+ *   --run               run the suite first (results go to jmh-result.json)
+ *   --tolerances file   per benchmark tolerances (default bench/tolerances.properties)
+ *   --alpha p           significance level of the t-test (default 0.01)
+ *   --report file       also write the report to file
+ *
+ * A benchmark regresses when its score moves the wrong way (up for average
+ * or sample time, down for throughput) by more than its tolerance AND the
+ * change is significant; a two-sided Welch t-test on the measurement
+ * iterations of both runs gives p &lt; alpha. Tolerances are looked up by the
+ * longest matching prefix of the benchmark's name (E.g.
+ * "NetworkBenchmark.updateWithBatch", then "NetworkBenchmark"), falling back
+ * to the "default" entry, or 10%.
+ *
+ * To refresh the baseline, run the suite and copy jmh-result.json over it.
+ * </pre>
+ */
+public final class BenchmarkComparison {
+
+    public static final double DEFAULT_TOLERANCE = 0.10;
+    public static final double DEFAULT_ALPHA = 0.01;
+
+    /**
+     * Outcome of comparing one benchmark.
+     */
+    enum Verdict {
+        OK, IMPROVED, REGRESSED, NEW, MISSING
+    }
+
+    /**
+     * A single benchmark (with its parameters) from a JMH result file.
+     */
+    static final class Score {
+        final String name;
+        final String params;
+        final String mode;
+        final String unit;
+        final double score;
+        final double error;
+        final double[] iterations;
+
+        Score(String name, String params, String mode, String unit, double score, double error,
+              double[] iterations) {
+            this.name = name;
+            this.params = params;
+            this.mode = mode;
+            this.unit = unit;
+            this.score = score;
+            this.error = error;
+            this.iterations = iterations;
+        }
+
+        String key() {
+            return params.isEmpty() ? name : name + " {" + params + "}";
+        }
+
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    /**
+     * A baseline and current score side by side.
+     */
+    static final class Comparison {
+        final String key;
+        final Score baseline, current;
+        final double change, pValue, tolerance;
+        final Verdict verdict;
+
+        Comparison(String key, Score baseline, Score current, double change, double pValue,
+                   double tolerance, Verdict verdict) {
+            this.key = key;
+            this.baseline = baseline;
+            this.current = current;
+            this.change = change;
+            this.pValue = pValue;
+            this.tolerance = tolerance;
+            this.verdict = verdict;
+        }
+    }
+
+    private final Properties tolerances;
+    private final double alpha;
+
+    BenchmarkComparison(Properties tolerances, double alpha) {
+        this.tolerances = tolerances;
+        this.alpha = alpha;
+    }
+
+    /**
+     * @param json the contents of a JMH result file.
+     * @return every score in the file, keyed by benchmark and parameters.
+     */
+    static Map<String, Score> read(String json) {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (Object entry : (List<?>) Json.parse(json)) {
+            Map<?, ?> result = (Map<?, ?>) entry;
+            String name = ((String) result.get("benchmark")).replaceFirst("^benchmarks\\.", "");
+
+            // parameters sorted so the key does not depend on their order in the file.
+            Map<String, String> sorted = new TreeMap<>();
+            Object params = result.get("params");
+            if (params instanceof Map) {
+                for (Map.Entry<?, ?> param : ((Map<?, ?>) params).entrySet()) {
+                    sorted.put((String) param.getKey(), String.valueOf(param.getValue()));
+                }
+            }
+            StringBuilder paramString = new StringBuilder();
+            for (Map.Entry<String, String> param : sorted.entrySet()) {
+                if (paramString.length() > 0) {
+                    paramString.append(", ");
+                }
+                paramString.append(param.getKey()).append('=').append(param.getValue());
+            }
+
+            Map<?, ?> metric = (Map<?, ?>) result.get("primaryMetric");
+            List<Double> iterations = new ArrayList<>();
+            Object rawData = metric.get("rawData");
+            if (rawData instanceof List) {
+                for (Object fork : (List<?>) rawData) {
+                    for (Object value : (List<?>) fork) {
+                        iterations.add(Json.number(value));
+                    }
+                }
+            }
+            double[] values = new double[iterations.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = iterations.get(i);
+            }
+
+            Score score = new Score(name, paramString.toString(), (String) result.get("mode"),
+                    (String) metric.get("scoreUnit"), Json.number(metric.get("score")),
+                    Json.number(metric.get("scoreError")), values);
+            scores.put(score.key(), score);
+        }
+        return scores;
+    }
+
+    /**
+     * @return the tolerance of the longest matching prefix of name.
+     */
+    double tolerance(String name) {
+        String prefix = name;
+        while (true) {
+            String value = tolerances.getProperty(prefix);
+            if (value != null) {
+                return Double.parseDouble(value);
+            }
+            int dot = prefix.lastIndexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            prefix = prefix.substring(0, dot);
+        }
+        return Double.parseDouble(tolerances.getProperty("default", String.valueOf(DEFAULT_TOLERANCE)));
+    }
+
+    /**
+     * @return the p-value of a two-sided Welch t-test between the iterations
+     * of both scores; when either has fewer than two iterations, 0 if their
+     * confidence intervals do not overlap and 1 otherwise.
+     */
+    static double pValue(Score baseline, Score current) {
+        if (baseline.iterations.length >= 2 && current.iterations.length >= 2) {
+            if (sumOfSquares(baseline.iterations) == 0 && sumOfSquares(current.iterations) == 0) {
+                return baseline.score == current.score ? 1 : 0;
+            }
+            return new TTest().tTest(baseline.iterations, current.iterations);
+        }
+        double baselineError = Double.isNaN(baseline.error) ? 0 : baseline.error;
+        double currentError = Double.isNaN(current.error) ? 0 : current.error;
+        return Math.abs(current.score - baseline.score) > baselineError + currentError ? 0 : 1;
+    }
+
+    private static double sumOfSquares(double[] values) {
+        double mean = Arrays.stream(values).average().orElse(0);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return sum;
+    }
+
+    /**
+     * @return every benchmark in either file, compared.
+     */
+    List<Comparison> compare(Map<String, Score> baseline, Map<String, Score> current) {
+        List<Comparison> comparisons = new ArrayList<>();
+        for (Score before : baseline.values()) {
+            Score after = current.get(before.key());
+            double tolerance = tolerance(before.name);
+            if (after == null) {
+                comparisons.add(new Comparison(before.key(), before, null, Double.NaN, Double.NaN,
+                        tolerance, Verdict.MISSING));
+                continue;
+            }
+
+            // positive changes are always for the worse.
+            double change = (after.score - before.score) / before.score;
+            if (before.higherIsBetter()) {
+                change = -change;
+            }
+            double pValue = pValue(before, after);
+            Verdict verdict = Verdict.OK;
+            if (pValue < alpha && change > tolerance) {
+                verdict = Verdict.REGRESSED;
+            } else if (pValue < alpha && change < -tolerance) {
+                verdict = Verdict.IMPROVED;
+            }
+            comparisons.add(new Comparison(before.key(), before, after, change, pValue, tolerance, verdict));
+        }
+        for (Score after : current.values()) {
+            if (!baseline.containsKey(after.key())) {
+                comparisons.add(new Comparison(after.key(), null, after, Double.NaN, Double.NaN,
+                        tolerance(after.name), Verdict.NEW));
+            }
+        }
+        return comparisons;
+    }
+
+    /**
+     * Writes a table of every comparison followed by a summary line.
+     */
+    static void report(List<Comparison> comparisons, PrintStream out) {
+        int width = "Benchmark".length();
+        for (Comparison comparison : comparisons) {
+            width = Math.max(width, comparison.key.length());
+        }
+        String row = "%-" + width + "s  %22s  %22s  %9s  %8s  %10s  %s%n";
+        out.printf(row, "Benchmark", "Baseline", "Current", "Change", "p", "Tolerance", "Verdict");
+
+        int[] counts = new int[Verdict.values().length];
+        for (Comparison comparison : comparisons) {
+            counts[comparison.verdict.ordinal()]++;
+            out.printf(row, comparison.key,
+                    format(comparison.baseline), format(comparison.current),
+                    Double.isNaN(comparison.change) ? "" : String.format("%+.1f%%", 100 * comparison.change),
+                    Double.isNaN(comparison.pValue) ? "" : String.format("%.4f", comparison.pValue),
+                    String.format("%.0f%%", 100 * comparison.tolerance),
+                    comparison.verdict);
+        }
+        out.printf("%n%d compared: %d regressed, %d improved, %d unchanged, %d new, %d missing%n",
+                comparisons.size(), counts[Verdict.REGRESSED.ordinal()], counts[Verdict.IMPROVED.ordinal()],
+                counts[Verdict.OK.ordinal()], counts[Verdict.NEW.ordinal()], counts[Verdict.MISSING.ordinal()]);
+        out.println("(change is positive when slower, for every mode)");
+    }
+
+    private static String format(Score score) {
+        if (score == null) {
+            return "";
+        }
+        String error = Double.isNaN(score.error) ? "" : String.format(" ± %.3g", score.error);
+        return String.format("%.4g%s %s", score.score, error, score.unit);
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean run = false;
+        Path tolerancesFile = Path.of("bench", "tolerances.properties");
+        double alpha = DEFAULT_ALPHA;
+        Path reportFile = null;
+        List<String> files = new ArrayList<>();
+        List<String> jmhArgs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--run":
+                    run = true;
+                    break;
+                case "--tolerances":
+                    tolerancesFile = Path.of(args[++i]);
+                    break;
+                case "--alpha":
+                    alpha = Double.parseDouble(args[++i]);
+                    break;
+                case "--report":
+                    reportFile = Path.of(args[++i]);
+                    break;
+                case "--":
+                    jmhArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                    i = args.length;
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (files.size() != (run ? 1 : 2)) {
+            System.err.println("usage: BenchmarkComparison [--tolerances file] [--alpha p] [--report file]"
+                    + " baseline.json results.json");
+            System.err.println("       BenchmarkComparison [options] --run baseline.json [-- JMH options]");
+            System.exit(2);
+        }
+
+        Path results;
+        if (run) {
+            results = Path.of(BenchmarkRunner.DEFAULT_RESULT);
+            new Runner(new OptionsBuilder()
+                    .parent(new CommandLineOptions(jmhArgs.toArray(new String[0])))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(results.toString())
+                    .build()).run();
+        } else {
+            results = Path.of(files.get(1));
+        }
+
+        Properties tolerances = new Properties();
+        if (Files.exists(tolerancesFile)) {
+            try (InputStream in = Files.newInputStream(tolerancesFile)) {
+                tolerances.load(in);
+            }
+        }
+
+        BenchmarkComparison comparison = new BenchmarkComparison(tolerances, alpha);
+        List<Comparison> comparisons = comparison.compare(read(readFile(Path.of(files.get(0)))),
+                read(readFile(results)));
+        report(comparisons, System.out);
+        if (reportFile != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(reportFile), true,
+                    StandardCharsets.UTF_8)) {
+                report(comparisons, out);
+            }
+        }
+
+        for (Comparison c : comparisons) {
+            if (c.verdict == Verdict.REGRESSED) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static String readFile(Path path) throws IOException {
+        return Files.readString(path, StandardCharsets.UTF_8);
+    }
+}
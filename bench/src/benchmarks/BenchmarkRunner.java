@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar; runs JMH with its usual command line, but
+ * writes machine-readable JSON results (to jmh-result.json) unless another
+ * format or file is asked for with -rf / -rff.
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Where results are written by default.
+     */
+    public static final String DEFAULT_RESULT = "jmh-result.json";
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add(0, "json");
+            options.add(0, "-rf");
+        }
+        if (!options.contains("-rff")) {
+            options.add(0, DEFAULT_RESULT);
+            options.add(0, "-rff");
+        }
+        Main.main(options.toArray(new String[0]));
+    }
+}
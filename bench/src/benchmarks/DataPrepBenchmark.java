@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a packed .dat file (written from synthetic data in the same
+ * serialized format as DataPrep.packData) and turning its rows into the
+ * network's two input representations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataPrepBenchmark {
+
+    /**
+     * The number of samples in the file.
+     */
+    @Param({"1200", "5600"})
+    public int samples;
+
+    private File file;
+    private double[][] packed;
+
+    @Setup
+    public void setup() throws IOException {
+        packed = Synthetic.packed(samples, 5, 42);
+        file = File.createTempFile("bench", ".dat");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeObject(packed);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public double[][] loadData() throws IOException {
+        return DataPrep.loadData(file);
+    }
+
+    @Benchmark
+    public ArrayList<ArrayList<Matrix>> vectorize() {
+        return DataPrep.vectorize(packed, 5);
+    }
+
+    @Benchmark
+    public DataSet toDataSet() {
+        return DataPrep.toDataSet(packed, 5);
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import neuralnetwork.NeuralNetwork;
+import org.openjdk.jmh.annotations.*;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per request latency of predicting a single sample's class with a 784-90-5
+ * network: the full forward pass followed by an argmax, against the
+ * allocation free classify path that skips the output sigmoid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InferenceBenchmark {
+
+    private NeuralNetwork nn;
+    private DataSet data;
+    private NeuralNetwork.Scratch scratch;
+    private int next;
+
+    @Setup
+    public void setup() {
+        nn = new NeuralNetwork(784, 90, 5);
+        data = Synthetic.dataSet(256, 5, 42);
+        scratch = nn.newScratch();
+    }
+
+    private int nextSample() {
+        next = (next + 1) % data.size();
+        return next;
+    }
+
+    @Benchmark
+    public int forwardPropArgMax() {
+        return Matrix.argMaxRow(nn.forwardProp(data.getFeatures(nextSample())));
+    }
+
+    @Benchmark
+    public int classify() {
+        return nn.classify(data.getFeatureData(), nextSample() * data.getFeatureCount(), scratch);
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import knearestneighbours.Distance;
+import knearestneighbours.KNearestNeighbours;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The k-nn classifier's steps for a single test sample against training
+ * sets the size of setB's and setA's splits: one distance, the sorted
+ * distances to every training sample, and the k = 5 majority vote.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KNearestNeighboursBenchmark {
+
+    /**
+     * The number of training samples.
+     */
+    @Param({"1000", "5600"})
+    public int samples;
+
+    private final KNearestNeighbours knn = new KNearestNeighbours();
+    private double[][] training;
+    private double[] testing;
+    private Distance[] distances;
+
+    @Setup
+    public void setup() {
+        training = Synthetic.packed(samples, 5, 42);
+        testing = Synthetic.packed(1, 5, 7)[0];
+        distances = knn.getDistances(training, testing);
+    }
+
+    @Benchmark
+    public double euclideanDistance() {
+        return KNearestNeighbours.euclideanDistance(testing, training[0]);
+    }
+
+    @Benchmark
+    public Distance[] getDistances() {
+        return knn.getDistances(training, testing);
+    }
+
+    @Benchmark
+    public int findBestNeighbour() {
+        return knn.findBestNeighbour(distances, 5);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.Matrix;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The Matrix kernels the network is built from, at the shapes of its
+ * layers: W . A for a single sample (1 column) and a mini-batch (32
+ * columns), the sigmoid mapped over the result, and the weight transpose
+ * taken by every backProp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixBenchmark {
+
+    private static final Function<Double, Double> SIGMOID = (x) -> 1 / (1 + Math.exp(-x));
+
+    /**
+     * inputs x outputs of the layer.
+     */
+    @Param({"784x90", "90x5"})
+    public String shape;
+
+    /**
+     * The number of samples fed through at once.
+     */
+    @Param({"1", "32"})
+    public int columns;
+
+    private Matrix weights, inputs, z;
+
+    @Setup
+    public void setup() {
+        String[] dims = shape.split("x");
+        int in = Integer.parseInt(dims[0]);
+        int outputs = Integer.parseInt(dims[1]);
+        weights = Matrix.randomize(outputs, in);
+        inputs = Matrix.randomize(in, columns);
+        z = Matrix.dotProduct(weights, inputs);
+    }
+
+    @Benchmark
+    public Matrix dotProduct() {
+        return Matrix.dotProduct(weights, inputs);
+    }
+
+    @Benchmark
+    public Matrix map() {
+        return Matrix.map(SIGMOID, z);
+    }
+
+    @Benchmark
+    public Matrix transpose() {
+        return Matrix.transpose(weights);
+    }
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import neuralnetwork.NeuralNetwork;
+import org.openjdk.jmh.annotations.*;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training and inference steps of a network on synthetic 8-bit pixel data:
+ * forwardProp and backProp of a single sample, forwardPropBatch of a
+ * 32 sample mini-batch and a full updateWithBatch on one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkBenchmark {
+
+    /**
+     * Nodes in each layer, inputs first.
+     */
+    @Param({"784-90-5", "784-256-10"})
+    public String topology;
+
+    private NeuralNetwork nn;
+    private DataSet data;
+    private List<Integer> batch;
+    private Matrix batchInputs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        String[] nodes = topology.split("-");
+        int[] layers = new int[nodes.length - 1];
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = Integer.parseInt(nodes[i + 1]);
+        }
+        nn = new NeuralNetwork(Integer.parseInt(nodes[0]), layers);
+        data = Synthetic.dataSet(256, nn.getOutputNodes(), 42);
+
+        batch = new ArrayList<>();
+        batchInputs = new Matrix(data.getFeatureCount(), 32);
+        for (int j = 0; j < 32; j++) {
+            batch.add(j);
+            for (int i = 0; i < data.getFeatureCount(); i++) {
+                batchInputs.set(i, j, data.getFeatures(j).get(i, 0));
+            }
+        }
+
+        // backProp reads the buffers of the last forward pass, which it leaves as is.
+        nn.forwardProp(data.getFeatures(0));
+    }
+
+    private int nextSample() {
+        next = (next + 1) % data.size();
+        return next;
+    }
+
+    @Benchmark
+    public Matrix forwardProp() {
+        return nn.forwardProp(data.getFeatures(nextSample()));
+    }
+
+    @Benchmark
+    public Matrix[] backProp() {
+        return nn.backProp(data.getLabel(0));
+    }
+
+    @Benchmark
+    public Matrix forwardPropBatch() {
+        return nn.forwardPropBatch(batchInputs);
+    }
+
+    @Benchmark
+    public void updateWithBatch() {
+        nn.updateWithBatch(data, batch, 0.01, 0.005, data.size());
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.NeuralNetwork.Precision;
+import org.openjdk.jmh.annotations.*;
+import utils.DataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward pass and mini-batch update throughput of a 784-90-5 network in
+ * double and single precision, on synthetic 8-bit pixel data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrecisionBenchmark {
+
+    @Param({"DOUBLE", "FLOAT"})
+    public Precision precision;
+
+    private NeuralNetwork nn;
+    private DataSet data;
+    private List<Integer> batch;
+
+    @Setup
+    public void setup() {
+        nn = new NeuralNetwork(precision, 784, 90, 5);
+        data = Synthetic.dataSet(256, 5, 42);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            batch.add(i);
+        }
+    }
+
+    @Benchmark
+    public Object forwardProp() {
+        return nn.forwardProp(data.getFeatures(7));
+    }
+
+    @Benchmark
+    public void updateWithBatch() {
+        nn.updateWithBatch(data, batch, 0.01, 0.005, data.size());
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import utils.DataPrep;
+import utils.DataSet;
+
+import java.util.Random;
+
+/**
+ * Synthetic stand-ins for the Quick, Draw! data so benchmarks do not depend
+ * on the (large, untracked) .dat files.
+ */
+final class Synthetic {
+
+    private Synthetic() {}
+
+    /**
+     * @return samples x 785 packed rows; 784 pixel values quantized to 8 bits
+     * and normalized like the real data, followed by a label.
+     */
+    static double[][] packed(int samples, int outputs, long seed) {
+        Random rand = new Random(seed);
+        double[][] result = new double[samples][DataPrep.PIXELS + 1];
+        for (double[] row : result) {
+            for (int i = 0; i < DataPrep.PIXELS; i++) {
+                row[i] = rand.nextInt(256) / 255.0;
+            }
+            row[DataPrep.PIXELS] = rand.nextInt(outputs);
+        }
+        return result;
+    }
+
+    static DataSet dataSet(int samples, int outputs, long seed) {
+        return DataPrep.toDataSet(packed(samples, outputs, seed), outputs);
+    }
+}
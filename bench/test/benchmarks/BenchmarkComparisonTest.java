@@ -0,0 +1,131 @@
+package benchmarks;
+
+import benchmarks.BenchmarkComparison.Comparison;
+import benchmarks.BenchmarkComparison.Score;
+import benchmarks.BenchmarkComparison.Verdict;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BenchmarkComparisonTest {
+
+    private BenchmarkComparison comparison;
+
+    @BeforeEach
+    public void init() {
+        Properties tolerances = new Properties();
+        tolerances.setProperty("NetworkBenchmark.updateWithBatch", "0.30");
+        tolerances.setProperty("NetworkBenchmark", "0.05");
+        tolerances.setProperty("default", "0.15");
+        comparison = new BenchmarkComparison(tolerances, BenchmarkComparison.DEFAULT_ALPHA);
+    }
+
+    /**
+     * @return one JMH result entry, as JMH writes it, with a single fork of
+     * the given measurement iterations.
+     */
+    private static String result(String benchmark, String mode, String params, double... iterations) {
+        double score = Arrays.stream(iterations).average().orElse(0);
+        String rawData = Arrays.stream(iterations).mapToObj(Double::toString)
+                .collect(Collectors.joining(", ", "[[", "]]"));
+        return "{\"benchmark\": \"benchmarks." + benchmark + "\", \"mode\": \"" + mode + "\","
+                + (params == null ? "" : " \"params\": {" + params + "},")
+                + " \"primaryMetric\": {\"score\": " + score + ", \"scoreError\": 0.1,"
+                + " \"scoreUnit\": \"us/op\", \"rawData\": " + rawData + "}}";
+    }
+
+    private static Map<String, Score> file(String... results) {
+        return BenchmarkComparison.read("[" + String.join(", ", results) + "]");
+    }
+
+    private Verdict verdict(String baseline, String current) {
+        List<Comparison> comparisons = comparison.compare(file(baseline), file(current));
+        assertEquals(1, comparisons.size());
+        return comparisons.get(0).verdict;
+    }
+
+    /**
+     * A significant slowdown beyond the tolerance regresses; in throughput
+     * mode a significant drop does.
+     */
+    @Test
+    public void regressedTest() {
+        assertEquals(Verdict.REGRESSED, verdict(
+                result("MatrixBenchmark.dot", "avgt", null, 10.0, 10.1, 9.9, 10.0, 10.05),
+                result("MatrixBenchmark.dot", "avgt", null, 12.0, 12.1, 11.9, 12.0, 12.05)));
+        assertEquals(Verdict.REGRESSED, verdict(
+                result("MatrixBenchmark.dot", "thrpt", null, 100, 101, 99, 100, 100.5),
+                result("MatrixBenchmark.dot", "thrpt", null, 80, 81, 79, 80, 80.5)));
+    }
+
+    /**
+     * A significant speedup beyond the tolerance is an improvement.
+     */
+    @Test
+    public void improvedTest() {
+        assertEquals(Verdict.IMPROVED, verdict(
+                result("MatrixBenchmark.dot", "avgt", null, 10.0, 10.1, 9.9, 10.0, 10.05),
+                result("MatrixBenchmark.dot", "avgt", null, 8.0, 8.1, 7.9, 8.0, 8.05)));
+    }
+
+    /**
+     * A change lost in the noise, or within the tolerance, is not flagged.
+     */
+    @Test
+    public void unchangedTest() {
+        List<Comparison> noisy = comparison.compare(
+                file(result("MatrixBenchmark.dot", "avgt", null, 10, 14, 6, 12, 8)),
+                file(result("MatrixBenchmark.dot", "avgt", null, 12, 16, 8, 14, 10)));
+        assertEquals(0.2, noisy.get(0).change, 1e-9);
+        assertTrue(noisy.get(0).pValue > BenchmarkComparison.DEFAULT_ALPHA);
+        assertEquals(Verdict.OK, noisy.get(0).verdict);
+
+        // significant, but under updateWithBatch's 30%.
+        assertEquals(Verdict.OK, verdict(
+                result("NetworkBenchmark.updateWithBatch", "avgt", null, 10.0, 10.1, 9.9, 10.0, 10.05),
+                result("NetworkBenchmark.updateWithBatch", "avgt", null, 12.0, 12.1, 11.9, 12.0, 12.05)));
+    }
+
+    /**
+     * Benchmarks only in the baseline are missing and only in the results
+     * are new; neither fails the gate. Parameters are part of the key,
+     * whatever their order in the file.
+     */
+    @Test
+    public void missingTest() {
+        List<Comparison> comparisons = comparison.compare(
+                file(result("MatrixBenchmark.dot", "avgt", "\"n\": \"64\", \"m\": \"8\"", 10, 10, 10),
+                        result("MatrixBenchmark.add", "avgt", null, 5, 5, 5)),
+                file(result("MatrixBenchmark.dot", "avgt", "\"m\": \"8\", \"n\": \"64\"", 10, 10, 10),
+                        result("MatrixBenchmark.map", "avgt", null, 5, 5, 5)));
+        assertEquals(3, comparisons.size());
+        assertEquals("MatrixBenchmark.dot {m=8, n=64}", comparisons.get(0).key);
+        assertEquals(Verdict.OK, comparisons.get(0).verdict);
+        assertEquals("MatrixBenchmark.add", comparisons.get(1).key);
+        assertEquals(Verdict.MISSING, comparisons.get(1).verdict);
+        assertNull(comparisons.get(1).current);
+        assertEquals("MatrixBenchmark.map", comparisons.get(2).key);
+        assertEquals(Verdict.NEW, comparisons.get(2).verdict);
+        assertNull(comparisons.get(2).baseline);
+    }
+
+    /**
+     * Tolerances come from the longest matching prefix of the name, then
+     * the default entry, then DEFAULT_TOLERANCE.
+     */
+    @Test
+    public void toleranceTest() {
+        assertEquals(0.30, comparison.tolerance("NetworkBenchmark.updateWithBatch"));
+        assertEquals(0.05, comparison.tolerance("NetworkBenchmark.forwardProp"));
+        assertEquals(0.15, comparison.tolerance("MatrixBenchmark.dot"));
+        assertEquals(BenchmarkComparison.DEFAULT_TOLERANCE,
+                new BenchmarkComparison(new Properties(), 0.01).tolerance("MatrixBenchmark.dot"));
+    }
+}
@@ -1,8 +1,12 @@
 package knearestneighbours;
 
 import utils.DataPrep;
+import utils.Histogram;
 import utils.Metrics;
+import utils.MetricsRegistry;
+import utils.RandomSource;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * K nearest neighbours implementation with cross validation. Used to classify 
@@ -11,11 +15,43 @@ import java.util.*;
  * @author Joseph Adamson
  */
 public class KNearestNeighbours {
+
+    /**
+     * Per sample prediction latency, in nanoseconds; recorded into the global
+     * registry (see MetricsRegistry).
+     */
+    private static final Histogram PREDICT_LATENCY =
+            MetricsRegistry.global().histogram("knn_predict_nanos");
     
+    /**
+     * The source the data's shuffles and cross validation folds are drawn from.
+     */
+    private final RandomSource random;
+
+    /**
+     * Calls of predict and kFoldCrossValidation so far; each call draws from
+     * the stream of its number, so no two calls shuffle alike.
+     */
+    private final AtomicLong predictions = new AtomicLong();
+    private final AtomicLong validations = new AtomicLong();
+
     /**
      * Simple constructor for k nearest neighbour classifier.
      */
-    public KNearestNeighbours() {}
+    public KNearestNeighbours() {
+        this(RandomSource.random());
+    }
+
+    /**
+     * Constructs a classifier whose shuffles and cross validation folds are
+     * drawn from random. Every call shuffles afresh, and the n'th call gives
+     * the same results every run.
+     *
+     * @param random the source the shuffles are drawn from.
+     */
+    public KNearestNeighbours(RandomSource random) {
+        this.random = random;
+    }
     
     /**
      * Compute the Euclidean distance between two features.
@@ -50,6 +86,8 @@ public class KNearestNeighbours {
      * feature set. 
      */
     public Distance[] getDistances(double[][] training, double[] testing) {
+        NeighbourEvents.DistanceScan event = new NeighbourEvents.DistanceScan();
+        event.begin();
         Distance[] distances = new Distance[training.length];
         
         for (int i = 0; i < training.length; i++) {
@@ -57,6 +95,10 @@ public class KNearestNeighbours {
             distances[i] = new Distance(respectiveDistance, training[i][training[i].length -1]);
         }
         Arrays.sort(distances, new DistanceComp());
+        if (event.shouldCommit()) {
+            event.trainingSamples = training.length;
+            event.commit();
+        }
         return distances;
     }
     
@@ -104,19 +146,56 @@ public class KNearestNeighbours {
      */
     public int[][] predict(double[][] training, double[][] testing, int k) {
        
-        int[][] results = new int[testing.length][testing.length];
+        // row 0: testLabels, row 1: corresponding predictions
+        int[][] results = new int[2][testing.length];
 
-        training = DataPrep.shuffleData(training);
-        testing = DataPrep.shuffleData(testing);
+        long call = predictions.getAndIncrement();
+        training = DataPrep.shuffleData(training, random.derive("predict").stream(call));
+        testing = DataPrep.shuffleData(testing, random.derive("predict testing").stream(call));
         
         for (int i = 0; i < testing.length; i++) {
+            NeighbourEvents.Query event = new NeighbourEvents.Query();
+            event.begin();
+            long started = System.nanoTime();
             Distance[] distances = getDistances(training, testing[i]);
             results[0][i] = (int)testing[i][testing[i].length -1];
             results[1][i] = findBestNeighbour(distances, k);
+            PREDICT_LATENCY.record(System.nanoTime() - started);
+            commit(event, k, training.length, results[1][i]);
         }
         return results;
     }
 
+    /**
+     * Predicts the label of a single test feature set; a per-request version of
+     * predict. It draws no random numbers and changes no state, so this is
+     * safe to call from many threads at once.
+     *
+     * @param training a 2d array where each row contains 785 values; 0 - 784 contains normalized
+     * pixel values with the last denoting the label of the image.
+     * @param testing a single test feature set.
+     * @param k the number of neighbours used for the prediction.
+     * @return the predicted label.
+     */
+    public int classify(double[][] training, double[] testing, int k) {
+        NeighbourEvents.Query event = new NeighbourEvents.Query();
+        event.begin();
+        long started = System.nanoTime();
+        int label = findBestNeighbour(getDistances(training, testing), k);
+        PREDICT_LATENCY.record(System.nanoTime() - started);
+        commit(event, k, training.length, label);
+        return label;
+    }
+
+    private static void commit(NeighbourEvents.Query event, int k, int trainingSamples, int label) {
+        if (event.shouldCommit()) {
+            event.k = k;
+            event.trainingSamples = trainingSamples;
+            event.label = label;
+            event.commit();
+        }
+    }
+
     /**
      * Computes the percentage of incorrect predictions for the test data;
      * the error rate.
@@ -149,7 +228,8 @@ public class KNearestNeighbours {
      * of folds.
      */
     public double[] kFoldCrossValidation(double[][] training, int folds) {
-        training = DataPrep.shuffleData(training);
+        training = DataPrep.shuffleData(training,
+                random.derive("folds").stream(validations.getAndIncrement()));
         ArrayList<double[][]> foldedData = DataPrep.split(training, folds);
 
         // to store final errors for each value of k in the range (1 - 30, exclusive)
@@ -161,6 +241,8 @@ public class KNearestNeighbours {
 
         // for each fold in the split data
         for (int i = 0; i < foldedData.size(); i++) {
+            NeighbourEvents.CrossValidationFold event = new NeighbourEvents.CrossValidationFold();
+            event.begin();
             
             // separate validation fold
             double[][] validation = foldedData.get(i);
@@ -198,6 +280,14 @@ public class KNearestNeighbours {
                 double error = evaluateError(validationLabels, predictions);
                 kAvg[kRow++][i] = error;
             }
+
+            if (event.shouldCommit()) {
+                event.fold = i;
+                event.folds = folds;
+                event.trainingSamples = tempTraining.length;
+                event.validationSamples = validation.length;
+                event.commit();
+            }
         }
         
         // Compute error averages for each k value across folds.
@@ -0,0 +1,68 @@
+package knearestneighbours;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <pre>
+ * Java Flight Recorder events for the k-nn classifier (see NetworkEvents for
+ * how to record them). A Query covers the DistanceScan it starts and the
+ * vote over the nearest neighbours; a CrossValidationFold covers every query
+ * made while scoring one fold.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+final class NeighbourEvents {
+
+    private NeighbourEvents() {
+    }
+
+    @Name("quickdraw.KnnQuery")
+    @Label("k-NN Query")
+    @Category({"Quick, Draw!", "k-Nearest Neighbours"})
+    @Description("Classification of a single test sample")
+    static final class Query extends Event {
+
+        @Label("k")
+        int k;
+
+        @Label("Training Samples")
+        int trainingSamples;
+
+        @Label("Predicted Label")
+        int label;
+    }
+
+    @Name("quickdraw.KnnDistanceScan")
+    @Label("k-NN Distance Scan")
+    @Category({"Quick, Draw!", "k-Nearest Neighbours"})
+    @Description("Distances from a test sample to every training sample, sorted")
+    static final class DistanceScan extends Event {
+
+        @Label("Training Samples")
+        int trainingSamples;
+    }
+
+    @Name("quickdraw.KnnCrossValidationFold")
+    @Label("k-NN Cross Validation Fold")
+    @Category({"Quick, Draw!", "k-Nearest Neighbours"})
+    @Description("Scoring of one validation fold for every k")
+    static final class CrossValidationFold extends Event {
+
+        @Label("Fold")
+        int fold;
+
+        @Label("Folds")
+        int folds;
+
+        @Label("Training Samples")
+        int trainingSamples;
+
+        @Label("Validation Samples")
+        int validationSamples;
+    }
+}
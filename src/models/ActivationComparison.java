@@ -0,0 +1,57 @@
+package models;
+
+import neuralnetwork.Activation;
+import neuralnetwork.NeuralNetwork;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Trains a 784-90-5 network on setB with each hidden layer activation (the
+ * rest with a softmax output) and reports how many epochs and how much wall
+ * clock time each takes to reach a target validation accuracy. The learning
+ * rate applies to gradients summed over a batch, so the rectifiers need a
+ * smaller one than the sigmoid network.
+ */
+public class ActivationComparison {
+    public static void main(String[] args) throws IOException {
+
+        double target = 0.85;
+        int maxEpochs = 30;
+        int batch = 32;
+        double lambda = 0.005;
+
+        DataSet training = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/train.dat")), 5);
+        DataSet validation = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/validation.dat")), 5);
+
+        Object[][] configurations = {
+                {"sigmoid", Activation.SIGMOID, Activation.SIGMOID, 0.01},
+                {"relu", Activation.RELU, Activation.SOFTMAX, 0.002},
+                {"leaky relu", Activation.LEAKY_RELU, Activation.SOFTMAX, 0.002},
+                {"tanh", Activation.TANH, Activation.SOFTMAX, 0.002},
+        };
+
+        System.out.printf("%-12s%10s%14s%12s%n", "", "epochs", "time (ms)", "accuracy");
+        for (Object[] configuration : configurations) {
+            NeuralNetwork nn = new NeuralNetwork(NeuralNetwork.Precision.DOUBLE, 784, new int[]{90, 5},
+                    new Activation[]{(Activation) configuration[1], (Activation) configuration[2]});
+            double alpha = (double) configuration[3];
+
+            long start = System.nanoTime();
+            int epochs = 0;
+            double accuracy = 0;
+            while (epochs < maxEpochs && accuracy < target) {
+                nn.mbgd(training, 1, batch, alpha, lambda, validation);
+                accuracy = Metrics.modelAccuracy(nn.predict(validation));
+                epochs++;
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-12s%10d%14d%12.4f%n", configuration[0], epochs, elapsed, accuracy);
+        }
+    }
+}
@@ -45,7 +45,7 @@ public class NeuralNetworkMultiClass {
                 alpha, lambda, validation);
 
 
-        Metrics.plotNetworkResults(epochs, results);
+        Metrics.plotNetworkResults(results[0].length, results);
         Metrics.confusionMatrix(nn.predict(testing));
         nn.saveNetwork();*/
 
@@ -53,7 +53,7 @@ public class NeuralNetworkMultiClass {
 
 
         NeuralNetwork optimizedNN = NeuralNetwork.loadNetwork(new File(System.getProperty("user.dir")
-                + "/data/networkModel.dat"));
+                + "/data/networkModel.qdnn"));
         ArrayList<ArrayList<Matrix>> testing =
                 DataPrep.vectorize(DataPrep.loadData(new File(System.getProperty("user.dir")
                         + "/data/setB/test.dat")), 5);
@@ -0,0 +1,57 @@
+package models;
+
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.Optimizer;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Trains a 784-90-5 network on setB with each optimizer (see Optimizer) and
+ * reports how many epochs and how much wall clock time each takes to reach
+ * a target validation accuracy. Gradients are summed over a batch, so the
+ * momentum and adaptive methods use smaller training rates than SGD.
+ */
+public class OptimizerComparison {
+    public static void main(String[] args) throws IOException {
+
+        double target = 0.85;
+        int maxEpochs = 30;
+        int batch = 32;
+        double lambda = 0.005;
+
+        DataSet training = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/train.dat")), 5);
+        DataSet validation = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/validation.dat")), 5);
+
+        Object[][] configurations = {
+                {Optimizer.Method.SGD, 0.01},
+                {Optimizer.Method.MOMENTUM, 0.002},
+                {Optimizer.Method.NESTEROV, 0.002},
+                {Optimizer.Method.RMSPROP, 0.0005},
+                {Optimizer.Method.ADAM, 0.0005},
+        };
+
+        System.out.printf("%-12s%10s%14s%12s%n", "", "epochs", "time (ms)", "accuracy");
+        for (Object[] configuration : configurations) {
+            NeuralNetwork nn = new NeuralNetwork(784, 90, 5);
+            nn.setOptimizer(new Optimizer((Optimizer.Method) configuration[0]));
+            double alpha = (double) configuration[1];
+
+            long start = System.nanoTime();
+            int epochs = 0;
+            double accuracy = 0;
+            while (epochs < maxEpochs && accuracy < target) {
+                nn.mbgd(training, 1, batch, alpha, lambda, validation);
+                accuracy = Metrics.modelAccuracy(nn.predict(validation));
+                epochs++;
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-12s%10d%14d%12.4f%n", configuration[0], epochs, elapsed, accuracy);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package models;
+
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.NeuralNetwork.Precision;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Trains the same network (identical starting weights) in double and single
+ * precision on setB and reports training time, test accuracy and the memory
+ * taken by the parameters for each.
+ */
+public class PrecisionComparison {
+    public static void main(String[] args) throws IOException {
+
+        int epochs = 10;
+        double alpha = 0.01;
+        double lambda = 0.005;
+        int batch = 32;
+
+        DataSet training = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/train.dat")), 5);
+        DataSet validation = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/validation.dat")), 5);
+        DataSet testing = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/test.dat")), 5);
+
+        NeuralNetwork initial = new NeuralNetwork(784, 90, 5);
+
+        System.out.printf("%-8s%14s%12s%16s%n", "", "train (ms)", "accuracy", "params (bytes)");
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork nn = new NeuralNetwork(initial.getLayers(), precision);
+
+            long start = System.nanoTime();
+            nn.mbgd(training, epochs, batch, alpha, lambda, validation);
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+            double accuracy = Metrics.modelAccuracy(nn.predict(testing));
+            System.out.printf("%-8s%14d%12.4f%16d%n", precision, elapsed, accuracy,
+                    parameterBytes(nn));
+        }
+    }
+
+    private static long parameterBytes(NeuralNetwork nn) {
+        long parameters = 0;
+        for (NeuralNetwork.Layer layer : nn.getLayers()) {
+            parameters += (long) layer.getOutputs() * (layer.getInputs() + 1);
+        }
+        return parameters * (nn.getPrecision() == Precision.FLOAT ? Float.BYTES : Double.BYTES);
+    }
+}
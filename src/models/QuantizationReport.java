@@ -0,0 +1,57 @@
+package models;
+
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.QuantizedNetwork;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Quantizes the trained network in data/networkModel.qdnn to int8, calibrating
+ * on the validation set, and compares it with the double precision network on
+ * the test set: accuracy, mean latency per request and parameter memory.
+ */
+public class QuantizationReport {
+    public static void main(String[] args) throws IOException {
+
+        // number of validation samples used to calibrate activation scales.
+        int calibrationSamples = 500;
+
+        NeuralNetwork nn = NeuralNetwork.loadNetwork(new File(System.getProperty("user.dir")
+                + "/data/networkModel.qdnn"));
+        DataSet validation = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/validation.dat")), nn.getOutputNodes());
+        DataSet testing = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/test.dat")), nn.getOutputNodes());
+
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(nn, validation, calibrationSamples);
+
+        // warm up both paths before timing them.
+        nn.predict(testing);
+        quantized.predict(testing);
+
+        long start = System.nanoTime();
+        double accuracy = Metrics.modelAccuracy(nn.predict(testing));
+        double latency = (System.nanoTime() - start) / 1000.0 / testing.size();
+
+        start = System.nanoTime();
+        double quantizedAccuracy = Metrics.modelAccuracy(quantized.predict(testing));
+        double quantizedLatency = (System.nanoTime() - start) / 1000.0 / testing.size();
+
+        long bytes = 0;
+        for (NeuralNetwork.Layer layer : nn.getLayers()) {
+            bytes += (long) Double.BYTES * layer.getOutputs() * (layer.getInputs() + 1);
+        }
+
+        System.out.printf("%-8s%12s%16s%16s%n", "", "accuracy", "latency (µs)", "params (bytes)");
+        System.out.printf("%-8s%12.4f%16.2f%16d%n", "double", accuracy, latency, bytes);
+        System.out.printf("%-8s%12.4f%16.2f%16d%n", "int8", quantizedAccuracy, quantizedLatency,
+                quantized.getParameterBytes());
+        System.out.printf("%naccuracy delta: %+.4f, speed up: %.1fx, memory: %.1fx smaller%n",
+                quantizedAccuracy - accuracy, latency / quantizedLatency,
+                (double) bytes / quantized.getParameterBytes());
+    }
+}
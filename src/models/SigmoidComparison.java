@@ -0,0 +1,65 @@
+package models;
+
+import neuralnetwork.NeuralNetwork;
+import neuralnetwork.Sigmoid;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the sigmoid implementations (see Sigmoid) on setB: test accuracy
+ * and mean latency per request of the trained network in
+ * data/networkModel.qdnn using each for inference, then training time and
+ * test accuracy of a fresh network trained with each.
+ */
+public class SigmoidComparison {
+    public static void main(String[] args) throws IOException {
+
+        int epochs = 10;
+        double alpha = 0.01;
+        double lambda = 0.005;
+        int batch = 32;
+
+        NeuralNetwork trained = NeuralNetwork.loadNetwork(new File(System.getProperty("user.dir")
+                + "/data/networkModel.qdnn"));
+        DataSet training = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/train.dat")), 5);
+        DataSet validation = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/validation.dat")), 5);
+        DataSet testing = DataPrep.toDataSet(DataPrep.loadData(new File(System.getProperty("user.dir")
+                + "/data/setB/test.dat")), 5);
+
+        System.out.println("inference with the trained network");
+        System.out.printf("%-10s%12s%16s%n", "", "accuracy", "latency (µs)");
+        for (Sigmoid sigmoid : Sigmoid.values()) {
+            trained.setInferenceSigmoid(sigmoid);
+
+            // warm up before timing.
+            trained.predict(testing);
+
+            long start = System.nanoTime();
+            double accuracy = Metrics.modelAccuracy(trained.predict(testing));
+            double latency = (System.nanoTime() - start) / 1000.0 / testing.size();
+            System.out.printf("%-10s%12.4f%16.2f%n", sigmoid, accuracy, latency);
+        }
+
+        System.out.println("\ntraining (identical starting weights)");
+        System.out.printf("%-10s%14s%12s%n", "", "train (ms)", "accuracy");
+        NeuralNetwork initial = new NeuralNetwork(784, 90, 5);
+        for (Sigmoid sigmoid : Sigmoid.values()) {
+            NeuralNetwork nn = new NeuralNetwork(initial.getLayers(), NeuralNetwork.Precision.DOUBLE);
+            nn.setTrainingSigmoid(sigmoid);
+            nn.setInferenceSigmoid(sigmoid);
+
+            long start = System.nanoTime();
+            nn.mbgd(training, epochs, batch, alpha, lambda, validation);
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("%-10s%14d%12.4f%n", sigmoid, elapsed,
+                    Metrics.modelAccuracy(nn.predict(testing)));
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package neuralnetwork;
+
+import utils.FloatMatrix;
+import utils.Matrix;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * <pre>
+ * Activation functions a Layer can use. All but SOFTMAX are elementwise
+ * (see Elementwise) and are applied inside the fused dense kernels (see
+ * Matrix.dense()); their derivatives are written in terms of z and/or the
+ * activation a = f(z) so backProp never has to recompute f. SOFTMAX
+ * normalises the whole output layer, so it has no elementwise form and is
+ * only applied through activate().
+ *
+ *   SIGMOID      1 / (1 + e^-z)            a(1 - a)
+ *   RELU         max(0, z)                 1 if z &gt; 0, else 0
+ *   LEAKY_RELU   z if z &gt; 0, else 0.01z    1 if z &gt; 0, else 0.01
+ *   TANH         tanh(z)                   1 - a²
+ *   SOFTMAX      e^z(i) / ∑ e^z(j)          output layer only; paired with
+ *                                          the cross entropy cost its
+ *                                          gradient is simply a - y.
+ *
+ * The output layer must use SIGMOID or SOFTMAX; the costs are cross
+ * entropies, which need outputs in (0, 1).
+ *
+ * The id of each activation is what the binary model format stores.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public enum Activation {
+
+    SIGMOID(0, Elementwise.SIGMOID),
+    RELU(1, Elementwise.RELU),
+    LEAKY_RELU(2, Elementwise.LEAKY_RELU),
+    TANH(3, Elementwise.TANH),
+
+    /**
+     * Normalises a whole layer at once; see activate() and softmax().
+     */
+    SOFTMAX(4, null);
+
+    /**
+     * Slope of LEAKY_RELU for negative inputs.
+     */
+    public static final double LEAK = 0.01;
+
+    /**
+     * <pre>
+     * The elementwise activations as functions of a single weighted input,
+     * for fusing into the dense kernels, with their derivatives.
+     * </pre>
+     */
+    public enum Elementwise implements DoubleUnaryOperator, FloatMatrix.FloatFunction {
+
+        SIGMOID {
+            @Override
+            public double applyAsDouble(double z) {
+                return 1 / (1 + Math.exp(-z));
+            }
+
+            @Override
+            public double derivative(double z, double a) {
+                return a * (1 - a);
+            }
+        },
+
+        RELU {
+            @Override
+            public double applyAsDouble(double z) {
+                return z > 0 ? z : 0;
+            }
+
+            @Override
+            public double derivative(double z, double a) {
+                return z > 0 ? 1 : 0;
+            }
+        },
+
+        LEAKY_RELU {
+            @Override
+            public double applyAsDouble(double z) {
+                return z > 0 ? z : LEAK * z;
+            }
+
+            @Override
+            public double derivative(double z, double a) {
+                return z > 0 ? 1 : LEAK;
+            }
+        },
+
+        TANH {
+            @Override
+            public double applyAsDouble(double z) {
+                return Math.tanh(z);
+            }
+
+            @Override
+            public double derivative(double z, double a) {
+                return 1 - a * a;
+            }
+        };
+
+        /**
+         * @param z a weighted input.
+         * @return f(z).
+         */
+        public abstract double applyAsDouble(double z);
+
+        @Override
+        public float apply(float z) {
+            return (float) applyAsDouble(z);
+        }
+
+        /**
+         * @param z a weighted input.
+         * @param a f(z).
+         * @return f'(z).
+         */
+        public abstract double derivative(double z, double a);
+    }
+
+    private final int id;
+    private final Elementwise elementwise;
+
+    Activation(int id, Elementwise elementwise) {
+        this.id = id;
+        this.elementwise = elementwise;
+    }
+
+    /**
+     * @return the id the binary model format stores for this activation.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @param id an activation id.
+     * @return the activation with the given id.
+     * @throws IllegalArgumentException if no activation has that id.
+     */
+    public static Activation fromId(int id) {
+        for (Activation activation : values()) {
+            if (activation.id == id) {
+                return activation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown activation id " + id);
+    }
+
+    /**
+     * @return the function applied to each weighted input, for fusing into
+     * a dense kernel; null for SOFTMAX, which only activate() applies.
+     */
+    public Elementwise getElementwise() {
+        return elementwise;
+    }
+
+    /**
+     * Standard deviation weights feeding a layer with this activation are
+     * initialized with; He initialization for the rectifiers, otherwise 1/√n.
+     *
+     * @param inputs the number of inputs into the layer.
+     * @return the standard deviation.
+     */
+    public double initialScale(int inputs) {
+        return this == RELU || this == LEAKY_RELU
+                ? Math.sqrt(2.0 / inputs) : 1 / Math.sqrt(inputs);
+    }
+
+    /**
+     * Applies the activation to each column of z.
+     *
+     * @param z a matrix of weighted inputs; one column per sample.
+     * @param out a matrix of the same dimensions receiving f(z); may be z.
+     */
+    public void activate(Matrix z, Matrix out) {
+        int rows = z.getRows();
+        int cols = z.getCols();
+        if (out.getRows() != rows || out.getCols() != cols) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for activation.");
+        }
+        double[] in = z.getBacking();
+        double[] result = out.getBacking();
+        int inOffset = z.getOffset();
+        int outOffset = out.getOffset();
+        if (elementwise != null) {
+            for (int i = 0; i < rows * cols; i++) {
+                result[outOffset + i] = elementwise.applyAsDouble(in[inOffset + i]);
+            }
+            return;
+        }
+        for (int j = 0; j < cols; j++) {
+            softmax(in, inOffset + j, result, outOffset + j, rows, cols);
+        }
+    }
+
+    /**
+     * Single precision version of activate.
+     *
+     * @param z a matrix of weighted inputs; one column per sample.
+     * @param out a matrix of the same dimensions receiving f(z); may be z.
+     */
+    public void activate(FloatMatrix z, FloatMatrix out) {
+        int rows = z.getRows();
+        int cols = z.getCols();
+        if (out.getRows() != rows || out.getCols() != cols) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for activation.");
+        }
+        float[] in = z.getBacking();
+        float[] result = out.getBacking();
+        if (elementwise != null) {
+            for (int i = 0; i < rows * cols; i++) {
+                result[i] = elementwise.apply(in[i]);
+            }
+            return;
+        }
+        for (int j = 0; j < cols; j++) {
+            softmax(in, j, result, j, rows, cols);
+        }
+    }
+
+    /**
+     * Applies the activation in place to n values; one sample's layer.
+     *
+     * @param z array holding the weighted inputs; receives f(z).
+     * @param offset index of the first weighted input.
+     * @param n the number of values.
+     */
+    public void activate(double[] z, int offset, int n) {
+        if (elementwise == null) {
+            softmax(z, offset, z, offset, n, 1);
+            return;
+        }
+        for (int i = offset; i < offset + n; i++) {
+            z[i] = elementwise.applyAsDouble(z[i]);
+        }
+    }
+
+    /**
+     * Single precision version of activate.
+     */
+    public void activate(float[] z, int offset, int n) {
+        if (elementwise == null) {
+            softmax(z, offset, z, offset, n, 1);
+            return;
+        }
+        for (int i = offset; i < offset + n; i++) {
+            z[i] = elementwise.apply(z[i]);
+        }
+    }
+
+    /**
+     * Numerically stable softmax of n values spaced stride apart; the
+     * largest value is subtracted before exponentiating so nothing overflows.
+     *
+     * @param z array holding the weighted inputs.
+     * @param zOffset index of the first weighted input.
+     * @param out array receiving the probabilities; may be z.
+     * @param outOffset index of the first probability.
+     * @param n the number of values.
+     * @param stride distance between consecutive values (1 for a column vector).
+     */
+    public static void softmax(double[] z, int zOffset, double[] out, int outOffset, int n, int stride) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, z[zOffset + i * stride]);
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double e = Math.exp(z[zOffset + i * stride] - max);
+            out[outOffset + i * stride] = e;
+            sum += e;
+        }
+        for (int i = 0; i < n; i++) {
+            out[outOffset + i * stride] /= sum;
+        }
+    }
+
+    /**
+     * Single precision version of softmax.
+     */
+    public static void softmax(float[] z, int zOffset, float[] out, int outOffset, int n, int stride) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, z[zOffset + i * stride]);
+        }
+        float sum = 0f;
+        for (int i = 0; i < n; i++) {
+            float e = (float) Math.exp(z[zOffset + i * stride] - max);
+            out[outOffset + i * stride] = e;
+            sum += e;
+        }
+        for (int i = 0; i < n; i++) {
+            out[outOffset + i * stride] /= sum;
+        }
+    }
+}
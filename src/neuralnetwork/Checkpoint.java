@@ -0,0 +1,564 @@
+package neuralnetwork;
+
+import neuralnetwork.NeuralNetwork.Precision;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <pre>
+ * Everything needed to continue an mbgd run exactly where it was taken
+ * (see Checkpointer and NeuralNetwork.resume()); the parameters, the
+ * optimizer's state, early stopping's state, the order the training data
+ * was last shuffled into, the seed the shuffles are drawn from, the number
+ * of epochs completed and the metrics of each. Taken between epochs.
+ *
+ * The hyperparameters passed to mbgd are saved and reused on resuming; the
+ * network's configuration (optimizer, schedule, early stopping and
+ * evaluation policy) is not, and has to be set up as it was.
+ *
+ * All values are little-endian, as in ModelFormat:
+ *
+ *   magic        4 bytes   "QDCK"
+ *   version      int16
+ *   dtype        int8      0 = float64, 1 = float32 (see ModelFormat)
+ *   flags        int8      1 = early stopping state follows the metrics
+ *   seed, epoch, epochs, batch size, alpha, lambda
+ *   input nodes, layer count, per layer: output nodes, activation id
+ *   parameters   per layer weights (row by row) then biases, in dtype
+ *   optimizer    method name (int16 length, UTF-8), steps, then the first and second moments
+ *                of each slot in float64 and float32 (block lists)
+ *   order        int32 count, then the sample indices
+ *   metrics      4 rows of epoch float64 values (see mbgd's return value)
+ *   early stopping: best, best epoch, wait, stopped, best parameters in dtype
+ *   checksum     int64     CRC32C of every preceding byte
+ *
+ * A block list is an int32 count (-1 for none) followed by each block's
+ * int32 length (-1 for none) and values.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public final class Checkpoint {
+
+    /**
+     * "QDCK" read as a little-endian int.
+     */
+    public static final int MAGIC = 0x4B434451;
+
+    /**
+     * Current version of the format.
+     */
+    public static final short VERSION = 1;
+
+    private static final byte EARLY_STOPPING = 1;
+
+    final long seed;
+    final int epoch, epochs, batchSize;
+    final double alpha, lambda;
+
+    final Precision precision;
+    final int inputNodes;
+    final int[] outputs, activations;
+
+    /**
+     * Weights and biases of each layer, ordered like the deltas of backProp;
+     * only the arrays matching precision are set.
+     */
+    final double[][] parameters;
+    final float[][] floatParameters;
+
+    final String optimizer;
+    final long steps;
+    final double[][][] moments;
+    final float[][][] floatMoments;
+
+    final int[] order;
+
+    /**
+     * The metrics of each completed epoch; rows epoch long.
+     */
+    final double[][] performance;
+
+    /**
+     * Early stopping's state; stopping is false if it was not enabled.
+     */
+    final boolean stopping;
+    final double best;
+    final int bestEpoch, wait;
+    final boolean stopped;
+    final double[][] bestParameters;
+    final float[][] bestFloatParameters;
+
+    Checkpoint(long seed, int epoch, int epochs, int batchSize, double alpha, double lambda,
+               Precision precision, int inputNodes, int[] outputs, int[] activations,
+               double[][] parameters, float[][] floatParameters,
+               String optimizer, long steps, double[][][] moments, float[][][] floatMoments,
+               int[] order, double[][] performance,
+               boolean stopping, double best, int bestEpoch, int wait, boolean stopped,
+               double[][] bestParameters, float[][] bestFloatParameters) {
+        this.seed = seed;
+        this.epoch = epoch;
+        this.epochs = epochs;
+        this.batchSize = batchSize;
+        this.alpha = alpha;
+        this.lambda = lambda;
+        this.precision = precision;
+        this.inputNodes = inputNodes;
+        this.outputs = outputs;
+        this.activations = activations;
+        this.parameters = parameters;
+        this.floatParameters = floatParameters;
+        this.optimizer = optimizer;
+        this.steps = steps;
+        this.moments = moments;
+        this.floatMoments = floatMoments;
+        this.order = order;
+        this.performance = performance;
+        this.stopping = stopping;
+        this.best = best;
+        this.bestEpoch = bestEpoch;
+        this.wait = wait;
+        this.stopped = stopped;
+        this.bestParameters = bestParameters;
+        this.bestFloatParameters = bestFloatParameters;
+    }
+
+    /**
+     * @return the number of epochs completed when the checkpoint was taken.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the number of epochs the run was started for.
+     */
+    public int getEpochs() {
+        return epochs;
+    }
+
+    /**
+     * @return the seed the run's shuffles are drawn from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the batch size the run was started with.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the base training rate the run was started with.
+     */
+    public double getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * @return the regularization constant the run was started with.
+     */
+    public double getLambda() {
+        return lambda;
+    }
+
+    /**
+     * @return true if training had finished, or stopped early, when the
+     * checkpoint was taken.
+     */
+    public boolean isFinished() {
+        return epoch == epochs || stopped;
+    }
+
+    /**
+     * Writes the checkpoint. It is written to a temporary file, synced to
+     * disk and then moved over path, so path always holds a whole checkpoint.
+     *
+     * @param path destination file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(file, 1 << 16), new CRC32C());
+            LittleEndianOutput out = new LittleEndianOutput(checked);
+            writeContent(out);
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeContent(LittleEndianOutput out) throws IOException {
+        boolean isFloat = precision == Precision.FLOAT;
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(isFloat ? ModelFormat.FLOAT32 : ModelFormat.FLOAT64);
+        out.writeByte(stopping ? EARLY_STOPPING : 0);
+        out.writeLong(seed);
+        out.writeInt(epoch);
+        out.writeInt(epochs);
+        out.writeInt(batchSize);
+        out.writeDouble(alpha);
+        out.writeDouble(lambda);
+
+        out.writeInt(inputNodes);
+        out.writeInt(outputs.length);
+        for (int l = 0; l < outputs.length; l++) {
+            out.writeInt(outputs[l]);
+            out.writeInt(activations[l]);
+        }
+        writeParameters(out, parameters, floatParameters);
+
+        out.writeUTF(optimizer);
+        out.writeLong(steps);
+        for (double[][] moment : moments) {
+            writeBlocks(out, moment);
+        }
+        for (float[][] moment : floatMoments) {
+            writeBlocks(out, moment);
+        }
+
+        out.writeInt(order.length);
+        for (int index : order) {
+            out.writeInt(index);
+        }
+        for (double[] row : performance) {
+            for (int i = 0; i < epoch; i++) {
+                out.writeDouble(row[i]);
+            }
+        }
+
+        if (stopping) {
+            out.writeDouble(best);
+            out.writeInt(bestEpoch);
+            out.writeInt(wait);
+            out.writeBoolean(stopped);
+            writeParameters(out, bestParameters, bestFloatParameters);
+        }
+    }
+
+    private void writeParameters(LittleEndianOutput out, double[][] blocks, float[][] floatBlocks)
+            throws IOException {
+        if (precision == Precision.FLOAT) {
+            writeBlocks(out, floatBlocks);
+        } else {
+            writeBlocks(out, blocks);
+        }
+    }
+
+    private static void writeBlocks(LittleEndianOutput out, double[][] blocks) throws IOException {
+        out.writeInt(blocks == null ? -1 : blocks.length);
+        if (blocks == null) {
+            return;
+        }
+        for (double[] block : blocks) {
+            out.writeInt(block == null ? -1 : block.length);
+            if (block != null) {
+                for (double value : block) {
+                    out.writeDouble(value);
+                }
+            }
+        }
+    }
+
+    private static void writeBlocks(LittleEndianOutput out, float[][] blocks) throws IOException {
+        out.writeInt(blocks == null ? -1 : blocks.length);
+        if (blocks == null) {
+            return;
+        }
+        for (float[] block : blocks) {
+            out.writeInt(block == null ? -1 : block.length);
+            if (block != null) {
+                for (float value : block) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by write().
+     *
+     * @param path a checkpoint file.
+     * @return the checkpoint.
+     * @throws IOException if the file cannot be read or is not a valid checkpoint.
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            CheckedInputStream checked = new CheckedInputStream(file, new CRC32C());
+            LittleEndianInput in = new LittleEndianInput(checked);
+            Checkpoint checkpoint;
+            try {
+                checkpoint = readContent(in, Files.size(path));
+            } catch (EOFException e) {
+                throw new IOException("Checkpoint is truncated", e);
+            }
+            long crc = checked.getChecksum().getValue();
+            LittleEndianInput trailer = new LittleEndianInput(file);
+            if (trailer.readLong() != crc) {
+                throw new IOException("Checkpoint checksum does not match");
+            }
+            if (trailer.read() != -1) {
+                throw new IOException("Checkpoint has trailing data");
+            }
+            return checkpoint;
+        }
+    }
+
+    /**
+     * @param size the size of the file; bounds every length read, so a
+     *             corrupt length fails before anything is allocated for it.
+     */
+    private static Checkpoint readContent(LittleEndianInput in, long size) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a checkpoint file");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        byte dtype = in.readByte();
+        if (dtype != ModelFormat.FLOAT64 && dtype != ModelFormat.FLOAT32) {
+            throw new IOException("Unknown dtype " + dtype);
+        }
+        Precision precision = dtype == ModelFormat.FLOAT32 ? Precision.FLOAT : Precision.DOUBLE;
+        boolean stopping = (in.readByte() & EARLY_STOPPING) != 0;
+        long seed = in.readLong();
+        int epoch = in.readInt();
+        int epochs = in.readInt();
+        int batchSize = in.readInt();
+        double alpha = in.readDouble();
+        double lambda = in.readDouble();
+        if (epoch < 0 || epoch > epochs || (long) 4 * epoch * Double.BYTES > size || batchSize < 1) {
+            throw new IOException("Malformed checkpoint header");
+        }
+
+        int inputNodes = in.readInt();
+        int[] outputs = new int[length(in, size, 2 * Integer.BYTES)];
+        int[] activations = new int[outputs.length];
+        for (int l = 0; l < outputs.length; l++) {
+            outputs[l] = in.readInt();
+            activations[l] = in.readInt();
+        }
+        boolean isFloat = precision == Precision.FLOAT;
+        double[][] parameters = isFloat ? null : readBlocks(in, size);
+        float[][] floatParameters = isFloat ? readFloatBlocks(in, size) : null;
+
+        String optimizer = in.readUTF();
+        long steps = in.readLong();
+        double[][][] moments = {readBlocks(in, size), readBlocks(in, size)};
+        float[][][] floatMoments = {readFloatBlocks(in, size), readFloatBlocks(in, size)};
+
+        int[] order = new int[length(in, size, Integer.BYTES)];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = in.readInt();
+        }
+        double[][] performance = new double[4][epoch];
+        for (double[] row : performance) {
+            for (int i = 0; i < epoch; i++) {
+                row[i] = in.readDouble();
+            }
+        }
+
+        double best = Double.NaN;
+        int bestEpoch = -1, wait = 0;
+        boolean stopped = false;
+        double[][] bestParameters = null;
+        float[][] bestFloatParameters = null;
+        if (stopping) {
+            best = in.readDouble();
+            bestEpoch = in.readInt();
+            wait = in.readInt();
+            stopped = in.readBoolean();
+            if (isFloat) {
+                bestFloatParameters = readFloatBlocks(in, size);
+            } else {
+                bestParameters = readBlocks(in, size);
+            }
+        }
+        return new Checkpoint(seed, epoch, epochs, batchSize, alpha, lambda, precision,
+                inputNodes, outputs, activations, parameters, floatParameters,
+                optimizer, steps, moments, floatMoments, order, performance,
+                stopping, best, bestEpoch, wait, stopped, bestParameters, bestFloatParameters);
+    }
+
+    private static double[][] readBlocks(LittleEndianInput in, long size) throws IOException {
+        int count = length(in, size, Integer.BYTES);
+        if (count < 0) {
+            return null;
+        }
+        double[][] blocks = new double[count][];
+        for (int i = 0; i < count; i++) {
+            int length = length(in, size, Double.BYTES);
+            if (length >= 0) {
+                blocks[i] = new double[length];
+                for (int j = 0; j < length; j++) {
+                    blocks[i][j] = in.readDouble();
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private static float[][] readFloatBlocks(LittleEndianInput in, long size) throws IOException {
+        int count = length(in, size, Integer.BYTES);
+        if (count < 0) {
+            return null;
+        }
+        float[][] blocks = new float[count][];
+        for (int i = 0; i < count; i++) {
+            int length = length(in, size, Float.BYTES);
+            if (length >= 0) {
+                blocks[i] = new float[length];
+                for (int j = 0; j < length; j++) {
+                    blocks[i][j] = in.readFloat();
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * @return a length read from in; -1 for none.
+     * @throws IOException if the length could not fit in a file of size bytes.
+     */
+    private static int length(LittleEndianInput in, long size, int elementBytes) throws IOException {
+        int length = in.readInt();
+        if (length < -1 || (long) length * elementBytes > size) {
+            throw new IOException("Malformed checkpoint; bad length " + length);
+        }
+        return length;
+    }
+    /**
+     * Writes values little-endian through a DataOutputStream, reversing the
+     * bytes of each multi-byte value.
+     */
+    private static final class LittleEndianOutput {
+
+        private final DataOutputStream out;
+
+        LittleEndianOutput(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        void writeByte(int v) throws IOException {
+            out.writeByte(v);
+        }
+
+        void writeBoolean(boolean v) throws IOException {
+            out.writeBoolean(v);
+        }
+
+        void writeShort(int v) throws IOException {
+            out.writeShort(Short.reverseBytes((short) v));
+        }
+
+        void writeInt(int v) throws IOException {
+            out.writeInt(Integer.reverseBytes(v));
+        }
+
+        void writeLong(long v) throws IOException {
+            out.writeLong(Long.reverseBytes(v));
+        }
+
+        void writeFloat(float v) throws IOException {
+            writeInt(Float.floatToRawIntBits(v));
+        }
+
+        void writeDouble(double v) throws IOException {
+            writeLong(Double.doubleToRawLongBits(v));
+        }
+
+        void writeUTF(String v) throws IOException {
+            byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > Short.MAX_VALUE) {
+                throw new IOException("String is too long for a checkpoint");
+            }
+            writeShort(bytes.length);
+            out.write(bytes);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads values written by LittleEndianOutput. Reads no further than the
+     * value asked for, so a checksum of the underlying stream covers exactly
+     * the bytes read.
+     */
+    private static final class LittleEndianInput {
+
+        private final DataInputStream in;
+
+        LittleEndianInput(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        int read() throws IOException {
+            return in.read();
+        }
+
+        byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+        short readShort() throws IOException {
+            return Short.reverseBytes(in.readShort());
+        }
+
+        int readInt() throws IOException {
+            return Integer.reverseBytes(in.readInt());
+        }
+
+        long readLong() throws IOException {
+            return Long.reverseBytes(in.readLong());
+        }
+
+        float readFloat() throws IOException {
+            return Float.intBitsToFloat(readInt());
+        }
+
+        double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        String readUTF() throws IOException {
+            int length = readShort();
+            if (length < 0) {
+                throw new IOException("Malformed checkpoint; bad string length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
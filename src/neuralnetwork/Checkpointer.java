@@ -0,0 +1,143 @@
+package neuralnetwork;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Periodically checkpoints an mbgd run on packed data (see
+ * NeuralNetwork.setCheckpointer()), so a run killed part way through can
+ * be continued from its last checkpoint with NeuralNetwork.resume():
+ *
+ *   File checkpoint = new File("run.qdck");
+ *   nn.setCheckpointer(new Checkpointer(checkpoint, 5));
+ *   double[][] results = checkpoint.exists()
+ *           ? nn.resume(Checkpoint.read(checkpoint.toPath()), training, validation)
+ *           : nn.mbgd(training, epochs, batchSize, alpha, lambda, validation);
+ *
+ * A checkpoint is taken every interval epochs and after the final epoch
+ * (or the one training stopped early after). Taking one copies the state
+ * on the training thread, which costs about as much as a single batch;
+ * encoding it and writing it to disk happens on a background thread while
+ * training carries on. If the previous checkpoint is still being written
+ * when the next is due, training waits for it, so at most one is pending.
+ *
+ * Training waits for the last checkpoint to be written before mbgd or
+ * resume returns. A failed write is rethrown, as an UncheckedIOException,
+ * when the next checkpoint is taken or training ends, or from flush() and
+ * close().
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class Checkpointer implements Closeable {
+
+    private final File file;
+    private final int interval;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The write in progress; null before the first checkpoint.
+     */
+    private Future<?> pending;
+
+    /**
+     * @param file the file checkpoints are written to; each replaces the last.
+     * @param interval the number of epochs between checkpoints.
+     */
+    public Checkpointer(File file, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least 1");
+        }
+        this.file = file;
+        this.interval = interval;
+        // a single worker, started on demand and stopped once idle.
+        this.executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), (task) -> new Thread(task, "checkpointer"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the file checkpoints are written to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of epochs between checkpoints.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @param completed the number of epochs completed.
+     * @param finished true if training is about to end.
+     * @return true if a checkpoint should be taken.
+     */
+    boolean isDue(int completed, boolean finished) {
+        return finished || completed % interval == 0;
+    }
+
+    /**
+     * Queues a checkpoint to be written, once the previous one has been.
+     *
+     * @param checkpoint a checkpoint no longer referencing the network's state.
+     */
+    synchronized void submit(Checkpoint checkpoint) {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pending = executor.submit(() -> {
+            checkpoint.write(file.toPath());
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the checkpoint being written, if any.
+     *
+     * @throws IOException if it could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending == null) {
+            return;
+        }
+        Future<?> writing = pending;
+        pending = null;
+        try {
+            writing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a checkpoint", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Checkpoint could not be written", cause);
+        }
+    }
+
+    /**
+     * Waits for the checkpoint being written and stops the background thread.
+     *
+     * @throws IOException if the last checkpoint could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package neuralnetwork;
+
+import neuralnetwork.NeuralNetwork.Layer;
+import utils.FloatMatrix;
+import utils.Matrix;
+
+/**
+ * <pre>
+ * Stops mbgd once a validation metric has stopped improving (see
+ * NeuralNetwork.setEarlyStopping()), and keeps a copy of the parameters
+ * from the best epoch seen.
+ *
+ * After every epoch the monitored metric is compared with the best so far;
+ * an epoch only counts as an improvement if it beats the best by more than
+ * minDelta. Training stops after patience epochs in a row without one, and
+ * the best parameters are copied back into the network when training ends
+ * (whether it stopped early or not).
+ *
+ * The best parameters are copied into flat arrays allocated on the first
+ * improvement, so retaining a checkpoint costs no allocation afterwards.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class EarlyStopping {
+
+    /**
+     * The validation metric deciding which epoch is best.
+     */
+    public enum Monitor {
+        VALIDATION_ACCURACY, VALIDATION_COST
+    }
+
+    private final Monitor monitor;
+    private final int patience;
+    private final double minDelta;
+
+    /**
+     * The best value of the monitored metric, the epoch it was reached in
+     * and the number of epochs since.
+     */
+    private double best;
+    private int bestEpoch;
+    private int wait;
+    private boolean stopped;
+
+    /**
+     * Parameters of the best epoch, ordered like the deltas of backProp;
+     * only the arrays matching the network's precision are used.
+     */
+    private double[][] bestParameters;
+    private float[][] bestFloatParameters;
+
+    /**
+     * Constructs early stopping on validation accuracy, counting any
+     * increase as an improvement.
+     *
+     * @param patience the number of epochs without improvement before stopping.
+     */
+    public EarlyStopping(int patience) {
+        this(Monitor.VALIDATION_ACCURACY, patience, 0);
+    }
+
+    /**
+     * Constructs early stopping.
+     *
+     * @param monitor the validation metric deciding which epoch is best.
+     * @param patience the number of epochs without improvement before stopping.
+     * @param minDelta the amount the metric has to improve by to count.
+     */
+    public EarlyStopping(Monitor monitor, int patience, double minDelta) {
+        if (patience < 1) {
+            throw new IllegalArgumentException("patience must be at least 1");
+        }
+        if (!(minDelta >= 0)) {
+            throw new IllegalArgumentException("minDelta must not be negative");
+        }
+        this.monitor = monitor;
+        this.patience = patience;
+        this.minDelta = minDelta;
+        reset();
+    }
+
+    /**
+     * Forgets the best epoch; called by mbgd before training starts.
+     */
+    void reset() {
+        best = monitor == Monitor.VALIDATION_ACCURACY ? Double.NEGATIVE_INFINITY
+                : Double.POSITIVE_INFINITY;
+        bestEpoch = -1;
+        wait = 0;
+        stopped = false;
+    }
+
+    /**
+     * Records the validation metrics of an epoch, copying the network's
+     * parameters if it is the best so far.
+     *
+     * @param nn the network being trained.
+     * @param epoch the (zero indexed) epoch just completed.
+     * @param cost the validation cost after the epoch.
+     * @param accuracy the validation accuracy after the epoch.
+     * @return true if training should stop.
+     */
+    boolean update(NeuralNetwork nn, int epoch, double cost, double accuracy) {
+        boolean improved = monitor == Monitor.VALIDATION_ACCURACY
+                ? accuracy > best + minDelta
+                : cost < best - minDelta;
+        if (improved) {
+            best = monitor == Monitor.VALIDATION_ACCURACY ? accuracy : cost;
+            bestEpoch = epoch;
+            wait = 0;
+            copy(nn.getLayers(), true);
+        } else if (++wait >= patience) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Copies the best parameters seen back into the network, in place.
+     *
+     * @param nn the network being trained.
+     */
+    void restore(NeuralNetwork nn) {
+        if (bestEpoch >= 0) {
+            copy(nn.getLayers(), false);
+        }
+    }
+
+    /**
+     * @return the best value of the monitored metric.
+     */
+    public double getBest() {
+        return best;
+    }
+
+    /**
+     * @return the (zero indexed) epoch the best parameters are from; -1 before
+     * the first epoch.
+     */
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+
+    /**
+     * @return true if the last training run stopped before its final epoch.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return wait, the number of epochs since the best.
+     */
+    int getWait() {
+        return wait;
+    }
+
+    /**
+     * @return copies of the best parameters (null before the first
+     * improvement), in the network's precision; see Checkpoint.
+     */
+    double[][] copyBestParameters() {
+        return bestParameters == null || bestEpoch < 0 ? null : copy(bestParameters);
+    }
+
+    float[][] copyBestFloatParameters() {
+        return bestFloatParameters == null || bestEpoch < 0 ? null : copy(bestFloatParameters);
+    }
+
+    /**
+     * Replaces the state of a run with one saved in a checkpoint.
+     */
+    void restore(double best, int bestEpoch, int wait, boolean stopped,
+                 double[][] bestParameters, float[][] bestFloatParameters) {
+        this.best = best;
+        this.bestEpoch = bestEpoch;
+        this.wait = wait;
+        this.stopped = stopped;
+        this.bestParameters = bestParameters == null ? null : copy(bestParameters);
+        this.bestFloatParameters = bestFloatParameters == null ? null : copy(bestFloatParameters);
+    }
+
+    private static double[][] copy(double[][] parameters) {
+        double[][] copy = new double[parameters.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = parameters[i].clone();
+        }
+        return copy;
+    }
+
+    private static float[][] copy(float[][] parameters) {
+        float[][] copy = new float[parameters.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = parameters[i].clone();
+        }
+        return copy;
+    }
+
+    private void copy(Layer[] layers, boolean save) {
+        boolean isFloat = layers[0].getPrecision() == NeuralNetwork.Precision.FLOAT;
+        if (isFloat && bestFloatParameters == null) {
+            bestFloatParameters = new float[2 * layers.length][];
+        } else if (!isFloat && bestParameters == null) {
+            bestParameters = new double[2 * layers.length][];
+        }
+
+        for (int l = 0; l < layers.length; l++) {
+            if (isFloat) {
+                copy(layers[l].getFloatWeights(), 2 * l, save);
+                copy(layers[l].getFloatBias(), 2 * l + 1, save);
+            } else {
+                copy(layers[l].getWeights(), 2 * l, save);
+                copy(layers[l].getBias(), 2 * l + 1, save);
+            }
+        }
+    }
+
+    private void copy(Matrix parameters, int slot, boolean save) {
+        int length = parameters.getRows() * parameters.getCols();
+        if (bestParameters[slot] == null) {
+            bestParameters[slot] = new double[length];
+        }
+        if (save) {
+            System.arraycopy(parameters.getBacking(), parameters.getOffset(), bestParameters[slot], 0, length);
+        } else {
+            System.arraycopy(bestParameters[slot], 0, parameters.getBacking(), parameters.getOffset(), length);
+        }
+    }
+
+    private void copy(FloatMatrix parameters, int slot, boolean save) {
+        float[] backing = parameters.getBacking();
+        if (bestFloatParameters[slot] == null) {
+            bestFloatParameters[slot] = new float[backing.length];
+        }
+        if (save) {
+            System.arraycopy(backing, 0, bestFloatParameters[slot], 0, backing.length);
+        } else {
+            System.arraycopy(bestFloatParameters[slot], 0, backing, 0, backing.length);
+        }
+    }
+}
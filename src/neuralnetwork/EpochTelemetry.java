@@ -0,0 +1,212 @@
+package neuralnetwork;
+
+import java.util.Locale;
+
+/**
+ * <pre>
+ * What one epoch of mbgd cost and achieved (see TrainingListener).
+ *
+ * Wall time is split into phases:
+ *
+ *   SHUFFLE     reordering the training data,
+ *   FORWARD     forward passes of the training samples (and running metrics),
+ *   BACKWARD    backward passes, summing each sample's gradients,
+ *   UPDATE      clearing the gradients and the optimizer's step,
+ *   EVALUATION  measuring the network on the training and validation data.
+ *
+ * Allocated bytes are those of the training thread (-1 if the JVM can not
+ * measure them); garbage collections are those of the whole JVM, since
+ * collectors do not report which thread caused them.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class EpochTelemetry {
+
+    /**
+     * The parts an epoch's wall time is split into.
+     */
+    public enum Phase {
+        SHUFFLE, FORWARD, BACKWARD, UPDATE, EVALUATION
+    }
+
+    private final int epoch;
+    private final int epochs;
+    private final int samples;
+    private final int batches;
+    private final long nanos;
+    private final long[] phaseNanos;
+    private final long allocatedBytes;
+    private final long gcCount;
+    private final long gcMillis;
+    private final double[] metrics;
+
+    /**
+     * @param metrics training cost, validation cost, training accuracy and
+     * validation accuracy; NaN if not evaluated.
+     */
+    EpochTelemetry(int epoch, int epochs, int samples, int batches, long nanos,
+                   long[] phaseNanos, long allocatedBytes, long gcCount, long gcMillis,
+                   double[] metrics) {
+        this.epoch = epoch;
+        this.epochs = epochs;
+        this.samples = samples;
+        this.batches = batches;
+        this.nanos = nanos;
+        this.phaseNanos = phaseNanos.clone();
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.metrics = metrics.clone();
+    }
+
+    /**
+     * @return the (zero indexed) epoch.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the number of epochs asked for.
+     */
+    public int getEpochs() {
+        return epochs;
+    }
+
+    /**
+     * @return the number of samples trained on; whole batches only.
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the number of batches (optimizer steps).
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the wall time of the whole epoch, in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @param phase a part of the epoch.
+     * @return the wall time spent in phase, in nanoseconds.
+     */
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return samples trained per second, leaving out evaluation.
+     */
+    public double getSamplesPerSecond() {
+        long training = nanos - getNanos(Phase.EVALUATION);
+        return training <= 0 ? 0 : samples / (training / 1e9);
+    }
+
+    /**
+     * @return bytes allocated by the training thread during the epoch; -1 if
+     * not supported by the JVM.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the number of garbage collections during the epoch.
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * @return the time the collectors reported spending during the epoch, in
+     * milliseconds.
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * @return true if the network was measured after this epoch.
+     */
+    public boolean isEvaluated() {
+        return !Double.isNaN(metrics[1]);
+    }
+
+    /**
+     * @return the cost over the training data; NaN if not measured.
+     */
+    public double getTrainingCost() {
+        return metrics[0];
+    }
+
+    /**
+     * @return the cost over the validation data; NaN if not measured.
+     */
+    public double getValidationCost() {
+        return metrics[1];
+    }
+
+    /**
+     * @return the accuracy over the training data; NaN if not measured.
+     */
+    public double getTrainingAccuracy() {
+        return metrics[2];
+    }
+
+    /**
+     * @return the accuracy over the validation data; NaN if not measured.
+     */
+    public double getValidationAccuracy() {
+        return metrics[3];
+    }
+
+    /**
+     * @return the telemetry as a single line JSON object; times in
+     * milliseconds, metrics that were not measured as null.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"epoch\": ").append(epoch)
+                .append(", \"epochs\": ").append(epochs)
+                .append(", \"samples\": ").append(samples)
+                .append(", \"batches\": ").append(batches)
+                .append(", \"millis\": ").append(millis(nanos))
+                .append(", \"phases\": {");
+        for (Phase phase : Phase.values()) {
+            json.append(phase.ordinal() == 0 ? "" : ", ")
+                    .append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("\": ")
+                    .append(millis(getNanos(phase)));
+        }
+        json.append("}, \"samples_per_second\": ")
+                .append(String.format(Locale.ROOT, "%.1f", getSamplesPerSecond()))
+                .append(", \"allocated_bytes\": ").append(allocatedBytes)
+                .append(", \"gc_count\": ").append(gcCount)
+                .append(", \"gc_millis\": ").append(gcMillis)
+                .append(", \"training_cost\": ").append(number(getTrainingCost()))
+                .append(", \"training_accuracy\": ").append(number(getTrainingAccuracy()))
+                .append(", \"validation_cost\": ").append(number(getValidationCost()))
+                .append(", \"validation_accuracy\": ").append(number(getValidationAccuracy()));
+        return json.append('}').toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
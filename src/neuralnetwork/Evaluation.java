@@ -0,0 +1,164 @@
+package neuralnetwork;
+
+import utils.FloatMatrix;
+import utils.Matrix;
+
+/**
+ * <pre>
+ * Cost, accuracy and per-class counts of a network over a set of samples,
+ * gathered together in a single forward pass (see NeuralNetwork.evaluate()).
+ *
+ * Samples are added one output at a time, so the same accumulator also
+ * collects running statistics from the outputs computed during a training
+ * pass, which cost nothing extra.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class Evaluation {
+
+    /**
+     * Whether outputs are scored with the softmax or the sigmoid cross entropy.
+     */
+    private final boolean softmax;
+
+    /**
+     * Per class counts; samples labelled with each class, samples predicted
+     * as each class and correct predictions of each class.
+     */
+    private final int[] support, predicted, correct;
+
+    private double costSum;
+    private double regularization;
+    private int samples;
+
+    /**
+     * @param classes the number of classes a label can take.
+     * @param softmax true if outputs come from a softmax layer.
+     */
+    Evaluation(int classes, boolean softmax) {
+        this.softmax = softmax;
+        this.support = new int[classes];
+        this.predicted = new int[classes];
+        this.correct = new int[classes];
+    }
+
+    /**
+     * Scores the output of a single sample.
+     *
+     * @param yHat the network's output (a column matrix).
+     * @param label class index of the sample.
+     */
+    void add(Matrix yHat, int label) {
+        costSum += softmax ? NeuralNetwork.softmaxCost(yHat, label)
+                : NeuralNetwork.crossEntropyCost(yHat, label);
+        count(Matrix.argMaxRow(yHat), label);
+    }
+
+    /**
+     * Single precision version of add.
+     */
+    void add(FloatMatrix yHat, int label) {
+        int best = 0;
+        double cost = 0;
+        for (int i = 0; i < yHat.getRows(); i++) {
+            double value = yHat.get(i, 0);
+            if (value > yHat.get(best, 0)) {
+                best = i;
+            }
+            if (!softmax) {
+                cost -= i == label ? NeuralNetwork.safeLog(value) : NeuralNetwork.safeLog(1 - value);
+            }
+        }
+        if (softmax) {
+            cost = -NeuralNetwork.safeLog(yHat.get(label, 0));
+        }
+        costSum += cost;
+        count(best, label);
+    }
+
+    private void count(int yHat, int label) {
+        support[label]++;
+        predicted[yHat]++;
+        if (yHat == label) {
+            correct[label]++;
+        }
+        samples++;
+    }
+
+    /**
+     * @param regularization the regularization term added to the mean cost.
+     */
+    void setRegularization(double regularization) {
+        this.regularization = regularization;
+    }
+
+    /**
+     * @return the number of samples scored.
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the mean cost per sample plus the regularization term; NaN if
+     * no samples were scored.
+     */
+    public double getCost() {
+        return samples == 0 ? Double.NaN : costSum / samples + regularization;
+    }
+
+    /**
+     * @return the fraction of samples predicted correctly; NaN if no samples
+     * were scored.
+     */
+    public double getAccuracy() {
+        if (samples == 0) {
+            return Double.NaN;
+        }
+        int total = 0;
+        for (int c : correct) {
+            total += c;
+        }
+        return (double) total / samples;
+    }
+
+    /**
+     * @return the number of samples labelled with each class.
+     */
+    public int[] getSupport() {
+        return support.clone();
+    }
+
+    /**
+     * @return the number of samples predicted as each class.
+     */
+    public int[] getPredicted() {
+        return predicted.clone();
+    }
+
+    /**
+     * @return the number of correct predictions of each class.
+     */
+    public int[] getCorrect() {
+        return correct.clone();
+    }
+
+    /**
+     * @param c a class index.
+     * @return the fraction of samples labelled c that were predicted as c;
+     * NaN if there were none.
+     */
+    public double getRecall(int c) {
+        return support[c] == 0 ? Double.NaN : (double) correct[c] / support[c];
+    }
+
+    /**
+     * @param c a class index.
+     * @return the fraction of samples predicted as c that were labelled c;
+     * NaN if there were none.
+     */
+    public double getPrecision(int c) {
+        return predicted[c] == 0 ? Double.NaN : (double) correct[c] / predicted[c];
+    }
+}
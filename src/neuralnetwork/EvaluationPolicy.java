@@ -0,0 +1,88 @@
+package neuralnetwork;
+
+/**
+ * <pre>
+ * How often, and on how much data, mbgd measures the network between
+ * epochs (see NeuralNetwork.setEvaluationPolicy()).
+ *
+ * The validation set is evaluated in full, in one fused pass, every few
+ * epochs and always after the last. Training metrics are either
+ *
+ *   FULL       a fused pass over the whole training set (the default),
+ *   SUBSAMPLE  a fused pass over a random subsample of the training set,
+ *   RUNNING    gathered from the outputs of the training pass itself; free,
+ *              but measured while the parameters were still changing,
+ *   NONE       not measured (reported as NaN).
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class EvaluationPolicy {
+
+    /**
+     * Ways of measuring training metrics.
+     */
+    public enum TrainingMetrics {
+        FULL, SUBSAMPLE, RUNNING, NONE
+    }
+
+    private final int every;
+    private final TrainingMetrics trainingMetrics;
+    private final int samples;
+
+    /**
+     * Constructs the default policy; every epoch, with full training metrics.
+     */
+    public EvaluationPolicy() {
+        this(1, TrainingMetrics.FULL, 0);
+    }
+
+    /**
+     * Constructs an evaluation policy.
+     *
+     * @param every the number of epochs between evaluations.
+     * @param trainingMetrics how training metrics are measured.
+     * @param samples the size of the training subsample; only used by SUBSAMPLE.
+     */
+    public EvaluationPolicy(int every, TrainingMetrics trainingMetrics, int samples) {
+        if (every < 1) {
+            throw new IllegalArgumentException("every must be at least 1");
+        }
+        if (trainingMetrics == TrainingMetrics.SUBSAMPLE && samples < 1) {
+            throw new IllegalArgumentException("A subsample needs at least one sample");
+        }
+        this.every = every;
+        this.trainingMetrics = trainingMetrics;
+        this.samples = samples;
+    }
+
+    /**
+     * @return the number of epochs between evaluations.
+     */
+    public int getEvery() {
+        return every;
+    }
+
+    /**
+     * @return how training metrics are measured.
+     */
+    public TrainingMetrics getTrainingMetrics() {
+        return trainingMetrics;
+    }
+
+    /**
+     * @return the size of the training subsample.
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @param epoch a (zero indexed) epoch.
+     * @param epochs the total number of epochs.
+     * @return true if the network is evaluated after epoch.
+     */
+    boolean isEvaluated(int epoch, int epochs) {
+        return (epoch + 1) % every == 0 || epoch == epochs - 1;
+    }
+}
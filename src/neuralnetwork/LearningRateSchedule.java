@@ -0,0 +1,77 @@
+package neuralnetwork;
+
+/**
+ * <pre>
+ * Training rate used by mbgd at each point of training (see
+ * NeuralNetwork.setSchedule()). The rate is looked up before every batch
+ * with the progress through training measured in (fractional) epochs, so
+ * warmup and cosine decay are smooth within an epoch while step decay
+ * changes only at epoch boundaries.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+@FunctionalInterface
+public interface LearningRateSchedule {
+
+    /**
+     * @param alpha the base training rate passed to mbgd.
+     * @param progress epochs completed so far, E.g. 2.5 halfway through the third epoch.
+     * @param epochs the total number of epochs training runs for.
+     * @return the training rate to use for the next batch.
+     */
+    double rate(double alpha, double progress, double epochs);
+
+    /**
+     * @return a schedule keeping the base rate throughout; the default.
+     */
+    static LearningRateSchedule constant() {
+        return (alpha, progress, epochs) -> alpha;
+    }
+
+    /**
+     * @param every the number of epochs between decays.
+     * @param gamma factor the rate is multiplied by every few epochs.
+     * @return a schedule decaying the rate in steps; alpha * gamma^⌊progress / every⌋.
+     */
+    static LearningRateSchedule step(int every, double gamma) {
+        if (every < 1 || !(gamma > 0)) {
+            throw new IllegalArgumentException("Step schedules need a positive " +
+                    "interval and factor");
+        }
+        return (alpha, progress, epochs) -> alpha * Math.pow(gamma, Math.floor(progress / every));
+    }
+
+    /**
+     * @param minFraction the fraction of the base rate reached at the end of training.
+     * @return a schedule annealing the rate from alpha to alpha * minFraction
+     * along half a cosine.
+     */
+    static LearningRateSchedule cosine(double minFraction) {
+        if (!(minFraction >= 0 && minFraction <= 1)) {
+            throw new IllegalArgumentException("minFraction must be between 0 and 1");
+        }
+        return (alpha, progress, epochs) -> {
+            double t = Math.min(1, progress / epochs);
+            return alpha * (minFraction + (1 - minFraction) * 0.5 * (1 + Math.cos(Math.PI * t)));
+        };
+    }
+
+    /**
+     * @param warmupEpochs the number of epochs to warm up over.
+     * @param after the schedule followed once warmed up; it sees progress and
+     * epochs counted from the end of the warmup.
+     * @return a schedule raising the rate linearly from zero to that of after
+     * over the first warmupEpochs.
+     */
+    static LearningRateSchedule warmup(double warmupEpochs, LearningRateSchedule after) {
+        if (!(warmupEpochs > 0)) {
+            throw new IllegalArgumentException("warmupEpochs must be positive");
+        }
+        return (alpha, progress, epochs) -> {
+            double rate = after.rate(alpha, Math.max(0, progress - warmupEpochs),
+                    Math.max(1, epochs - warmupEpochs));
+            return progress < warmupEpochs ? rate * progress / warmupEpochs : rate;
+        };
+    }
+}
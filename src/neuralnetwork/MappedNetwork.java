@@ -0,0 +1,194 @@
+package neuralnetwork;
+
+import utils.DataSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <pre>
+ * Inference only network whose parameters are never copied onto the heap;
+ * every layer reads its weights and biases through DoubleBuffer (or
+ * FloatBuffer) views over a memory-mapped model file (see ModelFormat).
+ *
+ * Mapped pages live in the operating system's page cache, so any number of
+ * processes on a host mapping the same file share one physical copy of the
+ * weights, and opening a model costs no more than mapping it.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class MappedNetwork {
+
+    /**
+     * Keeps the mapping reachable for as long as the network is.
+     */
+    private final MappedByteBuffer mapped;
+
+    /**
+     * Weight and bias views for each layer; exactly one of each pair of
+     * arrays is used, depending on the file's dtype.
+     */
+    private final DoubleBuffer[] weights, bias;
+    private final FloatBuffer[] floatWeights, floatBias;
+
+    /**
+     * The number of inputs into each layer, and the number of nodes in it.
+     */
+    private final int[] inputs, outputs;
+
+    /**
+     * The activation function of each layer.
+     */
+    private final Activation[] activations;
+
+    private MappedNetwork(MappedByteBuffer mapped, ModelFormat.Header header) {
+        int layers = header.outputs.length;
+        this.mapped = mapped;
+        this.inputs = new int[layers];
+        this.outputs = header.outputs.clone();
+        this.activations = new Activation[layers];
+        boolean isFloat = header.dtype == ModelFormat.FLOAT32;
+        this.weights = isFloat ? null : new DoubleBuffer[layers];
+        this.bias = isFloat ? null : new DoubleBuffer[layers];
+        this.floatWeights = isFloat ? new FloatBuffer[layers] : null;
+        this.floatBias = isFloat ? new FloatBuffer[layers] : null;
+
+        int position = header.dataOffset();
+        for (int l = 0; l < layers; l++) {
+            inputs[l] = header.inputs(l);
+            activations[l] = Activation.fromId(header.activations[l]);
+            int weightBytes = header.elementBytes() * outputs[l] * inputs[l];
+            int biasBytes = header.elementBytes() * outputs[l];
+            if (isFloat) {
+                floatWeights[l] = slice(position, weightBytes).asFloatBuffer();
+                floatBias[l] = slice(position + weightBytes, biasBytes).asFloatBuffer();
+            } else {
+                weights[l] = slice(position, weightBytes).asDoubleBuffer();
+                bias[l] = slice(position + weightBytes, biasBytes).asDoubleBuffer();
+            }
+            position += weightBytes + biasBytes;
+        }
+    }
+
+    /**
+     * @return a little-endian view of length bytes of the mapping, from position.
+     */
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer view = mapped.duplicate();
+        view.position(position).limit(position + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a binary model file; its checksum is verified first.
+     *
+     * @param path a binary model file.
+     * @return a network reading its parameters from the mapped file.
+     * @throws IOException if the file cannot be mapped or is not a valid model.
+     */
+    public static MappedNetwork open(Path path) throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            // the mapping stays valid once the channel is closed.
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            MappedNetwork network = new MappedNetwork(mapped, ModelFormat.readHeader(mapped));
+            NeuralNetwork.MODEL_LOAD.record(System.nanoTime() - started);
+            return network;
+        }
+    }
+
+    /**
+     * @return number of input nodes for the network.
+     */
+    public int getInputNodes() {
+        return inputs[0];
+    }
+
+    /**
+     * @return number of output nodes for the network.
+     */
+    public int getOutputNodes() {
+        return outputs[outputs.length - 1];
+    }
+
+    /**
+     * Feeds the features of a single sample through the network. Safe to call
+     * from several threads at once; all working state is local to the call.
+     *
+     * @param features array holding the sample's features.
+     * @param offset index of the first feature in the array.
+     * @return the final activations (outputs) of the network.
+     */
+    public double[] forwardProp(double[] features, int offset) {
+        double[] activation = new double[inputs[0]];
+        System.arraycopy(features, offset, activation, 0, inputs[0]);
+
+        for (int l = 0; l < outputs.length; l++) {
+            double[] next = new double[outputs[l]];
+            int cols = inputs[l];
+            for (int i = 0; i < outputs[l]; i++) {
+                int row = i * cols;
+                double z;
+                if (weights != null) {
+                    DoubleBuffer w = weights[l];
+                    z = bias[l].get(i);
+                    for (int j = 0; j < cols; j++) {
+                        z += w.get(row + j) * activation[j];
+                    }
+                } else {
+                    FloatBuffer w = floatWeights[l];
+                    z = floatBias[l].get(i);
+                    for (int j = 0; j < cols; j++) {
+                        z += w.get(row + j) * activation[j];
+                    }
+                }
+                next[i] = z;
+            }
+            activations[l].activate(next, 0, next.length);
+            activation = next;
+        }
+        return activation;
+    }
+
+    /**
+     * @param features array holding the sample's features.
+     * @param offset index of the first feature in the array.
+     * @return the predicted class of the sample.
+     */
+    public int classify(double[] features, int offset) {
+        double[] output = forwardProp(features, offset);
+        int best = 0;
+        for (int i = 1; i < output.length; i++) {
+            if (output[i] > output[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Outputs the predictions for packed test data.
+     *
+     * @param testSet packed test data.
+     * @return row 0: testLabels, row 1: corresponding predictions
+     */
+    public int[][] predict(DataSet testSet) {
+        int[][] results = new int[2][testSet.size()];
+        double[] features = testSet.getFeatureData();
+        for (int i = 0; i < testSet.size(); i++) {
+            results[0][i] = testSet.getLabel(i);
+            results[1][i] = classify(features, i * testSet.getFeatureCount());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,288 @@
+package neuralnetwork;
+
+import neuralnetwork.NeuralNetwork.Layer;
+import neuralnetwork.NeuralNetwork.Precision;
+import utils.FloatMatrix;
+import utils.Matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * <pre>
+ * Compact, versioned binary format for trained networks. All values are
+ * little-endian:
+ *
+ *   magic        4 bytes   "QDNN"
+ *   version      int16
+ *   dtype        int8      0 = float64, 1 = float32
+ *   reserved     int8
+ *   layer count  int32
+ *   input nodes  int32
+ *   per layer:   int32 output nodes, int32 activation id (see Activation.getId())
+ *   per layer:   weights (outputs x inputs, row by row) then biases, in dtype
+ *   checksum     int64     CRC32C of every preceding byte
+ *
+ * The header is a multiple of 8 bytes long, so every weight/bias block is
+ * aligned for direct DoubleBuffer/FloatBuffer views over a mapped file.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public final class ModelFormat {
+
+    /**
+     * "QDNN" read as a little-endian int.
+     */
+    public static final int MAGIC = 0x4E4E4451;
+
+    /**
+     * Current version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * dtype codes.
+     */
+    public static final byte FLOAT64 = 0;
+    public static final byte FLOAT32 = 1;
+
+    /**
+     * Size of the fixed part of the header and of each layer entry.
+     */
+    static final int HEADER_BYTES = 16;
+    static final int LAYER_BYTES = 8;
+
+    private ModelFormat() {}
+
+    /**
+     * Writes a network's parameters in the binary model format.
+     *
+     * @param nn the network to save.
+     * @param path destination file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(NeuralNetwork nn, Path path) throws IOException {
+        Layer[] layers = nn.getLayers();
+        boolean isFloat = nn.getPrecision() == Precision.FLOAT;
+        int elementBytes = isFloat ? Float.BYTES : Double.BYTES;
+
+        long size = headerBytes(layers.length);
+        for (Layer layer : layers) {
+            size += (long) elementBytes * layer.getOutputs() * (layer.getInputs() + 1);
+        }
+        size += Long.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Model is too large for the binary format");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put(isFloat ? FLOAT32 : FLOAT64);
+        buffer.put((byte) 0);
+        buffer.putInt(layers.length);
+        buffer.putInt(nn.getInputNodes());
+        for (Layer layer : layers) {
+            buffer.putInt(layer.getOutputs());
+            buffer.putInt(layer.getActivation().getId());
+        }
+
+        for (Layer layer : layers) {
+            if (isFloat) {
+                buffer.asFloatBuffer().put(layer.getFloatWeights().getBacking())
+                        .put(layer.getFloatBias().getBacking());
+            } else {
+                Matrix weights = layer.getWeights();
+                Matrix bias = layer.getBias();
+                buffer.asDoubleBuffer()
+                        .put(weights.getBacking(), weights.getOffset(), weights.getRows() * weights.getCols())
+                        .put(bias.getBacking(), bias.getOffset(), bias.getRows());
+            }
+            buffer.position(buffer.position()
+                    + elementBytes * layer.getOutputs() * (layer.getInputs() + 1));
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+
+        Files.write(path, buffer.array());
+    }
+
+    /**
+     * Loads a network saved in the binary model format. The file is mapped
+     * into memory and its blocks are bulk copied straight into the layers.
+     *
+     * @param path a binary model file.
+     * @return the saved network.
+     * @throws IOException if the file cannot be read or is not a valid model.
+     */
+    public static NeuralNetwork read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            Header header = readHeader(buffer);
+
+            Layer[] layers = new Layer[header.outputs.length];
+            int position = header.dataOffset();
+            for (int l = 0; l < layers.length; l++) {
+                int rows = header.outputs[l];
+                int cols = header.inputs(l);
+                buffer.position(position);
+                if (header.dtype == FLOAT32) {
+                    FloatMatrix weights = new FloatMatrix(rows, cols);
+                    FloatMatrix bias = new FloatMatrix(rows, 1);
+                    buffer.asFloatBuffer().get(weights.getBacking()).get(bias.getBacking());
+                    layers[l] = new Layer(weights, bias, Activation.fromId(header.activations[l]));
+                } else {
+                    Matrix weights = new Matrix(rows, cols);
+                    Matrix bias = new Matrix(rows, 1);
+                    buffer.asDoubleBuffer().get(weights.getBacking()).get(bias.getBacking());
+                    layers[l] = new Layer(weights, bias, Activation.fromId(header.activations[l]));
+                }
+                position += header.elementBytes() * rows * (cols + 1);
+            }
+            return new NeuralNetwork(layers);
+        }
+    }
+
+    /**
+     * @param file any file.
+     * @return true if file starts with the binary model format's magic number.
+     */
+    public static boolean isModelFile(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(magic) == Integer.BYTES && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates the header and checksum of a model file held in buffer.
+     *
+     * @param buffer the whole model file, little-endian.
+     * @return the parsed header.
+     * @throws IOException if the file is not a valid model.
+     */
+    static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_BYTES + Long.BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary model file");
+        }
+        short version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported model format version " + version);
+        }
+        byte dtype = buffer.get(6);
+        if (dtype != FLOAT64 && dtype != FLOAT32) {
+            throw new IOException("Unknown dtype " + dtype);
+        }
+        int layerCount = buffer.getInt(8);
+        int inputs = buffer.getInt(12);
+        if (layerCount < 1 || inputs < 1
+                || headerBytes(layerCount) + Long.BYTES > buffer.limit()) {
+            throw new IOException("Malformed model header");
+        }
+
+        int[] outputs = new int[layerCount];
+        int[] activations = new int[layerCount];
+        long expected = headerBytes(layerCount) + Long.BYTES;
+        int previous = inputs;
+        for (int l = 0; l < layerCount; l++) {
+            outputs[l] = buffer.getInt(HEADER_BYTES + l * LAYER_BYTES);
+            activations[l] = buffer.getInt(HEADER_BYTES + l * LAYER_BYTES + 4);
+            if (outputs[l] < 1 || !isActivation(activations[l])
+                    || (activations[l] == Activation.SOFTMAX.getId() && l != layerCount - 1)) {
+                throw new IOException("Malformed layer entry " + l);
+            }
+            expected += (long) (dtype == FLOAT32 ? Float.BYTES : Double.BYTES)
+                    * outputs[l] * (previous + 1);
+            previous = outputs[l];
+        }
+        if (expected != buffer.limit()) {
+            throw new IOException("Model file is truncated or has trailing data");
+        }
+
+        CRC32C crc = new CRC32C();
+        ByteBuffer content = buffer.duplicate();
+        content.position(0).limit(buffer.limit() - Long.BYTES);
+        crc.update(content);
+        if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+            throw new IOException("Model checksum does not match");
+        }
+        return new Header(dtype, inputs, outputs, activations);
+    }
+
+    private static boolean isActivation(int id) {
+        try {
+            Activation.fromId(id);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the size of the header; a long, so a corrupt layer count
+     * cannot overflow it and pass as a small header.
+     */
+    private static long headerBytes(int layerCount) {
+        return HEADER_BYTES + (long) layerCount * LAYER_BYTES;
+    }
+
+    /**
+     * Parsed header of a model file.
+     */
+    static final class Header {
+        final byte dtype;
+        final int inputNodes;
+        final int[] outputs;
+        final int[] activations;
+
+        Header(byte dtype, int inputNodes, int[] outputs, int[] activations) {
+            this.dtype = dtype;
+            this.inputNodes = inputNodes;
+            this.outputs = outputs;
+            this.activations = activations;
+        }
+
+        int inputs(int layer) {
+            return layer == 0 ? inputNodes : outputs[layer - 1];
+        }
+
+        int elementBytes() {
+            return dtype == FLOAT32 ? Float.BYTES : Double.BYTES;
+        }
+
+        int dataOffset() {
+            // fits an int; readHeader checked the header is within the file.
+            return (int) headerBytes(outputs.length);
+        }
+    }
+
+    /**
+     * Converts a network saved with Java serialization (E.g. data/networkModel.dat)
+     * into the binary model format.
+     *
+     * @param args the source .dat file and the destination file.
+     * @throws IOException if either file cannot be accessed.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: ModelFormat <network.dat> <network.qdnn>");
+            return;
+        }
+        NeuralNetwork nn = NeuralNetwork.loadNetwork(new File(args[0]));
+        write(nn, Path.of(args[1]));
+    }
+}
@@ -0,0 +1,79 @@
+package neuralnetwork;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <pre>
+ * Java Flight Recorder events for training, so CPU and allocation samples
+ * can be lined up with the phase they were taken in:
+ *
+ *   jcmd [pid] JFR.start name=training filename=training.jfr
+ *
+ * Epoch and BatchUpdate are recorded by default. Forward and Backward fire
+ * once per sample and are disabled unless enabled in the recording's
+ * settings (E.g. quickdraw.Forward#enabled=true).
+ *
+ * When nothing is recording an event costs a check of a static flag; the
+ * event objects are scalar replaced, so nothing is allocated either.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+final class NetworkEvents {
+
+    private NetworkEvents() {
+    }
+
+    @Name("quickdraw.Epoch")
+    @Label("Epoch")
+    @Category({"Quick, Draw!", "Neural Network"})
+    @Description("One pass of mbgd through the training data, including its evaluation")
+    static final class Epoch extends Event {
+
+        @Label("Epoch")
+        int epoch;
+
+        @Label("Samples")
+        int samples;
+
+        @Label("Validation Cost")
+        double validationCost;
+
+        @Label("Validation Accuracy")
+        double validationAccuracy;
+    }
+
+    @Name("quickdraw.BatchUpdate")
+    @Label("Batch Update")
+    @Category({"Quick, Draw!", "Neural Network"})
+    @Description("Forward and backward passes of one batch and the optimizer's step")
+    static final class BatchUpdate extends Event {
+
+        @Label("Batch Size")
+        int batchSize;
+
+        @Label("Training Rate")
+        double alpha;
+    }
+
+    @Name("quickdraw.Forward")
+    @Label("Forward Pass")
+    @Category({"Quick, Draw!", "Neural Network"})
+    @Description("Forward pass of a single training or evaluation sample")
+    @Enabled(false)
+    static final class Forward extends Event {
+    }
+
+    @Name("quickdraw.Backward")
+    @Label("Backward Pass")
+    @Category({"Quick, Draw!", "Neural Network"})
+    @Description("Backward pass of a single training sample")
+    @Enabled(false)
+    static final class Backward extends Event {
+    }
+}
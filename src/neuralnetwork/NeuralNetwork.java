@@ -1,11 +1,21 @@
 package neuralnetwork;
 
+import neuralnetwork.EpochTelemetry.Phase;
+import utils.ConfusionMatrix;
+import utils.DataSet;
+import utils.EpochSampler;
+import utils.FloatMatrix;
+import utils.Histogram;
 import utils.Matrix;
+import utils.MetricsRegistry;
+import utils.RandomSource;
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 
 /**
@@ -41,7 +51,8 @@ public class NeuralNetwork {
     /**
      * A matrix array; each z matrix is the dot product of the weights 
      * feeding in the the current layer and the previous activations plus
-     * the bias E.g. w1a1 + w2a2 ... + wnan + b
+     * the bias E.g. w1a1 + w2a2 ... + wnan + b. Allocated once and
+     * overwritten by every forward pass.
      */
     private final Matrix[] zl;
 
@@ -50,6 +61,79 @@ public class NeuralNetwork {
      */
     private final Matrix[] activations;
 
+    /**
+     * The numeric precision the network's parameters are stored, trained
+     * and evaluated in.
+     */
+    private final Precision precision;
+
+    /**
+     * Single precision equivalents of zl and activations; only used when
+     * the network's precision is FLOAT.
+     */
+    private final FloatMatrix[] floatZl;
+    private final FloatMatrix[] floatActivations;
+
+    /**
+     * Gradients summed over the current batch, ordered like the deltas of
+     * backProp; allocated once and zeroed before every batch.
+     */
+    private final Matrix[] gradients;
+    private final FloatMatrix[] floatGradients;
+
+    /**
+     * Update rule applying each batch's gradients; see Optimizer.
+     */
+    private Optimizer optimizer = new Optimizer(Optimizer.Method.SGD);
+
+    /**
+     * Training rate schedule and (optional) early stopping used by mbgd.
+     */
+    private LearningRateSchedule schedule = LearningRateSchedule.constant();
+    private EarlyStopping earlyStopping;
+
+    /**
+     * How mbgd measures the network between epochs, and the running
+     * statistics of the current training pass (null unless gathering them).
+     */
+    private EvaluationPolicy evaluationPolicy = new EvaluationPolicy();
+    private Evaluation running;
+
+    /**
+     * Seed the training data's shuffles and subsamples are drawn from (null
+     * to draw a new one for every run), whether the shuffles are stratified
+     * by class, and where runs on packed data are checkpointed (null for
+     * nowhere).
+     */
+    private Long seed;
+    private boolean stratified;
+    private Checkpointer checkpointer;
+
+    /**
+     * Listeners receiving mbgd's telemetry, and the telemetry of the current
+     * run (null unless a listener is registered).
+     */
+    private final List<TrainingListener> listeners = new ArrayList<>();
+    private TrainingTelemetry telemetry;
+
+    /**
+     * Sigmoid implementations used when predicting (infer, classify, both
+     * predicts, forwardPropBatch) and when training (forwardProp, and the
+     * evaluate family, so the costs mbgd reports match what it optimises);
+     * see Sigmoid.
+     */
+    private Sigmoid inferenceSigmoid = Sigmoid.EXACT;
+    private Sigmoid trainingSigmoid = Sigmoid.EXACT;
+
+    /**
+     * Per sample prediction latency and model load time, in nanoseconds;
+     * recorded into the global registry (see MetricsRegistry).
+     */
+    private static final Histogram PREDICT_LATENCY =
+            MetricsRegistry.global().histogram("nn_predict_nanos");
+    static final Histogram MODEL_LOAD =
+            MetricsRegistry.global().histogram("model_load_nanos");
+
     /**
      * Our default activation function and its derivative.
      */
@@ -57,6 +141,15 @@ public class NeuralNetwork {
     public static final Function<Double, Double> SIGMOIDPRIME =
             (x) -> Math.exp(-x) / ((1 + Math.exp(-x)) * (1 + Math.exp(-x)));
     
+    /**
+     * The numeric precision a network can be built with. FLOAT halves the
+     * memory (and memory traffic) of the parameters, which costs no accuracy
+     * on 8-bit pixel data.
+     */
+    public enum Precision {
+        DOUBLE, FLOAT
+    }
+
     /**
      * Constructs a neural network; the number of layers (excluding input)
      * are defined by the size of the layerSizes array.
@@ -67,25 +160,98 @@ public class NeuralNetwork {
      * of output nodes in that particular layer.
      */
     public NeuralNetwork(int inputs, int... layerSizes) {
+        this(Precision.DOUBLE, inputs, layerSizes);
+    }
+
+    /**
+     * Constructs a neural network with the given numeric precision.
+     *
+     * @param precision precision used to store, train and evaluate the network.
+     * @param inputs the number of inputs (the first layer) into the network.
+     * @param layerSizes an array (vargs) of integers; each index corresponds
+     * to layer (zero indexed) where each element is the amount
+     * of output nodes in that particular layer.
+     */
+    public NeuralNetwork(Precision precision, int inputs, int... layerSizes) {
+        this(precision, inputs, layerSizes, sigmoids(layerSizes.length));
+    }
+
+    /**
+     * Constructs a neural network with the given activation for each layer.
+     *
+     * @param precision precision used to store, train and evaluate the network.
+     * @param inputs the number of inputs (the first layer) into the network.
+     * @param layerSizes the number of output nodes in each layer.
+     * @param layerActivations the activation of each layer; only the output
+     * layer may use SOFTMAX.
+     */
+    public NeuralNetwork(Precision precision, int inputs, int[] layerSizes,
+                         Activation[] layerActivations) {
+        this(RandomSource.random(), precision, inputs, layerSizes, layerActivations);
+        this.seed = null;
+    }
+
+    /**
+     * Constructs a neural network whose initial weights and training
+     * shuffles are drawn from random, so the same source and data train to
+     * exactly the same network every time.
+     *
+     * @param random the source the weights and the seed (see setSeed()) are drawn from.
+     * @param inputs the number of inputs (the first layer) into the network.
+     * @param layerSizes the number of output nodes in each layer.
+     */
+    public NeuralNetwork(RandomSource random, int inputs, int... layerSizes) {
+        this(random, Precision.DOUBLE, inputs, layerSizes, sigmoids(layerSizes.length));
+    }
+
+    /**
+     * Constructs a neural network with the given activation for each layer,
+     * whose initial weights and training shuffles are drawn from random.
+     *
+     * @param random the source the weights and the seed (see setSeed()) are drawn from.
+     * @param precision precision used to store, train and evaluate the network.
+     * @param inputs the number of inputs (the first layer) into the network.
+     * @param layerSizes the number of output nodes in each layer.
+     * @param layerActivations the activation of each layer; only the output
+     * layer may use SOFTMAX.
+     */
+    public NeuralNetwork(RandomSource random, Precision precision, int inputs, int[] layerSizes,
+                         Activation[] layerActivations) {
         for (int layerSize : layerSizes) {
             if (layerSize < 1) {
                 throw new IllegalArgumentException("There must be " +
                         "at least one node in each layer");
             }
         }
+        if (layerActivations.length != layerSizes.length) {
+            throw new IllegalArgumentException("There must be an activation " +
+                    "for each layer");
+        }
         this.inputNodes = inputs;
         this.outputNodes = layerSizes[layerSizes.length - 1];
         this.layerNumber = layerSizes.length + 1;
         this.layers = new Layer[layerSizes.length];
+        this.precision = precision;
 
-        layers[0] = new Layer(inputNodes, layerSizes[0]);
+        // each layer draws from a stream of its own.
+        RandomSource weights = random.derive("weights");
+        layers[0] = new Layer(inputNodes, layerSizes[0], precision, layerActivations[0],
+                weights.stream(0));
         for (int i = 1; i < layers.length; i++) {
-            layers[i] = new Layer(layerSizes[i - 1], layerSizes[i]);
+            layers[i] = new Layer(layerSizes[i - 1], layerSizes[i], precision, layerActivations[i],
+                    weights.stream(i));
         }
+        checkActivations(layers);
+        this.seed = random.derive("shuffle").getSeed();
 
         // z and activation matrices initialized at zero.
         this.zl = new Matrix[layerSizes.length];
         this.activations = new Matrix[layerSizes.length + 1];
+        this.floatZl = new FloatMatrix[layerSizes.length];
+        this.floatActivations = new FloatMatrix[layerSizes.length + 1];
+        this.gradients = new Matrix[2 * layerSizes.length];
+        this.floatGradients = new FloatMatrix[2 * layerSizes.length];
+        allocateBuffers();
     }
 
     /**
@@ -94,36 +260,160 @@ public class NeuralNetwork {
      * @param layerConfig: Pre-trained parameters.
      */
     public NeuralNetwork(Layer[] layerConfig) {
-        this.inputNodes = layerConfig[0].weights.getCols();
-        this.outputNodes = layerConfig[layerConfig.length -1].weights.getRows();
+        this.inputNodes = layerConfig[0].getInputs();
+        this.outputNodes = layerConfig[layerConfig.length -1].getOutputs();
         this.layers = layerConfig;
         this.layerNumber = layerConfig.length + 1;
+        this.precision = layerConfig[0].getPrecision();
+
+        for (Layer layer : layerConfig) {
+            if (layer.getPrecision() != precision) {
+                throw new IllegalArgumentException("All layers must share " +
+                        "the same precision");
+            }
+        }
+        checkActivations(layerConfig);
 
         this.zl = new Matrix[layerConfig.length];
         this.activations = new Matrix[layerConfig.length + 1];
+        this.floatZl = new FloatMatrix[layerConfig.length];
+        this.floatActivations = new FloatMatrix[layerConfig.length + 1];
+        this.gradients = new Matrix[2 * layerConfig.length];
+        this.floatGradients = new FloatMatrix[2 * layerConfig.length];
+        allocateBuffers();
+    }
+
+    private static Activation[] sigmoids(int layers) {
+        Activation[] result = new Activation[layers];
+        Arrays.fill(result, Activation.SIGMOID);
+        return result;
     }
 
     /**
-     * Save the parameters of a trained network to a serializable 
-     * file
+     * Softmax couples all of a layer's outputs, so it is only supported
+     * (with its fused cross entropy gradient) on the output layer. The
+     * output layer is limited to SIGMOID and SOFTMAX, the two activations
+     * whose outputs lie in (0, 1) as the cross entropy costs require; a
+     * RELU or TANH output would make the cost infinite or NaN.
      */
-    public void saveNetwork() {
-        try {
-            FileOutputStream fos = new FileOutputStream("networkModel.dat");
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            Layer[] model = this.layers;
-            oos.writeObject(model);
-        } catch (Exception IOException) {
-            System.err.println("Directory no found");
-        } 
+    private static void checkActivations(Layer[] layers) {
+        for (int i = 0; i < layers.length - 1; i++) {
+            if (layers[i].getActivation() == Activation.SOFTMAX) {
+                throw new IllegalArgumentException("Only the output layer " +
+                        "can use softmax");
+            }
+        }
+        Activation output = layers[layers.length - 1].getActivation();
+        if (output != Activation.SIGMOID && output != Activation.SOFTMAX) {
+            throw new IllegalArgumentException("The output layer must use " +
+                    "sigmoid or softmax, not " + output);
+        }
+    }
+
+    /**
+     * @return the elementwise function applied to layer's weighted inputs, with
+     * the given sigmoid implementation standing in for SIGMOID; null for SOFTMAX.
+     */
+    private static DoubleUnaryOperator kernel(Layer layer, Sigmoid sigmoid) {
+        Activation activation = layer.getActivation();
+        if (activation == Activation.SIGMOID) {
+            return sigmoid;
+        }
+        return activation.getElementwise();
+    }
+
+    /**
+     * Single precision version of kernel.
+     */
+    private static FloatMatrix.FloatFunction floatKernel(Layer layer, Sigmoid sigmoid) {
+        Activation activation = layer.getActivation();
+        if (activation == Activation.SIGMOID) {
+            return sigmoid;
+        }
+        return activation.getElementwise();
+    }
+
+    /**
+     * Allocates the z and activation matrices the forward pass writes into,
+     * and the gradient accumulators.
+     */
+    private void allocateBuffers() {
+        if (precision == Precision.FLOAT) {
+            floatActivations[0] = new FloatMatrix(inputNodes, 1);
+        }
+        for (int i = 0; i < layers.length; i++) {
+            int outputs = layers[i].getOutputs();
+            int inputs = layers[i].getInputs();
+            if (precision == Precision.FLOAT) {
+                floatZl[i] = new FloatMatrix(outputs, 1);
+                floatActivations[i + 1] = new FloatMatrix(outputs, 1);
+                floatGradients[2 * i] = new FloatMatrix(outputs, inputs);
+                floatGradients[2 * i + 1] = new FloatMatrix(outputs, 1);
+            } else {
+                zl[i] = new Matrix(outputs, 1);
+                activations[i + 1] = new Matrix(outputs, 1);
+                gradients[2 * i] = new Matrix(outputs, inputs);
+                gradients[2 * i + 1] = new Matrix(outputs, 1);
+            }
+        }
+    }
+
+    /**
+     * Clone a network using existing layers, converted to the given precision.
+     *
+     * @param layerConfig Pre-trained parameters.
+     * @param precision precision used to store, train and evaluate the network.
+     */
+    public NeuralNetwork(Layer[] layerConfig, Precision precision) {
+        this(convert(layerConfig, precision));
+    }
+
+    private static Layer[] convert(Layer[] layerConfig, Precision precision) {
+        Layer[] converted = new Layer[layerConfig.length];
+        for (int i = 0; i < layerConfig.length; i++) {
+            converted[i] = new Layer(layerConfig[i], precision);
+        }
+        return converted;
     }
 
     /**
-     * Create Network with pre-existing parameters.
-     * @param network parameter .dat file
+     * Save the parameters of a trained network to networkModel.qdnn in the
+     * working directory (see ModelFormat).
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void saveNetwork() throws IOException {
+        saveNetwork(new File("networkModel.qdnn"));
+    }
+
+    /**
+     * Save the parameters of a trained network in the binary model format.
+     *
+     * @param network destination file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void saveNetwork(File network) throws IOException {
+        ModelFormat.write(this, network.toPath());
+    }
+
+    /**
+     * Create Network with pre-existing parameters. Accepts both the binary
+     * model format and networks saved with Java serialization (.dat).
+     * @param network parameter file
      * @return a NeuralNetwork
      */
     public static NeuralNetwork loadNetwork(File network) throws IOException {
+        long started = System.nanoTime();
+        NeuralNetwork nn = readNetwork(network);
+        MODEL_LOAD.record(System.nanoTime() - started);
+        return nn;
+    }
+
+    private static NeuralNetwork readNetwork(File network) throws IOException {
+        if (ModelFormat.isModelFile(network)) {
+            return ModelFormat.read(network.toPath());
+        }
+
         Layer[] output = null;
         try {
             FileInputStream fis = new FileInputStream(network);
@@ -150,150 +440,1347 @@ public class NeuralNetwork {
     }
 
     /**
-     * @return number of output nodes for the network.
+     * @return number of output nodes for the network.
+     */
+    public int getOutputNodes() {
+        return outputNodes;
+    }
+    
+    public int getLayerNumber() {
+        return layerNumber;
+    }
+
+    /**
+     * @return the numeric precision of the network.
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the sigmoid implementation used for predictions.
+     */
+    public Sigmoid getInferenceSigmoid() {
+        return inferenceSigmoid;
+    }
+
+    /**
+     * @param sigmoid the sigmoid implementation to use for predictions.
+     */
+    public void setInferenceSigmoid(Sigmoid sigmoid) {
+        this.inferenceSigmoid = sigmoid;
+    }
+
+    /**
+     * @return the sigmoid implementation forwardProp (and so training) uses.
+     */
+    public Sigmoid getTrainingSigmoid() {
+        return trainingSigmoid;
+    }
+
+    /**
+     * @param sigmoid the sigmoid implementation forwardProp (and so training)
+     * should use.
+     */
+    public void setTrainingSigmoid(Sigmoid sigmoid) {
+        this.trainingSigmoid = sigmoid;
+    }
+
+    /**
+     * @return the update rule applying each batch's gradients.
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Sets the update rule used by updateWithBatch (and so mbgd). An
+     * optimizer keeps per-parameter state, so it must not be shared with
+     * another network.
+     *
+     * @param optimizer the update rule; E.g. new Optimizer(Optimizer.Method.ADAM).
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * @return the training rate schedule used by mbgd.
+     */
+    public LearningRateSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @param schedule the training rate schedule used by mbgd; E.g.
+     * LearningRateSchedule.warmup(1, LearningRateSchedule.cosine(0.01)).
+     */
+    public void setSchedule(LearningRateSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * @return early stopping used by mbgd; null if disabled.
+     */
+    public EarlyStopping getEarlyStopping() {
+        return earlyStopping;
+    }
+
+    /**
+     * @param earlyStopping early stopping used by mbgd; null (the default)
+     * always runs every epoch.
+     */
+    public void setEarlyStopping(EarlyStopping earlyStopping) {
+        this.earlyStopping = earlyStopping;
+    }
+
+    /**
+     * @return how mbgd measures the network between epochs.
+     */
+    public EvaluationPolicy getEvaluationPolicy() {
+        return evaluationPolicy;
+    }
+
+    /**
+     * Sets how often, and on how much data, mbgd measures the network.
+     * Early stopping only sees the epochs that are evaluated, so its
+     * patience is counted in evaluations.
+     *
+     * @param evaluationPolicy E.g. new EvaluationPolicy(1,
+     * EvaluationPolicy.TrainingMetrics.RUNNING, 0).
+     */
+    public void setEvaluationPolicy(EvaluationPolicy evaluationPolicy) {
+        this.evaluationPolicy = evaluationPolicy;
+    }
+
+    /**
+     * @return the seed mbgd's shuffles are drawn from; null if every run draws its own.
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed the seed mbgd's shuffles and training subsamples are
+     * drawn from, so a run on the same data shuffles the same way every
+     * time; null to draw a new one for every run. Networks constructed from
+     * a RandomSource start with a seed derived from it.
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return true if mbgd spreads every class evenly through each epoch.
+     */
+    public boolean isStratified() {
+        return stratified;
+    }
+
+    /**
+     * @param stratified true to shuffle so each mini-batch holds the classes
+     * in about the proportions of the training data (see EpochSampler).
+     */
+    public void setStratified(boolean stratified) {
+        this.stratified = stratified;
+    }
+
+    /**
+     * @return where mbgd on packed data is checkpointed; null if it is not.
+     */
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    /**
+     * @param checkpointer where mbgd on packed data is checkpointed (see
+     * resume()); null to stop checkpointing.
+     */
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * Registers a listener for the timings, allocation and metrics of every
+     * epoch mbgd runs (E.g. a TelemetryLog). Without listeners training is
+     * not timed at all.
+     *
+     * @param listener the listener to add.
+     */
+    public void addTrainingListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener added with addTrainingListener.
+     */
+    public void removeTrainingListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the network's layers (hidden and output).
+     */
+    public Layer[] getLayers() {
+        return layers;
+    }
+
+    /**
+     * Trains network using mini-batch gradient descent; the shuffles are
+     * drawn from the network's seed (see setSeed()). The samples are
+     * visited in a shuffled order of indices; trainingData itself is left
+     * in the order it was given in.
+     * 
+     * @param trainingData preprocessed data; an arraylist of subarray 'annotations',
+     * @param epochs The number of passes through the full training data.
+     * @param batchSize the number of sub-batches for the training data to be spit into
+     * @param alpha the training rate; scaled by the network's schedule.
+     * @param lambda the regularization constant.
+     * @return rows 0-3: training cost, validation cost, training accuracy and
+     * validation accuracy of each epoch run; fewer than epochs if training
+     * stopped early (see setEarlyStopping()).
+     */
+    public double[][] mbgd(ArrayList<ArrayList<Matrix>> trainingData, int epochs,
+                           int batchSize, double alpha, double lambda, ArrayList<ArrayList<Matrix>> validationData) {
+
+        EpochSampler sampler;
+        if (stratified) {
+            int[] labels = new int[trainingData.size()];
+            for (int k = 0; k < labels.length; k++) {
+                labels[k] = Matrix.argMaxRow(trainingData.get(k).get(1));
+            }
+            sampler = new EpochSampler(labels, outputNodes);
+        } else {
+            sampler = new EpochSampler(trainingData.size());
+        }
+
+        if (earlyStopping != null) {
+            earlyStopping.reset();
+        }
+        return train(samples(trainingData), samples(validationData), 0, epochs, batchSize,
+                alpha, lambda, runSeed(), sampler, new double[4][epochs], null);
+    }
+
+    /**
+     * Trains network using mini-batch gradient descent on packed data; samples
+     * are shuffled by index so the underlying features never move. The
+     * shuffles are drawn from the network's seed (see setSeed()), and the run
+     * is checkpointed if a checkpointer is set (see setCheckpointer()).
+     *
+     * @param trainingData packed training data.
+     * @param epochs The number of passes through the full training data.
+     * @param batchSize the number of sub-batches for the training data to be spit into
+     * @param alpha the training rate; scaled by the network's schedule.
+     * @param lambda the regularization constant.
+     * @param validationData packed validation data.
+     * @return rows 0-3: training cost, validation cost, training accuracy and
+     * validation accuracy of each epoch run; fewer than epochs if training
+     * stopped early (see setEarlyStopping()).
+     * @throws UncheckedIOException if a checkpoint could not be written; the
+     * last one has been by the time this returns.
+     */
+    public double[][] mbgd(DataSet trainingData, int epochs, int batchSize, double alpha,
+                           double lambda, DataSet validationData) {
+
+        if (earlyStopping != null) {
+            earlyStopping.reset();
+        }
+        return train(samples(trainingData), samples(validationData), 0, epochs, batchSize,
+                alpha, lambda, runSeed(), newSampler(trainingData), new double[4][epochs],
+                checkpointer);
+    }
+
+    /**
+     * Continues an mbgd run on packed data from a checkpoint (see
+     * Checkpointer). The parameters, optimizer state, early stopping state
+     * and shuffled order are restored and training carries on with the
+     * epoch after the checkpoint, with the checkpoint's hyperparameters and
+     * seed, so the result is the same as if the run had never stopped.
+     *
+     * The network has to be set up as the checkpointed one was; the same
+     * layers, precision, optimizer method, schedule, evaluation policy,
+     * stratification and early stopping (or none).
+     *
+     * @param checkpoint the run's last checkpoint.
+     * @param trainingData the packed training data the run was started with.
+     * @param validationData the packed validation data the run was started with.
+     * @return as mbgd; the metrics of every epoch, including those completed
+     * before the checkpoint.
+     * @throws UncheckedIOException as mbgd, if a checkpoint could not be written.
+     */
+    public double[][] resume(Checkpoint checkpoint, DataSet trainingData, DataSet validationData) {
+        restore(checkpoint, trainingData.size());
+
+        EpochSampler sampler = newSampler(trainingData);
+        sampler.setOrder(checkpoint.order);
+        // checkpoints hold the completed epochs' metrics; room for the rest.
+        double[][] performance = new double[4][];
+        for (int k = 0; k < performance.length; k++) {
+            performance[k] = Arrays.copyOf(checkpoint.performance[k], checkpoint.epochs);
+        }
+        if (checkpoint.isFinished()) {
+            return finishTraining(performance, checkpoint.epoch);
+        }
+        return train(samples(trainingData), samples(validationData), checkpoint.epoch,
+                checkpoint.epochs, checkpoint.batchSize, checkpoint.alpha, checkpoint.lambda,
+                checkpoint.seed, sampler, performance, checkpointer);
+    }
+
+    /**
+     * @return a sampler over the training data, stratified if the network is.
+     */
+    private EpochSampler newSampler(DataSet trainingData) {
+        return stratified ? new EpochSampler(trainingData.getLabels(), trainingData.getOutputs())
+                : new EpochSampler(trainingData.size());
+    }
+
+    /**
+     * The samples of an mbgd run, packed or as annotations, so both kinds
+     * of data share one epoch loop.
+     */
+    private interface Samples {
+
+        int size();
+
+        /**
+         * Takes one step of gradient descent on samples order[from] .. order[to - 1].
+         */
+        void update(int[] order, int from, int to, double alpha, double lambda);
+
+        /**
+         * Evaluates the first count samples listed in indices, or every
+         * sample if indices is null.
+         */
+        Evaluation evaluate(int[] indices, int count, double lambda);
+    }
+
+    private Samples samples(DataSet data) {
+        return new Samples() {
+            @Override
+            public int size() {
+                return data.size();
+            }
+
+            @Override
+            public void update(int[] order, int from, int to, double alpha, double lambda) {
+                updateWithBatch(data, order, from, to, alpha, lambda, data.size());
+            }
+
+            @Override
+            public Evaluation evaluate(int[] indices, int count, double lambda) {
+                return NeuralNetwork.this.evaluate(data, indices, count, lambda);
+            }
+        };
+    }
+
+    private Samples samples(ArrayList<ArrayList<Matrix>> data) {
+        List<ArrayList<Matrix>> batch = new ArrayList<>();
+        return new Samples() {
+            @Override
+            public int size() {
+                return data.size();
+            }
+
+            @Override
+            public void update(int[] order, int from, int to, double alpha, double lambda) {
+                batch.clear();
+                for (int k = from; k < to; k++) {
+                    batch.add(data.get(order[k]));
+                }
+                updateWithBatch(batch, alpha, lambda, data.size());
+            }
+
+            @Override
+            public Evaluation evaluate(int[] indices, int count, double lambda) {
+                return NeuralNetwork.this.evaluate(data, indices, count, lambda);
+            }
+        };
+    }
+
+    /**
+     * The epochs of an mbgd run, from first onwards; checkpointed if
+     * checkpointer is not null.
+     */
+    private double[][] train(Samples trainingData, Samples validationData, int first, int epochs,
+                             int batchSize, double alpha, double lambda, long runSeed,
+                             EpochSampler sampler, double[][] performance,
+                             Checkpointer checkpointer) {
+        EvaluationPolicy policy = evaluationPolicy;
+        int[] sample = newSample(policy, trainingData.size());
+        RandomSource random = new RandomSource(runSeed);
+
+        telemetry = startTelemetry(epochs, trainingData.size());
+        int completed = first;
+        for (int i = first; i < epochs; i++) {
+            NetworkEvents.Epoch event = new NetworkEvents.Epoch();
+            event.begin();
+            long t = startEpoch();
+            int[] order = sampler.shuffle(shuffleRandom(random, i));
+            lap(Phase.SHUFFLE, t);
+            running = newRunningEvaluation(policy);
+
+            int batches = trainingData.size() / batchSize;
+            for (int j = 0; j < batches; j++) {
+                int start = j * batchSize;
+                trainingData.update(order, start, start + batchSize,
+                        schedule.rate(alpha, i + (double) j / batches, epochs), lambda);
+            }
+
+            Evaluation runningEvaluation = running;
+            running = null;
+            boolean stop = false;
+            if (!policy.isEvaluated(i, epochs)) {
+                skipEvaluation(performance, i, epochs);
+                finishEpoch(performance, i, epochs, batches * batchSize, batches, event);
+            } else {
+                // Log accuracies and cost for each evaluated epoch
+                t = clock();
+                Evaluation validation = validationData.evaluate(null, validationData.size(), lambda);
+                Evaluation training = trainingEvaluation(policy, runningEvaluation, sample,
+                        sampleRandom(random, i), lambda, trainingData);
+                lap(Phase.EVALUATION, t);
+                double validationCost = validation.getCost();
+                double validationAcc = validation.getAccuracy();
+                double trainingCost = training == null ? Double.NaN : training.getCost();
+                double trainingAcc = training == null ? Double.NaN : training.getAccuracy();
+
+                performance[0][i] = trainingCost;
+                performance[1][i] = validationCost;
+                performance[2][i] = trainingAcc;
+                performance[3][i] = validationAcc;
+
+                System.out.printf("Epoch %d/%d%n%d/%d [==================]" +
+                                " training: - cost: %.5f - acc: %.5f, validation: - cost: %.5f - acc: %.5f%n",
+                        i, epochs, trainingData.size(), trainingData.size(),
+                        trainingCost, trainingAcc, validationCost, validationAcc);
+                finishEpoch(performance, i, epochs, batches * batchSize, batches, event);
+
+                stop = earlyStopping != null && earlyStopping.update(this, i, validationCost, validationAcc);
+                if (stop) {
+                    System.out.printf("Stopping early; best epoch %d%n", earlyStopping.getBestEpoch());
+                }
+            }
+
+            completed++;
+            if (checkpointer != null && checkpointer.isDue(completed, stop || completed == epochs)) {
+                checkpointer.submit(checkpoint(completed, epochs, batchSize, alpha, lambda,
+                        runSeed, sampler.getOrder(), performance));
+            }
+            if (stop) {
+                break;
+            }
+        }
+        if (checkpointer != null) {
+            // the last checkpoint is on disk, or its failure reported, before returning.
+            try {
+                checkpointer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return finishTraining(performance, completed);
+    }
+
+    /**
+     * @return the seed of an mbgd run; the network's, or a new one if unset.
+     */
+    private long runSeed() {
+        return seed != null ? seed : RandomSource.random().getSeed();
+    }
+
+    /**
+     * @return the generator shuffling the training data before an epoch;
+     * derived from the run's seed and the epoch alone, so a resumed run
+     * shuffles exactly as the original would have.
+     */
+    private static RandomGenerator shuffleRandom(RandomSource random, int epoch) {
+        return random.stream(epoch);
+    }
+
+    /**
+     * @return the generator drawing an epoch's training subsample (see
+     * EvaluationPolicy); like shuffleRandom, derived from the seed and epoch.
+     */
+    private static RandomGenerator sampleRandom(RandomSource random, int epoch) {
+        return random.derive("subsample").stream(epoch);
+    }
+
+    /**
+     * Copies the state of an mbgd run between epochs; see Checkpoint.
+     */
+    private Checkpoint checkpoint(int completed, int epochs, int batchSize, double alpha,
+                                  double lambda, long runSeed, int[] order,
+                                  double[][] performance) {
+        boolean isFloat = precision == Precision.FLOAT;
+        int[] outputs = new int[layers.length];
+        int[] activationIds = new int[layers.length];
+        double[][] parameters = isFloat ? null : new double[2 * layers.length][];
+        float[][] floatParameters = isFloat ? new float[2 * layers.length][] : null;
+        for (int l = 0; l < layers.length; l++) {
+            outputs[l] = layers[l].getOutputs();
+            activationIds[l] = layers[l].getActivation().getId();
+            if (isFloat) {
+                floatParameters[2 * l] = layers[l].getFloatWeights().getBacking().clone();
+                floatParameters[2 * l + 1] = layers[l].getFloatBias().getBacking().clone();
+            } else {
+                parameters[2 * l] = copyOf(layers[l].getWeights());
+                parameters[2 * l + 1] = copyOf(layers[l].getBias());
+            }
+        }
+
+        int[] orderCopy = order.clone();
+        double[][] performanceCopy = new double[performance.length][];
+        for (int k = 0; k < performance.length; k++) {
+            performanceCopy[k] = Arrays.copyOf(performance[k], completed);
+        }
+
+        EarlyStopping stopping = earlyStopping;
+        return new Checkpoint(runSeed, completed, epochs, batchSize, alpha, lambda, precision,
+                inputNodes, outputs, activationIds, parameters, floatParameters,
+                optimizer.getMethod().name(), optimizer.getSteps(),
+                optimizer.copyState(), optimizer.copyFloatState(), orderCopy, performanceCopy,
+                stopping != null,
+                stopping == null ? Double.NaN : stopping.getBest(),
+                stopping == null ? -1 : stopping.getBestEpoch(),
+                stopping == null ? 0 : stopping.getWait(),
+                stopping != null && stopping.isStopped(),
+                stopping == null ? null : stopping.copyBestParameters(),
+                stopping == null ? null : stopping.copyBestFloatParameters());
+    }
+
+    private static double[] copyOf(Matrix matrix) {
+        int offset = matrix.getOffset();
+        return Arrays.copyOfRange(matrix.getBacking(), offset,
+                offset + matrix.getRows() * matrix.getCols());
+    }
+
+    /**
+     * Copies a checkpoint's parameters, optimizer state and early stopping
+     * state into the network.
+     *
+     * @throws IllegalArgumentException if the checkpoint was taken of a
+     * differently set up network or run.
+     */
+    private void restore(Checkpoint checkpoint, int samples) {
+        boolean sameLayers = checkpoint.precision == precision
+                && checkpoint.inputNodes == inputNodes
+                && checkpoint.outputs.length == layers.length;
+        for (int l = 0; sameLayers && l < layers.length; l++) {
+            sameLayers = checkpoint.outputs[l] == layers[l].getOutputs()
+                    && checkpoint.activations[l] == layers[l].getActivation().getId();
+        }
+        if (!sameLayers) {
+            throw new IllegalArgumentException("Checkpoint does not match the network's layers");
+        }
+        if (checkpoint.order.length != samples) {
+            throw new IllegalArgumentException("Checkpoint was taken training on "
+                    + checkpoint.order.length + " samples, not " + samples);
+        }
+        if (!checkpoint.optimizer.equals(optimizer.getMethod().name())) {
+            throw new IllegalArgumentException("Checkpoint was taken with the "
+                    + checkpoint.optimizer + " optimizer");
+        }
+        if (checkpoint.stopping != (earlyStopping != null)) {
+            throw new IllegalArgumentException(checkpoint.stopping
+                    ? "Checkpoint was taken with early stopping; set it before resuming"
+                    : "Checkpoint was taken without early stopping");
+        }
+
+        for (int l = 0; l < layers.length; l++) {
+            if (precision == Precision.FLOAT) {
+                restore(layers[l].getFloatWeights().getBacking(), checkpoint.floatParameters[2 * l]);
+                restore(layers[l].getFloatBias().getBacking(), checkpoint.floatParameters[2 * l + 1]);
+            } else {
+                restore(layers[l].getWeights(), checkpoint.parameters[2 * l]);
+                restore(layers[l].getBias(), checkpoint.parameters[2 * l + 1]);
+            }
+        }
+        optimizer.restoreState(checkpoint.steps, checkpoint.moments, checkpoint.floatMoments);
+        if (earlyStopping != null) {
+            earlyStopping.restore(checkpoint.best, checkpoint.bestEpoch, checkpoint.wait,
+                    checkpoint.stopped, checkpoint.bestParameters, checkpoint.bestFloatParameters);
+        }
+    }
+
+    private static void restore(Matrix matrix, double[] values) {
+        checkLength(matrix.getRows() * matrix.getCols(), values.length);
+        System.arraycopy(values, 0, matrix.getBacking(), matrix.getOffset(), values.length);
+    }
+
+    private static void restore(float[] backing, float[] values) {
+        checkLength(backing.length, values.length);
+        System.arraycopy(values, 0, backing, 0, values.length);
+    }
+
+    private static void checkLength(int expected, int length) {
+        if (expected != length) {
+            throw new IllegalArgumentException("Checkpoint does not match the network's layers");
+        }
+    }
+
+    /**
+     * @return indices of the training data, partially shuffled for each
+     * subsample; null unless the policy subsamples.
+     */
+    private static int[] newSample(EvaluationPolicy policy, int n) {
+        if (policy.getTrainingMetrics() != EvaluationPolicy.TrainingMetrics.SUBSAMPLE) {
+            return null;
+        }
+        int[] sample = new int[n];
+        for (int i = 0; i < n; i++) {
+            sample[i] = i;
+        }
+        return sample;
+    }
+
+    private Evaluation newRunningEvaluation(EvaluationPolicy policy) {
+        return policy.getTrainingMetrics() == EvaluationPolicy.TrainingMetrics.RUNNING
+                ? new Evaluation(outputNodes, isSoftmax()) : null;
+    }
+
+    /**
+     * @return the training metrics the policy asks for; null for NONE.
+     */
+    private Evaluation trainingEvaluation(EvaluationPolicy policy, Evaluation runningEvaluation,
+                                          int[] sample, RandomGenerator random, double lambda,
+                                          Samples trainingData) {
+        int n = trainingData.size();
+        switch (policy.getTrainingMetrics()) {
+            case FULL:
+                return trainingData.evaluate(null, n, lambda);
+            case SUBSAMPLE: {
+                // partial Fisher-Yates from the identity, so each subsample
+                // depends on the epoch's generator alone; the first count
+                // indices are a uniform sample.
+                int count = Math.min(policy.getSamples(), sample.length);
+                for (int i = 0; i < sample.length; i++) {
+                    sample[i] = i;
+                }
+                for (int i = 0; i < count; i++) {
+                    int j = i + random.nextInt(sample.length - i);
+                    int swap = sample[i];
+                    sample[i] = sample[j];
+                    sample[j] = swap;
+                }
+                return trainingData.evaluate(sample, count, lambda);
+            }
+            case RUNNING:
+                runningEvaluation.setRegularization(regularization(lambda, n));
+                return runningEvaluation;
+            default:
+                return null;
+        }
+    }
+
+    private static void skipEvaluation(double[][] performance, int epoch, int epochs) {
+        for (double[] row : performance) {
+            row[epoch] = Double.NaN;
+        }
+        System.out.printf("Epoch %d/%d%n", epoch, epochs);
+    }
+
+    /**
+     * @return telemetry for a new mbgd run; null if no listener is registered.
+     */
+    private TrainingTelemetry startTelemetry(int epochs, int samples) {
+        if (listeners.isEmpty()) {
+            return null;
+        }
+        TrainingTelemetry telemetry = new TrainingTelemetry(new ArrayList<>(listeners));
+        telemetry.trainingStarted(this, epochs, samples);
+        return telemetry;
+    }
+
+    /**
+     * @return the start of the epoch; 0 if training is not timed.
+     */
+    private long startEpoch() {
+        return telemetry == null ? 0 : telemetry.startEpoch();
+    }
+
+    /**
+     * @return the current time; 0 if training is not timed.
+     */
+    private long clock() {
+        return telemetry == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time since start to a phase of the epoch; see TrainingTelemetry.
+     *
+     * @return the start of the next lap; 0 if training is not timed.
+     */
+    private long lap(Phase phase, long start) {
+        return telemetry == null ? 0 : telemetry.lap(phase, start);
+    }
+
+    private void finishEpoch(double[][] performance, int epoch, int epochs, int samples,
+                             int batches, NetworkEvents.Epoch event) {
+        if (event.shouldCommit()) {
+            event.epoch = epoch;
+            event.samples = samples;
+            event.validationCost = performance[1][epoch];
+            event.validationAccuracy = performance[3][epoch];
+            event.commit();
+        }
+        if (telemetry != null) {
+            telemetry.finishEpoch(epoch, epochs, samples, batches, new double[]{
+                    performance[0][epoch], performance[1][epoch],
+                    performance[2][epoch], performance[3][epoch]});
+        }
+    }
+
+    /**
+     * Restores the best parameters kept by early stopping, if enabled.
+     *
+     * @return performance trimmed to the epochs that were run.
+     */
+    private double[][] finishTraining(double[][] performance, int completed) {
+        if (earlyStopping != null) {
+            earlyStopping.restore(this);
+        }
+        if (telemetry != null) {
+            telemetry.trainingFinished(this, completed);
+            telemetry = null;
+        }
+        if (completed == performance[0].length) {
+            return performance;
+        }
+        double[][] trimmed = new double[performance.length][];
+        for (int k = 0; k < performance.length; k++) {
+            trimmed[k] = Arrays.copyOf(performance[k], completed);
+        }
+        return trimmed;
+    }
+
+    /**
+     * Update the network's weights and biases using batch gradient
+     * descent on a batch (subset) of the training data.
+     * 
+     * @param batch a sub-set of the training data 
+     * @param alpha the training rate.
+     */
+    public void updateWithBatch(List<ArrayList<Matrix>> batch, double alpha, 
+                                double lambda, int n) {
+        NetworkEvents.BatchUpdate event = new NetworkEvents.BatchUpdate();
+        event.begin();
+        long t = clock();
+        if (precision == Precision.FLOAT) {
+            clearFloatGradients();
+            t = lap(Phase.UPDATE, t);
+            for (ArrayList<Matrix> annotation : batch) {
+                FloatMatrix yHat = forwardPropFloat(annotation.get(0));
+                if (running != null) {
+                    running.add(yHat, Matrix.argMaxRow(annotation.get(1)));
+                }
+                t = lap(Phase.FORWARD, t);
+                accumulate(floatGradients, backPropFloat(
+                        FloatMatrix.subtract(yHat, new FloatMatrix(annotation.get(1)))));
+                t = lap(Phase.BACKWARD, t);
+            }
+            applyFloatUpdates(alpha, lambda, n);
+            lap(Phase.UPDATE, t);
+            commit(event, batch.size(), alpha);
+            return;
+        }
+
+        // Feed each annotation in the batch through the network.
+        clearGradients();
+        t = lap(Phase.UPDATE, t);
+        for (ArrayList<Matrix> annotation : batch) {
+            Matrix X = annotation.get(0);
+            Matrix Y = annotation.get(1);
+            Matrix yHat = forwardPass(X);
+            if (running != null) {
+                running.add(yHat, Matrix.argMaxRow(Y));
+            }
+            t = lap(Phase.FORWARD, t);
+            accumulate(gradients, backProp(Y));
+            t = lap(Phase.BACKWARD, t);
+        }
+        
+        applyUpdates(alpha, lambda, n);
+        lap(Phase.UPDATE, t);
+        commit(event, batch.size(), alpha);
+    }
+
+    /**
+     * Update the network's weights and biases using batch gradient descent on
+     * a batch of packed samples.
+     *
+     * @param data packed training data.
+     * @param batch indices of the samples in data that make up the batch.
+     * @param alpha the training rate.
+     * @param lambda the regularization constant.
+     * @param n the size of the full training data.
+     */
+    public void updateWithBatch(DataSet data, List<Integer> batch, double alpha,
+                                double lambda, int n) {
+        int[] indices = new int[batch.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = batch.get(i);
+        }
+        updateWithBatch(data, indices, 0, indices.length, alpha, lambda, n);
+    }
+
+    /**
+     * Update the network's weights and biases using batch gradient descent on
+     * the packed samples order[from] .. order[to - 1]; E.g. one mini-batch of
+     * an EpochSampler's order.
+     *
+     * @param data packed training data.
+     * @param order indices of samples in data.
+     * @param from the position in order of the batch's first sample.
+     * @param to the position after its last.
+     * @param alpha the training rate.
+     * @param lambda the regularization constant.
+     * @param n the size of the full training data.
+     */
+    public void updateWithBatch(DataSet data, int[] order, int from, int to, double alpha,
+                                double lambda, int n) {
+        NetworkEvents.BatchUpdate event = new NetworkEvents.BatchUpdate();
+        event.begin();
+        long t = clock();
+        if (precision == Precision.FLOAT) {
+            clearFloatGradients();
+            t = lap(Phase.UPDATE, t);
+            for (int k = from; k < to; k++) {
+                int index = order[k];
+                FloatMatrix yHat = forwardPropFloat(data.getFeatures(index));
+                if (running != null) {
+                    running.add(yHat, data.getLabel(index));
+                }
+                t = lap(Phase.FORWARD, t);
+                accumulate(floatGradients, backPropFloat(floatCostDerivative(yHat, data.getLabel(index))));
+                t = lap(Phase.BACKWARD, t);
+            }
+            applyFloatUpdates(alpha, lambda, n);
+            lap(Phase.UPDATE, t);
+            commit(event, to - from, alpha);
+            return;
+        }
+
+        // Feed each sample in the batch through the network.
+        clearGradients();
+        t = lap(Phase.UPDATE, t);
+        for (int k = from; k < to; k++) {
+            int index = order[k];
+            Matrix yHat = forwardPass(data.getFeatures(index));
+            if (running != null) {
+                running.add(yHat, data.getLabel(index));
+            }
+            t = lap(Phase.FORWARD, t);
+            accumulate(gradients, backProp(data.getLabel(index)));
+            t = lap(Phase.BACKWARD, t);
+        }
+        applyUpdates(alpha, lambda, n);
+        lap(Phase.UPDATE, t);
+        commit(event, to - from, alpha);
+    }
+
+    private static void commit(NetworkEvents.BatchUpdate event, int batchSize, double alpha) {
+        if (event.shouldCommit()) {
+            event.batchSize = batchSize;
+            event.alpha = alpha;
+            event.commit();
+        }
+    }
+
+    /**
+     * Update with the cumulative deltas, taking one step of the optimizer;
+     * the parameters are updated in place.
+     */
+    private void applyUpdates(double alpha, double lambda, int n) {
+        // regularization constant 1 - (αλ/n); biases are not regularized.
+        double decay = 1 - ((alpha * lambda) / n);
+        optimizer.step();
+        for (int j = 0; j < layers.length; j++) {
+            Matrix weights = layers[j].getWeights();
+            Matrix bias = layers[j].getBias();
+            optimizer.update(2 * j, weights.getBacking(), weights.getOffset(),
+                    gradients[2 * j].getBacking(), 0, weights.getRows() * weights.getCols(),
+                    alpha, decay);
+            optimizer.update(2 * j + 1, bias.getBacking(), bias.getOffset(),
+                    gradients[2 * j + 1].getBacking(), 0, bias.getRows(), alpha, 1);
+        }
+    }
+
+    private void clearGradients() {
+        for (Matrix gradient : gradients) {
+            Arrays.fill(gradient.getBacking(), 0);
+        }
+    }
+
+    private void clearFloatGradients() {
+        for (FloatMatrix gradient : floatGradients) {
+            Arrays.fill(gradient.getBacking(), 0f);
+        }
+    }
+
+    /**
+     * Adds a sample's gradients to the cumulative updates, in place.
+     */
+    private static void accumulate(Matrix[] updates, Matrix[] deltas) {
+        for (int i = 0; i < updates.length; i++) {
+            Matrix.addScaled(updates[i], deltas[i], 1);
+        }
+    }
+
+    /**
+     * Adds a sample's gradients to the cumulative updates, in place.
+     */
+    private static void accumulate(FloatMatrix[] updates, FloatMatrix[] deltas) {
+        for (int i = 0; i < updates.length; i++) {
+            FloatMatrix.addScaled(updates[i], deltas[i], 1f);
+        }
+    }
+
+    /**
+     * Single precision version of applyUpdates.
+     */
+    private void applyFloatUpdates(double alpha, double lambda, int n) {
+        float decay = (float) (1 - ((alpha * lambda) / n));
+        float rate = (float) alpha;
+        optimizer.step();
+        for (int j = 0; j < layers.length; j++) {
+            optimizer.update(2 * j, layers[j].getFloatWeights().getBacking(),
+                    floatGradients[2 * j].getBacking(), rate, decay);
+            optimizer.update(2 * j + 1, layers[j].getFloatBias().getBacking(),
+                    floatGradients[2 * j + 1].getBacking(), rate, 1f);
+        }
+    }
+
+    /**
+     * Feeds the features of a single annotation through the network. Each
+     * layer is one fused pass (see Matrix.dense()) writing z and σ(z) into
+     * the network's own buffers, which backProp then reads.
+     *
+     * @param inputs a utils.Matrix containing the attributes of a single annotation.
+     * @return a copy of the final activation layer (output) of the network.
+     */
+    public Matrix forwardProp(Matrix inputs) {
+        Matrix output = forwardPass(inputs);
+        // single precision outputs are already converted into a new matrix.
+        return precision == Precision.FLOAT ? output
+                : Matrix.view(copyOf(output), 0, output.getRows(), 1);
+    }
+
+    /**
+     * forwardProp without the copy; the returned output is the network's own
+     * buffer, overwritten by the next forward pass.
+     */
+    private Matrix forwardPass(Matrix inputs) {
+        if (precision == Precision.FLOAT) {
+            return forwardPropFloat(inputs).toMatrix();
+        }
+        NetworkEvents.Forward event = new NetworkEvents.Forward();
+        event.begin();
+        this.activations[0] = inputs;
+        for (int i = 0; i < layers.length; i++) {
+            DoubleUnaryOperator f = kernel(layers[i], trainingSigmoid);
+            Matrix.dense(layers[i].getWeights(), activations[i], layers[i].getBias(),
+                    f, zl[i], activations[i + 1]);
+            if (f == null) {
+                layers[i].getActivation().activate(zl[i], activations[i + 1]);
+            }
+        }
+        event.commit();
+        return activations[layers.length];
+    }
+
+    /**
+     * Feeds the features of a single annotation through the network without
+     * recording the intermediate z and activation matrices (which only
+     * backProp needs). Unlike forwardProp this keeps no state on the network,
+     * so it can be called from many threads (E.g. one per request) at once.
+     *
+     * @param inputs a utils.Matrix containing the attributes of a single annotation.
+     * @return the final activation layer (output) of the network.
+     */
+    public Matrix infer(Matrix inputs) {
+        if (precision == Precision.FLOAT) {
+            FloatMatrix activation = new FloatMatrix(inputs);
+            for (Layer layer : layers) {
+                FloatMatrix next = new FloatMatrix(layer.getOutputs(), 1);
+                FloatMatrix.FloatFunction f = floatKernel(layer, inferenceSigmoid);
+                FloatMatrix.dense(layer.getFloatWeights(), activation, layer.getFloatBias(),
+                        f, next, next);
+                if (f == null) {
+                    layer.getActivation().activate(next, next);
+                }
+                activation = next;
+            }
+            return activation.toMatrix();
+        }
+
+        Matrix activation = inputs;
+        for (Layer layer : layers) {
+            Matrix next = new Matrix(layer.getOutputs(), 1);
+            DoubleUnaryOperator f = kernel(layer, inferenceSigmoid);
+            Matrix.dense(layer.getWeights(), activation, layer.getBias(), f, next, next);
+            if (f == null) {
+                layer.getActivation().activate(next, next);
+            }
+            activation = next;
+        }
+        return activation;
+    }
+
+    /**
+     * Predicts the class of a single annotation; safe to call concurrently.
+     *
+     * @param inputs a utils.Matrix containing the attributes of a single annotation.
+     * @return the index of the most activated output node.
+     */
+    public int classify(Matrix inputs) {
+        return classify(inputs, newScratch());
+    }
+
+    private int classify(Matrix inputs, Scratch scratch) {
+        if (inputs.getRows() != inputNodes || inputs.getCols() != 1) {
+            throw new IllegalArgumentException("Inputs must be an (inputNodes x 1) matrix");
+        }
+        return classify(inputs.getBacking(), inputs.getOffset(), scratch);
+    }
+
+    /**
+     * @return working memory for classify(double[], int, Scratch), sized for
+     * this network.
+     */
+    public Scratch newScratch() {
+        return new Scratch(this);
+    }
+
+    /**
+     * <pre>
+     * Predicts the class of a single sample without computing the full output
+     * layer. Each layer is one fused pass (see Matrix.dense()) into the
+     * caller's scratch buffers. As the output activation is monotonic the
+     * output layer's argmax is taken over its weighted inputs directly and only
+     * the winning node is put through the activation, to give the confidence
+     * (softmax, which needs every output, is applied in full).
+     *
+     * No state is kept on the network and nothing is allocated; the first
+     * layer reads the features straight from the array. Concurrent callers
+     * just need a Scratch each.
+     * Latencies are recorded in the global registry as nn_predict_nanos.
+     * </pre>
+     *
+     * @param features array holding the sample's features.
+     * @param offset index of the first feature in the array.
+     * @param scratch working memory from newScratch(); also receives the confidence.
+     * @return the index of the most activated output node.
+     */
+    public int classify(double[] features, int offset, Scratch scratch) {
+        long started = System.nanoTime();
+        int best = classifyInto(features, offset, scratch);
+        PREDICT_LATENCY.record(System.nanoTime() - started);
+        return best;
+    }
+
+    private int classifyInto(double[] features, int offset, Scratch scratch) {
+        if (scratch.layers != layers) {
+            throw new IllegalArgumentException("Scratch belongs to a different network");
+        }
+        if (offset < 0 || offset > features.length - inputNodes) {
+            throw new IllegalArgumentException("Features must hold inputNodes values from offset");
+        }
+        int last = layers.length - 1;
+        double bestZ;
+        int best;
+
+        if (precision == Precision.FLOAT) {
+            FloatMatrix.copy(scratch.floatInputs, features, offset);
+            FloatMatrix activation = scratch.floatInputs;
+            for (int i = 0; i < last; i++) {
+                FloatMatrix out = scratch.floatBuffers[i];
+                FloatMatrix.dense(layers[i].getFloatWeights(), activation, layers[i].getFloatBias(),
+                        floatKernel(layers[i], inferenceSigmoid), out, out);
+                activation = out;
+            }
+            FloatMatrix z = scratch.floatBuffers[last];
+            FloatMatrix.dense(layers[last].getFloatWeights(), activation, layers[last].getFloatBias(),
+                    null, z, null);
+            best = FloatMatrix.argMaxRow(z);
+            bestZ = z.get(best, 0);
+            if (layers[last].getActivation() == Activation.SOFTMAX) {
+                Activation.SOFTMAX.activate(z, z);
+                scratch.confidence = z.get(best, 0);
+                return best;
+            }
+        } else {
+            // the first layer reads the features in place; later layers the
+            // previous layer's buffer.
+            double[] activation = features;
+            int activationOffset = offset;
+            for (int i = 0; i < last; i++) {
+                Matrix out = scratch.buffers[i];
+                Matrix.dense(layers[i].getWeights(), activation, activationOffset, layers[i].getBias(),
+                        kernel(layers[i], inferenceSigmoid), out, out);
+                activation = out.getBacking();
+                activationOffset = out.getOffset();
+            }
+            Matrix z = scratch.buffers[last];
+            Matrix.dense(layers[last].getWeights(), activation, activationOffset,
+                    layers[last].getBias(), null, z, null);
+            best = Matrix.argMaxRow(z);
+            bestZ = z.get(best, 0);
+            if (layers[last].getActivation() == Activation.SOFTMAX) {
+                Activation.SOFTMAX.activate(z, z);
+                scratch.confidence = z.get(best, 0);
+                return best;
+            }
+        }
+        scratch.confidence = precision == Precision.FLOAT
+                ? floatKernel(layers[last], inferenceSigmoid).apply((float) bestZ)
+                : kernel(layers[last], inferenceSigmoid).applyAsDouble(bestZ);
+        return best;
+    }
+
+    /**
+     * Caller owned working memory for classify(double[], int, Scratch); not
+     * thread-safe, so each thread needs its own.
+     */
+    public static final class Scratch {
+
+        /**
+         * The layers of the network the scratch was made for.
+         */
+        private final Layer[] layers;
+
+        /**
+         * One (outputs x 1) buffer per layer, in the network's precision.
+         */
+        private final Matrix[] buffers;
+        private final FloatMatrix[] floatBuffers;
+        private final FloatMatrix floatInputs;
+
+        /**
+         * Output activation of the predicted class in the last call.
+         */
+        private double confidence;
+
+        private Scratch(NeuralNetwork nn) {
+            this.layers = nn.layers;
+            boolean isFloat = nn.precision == Precision.FLOAT;
+            this.buffers = isFloat ? null : new Matrix[layers.length];
+            this.floatBuffers = isFloat ? new FloatMatrix[layers.length] : null;
+            this.floatInputs = isFloat ? new FloatMatrix(nn.inputNodes, 1) : null;
+            for (int i = 0; i < layers.length; i++) {
+                if (isFloat) {
+                    floatBuffers[i] = new FloatMatrix(layers[i].getOutputs(), 1);
+                } else {
+                    buffers[i] = new Matrix(layers[i].getOutputs(), 1);
+                }
+            }
+        }
+
+        /**
+         * @return the output activation (0 - 1) of the class predicted by the
+         * last classify call.
+         */
+        public double getConfidence() {
+            return confidence;
+        }
+    }
+
+    /**
+     * Feeds a whole batch of samples through the network in one pass; each
+     * layer is a single (matrix . matrix) product rather than one product per
+     * sample. Unlike forwardProp this keeps no state on the network, so it can
+     * be called from several threads at once.
+     *
+     * @param inputs an (inputNodes x batchSize) matrix; column j holds the
+     *               features of sample j.
+     * @return an (outputNodes x batchSize) matrix of output activations.
+     */
+    public Matrix forwardPropBatch(Matrix inputs) {
+        if (precision == Precision.FLOAT) {
+            FloatMatrix activation = new FloatMatrix(inputs);
+            for (Layer layer : layers) {
+                FloatMatrix z = FloatMatrix.addToColumns(
+                        FloatMatrix.dotProduct(layer.getFloatWeights(), activation),
+                        layer.getFloatBias());
+                FloatMatrix.FloatFunction f = floatKernel(layer, inferenceSigmoid);
+                if (f == null) {
+                    layer.getActivation().activate(z, z);
+                    activation = z;
+                } else {
+                    activation = FloatMatrix.map(f, z);
+                }
+            }
+            return activation.toMatrix();
+        }
+
+        Matrix activation = inputs;
+        for (Layer layer : layers) {
+            activation = Matrix.addToColumns(
+                    Matrix.dotProduct(layer.getWeights(), activation), layer.getBias());
+            DoubleUnaryOperator f = kernel(layer, inferenceSigmoid);
+            if (f == null) {
+                layer.getActivation().activate(activation, activation);
+            } else {
+                Matrix.mapInPlace(f, activation);
+            }
+        }
+        return activation;
+    }
+
+    /**
+     * Single precision forward pass; inputs are converted to floats on the way in.
+     *
+     * @param inputs a utils.Matrix containing the attributes of a single annotation.
+     * @return the final activation layer (output) of the network.
+     */
+    private FloatMatrix forwardPropFloat(Matrix inputs) {
+        NetworkEvents.Forward event = new NetworkEvents.Forward();
+        event.begin();
+        FloatMatrix.copy(floatActivations[0], inputs);
+        for (int i = 0; i < layers.length; i++) {
+            FloatMatrix.FloatFunction f = floatKernel(layers[i], trainingSigmoid);
+            FloatMatrix.dense(layers[i].getFloatWeights(), floatActivations[i],
+                    layers[i].getFloatBias(), f, floatZl[i], floatActivations[i + 1]);
+            if (f == null) {
+                layers[i].getActivation().activate(floatZl[i], floatActivations[i + 1]);
+            }
+        }
+        event.commit();
+        return floatActivations[layers.length];
+    }
+
+    /**
+     * Back propagate an error through the network to generate the
+     * derivatives for the cost function w.r.t the network's weights
+     * and biases; the return value is a gradient vector used for updating
+     * the network.
+     * 
+     * @param Y a single label
+     * @return deltas; an array of gradient matrices.
+     */
+    public Matrix[] backProp(Matrix Y) {
+        if (precision == Precision.FLOAT) {
+            FloatMatrix yHat = floatActivations[floatActivations.length - 1];
+            return toMatrices(backPropFloat(FloatMatrix.subtract(yHat, new FloatMatrix(Y))));
+        }
+
+        // First we compute the output error. 
+        return backPropError(costDerivative(activations[activations.length -1], Y));
+    }
+
+    /**
+     * Same as above, with the label given as a class index.
+     *
+     * @param label the class index of the sample last fed forward.
+     * @return deltas; an array of gradient matrices.
+     */
+    public Matrix[] backProp(int label) {
+        if (precision == Precision.FLOAT) {
+            FloatMatrix yHat = floatActivations[floatActivations.length - 1];
+            return toMatrices(backPropFloat(floatCostDerivative(yHat, label)));
+        }
+        return backPropError(costDerivative(activations[activations.length -1], label));
+    }
+
+    private static Matrix[] toMatrices(FloatMatrix[] deltas) {
+        Matrix[] result = new Matrix[deltas.length];
+        for (int i = 0; i < deltas.length; i++) {
+            result[i] = deltas[i].toMatrix();
+        }
+        return result;
+    }
+
+    /**
+     * yHat minus the one-hot encoding of label, in single precision.
      */
-    public int getOutputNodes() {
-        return outputNodes;
-    }
-    
-    public int getLayerNumber() {
-        return layerNumber;
+    private static FloatMatrix floatCostDerivative(FloatMatrix yHat, int label) {
+        FloatMatrix result = FloatMatrix.multiply(yHat, 1f);
+        result.set(label, 0, result.get(label, 0) - 1f);
+        return result;
     }
 
     /**
-     * Trains network using mini-batch gradient descent.
-     * 
-     * @param trainingData preprocessed data; an arraylist of subarray 'annotations',
-     * @param epochs The number of passes through the full training data.
-     * @param batchSize the number of sub-batches for the training data to be spit into
-     * @param alpha the training rate.
-     * @param lambda the regularization constant.
+     * Single precision version of backPropError.
+     *
+     * @param error derivative of the cost w.r.t the output activations.
+     * @return deltas; an array of gradient matrices.
      */
-    public double[][] mbgd(ArrayList<ArrayList<Matrix>> trainingData, int epochs,
-                           int batchSize, double alpha, double lambda, ArrayList<ArrayList<Matrix>> validationData) {
-
-        double[][] performance = new double[4][epochs];
-
-        for (int i = 0; i < epochs; i++) {
-            Collections.shuffle(trainingData);
-
-            int batches = trainingData.size() / batchSize;
-            for (int j = 0; j < batches; j++) {
-                int start = j * batchSize;
-                List<ArrayList<Matrix>> batch =
-                        trainingData.subList(start, start + batchSize);
-                updateWithBatch(batch, alpha, lambda, trainingData.size());
-            }
+    private FloatMatrix[] backPropFloat(FloatMatrix error) {
+        NetworkEvents.Backward event = new NetworkEvents.Backward();
+        event.begin();
+        FloatMatrix[] deltas = new FloatMatrix[2 * layers.length];
 
-            // Log accuracies and cost for each epoch
-            double validationCost = evaluateCost(validationData, lambda);
-            double validationAcc = evaluateAccuracy(validationData);
-            double trainingCost = evaluateCost(trainingData, lambda);
-            double trainingAcc = evaluateAccuracy(trainingData);
+        int last = layers.length - 1;
+        FloatMatrix delta = layers[last].getActivation() == Activation.SOFTMAX ? error
+                : FloatMatrix.hadamardProduct(error,
+                        activationPrime(layers[last], floatZl[last], floatActivations[last + 1]));
+        deltas[deltas.length - 2] = FloatMatrix.dotProduct(delta,
+                FloatMatrix.transpose(floatActivations[floatActivations.length - 2]));
+        deltas[deltas.length - 1] = delta;
 
-            performance[0][i] = trainingCost;
-            performance[1][i] = validationCost;
-            performance[2][i] = trainingAcc;
-            performance[3][i] = validationAcc;
+        for (int i = layers.length - 2; i >= 0; i--) {
+            error = FloatMatrix.dotProduct(
+                    FloatMatrix.transpose(layers[i + 1].getFloatWeights()), delta);
+            delta = FloatMatrix.hadamardProduct(error,
+                    activationPrime(layers[i], floatZl[i], floatActivations[i + 1]));
 
-            System.out.printf("Epoch %d/%d%n%d/%d [==================]" +
-                            " training: - cost: %.5f - acc: %.5f, validation: - cost: %.5f - acc: %.5f%n",
-                    i, epochs, trainingData.size(), trainingData.size(),
-                    trainingCost, trainingAcc, validationCost, validationAcc);
+            deltas[2 * i] = FloatMatrix.dotProduct(delta,
+                    FloatMatrix.transpose(floatActivations[i]));
+            deltas[2 * i + 1] = delta;
         }
-        return performance;
-
+        event.commit();
+        return deltas;
     }
 
     /**
-     * Update the network's weights and biases using batch gradient
-     * descent on a batch (subset) of the training data.
-     * 
-     * @param batch a sub-set of the training data 
-     * @param alpha the training rate.
+     * @param layer the layer whose activation is differentiated; never a
+     *              SOFTMAX layer, whose gradient is fused with the cost's.
+     * @param z the layer's weighted inputs.
+     * @param activation the layer's activations f(z).
+     * @return f′(z) for each node; f is never recomputed (E.g. σ′ = a(1 - a)).
      */
-    public void updateWithBatch(List<ArrayList<Matrix>> batch, double alpha, 
-                                double lambda, int n) {
-        
-        // Create matrix arrays to store cumulative deltas.
-        Matrix[] weightUpdates = new Matrix[layers.length];
-        Matrix[] biasUpdates = new Matrix[layers.length];
-        for (int l = 0; l < layers.length; l++) {
-            weightUpdates[l] = new Matrix(layers[l].getWeights().getRows(), 
-                    layers[l].getWeights().getCols());
-            biasUpdates[l] = new Matrix(layers[l].getBias().getRows(), 1);
-        }
-        
-        // Feed each annotation in the batch through the network.
-        for (ArrayList<Matrix> annotation : batch) {
-            Matrix X = annotation.get(0);
-            Matrix Y = annotation.get(1);
-            forwardProp(X);
-            Matrix[] deltas = backProp(Y);
-            for (int i = 0; i < layers.length; i++) {
-                weightUpdates[i] = Matrix.add(weightUpdates[i], deltas[2 * i]);
-                biasUpdates[i] = Matrix.add(biasUpdates[i], deltas[2 * i+1]);
-            }
-        }
-        
-        // update with cumulative deltas, taking one large step of gradient descent.
-        for (int j = 0; j < layers.length; j++) {
-            layers[j].setWeights(
-                    Matrix.subtract(
-                    // update with regularization constant 1 - (αλ/n)
-                    Matrix.multiply(layers[j].getWeights(), (1 - ((alpha * lambda) / n))), 
-                    Matrix.multiply(weightUpdates[j], (alpha)))
-                            
-                            //layers[j].getWeights(), 
-                            //Matrix.multiply(weightUpdates[j], alpha))
-            );
-                    
-            layers[j].setBias(Matrix.subtract(layers[j].getBias(),
-                    Matrix.multiply(biasUpdates[j], (alpha))));
+    private static Matrix activationPrime(Layer layer, Matrix z, Matrix activation) {
+        Activation.Elementwise f = layer.getActivation().getElementwise();
+        Matrix result = new Matrix(z.getRows(), z.getCols());
+        for (int i = 0; i < z.getRows(); i++) {
+            result.set(i, 0, f.derivative(z.get(i, 0), activation.get(i, 0)));
         }
+        return result;
     }
 
     /**
-     * Feeds the features of a single annotation through the network.
-     *
-     * @param inputs a utils.Matrix containing the attributes of a single annotation.
-     * @return the final activation layer (output) of the network.
+     * Single precision version of activationPrime.
      */
-    public Matrix forwardProp(Matrix inputs) {
-        this.activations[0] = inputs;
-        Matrix activation = inputs;
-        for (int i = 0; i < layers.length; i++) {
-            Matrix z = Matrix.add(Matrix.dotProduct(layers[i].getWeights(), activation), 
-                    layers[i].getBias());
-            this.zl[i] = z;
-            activation = Matrix.map(SIGMOID, z); 
-            this.activations[i + 1] = activation;
+    private static FloatMatrix activationPrime(Layer layer, FloatMatrix z, FloatMatrix activation) {
+        Activation.Elementwise f = layer.getActivation().getElementwise();
+        FloatMatrix result = new FloatMatrix(z.getRows(), z.getCols());
+        for (int i = 0; i < z.getRows(); i++) {
+            result.set(i, 0, (float) f.derivative(z.get(i, 0), activation.get(i, 0)));
         }
-        return activation;
+        return result;
     }
 
     /**
-     * Back propagate an error through the network to generate the
-     * derivatives for the cost function w.r.t the network's weights
-     * and biases; the return value is a gradient vector used for updating
-     * the network.
-     * 
-     * @param Y a single label
+     * Back propagates the output error of the last forward pass.
+     *
+     * @param error derivative of the cost w.r.t the output activations.
      * @return deltas; an array of gradient matrices.
      */
-    public Matrix[] backProp(Matrix Y) {
+    private Matrix[] backPropError(Matrix error) {
+        NetworkEvents.Backward event = new NetworkEvents.Backward();
+        event.begin();
 
         // A matrix array storing the paired derivatives for each layer
         // (layers[0].weights, layers[0].bias, layers[1].weights, 
         // layers[1].weights ...etc.)
         Matrix[] deltas = new Matrix[2 * layers.length];
 
-        // First we compute the output error. 
-        Matrix error = costDerivative(activations[activations.length -1], Y);
-
         // We calculate the gradients for the weights and biases that feed 
-        // into the output layer (Y - A) . (σ(A) * (1 - σ(A))
-        Matrix delta = Matrix.hadamardProduct(error, Matrix.map(SIGMOIDPRIME, zl[zl.length -1])); 
+        // into the output layer (Y - A) . (σ(A) * (1 - σ(A)); σ′ is taken
+        // from the stored activations rather than recomputed from z. With a
+        // softmax output and the cross entropy cost the gradient is just Y - A.
+        int last = layers.length - 1;
+        Matrix delta = layers[last].getActivation() == Activation.SOFTMAX ? error
+                : Matrix.hadamardProduct(error, activationPrime(layers[last], zl[last], activations[last + 1]));
 
         // gradients for the weights that feed into the output layer.
         deltas[deltas.length -2] =
@@ -307,11 +1794,12 @@ public class NeuralNetwork {
 
             // Calculate the error (wl+1)T . σl+1) -> delta = error ⊙ σ′(zl)
             error = Matrix.dotProduct(Matrix.transpose(layers[i + 1].getWeights()), delta);
-            delta = Matrix.hadamardProduct(error, Matrix.map(SIGMOIDPRIME, zl[i])); 
+            delta = Matrix.hadamardProduct(error, activationPrime(layers[i], zl[i], activations[i + 1]));
 
             deltas[2 * i] = Matrix.dotProduct(delta, Matrix.transpose(activations[i]));
             deltas[2 * i + 1] = delta;
         }
+        event.commit();
         return deltas;
     }
 
@@ -342,13 +1830,53 @@ public class NeuralNetwork {
         for (int i = 0; i < y.getRows(); i++) {
             for (int j = 0; j < y.getCols(); j++) {
                 
-                cost += -(y.getData()[i][j] * Math.log(yHat.getData()[i][j]) + 
-                        (1 - y.getData()[i][j]) * Math.log(1 - yHat.getData()[i][j])); 
+                cost += -(y.get(i, j) * safeLog(yHat.get(i, j)) +
+                        (1 - y.get(i, j)) * safeLog(1 - yHat.get(i, j)));
             }
         }
         return cost;
     }
 
+    /**
+     * Cross entropy cost for a single prediction where the label is a class
+     * index; the one-hot label is expanded on the fly.
+     *
+     * @param yHat output from the network (a column matrix).
+     * @param label class index associated with yHat.
+     * @return cross entropy cost function output for a single annotation.
+     */
+    public static double crossEntropyCost(Matrix yHat, int label) {
+        double cost = 0.0;
+        for (int i = 0; i < yHat.getRows(); i++) {
+            cost += -(i == label ? safeLog(yHat.get(i, 0)) : safeLog(1 - yHat.get(i, 0)));
+        }
+        return cost;
+    }
+
+    /**
+     * Cross entropy cost of a softmax output; -log(yHat[label]).
+     *
+     * @param yHat output from the network (a column of probabilities).
+     * @param label class index associated with yHat.
+     * @return cross entropy cost function output for a single annotation.
+     */
+    public static double softmaxCost(Matrix yHat, int label) {
+        return -safeLog(yHat.get(label, 0));
+    }
+
+    /**
+     * @return log(x), with x raised to Double.MIN_NORMAL first; an output
+     * saturated at exactly 0 or 1 then costs about 708 rather than infinity
+     * (or NaN), which early stopping and schedules could not act on.
+     */
+    static double safeLog(double x) {
+        return Math.log(Math.max(x, Double.MIN_NORMAL));
+    }
+
+    private boolean isSoftmax() {
+        return layers[layers.length - 1].getActivation() == Activation.SOFTMAX;
+    }
+
     /**
      * Wrapper method to indicate where the cost function derivative
      * is applied in the backpropagation algorithm. 
@@ -361,6 +1889,19 @@ public class NeuralNetwork {
         return Matrix.subtract(yHat, y);
     }
 
+    /**
+     * Same as above, with the label given as a class index.
+     *
+     * @param yHat the output activation layer of the network.
+     * @param label class index of the input which generated yHat.
+     * @return yHat minus the one-hot encoding of label.
+     */
+    public Matrix costDerivative(Matrix yHat, int label) {
+        Matrix result = Matrix.reshape(yHat, yHat.getRows(), yHat.getCols());
+        result.set(label, 0, result.get(label, 0) - 1);
+        return result;
+    }
+
     /**
      * Evaluates the performance of the network's overall accuracy 
      * (the percentage of relevant results correctly classified).
@@ -369,18 +1910,17 @@ public class NeuralNetwork {
      * @return a double value representing the percentage of correct predictions.
      */
     public double evaluateAccuracy(ArrayList<ArrayList<Matrix>> dataSet) {
-        double correct = 0;
-
-        for (ArrayList<Matrix> annotation : dataSet) {
-            Matrix X = annotation.get(0);
-            int y = Matrix.argMaxRow(annotation.get(1));
+        return evaluate(dataSet, 0).getAccuracy();
+    }
 
-            int yHat = Matrix.argMaxRow(forwardProp(X));
-            if (y == yHat) {
-                correct++;
-            }
-        }
-        return (correct / dataSet.size());
+    /**
+     * Same as above for packed data.
+     *
+     * @param dataSet packed data.
+     * @return a double value representing the percentage of correct predictions.
+     */
+    public double evaluateAccuracy(DataSet dataSet) {
+        return evaluate(dataSet, 0).getAccuracy();
     }
 
     /**
@@ -391,31 +1931,99 @@ public class NeuralNetwork {
      * @return the cost function; either mean square or cross entropy.
      */
     public double evaluateCost(ArrayList<ArrayList<Matrix>> dataset, double lambda) {
-        double cost = 0;
+        return evaluate(dataset, lambda).getCost();
+    }
 
-        for (ArrayList<Matrix> annotation : dataset) {
-            Matrix X = annotation.get(0);
-            Matrix Y = annotation.get(1);
-            Matrix yHat = forwardProp(X);
-            
-            //cost += meanSquareCost(yHat, Y) / dataset.size();
-            cost += crossEntropyCost(yHat, Y) / dataset.size();
+    /**
+     * Same as above for packed data.
+     *
+     * @param dataset packed data.
+     * @param lambda regularization constant.
+     * @return the cross entropy cost function.
+     */
+    public double evaluateCost(DataSet dataset, double lambda) {
+        return evaluate(dataset, lambda).getCost();
+    }
+
+    /**
+     * Computes the cost, accuracy and per-class counts of the network in a
+     * single forward pass over the data. Outputs are computed as in training,
+     * with the training sigmoid (see setTrainingSigmoid()), as they are for
+     * mbgd's validation; predict uses the inference sigmoid.
+     *
+     * @param dataset preprocessed data; an arraylist of subarray 'annotations'.
+     * @param lambda regularization constant.
+     * @return the network's performance on dataset.
+     */
+    public Evaluation evaluate(ArrayList<ArrayList<Matrix>> dataset, double lambda) {
+        return evaluate(dataset, null, dataset.size(), lambda);
+    }
+
+    /**
+     * Same as above for packed data.
+     *
+     * @param dataset packed data.
+     * @param lambda regularization constant.
+     * @return the network's performance on dataset.
+     */
+    public Evaluation evaluate(DataSet dataset, double lambda) {
+        return evaluate(dataset, null, dataset.size(), lambda);
+    }
+
+    /**
+     * Evaluates the first count samples listed in indices, or every sample
+     * if indices is null. The regularization term is always that of the
+     * whole data set.
+     */
+    private Evaluation evaluate(ArrayList<ArrayList<Matrix>> dataset, int[] indices, int count,
+                                double lambda) {
+        Evaluation evaluation = new Evaluation(outputNodes, isSoftmax());
+        for (int i = 0; i < count; i++) {
+            ArrayList<Matrix> annotation = dataset.get(indices == null ? i : indices[i]);
+            evaluation.add(forwardPass(annotation.get(0)), Matrix.argMaxRow(annotation.get(1)));
+        }
+        evaluation.setRegularization(regularization(lambda, dataset.size()));
+        return evaluation;
+    }
+
+    private Evaluation evaluate(DataSet dataset, int[] indices, int count, double lambda) {
+        Evaluation evaluation = new Evaluation(outputNodes, isSoftmax());
+        for (int i = 0; i < count; i++) {
+            int index = indices == null ? i : indices[i];
+            evaluation.add(forwardPass(dataset.getFeatures(index)), dataset.getLabel(index));
         }
+        evaluation.setRegularization(regularization(lambda, dataset.size()));
+        return evaluation;
+    }
 
+    /**
+     * @return the regularization term added to the cost; λ/2n∑ w^2.
+     */
+    private double regularization(double lambda, int n) {
+        if (lambda == 0) {
+            return 0;
+        }
         double wSquaredSum = 0.0;
-        for (Layer layer : this.layers) {
-            double[][] layerData = layer.getWeights().getData();
-            Matrix w = new Matrix(layerData);
-            wSquaredSum =+ Matrix.sum(Matrix.hadamardProduct(w, w));
+        for (Layer layer : layers) {
+            if (precision == Precision.FLOAT) {
+                for (float w : layer.getFloatWeights().getBacking()) {
+                    wSquaredSum += (double) w * w;
+                }
+            } else {
+                Matrix weights = layer.getWeights();
+                double[] backing = weights.getBacking();
+                int end = weights.getOffset() + weights.getRows() * weights.getCols();
+                for (int i = weights.getOffset(); i < end; i++) {
+                    wSquaredSum += backing[i] * backing[i];
+                }
+            }
         }
-        
-        // Finally we add our regularization term to the cost (cost + λ/2n∑ w^2)
-        cost += 0.5 * ((lambda / (dataset.size())) * wSquaredSum);
-        return cost;
+        return 0.5 * ((lambda / n) * wSquaredSum);
     }
 
     /**
-     * Outputs the predictions for the test set.
+     * Outputs the predictions for the test set; each sample goes through
+     * classify, with the inference sigmoid.
      * 
      * @param testSet preprocessed data; an arraylist of subarray 'annotations',
      * each annotation contains an attribute matrix and its corresponding label matrix.
@@ -424,23 +2032,64 @@ public class NeuralNetwork {
    
         // row 0: testLabels, row 1: corresponding predictions
         int[][] results = new int[2][testSet.size()];
+        Scratch scratch = newScratch();
         
         for (int i = 0; i < testSet.size(); i++) {
-            Matrix X = testSet.get(i).get(0);
-            int y = Matrix.argMaxRow(testSet.get(i).get(1)); 
-            results[0][i] = y;
+            results[0][i] = Matrix.argMaxRow(testSet.get(i).get(1));
+            results[1][i] = classify(testSet.get(i).get(0), scratch);
+        }
+        return results;
+    }
+
+    /**
+     * Outputs the predictions for packed test data.
+     *
+     * @param testSet packed test data.
+     * @return row 0: testLabels, row 1: corresponding predictions
+     */
+    public int[][] predict(DataSet testSet) {
+        int[][] results = new int[2][testSet.size()];
+        double[] features = testSet.getFeatureData();
+        Scratch scratch = newScratch();
 
-            int yHat = Matrix.argMaxRow(forwardProp(X));
-            results[1][i] = yHat;
+        for (int i = 0; i < testSet.size(); i++) {
+            results[0][i] = testSet.getLabel(i);
+            results[1][i] = classify(features, i * testSet.getFeatureCount(), scratch);
         }
         return results;
     }
 
+    /**
+     * Streaming version of predict; counts each prediction into confusion
+     * instead of returning them, so test sets of any size can be scored in
+     * constant memory. Several threads may score shards of the test data
+     * into the same matrix.
+     *
+     * @param testSet packed test data.
+     * @param confusion the matrix the predictions are added to.
+     */
+    public void predict(DataSet testSet, ConfusionMatrix confusion) {
+        double[] features = testSet.getFeatureData();
+        Scratch scratch = newScratch();
+
+        for (int i = 0; i < testSet.size(); i++) {
+            confusion.add(testSet.getLabel(i),
+                    classify(features, i * testSet.getFeatureCount(), scratch));
+        }
+    }
+
     /**
      * Layers treated separately for future extensibility.
      * Weights and biases cannot be accessed globally.
      */
     public static class Layer implements Serializable{
+
+        /**
+         * Pinned to the value of the original class so previously serialized
+         * networks (e.g. data/networkModel.dat) can still be loaded.
+         */
+        private static final long serialVersionUID = -3555255444934682816L;
+
         /**
          * A matrix containing the values of the weights
          * feeding into the layer.
@@ -452,6 +2101,19 @@ public class NeuralNetwork {
          */
         private Matrix bias;
 
+        /**
+         * Single precision weights and biases; when set these replace
+         * weights and bias, which are then only filled in for serialization.
+         */
+        private transient FloatMatrix floatWeights;
+        private transient FloatMatrix floatBias;
+
+        /**
+         * The layer's activation function; null in layers serialized before
+         * activations were configurable, which are all sigmoid.
+         */
+        private Activation activation;
+
         /**
          * Constructs a new layer in the neural network.
          *
@@ -459,55 +2121,245 @@ public class NeuralNetwork {
          * @param outputs: the number of nodes in the layer itself.
          */
         public Layer(int inputs, int outputs) {
-            this.weights = weightInitializer(outputs, inputs);
-            this.bias = weightInitializer(outputs, 1);
+            this(inputs, outputs, Precision.DOUBLE);
+        }
+
+        /**
+         * Constructs a new layer in the neural network with the given precision.
+         *
+         * @param inputs:  the number of nodes in the previous layer.
+         * @param outputs: the number of nodes in the layer itself.
+         * @param precision: precision the parameters are stored in.
+         */
+        public Layer(int inputs, int outputs, Precision precision) {
+            this(inputs, outputs, precision, Activation.SIGMOID);
+        }
+
+        /**
+         * Constructs a new layer with the given precision and activation.
+         *
+         * @param inputs:  the number of nodes in the previous layer.
+         * @param outputs: the number of nodes in the layer itself.
+         * @param precision: precision the parameters are stored in.
+         * @param activation: the layer's activation function.
+         */
+        public Layer(int inputs, int outputs, Precision precision, Activation activation) {
+            this(inputs, outputs, precision, activation, new SplittableRandom());
+        }
+
+        /**
+         * Constructs a new layer whose initial weights are drawn from random.
+         *
+         * @param inputs:  the number of nodes in the previous layer.
+         * @param outputs: the number of nodes in the layer itself.
+         * @param precision: precision the parameters are stored in.
+         * @param activation: the layer's activation function.
+         * @param random: the generator the weights and biases are drawn from.
+         */
+        public Layer(int inputs, int outputs, Precision precision, Activation activation,
+                     RandomGenerator random) {
+            this.activation = activation;
+            this.weights = weightInitializer(outputs, inputs, random);
+            this.bias = weightInitializer(outputs, 1, random);
+            if (precision == Precision.FLOAT) {
+                toFloat();
+            }
+        }
+
+        /**
+         * Constructs a layer from existing parameters; nothing is copied.
+         *
+         * @param weights (outputs x inputs) weights feeding into the layer.
+         * @param bias (outputs x 1) biases for each node in the layer.
+         */
+        public Layer(Matrix weights, Matrix bias) {
+            this(weights, bias, Activation.SIGMOID);
+        }
+
+        /**
+         * Constructs a layer from existing parameters; nothing is copied.
+         *
+         * @param weights (outputs x inputs) weights feeding into the layer.
+         * @param bias (outputs x 1) biases for each node in the layer.
+         * @param activation the layer's activation function.
+         */
+        public Layer(Matrix weights, Matrix bias, Activation activation) {
+            this.weights = weights;
+            this.bias = bias;
+            this.activation = activation;
+        }
+
+        /**
+         * Constructs a single precision layer from existing parameters;
+         * nothing is copied.
+         *
+         * @param weights (outputs x inputs) weights feeding into the layer.
+         * @param bias (outputs x 1) biases for each node in the layer.
+         */
+        public Layer(FloatMatrix weights, FloatMatrix bias) {
+            this(weights, bias, Activation.SIGMOID);
+        }
+
+        /**
+         * Constructs a single precision layer from existing parameters;
+         * nothing is copied.
+         *
+         * @param weights (outputs x inputs) weights feeding into the layer.
+         * @param bias (outputs x 1) biases for each node in the layer.
+         * @param activation the layer's activation function.
+         */
+        public Layer(FloatMatrix weights, FloatMatrix bias, Activation activation) {
+            this.floatWeights = weights;
+            this.floatBias = bias;
+            this.activation = activation;
+        }
+
+        /**
+         * Constructs a copy of an existing layer in the given precision.
+         *
+         * @param other the layer to copy.
+         * @param precision precision the copy's parameters are stored in.
+         */
+        public Layer(Layer other, Precision precision) {
+            this.weights = Matrix.reshape(other.getWeights(), other.getOutputs(), other.getInputs());
+            this.bias = Matrix.reshape(other.getBias(), other.getOutputs(), 1);
+            this.activation = other.getActivation();
+            if (precision == Precision.FLOAT) {
+                toFloat();
+            }
+        }
+
+        private void toFloat() {
+            this.floatWeights = new FloatMatrix(weights);
+            this.floatBias = new FloatMatrix(bias);
+            this.weights = null;
+            this.bias = null;
+        }
+
+        /**
+         * @return the precision the layer's parameters are stored in.
+         */
+        public Precision getPrecision() {
+            return floatWeights == null ? Precision.DOUBLE : Precision.FLOAT;
+        }
+
+        /**
+         * @return the layer's activation function.
+         */
+        public Activation getActivation() {
+            return activation == null ? Activation.SIGMOID : activation;
         }
 
         /**
-         * @return the weights feeding into the output nodes in a given layer.
+         * @return the number of nodes in the previous layer.
+         */
+        public int getInputs() {
+            return floatWeights == null ? weights.getCols() : floatWeights.getCols();
+        }
+
+        /**
+         * @return the number of nodes in the layer itself.
+         */
+        public int getOutputs() {
+            return floatWeights == null ? weights.getRows() : floatWeights.getRows();
+        }
+
+        /**
+         * @return the weights feeding into the output nodes in a given layer;
+         * a double precision copy for FLOAT layers.
          */
         public Matrix getWeights() {
-            return this.weights;
+            return floatWeights == null ? this.weights : floatWeights.toMatrix();
         }
 
         /**
          * @param weights new weights for the layer.
          */
         public void setWeights(Matrix weights) {
-            this.weights = weights;
+            if (floatWeights == null) {
+                this.weights = weights;
+            } else {
+                this.floatWeights = new FloatMatrix(weights);
+            }
         }
 
         /**
-         * @return the biases feeding into the output nodes in a given layer.
+         * @return the biases feeding into the output nodes in a given layer;
+         * a double precision copy for FLOAT layers.
          */
         public Matrix getBias() {
-            return this.bias;
+            return floatBias == null ? this.bias : floatBias.toMatrix();
         }
 
         /**
          * @param bias new bias for the layer.
          */
         public void setBias(Matrix bias) {
-            this.bias = bias;
+            if (floatBias == null) {
+                this.bias = bias;
+            } else {
+                this.floatBias = new FloatMatrix(bias);
+            }
+        }
+
+        /**
+         * @return the single precision weights of a FLOAT layer, otherwise null.
+         */
+        public FloatMatrix getFloatWeights() {
+            return floatWeights;
+        }
+
+        /**
+         * @return the single precision biases of a FLOAT layer, otherwise null.
+         */
+        public FloatMatrix getFloatBias() {
+            return floatBias;
+        }
+
+        /**
+         * FLOAT layers are serialized with double precision parameters; they
+         * load back as DOUBLE layers.
+         */
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            Matrix savedWeights = weights;
+            Matrix savedBias = bias;
+            if (floatWeights != null) {
+                weights = floatWeights.toMatrix();
+                bias = floatBias.toMatrix();
+            }
+            out.defaultWriteObject();
+            weights = savedWeights;
+            bias = savedBias;
         }
 
         /**
          * Returns a matrix of randomly generated Gaussian values 
          * with a mean 0.0 and a standard deviation of 1/√n (where
-         * n is the number of input weights).
+         * n is the number of input weights); √(2/n) for the rectifiers
+         * (see Activation.initialScale()).
          *
          * @param rows number of specified rows for the matrix.
          * @param cols number of specified columns for the matrix.
          * @return a new rows x cols matrix.
          */
         public Matrix weightInitializer(int rows, int cols) {
-            Random rand = new Random();
+            return weightInitializer(rows, cols, new SplittableRandom());
+        }
 
+        /**
+         * As weightInitializer(rows, cols), drawing from the given generator.
+         *
+         * @param rows number of specified rows for the matrix.
+         * @param cols number of specified columns for the matrix.
+         * @param rand the generator the values are drawn from.
+         * @return a new rows x cols matrix.
+         */
+        public Matrix weightInitializer(int rows, int cols, RandomGenerator rand) {
             Matrix product = new Matrix(rows, cols);
             for (int i = 0; i < rows; i++) {
                 for (int j = 0; j < cols; j++) {
 
-                    product.getData()[i][j] = rand.nextGaussian() / Math.sqrt(cols);
+                    product.set(i, j, rand.nextGaussian() * getActivation().initialScale(cols));
                 }
             }
             return product;
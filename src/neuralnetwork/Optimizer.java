@@ -0,0 +1,358 @@
+package neuralnetwork;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Update rule used to apply a batch's gradients to a network's parameters
+ * (see NeuralNetwork.setOptimizer()). With g the gradient summed over the
+ * batch, α the training rate and d = 1 - αλ/n the weight decay (1 for
+ * biases), each parameter w is updated in place:
+ *
+ *   SGD        w = d * w - α * g
+ *   MOMENTUM   v = μ * v + g;                    w = d * w - α * v
+ *   NESTEROV   v = μ * v + g;                    w = d * w - α * (g + μ * v)
+ *   RMSPROP    s = ρ * s + (1 - ρ) * g²;         w = d * w - α * g / (√s + ε)
+ *   ADAM       m = β1 * m + (1 - β1) * g;
+ *              s = β2 * s + (1 - β2) * g²;       w = d * w - α * m̂ / (√ŝ + ε)
+ *
+ * where m̂ and ŝ are bias corrected by 1 - β1^t and 1 - β2^t after t steps.
+ *
+ * The state (v, m, s) of each parameter block lives in flat arrays matching
+ * the block's backing array; they are allocated on the first step and only
+ * updated in place after that, so an optimizer holds the state of exactly
+ * one network.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class Optimizer {
+
+    /**
+     * The available update rules.
+     */
+    public enum Method {
+        SGD, MOMENTUM, NESTEROV, RMSPROP, ADAM
+    }
+
+    /**
+     * Default hyperparameters.
+     */
+    public static final double DEFAULT_BETA1 = 0.9;
+    public static final double DEFAULT_BETA2 = 0.999;
+    public static final double DEFAULT_RHO = 0.9;
+    public static final double DEFAULT_EPSILON = 1e-8;
+
+    private final Method method;
+
+    /**
+     * Decay of the first moment (μ for momentum and Nesterov, β1 for Adam)
+     * and of the second moment (ρ for RMSProp, β2 for Adam).
+     */
+    private final double beta1, beta2;
+
+    private final double epsilon;
+
+    /**
+     * First and second moment of each parameter block, indexed by slot; only
+     * the arrays matching the network's precision are used.
+     */
+    private double[][] first, second;
+    private float[][] floatFirst, floatSecond;
+
+    /**
+     * The number of steps taken; used for Adam's bias correction.
+     */
+    private long steps;
+
+    /**
+     * Constructs an optimizer with the default hyperparameters; μ = β1 = 0.9,
+     * β2 = 0.999, ρ = 0.9 and ε = 1e-8.
+     *
+     * @param method the update rule.
+     */
+    public Optimizer(Method method) {
+        this(method, DEFAULT_BETA1, method == Method.RMSPROP ? DEFAULT_RHO : DEFAULT_BETA2,
+                DEFAULT_EPSILON);
+    }
+
+    /**
+     * Constructs an optimizer.
+     *
+     * @param method the update rule.
+     * @param beta1 decay of the first moment; μ for MOMENTUM and NESTEROV, β1 for ADAM.
+     * @param beta2 decay of the second moment; ρ for RMSPROP, β2 for ADAM.
+     * @param epsilon added to the root of the second moment to avoid dividing by zero.
+     */
+    public Optimizer(Method method, double beta1, double beta2, double epsilon) {
+        if (!(beta1 >= 0 && beta1 < 1) || !(beta2 >= 0 && beta2 < 1)) {
+            throw new IllegalArgumentException("Decay rates must be in [0, 1)");
+        }
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("epsilon must be positive");
+        }
+        this.method = method;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.first = new double[0][];
+        this.second = new double[0][];
+        this.floatFirst = new float[0][];
+        this.floatSecond = new float[0][];
+    }
+
+    /**
+     * @return the update rule.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the number of steps taken.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Starts a step; called once per batch, before the parameter blocks
+     * are updated.
+     */
+    void step() {
+        steps++;
+    }
+
+    /**
+     * Updates a block of double precision parameters in place.
+     *
+     * @param slot index identifying the block (E.g. 2l for layer l's weights
+     * and 2l + 1 for its biases).
+     * @param w array holding the parameters.
+     * @param offset index of the first parameter in w.
+     * @param g array holding the block's gradients.
+     * @param gOffset index of the first gradient in g.
+     * @param length the number of parameters in the block.
+     * @param alpha the training rate.
+     * @param decay factor every parameter is scaled by before the step.
+     */
+    void update(int slot, double[] w, int offset, double[] g, int gOffset, int length,
+                double alpha, double decay) {
+        switch (method) {
+            case SGD:
+                for (int i = 0; i < length; i++) {
+                    w[offset + i] = w[offset + i] * decay - alpha * g[gOffset + i];
+                }
+                break;
+            case MOMENTUM: {
+                double[] v = first(slot, length);
+                for (int i = 0; i < length; i++) {
+                    v[i] = beta1 * v[i] + g[gOffset + i];
+                    w[offset + i] = w[offset + i] * decay - alpha * v[i];
+                }
+                break;
+            }
+            case NESTEROV: {
+                double[] v = first(slot, length);
+                for (int i = 0; i < length; i++) {
+                    double gi = g[gOffset + i];
+                    v[i] = beta1 * v[i] + gi;
+                    w[offset + i] = w[offset + i] * decay - alpha * (gi + beta1 * v[i]);
+                }
+                break;
+            }
+            case RMSPROP: {
+                double[] s = second(slot, length);
+                for (int i = 0; i < length; i++) {
+                    double gi = g[gOffset + i];
+                    s[i] = beta2 * s[i] + (1 - beta2) * gi * gi;
+                    w[offset + i] = w[offset + i] * decay - alpha * gi / (Math.sqrt(s[i]) + epsilon);
+                }
+                break;
+            }
+            case ADAM: {
+                double[] m = first(slot, length);
+                double[] s = second(slot, length);
+
+                // fold both bias corrections into the step size and epsilon.
+                double correction = Math.sqrt(1 - Math.pow(beta2, steps));
+                double rate = alpha * correction / (1 - Math.pow(beta1, steps));
+                double eps = epsilon * correction;
+                for (int i = 0; i < length; i++) {
+                    double gi = g[gOffset + i];
+                    m[i] = beta1 * m[i] + (1 - beta1) * gi;
+                    s[i] = beta2 * s[i] + (1 - beta2) * gi * gi;
+                    w[offset + i] = w[offset + i] * decay - rate * m[i] / (Math.sqrt(s[i]) + eps);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Single precision version of update; every element of w is updated.
+     */
+    void update(int slot, float[] w, float[] g, float alpha, float decay) {
+        int length = w.length;
+        float b1 = (float) beta1;
+        float b2 = (float) beta2;
+        switch (method) {
+            case SGD:
+                for (int i = 0; i < length; i++) {
+                    w[i] = w[i] * decay - alpha * g[i];
+                }
+                break;
+            case MOMENTUM: {
+                float[] v = floatFirst(slot, length);
+                for (int i = 0; i < length; i++) {
+                    v[i] = b1 * v[i] + g[i];
+                    w[i] = w[i] * decay - alpha * v[i];
+                }
+                break;
+            }
+            case NESTEROV: {
+                float[] v = floatFirst(slot, length);
+                for (int i = 0; i < length; i++) {
+                    v[i] = b1 * v[i] + g[i];
+                    w[i] = w[i] * decay - alpha * (g[i] + b1 * v[i]);
+                }
+                break;
+            }
+            case RMSPROP: {
+                float[] s = floatSecond(slot, length);
+                float eps = (float) epsilon;
+                for (int i = 0; i < length; i++) {
+                    s[i] = b2 * s[i] + (1 - b2) * g[i] * g[i];
+                    w[i] = w[i] * decay - alpha * g[i] / ((float) Math.sqrt(s[i]) + eps);
+                }
+                break;
+            }
+            case ADAM: {
+                float[] m = floatFirst(slot, length);
+                float[] s = floatSecond(slot, length);
+                double correction = Math.sqrt(1 - Math.pow(beta2, steps));
+                float rate = (float) (alpha * correction / (1 - Math.pow(beta1, steps)));
+                float eps = (float) (epsilon * correction);
+                for (int i = 0; i < length; i++) {
+                    m[i] = b1 * m[i] + (1 - b1) * g[i];
+                    s[i] = b2 * s[i] + (1 - b2) * g[i] * g[i];
+                    w[i] = w[i] * decay - rate * m[i] / ((float) Math.sqrt(s[i]) + eps);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return decay of the first moment; μ for MOMENTUM and NESTEROV, β1 for ADAM.
+     */
+    public double getBeta1() {
+        return beta1;
+    }
+
+    /**
+     * @return decay of the second moment; ρ for RMSPROP, β2 for ADAM.
+     */
+    public double getBeta2() {
+        return beta2;
+    }
+
+    /**
+     * @return added to the root of the second moment to avoid dividing by zero.
+     */
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * @return copies of the first and second moments of each slot (null
+     * where a slot has none), double precision then single precision; see
+     * Checkpoint.
+     */
+    double[][][] copyState() {
+        return new double[][][]{copy(first), copy(second)};
+    }
+
+    float[][][] copyFloatState() {
+        return new float[][][]{copy(floatFirst), copy(floatSecond)};
+    }
+
+    /**
+     * Replaces the optimizer's state with one taken by copyState() and
+     * copyFloatState(), so training continues exactly where it was taken.
+     */
+    void restoreState(long steps, double[][][] state, float[][][] floatState) {
+        this.steps = steps;
+        this.first = copy(state[0]);
+        this.second = copy(state[1]);
+        this.floatFirst = copy(floatState[0]);
+        this.floatSecond = copy(floatState[1]);
+    }
+
+    private static double[][] copy(double[][] slots) {
+        double[][] copy = new double[slots.length][];
+        for (int i = 0; i < slots.length; i++) {
+            copy[i] = slots[i] == null ? null : slots[i].clone();
+        }
+        return copy;
+    }
+
+    private static float[][] copy(float[][] slots) {
+        float[][] copy = new float[slots.length][];
+        for (int i = 0; i < slots.length; i++) {
+            copy[i] = slots[i] == null ? null : slots[i].clone();
+        }
+        return copy;
+    }
+
+    private double[] first(int slot, int length) {
+        if (slot >= first.length) {
+            first = Arrays.copyOf(first, slot + 1);
+        }
+        if (first[slot] == null) {
+            first[slot] = new double[length];
+        }
+        return checkLength(first[slot].length, length, first[slot]);
+    }
+
+    private double[] second(int slot, int length) {
+        if (slot >= second.length) {
+            second = Arrays.copyOf(second, slot + 1);
+        }
+        if (second[slot] == null) {
+            second[slot] = new double[length];
+        }
+        return checkLength(second[slot].length, length, second[slot]);
+    }
+
+    private float[] floatFirst(int slot, int length) {
+        if (slot >= floatFirst.length) {
+            floatFirst = Arrays.copyOf(floatFirst, slot + 1);
+        }
+        if (floatFirst[slot] == null) {
+            floatFirst[slot] = new float[length];
+        }
+        return checkLength(floatFirst[slot].length, length, floatFirst[slot]);
+    }
+
+    private float[] floatSecond(int slot, int length) {
+        if (slot >= floatSecond.length) {
+            floatSecond = Arrays.copyOf(floatSecond, slot + 1);
+        }
+        if (floatSecond[slot] == null) {
+            floatSecond[slot] = new float[length];
+        }
+        return checkLength(floatSecond[slot].length, length, floatSecond[slot]);
+    }
+
+    /**
+     * Guards against one optimizer being shared by networks of different shapes.
+     */
+    private static <T> T checkLength(int stateLength, int length, T state) {
+        if (stateLength != length) {
+            throw new IllegalStateException("Optimizer state does not match the " +
+                    "parameters; use one optimizer per network");
+        }
+        return state;
+    }
+}
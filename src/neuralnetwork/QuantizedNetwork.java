@@ -0,0 +1,253 @@
+package neuralnetwork;
+
+import utils.DataSet;
+import utils.Matrix;
+
+/**
+ * <pre>
+ * Inference only, int8 quantized copy of a trained NeuralNetwork.
+ *
+ * Each layer's weights are stored as signed bytes with one scale per row
+ * (output node); w ≈ q_w * rowScale. The activations feeding each layer are
+ * quantized with a single scale calibrated from a sample of data;
+ * a ≈ q_a * inputScale. A node's weighted input is then
+ *
+ *   z = (∑ q_w * q_a) * rowScale * inputScale + b
+ *
+ * where the sum is computed entirely in integers (int32 accumulation).
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class QuantizedNetwork {
+
+    /**
+     * The largest magnitude a quantized value can take.
+     */
+    private static final int QMAX = 127;
+
+    /**
+     * Quantized weights for each layer, stored row by row.
+     */
+    private final byte[][] weights;
+
+    /**
+     * Per row dequantization scales for each layer's weights.
+     */
+    private final float[][] rowScales;
+
+    /**
+     * Biases for each layer; kept in full precision as they are tiny.
+     */
+    private final float[][] bias;
+
+    /**
+     * Quantization scale for the activations feeding into each layer.
+     */
+    private final float[] inputScales;
+
+    /**
+     * The number of inputs into each layer, and the number of nodes in it.
+     */
+    private final int[] inputs, outputs;
+
+    /**
+     * The activation function of each layer.
+     */
+    private final Activation[] activations;
+
+    private QuantizedNetwork(byte[][] weights, float[][] rowScales, float[][] bias,
+                             float[] inputScales, int[] inputs, int[] outputs,
+                             Activation[] activations) {
+        this.weights = weights;
+        this.rowScales = rowScales;
+        this.bias = bias;
+        this.inputScales = inputScales;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.activations = activations;
+    }
+
+    /**
+     * Quantizes a trained network. The scale of the activations feeding each
+     * layer is taken from the largest activation seen while feeding (up to)
+     * the first samples of the calibration data through the network.
+     *
+     * @param nn a trained network.
+     * @param calibration representative data, E.g. (part of) the validation set.
+     * @param samples the maximum number of calibration samples to use.
+     * @return an int8 copy of nn.
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork nn, DataSet calibration, int samples) {
+        NeuralNetwork.Layer[] layers = nn.getLayers();
+        int count = Math.min(samples, calibration.size());
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one calibration sample is required");
+        }
+
+        Matrix[] layerWeights = new Matrix[layers.length];
+        Matrix[] layerBias = new Matrix[layers.length];
+        for (int l = 0; l < layers.length; l++) {
+            layerWeights[l] = layers[l].getWeights();
+            layerBias[l] = layers[l].getBias();
+        }
+
+        // Record the largest activation feeding into each layer.
+        double[] maxActivation = new double[layers.length];
+        for (int s = 0; s < count; s++) {
+            Matrix activation = calibration.getFeatures(s);
+            for (int l = 0; l < layers.length; l++) {
+                maxActivation[l] = Math.max(maxActivation[l], maxAbs(activation));
+                activation = Matrix.add(Matrix.dotProduct(layerWeights[l], activation), layerBias[l]);
+                layers[l].getActivation().activate(activation, activation);
+            }
+        }
+
+        byte[][] weights = new byte[layers.length][];
+        float[][] rowScales = new float[layers.length][];
+        float[][] bias = new float[layers.length][];
+        float[] inputScales = new float[layers.length];
+        int[] inputs = new int[layers.length];
+        int[] outputs = new int[layers.length];
+        Activation[] activations = new Activation[layers.length];
+
+        for (int l = 0; l < layers.length; l++) {
+            Matrix w = layerWeights[l];
+            Matrix b = layerBias[l];
+            inputs[l] = w.getCols();
+            activations[l] = layers[l].getActivation();
+            outputs[l] = w.getRows();
+            weights[l] = new byte[inputs[l] * outputs[l]];
+            rowScales[l] = new float[outputs[l]];
+            bias[l] = new float[outputs[l]];
+            inputScales[l] = maxActivation[l] == 0 ? 1f : (float) (maxActivation[l] / QMAX);
+
+            for (int i = 0; i < outputs[l]; i++) {
+                double rowMax = 0;
+                for (int j = 0; j < inputs[l]; j++) {
+                    rowMax = Math.max(rowMax, Math.abs(w.get(i, j)));
+                }
+                float scale = rowMax == 0 ? 1f : (float) (rowMax / QMAX);
+                rowScales[l][i] = scale;
+                for (int j = 0; j < inputs[l]; j++) {
+                    weights[l][i * inputs[l] + j] = (byte) clamp(Math.round(w.get(i, j) / scale));
+                }
+                bias[l][i] = (float) b.get(i, 0);
+            }
+        }
+        return new QuantizedNetwork(weights, rowScales, bias, inputScales, inputs, outputs,
+                activations);
+    }
+
+    /**
+     * @return number of input nodes for the network.
+     */
+    public int getInputNodes() {
+        return inputs[0];
+    }
+
+    /**
+     * @return number of output nodes for the network.
+     */
+    public int getOutputNodes() {
+        return outputs[outputs.length - 1];
+    }
+
+    /**
+     * @return the number of bytes taken by the quantized parameters.
+     */
+    public long getParameterBytes() {
+        long bytes = 0;
+        for (int l = 0; l < weights.length; l++) {
+            bytes += weights[l].length + (long) Float.BYTES * (rowScales[l].length + bias[l].length + 1);
+        }
+        return bytes;
+    }
+
+    /**
+     * Feeds the features of a single sample through the network. Safe to call
+     * from several threads at once; all working state is local to the call.
+     *
+     * @param features array holding the sample's features.
+     * @param offset index of the first feature in the array.
+     * @return the final activations (outputs) of the network.
+     */
+    public float[] forwardProp(double[] features, int offset) {
+        byte[] q = new byte[inputs[0]];
+        float scale = inputScales[0];
+        for (int j = 0; j < inputs[0]; j++) {
+            q[j] = (byte) clamp(Math.round(features[offset + j] / scale));
+        }
+
+        float[] activation = null;
+        for (int l = 0; l < weights.length; l++) {
+            if (l > 0) {
+                q = new byte[inputs[l]];
+                scale = inputScales[l];
+                for (int j = 0; j < inputs[l]; j++) {
+                    q[j] = (byte) clamp(Math.round(activation[j] / scale));
+                }
+            }
+
+            activation = new float[outputs[l]];
+            byte[] w = weights[l];
+            int cols = inputs[l];
+            for (int i = 0; i < outputs[l]; i++) {
+                int row = i * cols;
+                int acc = 0;
+                for (int j = 0; j < cols; j++) {
+                    acc += w[row + j] * q[j];
+                }
+                activation[i] = acc * rowScales[l][i] * scale + bias[l][i];
+            }
+            activations[l].activate(activation, 0, activation.length);
+        }
+        return activation;
+    }
+
+    /**
+     * @param features array holding the sample's features.
+     * @param offset index of the first feature in the array.
+     * @return the predicted class of the sample.
+     */
+    public int classify(double[] features, int offset) {
+        float[] output = forwardProp(features, offset);
+        int best = 0;
+        for (int i = 1; i < output.length; i++) {
+            if (output[i] > output[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Outputs the predictions for packed test data.
+     *
+     * @param testSet packed test data.
+     * @return row 0: testLabels, row 1: corresponding predictions
+     */
+    public int[][] predict(DataSet testSet) {
+        int[][] results = new int[2][testSet.size()];
+        double[] features = testSet.getFeatureData();
+        for (int i = 0; i < testSet.size(); i++) {
+            results[0][i] = testSet.getLabel(i);
+            results[1][i] = classify(features, i * testSet.getFeatureCount());
+        }
+        return results;
+    }
+
+    private static double maxAbs(Matrix A) {
+        double max = 0;
+        for (int i = 0; i < A.getRows(); i++) {
+            for (int j = 0; j < A.getCols(); j++) {
+                max = Math.max(max, Math.abs(A.get(i, j)));
+            }
+        }
+        return max;
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(-QMAX, Math.min(QMAX, value));
+    }
+}
@@ -0,0 +1,68 @@
+package neuralnetwork;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <pre>
+ * A TrainingListener writing each epoch's telemetry as one line of JSON
+ * (see EpochTelemetry.toJson()), E.g.
+ *
+ *   try (TelemetryLog log = new TelemetryLog(new File("training.jsonl"), true)) {
+ *       nn.addTrainingListener(log);
+ *       nn.mbgd(...);
+ *   }
+ *
+ * Lines are flushed as they are written, so the log can be followed while
+ * training runs, and runs appended to one file can be compared afterwards.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class TelemetryLog implements TrainingListener, Closeable {
+
+    private final Writer out;
+
+    /**
+     * @param file the file to write to.
+     * @param append true to add to the end of an existing file.
+     * @throws IOException if the file can not be opened.
+     */
+    public TelemetryLog(File file, boolean append) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param out the writer lines are written to; closed with the log.
+     */
+    public TelemetryLog(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @throws UncheckedIOException if the line can not be written.
+     */
+    @Override
+    public void epochFinished(EpochTelemetry telemetry) {
+        try {
+            out.write(telemetry.toJson());
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
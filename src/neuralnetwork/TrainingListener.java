@@ -0,0 +1,42 @@
+package neuralnetwork;
+
+/**
+ * <pre>
+ * Receives telemetry from mbgd (see NeuralNetwork.addTrainingListener()).
+ *
+ * Listeners are called on the training thread, between epochs, so the time
+ * they take is not counted against any phase; they should still be quick,
+ * as training waits for them.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public interface TrainingListener {
+
+    /**
+     * Called once before the first epoch.
+     *
+     * @param nn the network being trained.
+     * @param epochs the number of epochs asked for.
+     * @param samples the size of the training data.
+     */
+    default void trainingStarted(NeuralNetwork nn, int epochs, int samples) {
+    }
+
+    /**
+     * Called after every epoch, evaluated or not.
+     *
+     * @param telemetry timings, allocation and metrics of the epoch.
+     */
+    void epochFinished(EpochTelemetry telemetry);
+
+    /**
+     * Called once after the last epoch run (and after early stopping has
+     * restored the best parameters).
+     *
+     * @param nn the network being trained.
+     * @param completed the number of epochs run.
+     */
+    default void trainingFinished(NeuralNetwork nn, int completed) {
+    }
+}
@@ -0,0 +1,139 @@
+package neuralnetwork;
+
+import neuralnetwork.EpochTelemetry.Phase;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <pre>
+ * Measures the epochs of one mbgd run for its TrainingListeners. Only
+ * created when a listener is registered, so training without one never
+ * reads the clock.
+ *
+ * Phases are timed with laps; each lap adds the time since the previous
+ * one to a phase and returns the current time as the start of the next:
+ *
+ *   long t = System.nanoTime();
+ *   ... forward pass ...
+ *   t = telemetry.lap(Phase.FORWARD, t);
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+class TrainingTelemetry {
+
+    private final List<TrainingListener> listeners;
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<GarbageCollectorMXBean> collectors =
+            ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long started;
+    private long allocated;
+    private long gcCount;
+    private long gcMillis;
+
+    /**
+     * @param listeners the listeners to report to; not copied.
+     */
+    TrainingTelemetry(List<TrainingListener> listeners) {
+        this.listeners = listeners;
+        this.threads = allocationCounter();
+    }
+
+    /**
+     * @return the JVM's per thread allocation counter, enabled; null if not
+     * supported.
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+        if (!counter.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!counter.isThreadAllocatedMemoryEnabled()) {
+            counter.setThreadAllocatedMemoryEnabled(true);
+        }
+        return counter;
+    }
+
+    void trainingStarted(NeuralNetwork nn, int epochs, int samples) {
+        for (TrainingListener listener : listeners) {
+            listener.trainingStarted(nn, epochs, samples);
+        }
+    }
+
+    /**
+     * Resets the phases and takes the starting counters of an epoch.
+     *
+     * @return the start of the epoch; the start of its first lap.
+     */
+    long startEpoch() {
+        Arrays.fill(phaseNanos, 0);
+        allocated = allocatedBytes();
+        gcCount = collections();
+        gcMillis = collectionMillis();
+        started = System.nanoTime();
+        return started;
+    }
+
+    /**
+     * @param phase the phase the time since start is added to.
+     * @param start the end of the previous lap.
+     * @return the current time; the start of the next lap.
+     */
+    long lap(Phase phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    /**
+     * Reports the epoch started by the last startEpoch() to every listener.
+     *
+     * @param metrics the column of mbgd's performance for the epoch.
+     */
+    void finishEpoch(int epoch, int epochs, int samples, int batches, double[] metrics) {
+        long nanos = System.nanoTime() - started;
+        long bytes = allocatedBytes();
+        EpochTelemetry telemetry = new EpochTelemetry(epoch, epochs, samples, batches, nanos,
+                phaseNanos, bytes < 0 ? -1 : bytes - allocated, collections() - gcCount,
+                collectionMillis() - gcMillis, metrics);
+        for (TrainingListener listener : listeners) {
+            listener.epochFinished(telemetry);
+        }
+    }
+
+    void trainingFinished(NeuralNetwork nn, int completed) {
+        for (TrainingListener listener : listeners) {
+            listener.trainingFinished(nn, completed);
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private long collectionMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+}
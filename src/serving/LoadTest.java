@@ -0,0 +1,158 @@
+package serving;
+
+import neuralnetwork.NeuralNetwork;
+import utils.Matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * In-process load test comparing a fixed pool of platform threads with a
+ * virtual thread per request. Every request is a task of its own, so the
+ * number of requests in flight is bounded only by the executor:
+ *
+ *   direct   the request thread scores its sample itself with the network's
+ *            reentrant classify(); CPU bound.
+ *   batched  the request thread submits to a MicroBatcher and blocks until
+ *            its batch is scored, as a ScoringServer handler does.
+ *
+ * With a fixed pool, blocked requests hold their platform thread; with
+ * virtual threads they only hold a small heap object, so far more requests
+ * can wait on a batch at once.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class LoadTest {
+
+    private final NeuralNetwork nn;
+    private final double[][] samples;
+
+    /**
+     * @param nn the network requests are scored with.
+     * @param distinct the number of distinct (random) samples requests cycle through.
+     * @param seed seed for the samples.
+     */
+    public LoadTest(NeuralNetwork nn, int distinct, long seed) {
+        Random random = new Random(seed);
+        this.nn = nn;
+        this.samples = new double[distinct][nn.getInputNodes()];
+        for (double[] sample : samples) {
+            for (int i = 0; i < sample.length; i++) {
+                sample[i] = random.nextDouble();
+            }
+        }
+    }
+
+    /**
+     * Issues requests, each scored on the calling request's own thread.
+     *
+     * @param executor runs one task per request; shut down when done.
+     * @param requests the number of requests to issue.
+     * @return latency and throughput of the run.
+     */
+    public LatencyRecorder direct(ExecutorService executor, int requests) throws InterruptedException {
+        LatencyRecorder metrics = new LatencyRecorder();
+        Future<?>[] futures = new Future<?>[requests];
+        for (int r = 0; r < requests; r++) {
+            double[] sample = samples[r % samples.length];
+            long issued = System.nanoTime();
+            futures[r] = executor.submit(() -> {
+                Matrix inputs = Matrix.view(sample, 0, sample.length, 1);
+                nn.classify(inputs);
+                metrics.recordRequest(System.nanoTime() - issued);
+            });
+        }
+        await(executor, futures);
+        return metrics;
+    }
+
+    /**
+     * Issues requests, each blocking on a shared MicroBatcher.
+     *
+     * @param executor runs one task per request; shut down when done.
+     * @param requests the number of requests to issue.
+     * @param maxBatchSize the largest number of requests scored together.
+     * @param maxDelayMicros the longest a request waits for a batch to fill.
+     * @return latency, batch size and throughput of the run.
+     */
+    public LatencyRecorder batched(ExecutorService executor, int requests,
+                                   int maxBatchSize, long maxDelayMicros) throws InterruptedException {
+        LatencyRecorder metrics = new LatencyRecorder();
+        try (MicroBatcher batcher = new MicroBatcher(Scorer.of(nn), maxBatchSize,
+                maxDelayMicros, metrics)) {
+            Future<?>[] futures = new Future<?>[requests];
+            for (int r = 0; r < requests; r++) {
+                double[] sample = samples[r % samples.length];
+                futures[r] = executor.submit(() -> {
+                    CompletableFuture<double[]> result = batcher.submit(sample);
+                    return result.get();
+                });
+            }
+            await(executor, futures);
+        }
+        return metrics;
+    }
+
+    private static void await(ExecutorService executor, Future<?>[] futures) throws InterruptedException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Request failed", e.getCause());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Runs both modes on platform and virtual threads and prints the results.
+     *
+     * @param args model file, then optionally the number of requests (100000)
+     *             and the platform pool size (available processors * 2).
+     * @throws IOException if the model cannot be loaded.
+     * @throws InterruptedException if interrupted while waiting for requests.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: LoadTest <model> [requests] [platformThreads]");
+            return;
+        }
+        NeuralNetwork nn = NeuralNetwork.loadNetwork(new File(args[0]));
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors() * 2;
+        LoadTest test = new LoadTest(nn, 1024, 42);
+
+        if (!RequestExecutors.hasVirtualThreads()) {
+            System.out.println("Virtual threads are unavailable on this runtime; " +
+                    "the per-request executor uses platform threads.");
+        }
+
+        // warm up the JIT before measuring.
+        test.direct(RequestExecutors.platform(threads), Math.min(requests, 10_000));
+
+        print("direct, " + threads + " platform threads",
+                test.direct(RequestExecutors.platform(threads), requests));
+        print("direct, thread per request",
+                test.direct(RequestExecutors.perRequest(), requests));
+        print("batched, " + threads + " platform threads",
+                test.batched(RequestExecutors.platform(threads), requests, 64, 2000));
+        print("batched, thread per request",
+                test.batched(RequestExecutors.perRequest(), requests, 64, 2000));
+    }
+
+    private static void print(String name, LatencyRecorder metrics) {
+        System.out.println("== " + name);
+        System.out.print(metrics.report());
+    }
+}
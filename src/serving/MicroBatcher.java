@@ -0,0 +1,190 @@
+package serving;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Coalesces concurrent single-sample requests into batches. A batch is
+ * started by the first waiting request and closed once it is full or once
+ * that request has waited maxDelay, whichever comes first; the whole batch
+ * is then scored with one call to the Scorer on a dedicated worker thread.
+ *
+ * Samples of the wrong length (see Scorer.getInputs()) are failed when
+ * submitted, so they never fail the requests they would have been batched
+ * with. Anything the Scorer throws, Errors included, fails only its own
+ * batch; the worker carries on with the next.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class MicroBatcher implements AutoCloseable {
+
+    /**
+     * A request waiting to be scored.
+     */
+    private static final class Pending {
+        final double[] sample;
+        final long enqueued = System.nanoTime();
+        final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        Pending(double[] sample) {
+            this.sample = sample;
+        }
+    }
+
+    private volatile Scorer scorer;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final LatencyRecorder metrics;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param scorer the model batches are scored with.
+     * @param maxBatchSize the largest number of requests scored together.
+     * @param maxDelayMicros the longest a request waits for a batch to fill.
+     * @param metrics where request latencies and batch counts are recorded.
+     */
+    public MicroBatcher(Scorer scorer, int maxBatchSize, long maxDelayMicros, LatencyRecorder metrics) {
+        if (maxBatchSize < 1 || maxDelayMicros < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and " +
+                    "delay non negative");
+        }
+        this.scorer = scorer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.metrics = metrics;
+        this.worker = new Thread(this::run, "micro-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Swaps the model; batches formed from now on are scored with scorer.
+     *
+     * @param scorer the new model.
+     */
+    public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+    }
+
+    /**
+     * Queues a sample for scoring.
+     *
+     * @param sample the sample's features.
+     * @return a future completed with the sample's class scores; failed with
+     * an IllegalArgumentException if the sample has the wrong length, or an
+     * IllegalStateException once the batcher is closed.
+     */
+    public CompletableFuture<double[]> submit(double[] sample) {
+        Pending pending = new Pending(sample);
+        int inputs = scorer.getInputs();
+        if (inputs > 0 && sample.length != inputs) {
+            pending.result.completeExceptionally(
+                    new IllegalArgumentException("Expected " + inputs + " features"));
+            return pending.result;
+        }
+        if (!running) {
+            pending.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+            return pending.result;
+        }
+        queue.add(pending);
+        // close() may have drained the queue between the check and the add;
+        // whichever of us removes the request fails it.
+        if (!running && queue.remove(pending)) {
+            pending.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+        return pending.result;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = first.enqueued + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait <= 0 ? queue.poll() : queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                score(batch);
+            } catch (InterruptedException e) {
+                // closed while a batch was forming; its requests are already off the queue.
+                for (Pending pending : batch) {
+                    pending.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+                }
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        failPending();
+    }
+
+    /**
+     * Fails anything left behind once closed.
+     */
+    private void failPending() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+    }
+
+    private void score(List<Pending> batch) {
+        double[][] samples = new double[batch.size()][];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = batch.get(i).sample;
+        }
+
+        try {
+            double[][] scores = scorer.score(samples);
+            if (scores.length != samples.length) {
+                throw new IllegalStateException("Scorer returned " + scores.length
+                        + " results for " + samples.length + " samples");
+            }
+            metrics.recordBatch(batch.size());
+            for (int i = 0; i < scores.length; i++) {
+                Pending pending = batch.get(i);
+                pending.result.complete(scores[i]);
+                metrics.recordRequest(System.nanoTime() - pending.enqueued);
+            }
+        } catch (Throwable e) {
+            // Errors too; a dead worker would leave every later request waiting.
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker; requests still waiting are failed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending();
+    }
+}
@@ -0,0 +1,281 @@
+package serving;
+
+import utils.MetricsRegistry;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <pre>
+ * Bounded cache of class scores, keyed on the sample itself rather than on
+ * any model; it sits in front of whichever network or classifier a server
+ * scores with.
+ *
+ * Samples are quantized to one byte per feature (the pixel values they were
+ * normalized from) before being hashed, so resubmissions of the same image
+ * hit even if they arrive as slightly different text. The 64-bit hash picks
+ * the entry and the quantized bytes are compared to rule out collisions.
+ *
+ * Entries are evicted least recently used first once the cache is full, and
+ * expire ttl after they were stored. Every entry belongs to a model version;
+ * changing the version drops them all.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class PredictionCache {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Mixing constants (from xxHash64).
+     */
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * A cached sample's scores.
+     */
+    private static final class Entry {
+        final byte[] quantized;
+        final double[] scores;
+        final long expires;
+        final long computeNanos;
+
+        Entry(byte[] quantized, double[] scores, long expires, long computeNanos) {
+            this.quantized = quantized;
+            this.scores = scores;
+            this.expires = expires;
+            this.computeNanos = computeNanos;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry> entries;
+    private volatile long modelVersion;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder nanosSaved = new LongAdder();
+
+    /**
+     * @param maxEntries the largest number of samples kept.
+     * @param ttlMillis how long an entry stays valid after being stored.
+     * @param modelVersion version of the model the cached scores come from.
+     */
+    public PredictionCache(int maxEntries, long ttlMillis, long modelVersion) {
+        if (maxEntries < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("Size and ttl must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.modelVersion = modelVersion;
+
+        // access ordered, so iteration starts at the least recently used entry.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > PredictionCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Quantizes normalized (0 - 1) features to one byte each.
+     *
+     * @param sample the sample's features.
+     * @return round(feature * 255) for every feature, clamped to 0 - 255.
+     */
+    public static byte[] quantize(double[] sample) {
+        byte[] quantized = new byte[sample.length];
+        for (int i = 0; i < sample.length; i++) {
+            quantized[i] = (byte) Math.max(0, Math.min(255, Math.round(sample[i] * 255)));
+        }
+        return quantized;
+    }
+
+    /**
+     * 64-bit hash of a quantized sample, consuming eight bytes per step.
+     *
+     * @param quantized a quantized sample.
+     * @return the sample's hash.
+     */
+    public static long hash(byte[] quantized) {
+        long h = PRIME2 ^ quantized.length;
+        int i = 0;
+        for (; i + Long.BYTES <= quantized.length; i += Long.BYTES) {
+            long k = (long) LONGS.get(quantized, i) * PRIME2;
+            h ^= Long.rotateLeft(k, 31) * PRIME1;
+            h = Long.rotateLeft(h, 27) * PRIME1;
+        }
+        for (; i < quantized.length; i++) {
+            h ^= (quantized[i] & 0xff) * PRIME1;
+            h = Long.rotateLeft(h, 11) * PRIME2;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        return h;
+    }
+
+    /**
+     * @return version of the model the cached scores come from.
+     */
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    /**
+     * Switches to a new model version, dropping every entry if it changed.
+     *
+     * @param version version of the model now serving requests.
+     */
+    public void setModelVersion(long version) {
+        lock.lock();
+        try {
+            if (version != modelVersion) {
+                modelVersion = version;
+                entries.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a sample's scores.
+     *
+     * @param quantized the quantized sample.
+     * @return a copy of the cached scores, or null on a miss.
+     */
+    public double[] get(byte[] quantized) {
+        Long key = hash(quantized);
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null && entry.expires - System.nanoTime() < 0) {
+                entries.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry == null || !Arrays.equals(entry.quantized, quantized)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        nanosSaved.add(entry.computeNanos);
+        return entry.scores.clone();
+    }
+
+    /**
+     * Stores a sample's scores; ignored if the model version has changed
+     * since they were computed.
+     *
+     * @param quantized the quantized sample.
+     * @param scores the sample's scores.
+     * @param computeNanos how long the scores took to compute.
+     * @param version the model version that was current when the scores were computed.
+     */
+    public void put(byte[] quantized, double[] scores, long computeNanos, long version) {
+        Entry entry = new Entry(quantized, scores.clone(), System.nanoTime() + ttlNanos, computeNanos);
+        lock.lock();
+        try {
+            if (version == modelVersion) {
+                entries.put(hash(quantized), entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries currently held.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that hit, or 0 before any lookup.
+     */
+    public double hitRate() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Exports the cache's statistics as gauges of registry, named like the
+     * lines of report().
+     *
+     * @param registry the registry to add the gauges to.
+     */
+    public void register(MetricsRegistry registry) {
+        registry.gauge("cache_entries", this::size);
+        registry.gauge("cache_hits_total", this::getHits);
+        registry.gauge("cache_misses_total", this::getMisses);
+        registry.gauge("cache_hit_rate", this::hitRate);
+        registry.gauge("cache_evictions_total", this::getEvictions);
+        registry.gauge("cache_expirations_total", this::getExpirations);
+        registry.gauge("cache_latency_saved_micros_total", () -> nanosSaved.sum() / 1000.0);
+        registry.gauge("cache_model_version", this::getModelVersion);
+    }
+
+    /**
+     * @return the statistics in a plain 'name value' per line text format.
+     */
+    public String report() {
+        return String.format("cache_entries %d%n" +
+                        "cache_hits_total %d%n" +
+                        "cache_misses_total %d%n" +
+                        "cache_hit_rate %.4f%n" +
+                        "cache_evictions_total %d%n" +
+                        "cache_expirations_total %d%n" +
+                        "cache_latency_saved_micros_total %.1f%n" +
+                        "cache_model_version %d%n",
+                size(), getHits(), getMisses(), hitRate(), getEvictions(),
+                getExpirations(), nanosSaved.sum() / 1000.0, getModelVersion());
+    }
+}
@@ -0,0 +1,69 @@
+package serving;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <pre>
+ * Executors for running one task per request.
+ *
+ * On Java 21+ perRequest() starts a virtual thread for every task, so a
+ * request blocked waiting for its micro-batch (or its socket) costs a few
+ * hundred bytes of heap rather than a platform thread and its stack. On older
+ * runtimes it falls back to a cached pool of platform threads. The lookup is
+ * reflective so the code still compiles and runs on Java 17.
+ *
+ * Code run on these executors should block with java.util.concurrent locks
+ * rather than synchronized, which pins a virtual thread to its carrier.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public final class RequestExecutors {
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor(), when the runtime has it.
+     */
+    private static final Method VIRTUAL_PER_TASK = lookup();
+
+    private RequestExecutors() {}
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the runtime supports virtual threads.
+     */
+    public static boolean hasVirtualThreads() {
+        return VIRTUAL_PER_TASK != null;
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or a cached
+     * platform thread pool if the runtime has no virtual threads.
+     */
+    public static ExecutorService perRequest() {
+        if (VIRTUAL_PER_TASK != null) {
+            try {
+                return (ExecutorService) VIRTUAL_PER_TASK.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall through to platform threads.
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @param threads the number of platform threads.
+     * @return a fixed pool of platform threads.
+     */
+    public static ExecutorService platform(int threads) {
+        return Executors.newFixedThreadPool(threads);
+    }
+}
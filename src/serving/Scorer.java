@@ -0,0 +1,73 @@
+package serving;
+
+import neuralnetwork.NeuralNetwork;
+import utils.Matrix;
+
+/**
+ * Scores a batch of samples in one call; the unit of work a MicroBatcher
+ * hands to a model.
+ *
+ * @author Joseph Adamson
+ */
+@FunctionalInterface
+public interface Scorer {
+
+    /**
+     * @param samples one row of features per sample.
+     * @return one row of class scores per sample.
+     */
+    double[][] score(double[][] samples);
+
+    /**
+     * @return the number of features every sample must have; 0 if the
+     * scorer accepts any.
+     */
+    default int getInputs() {
+        return 0;
+    }
+
+    /**
+     * Scores batches with a single batched forward pass through nn.
+     *
+     * @param nn a trained network.
+     * @return a scorer returning the network's output activations.
+     */
+    static Scorer of(NeuralNetwork nn) {
+        int inputs = nn.getInputNodes();
+        Scorer scorer = (samples) -> {
+
+            // gather the batch into an (inputs x batchSize) matrix; column j
+            // holds sample j.
+            Matrix batch = new Matrix(inputs, samples.length);
+            double[] data = batch.getBacking();
+            for (int j = 0; j < samples.length; j++) {
+                if (samples[j].length != inputs) {
+                    throw new IllegalArgumentException("Expected " + inputs + " features");
+                }
+                for (int i = 0; i < inputs; i++) {
+                    data[i * samples.length + j] = samples[j][i];
+                }
+            }
+
+            Matrix outputs = nn.forwardPropBatch(batch);
+            double[][] scores = new double[samples.length][outputs.getRows()];
+            for (int j = 0; j < samples.length; j++) {
+                for (int i = 0; i < outputs.getRows(); i++) {
+                    scores[j][i] = outputs.get(i, j);
+                }
+            }
+            return scores;
+        };
+        return new Scorer() {
+            @Override
+            public double[][] score(double[][] samples) {
+                return scorer.score(samples);
+            }
+
+            @Override
+            public int getInputs() {
+                return inputs;
+            }
+        };
+    }
+}
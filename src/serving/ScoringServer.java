@@ -0,0 +1,321 @@
+package serving;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import neuralnetwork.NeuralNetwork;
+import utils.MetricsRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import javax.management.JMException;
+
+/**
+ * <pre>
+ * Online scoring server built on the JDK's HttpServer. Requests are
+ * coalesced into micro-batches (see MicroBatcher) before being scored.
+ *
+ *   POST /predict  body: the image's pixels, either as raw bytes
+ *                  (Content-Type: application/octet-stream) or as text; 
+ *                  numbers 0 - 255 separated by commas and/or whitespace.
+ *                  reply: {"class": 3, "scores": [0.01, ...]}; the network's
+ *                  outputs, which only sum to 1 if it ends in softmax.
+ *   GET  /metrics  request counts, batch sizes, p50/p99 latency, throughput
+ *                  and cache statistics, followed by the process wide
+ *                  metrics (see MetricsRegistry.global()).
+ *
+ * By default every request is handled on its own virtual thread where the
+ * runtime supports them (see RequestExecutors); handlers spend most of their
+ * time parked waiting for a batch, which virtual threads make cheap.
+ *
+ * An optional PredictionCache answers repeated samples without scoring them
+ * again; it is invalidated whenever the model is replaced.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class ScoringServer {
+
+    private final HttpServer server;
+    private final MicroBatcher batcher;
+    private final MetricsRegistry registry;
+    private final LatencyRecorder metrics;
+    private final ExecutorService executor;
+    private final PredictionCache cache;
+    private final int inputs;
+
+    /**
+     * @param scorer the model requests are scored with.
+     * @param inputs the number of pixels expected per request.
+     * @param address address to listen on; port 0 picks a free port.
+     * @param maxBatchSize the largest number of requests scored together.
+     * @param maxDelayMicros the longest a request waits for a batch to fill.
+     * @throws IOException if the server cannot bind to address.
+     */
+    public ScoringServer(Scorer scorer, int inputs, InetSocketAddress address,
+                         int maxBatchSize, long maxDelayMicros) throws IOException {
+        this(scorer, inputs, address, maxBatchSize, maxDelayMicros, RequestExecutors.perRequest());
+    }
+
+    /**
+     * @param scorer the model requests are scored with.
+     * @param inputs the number of pixels expected per request.
+     * @param address address to listen on; port 0 picks a free port.
+     * @param maxBatchSize the largest number of requests scored together.
+     * @param maxDelayMicros the longest a request waits for a batch to fill.
+     * @param executor runs the request handlers; shut down by stop().
+     * @throws IOException if the server cannot bind to address.
+     */
+    public ScoringServer(Scorer scorer, int inputs, InetSocketAddress address,
+                         int maxBatchSize, long maxDelayMicros,
+                         ExecutorService executor) throws IOException {
+        this(scorer, inputs, address, maxBatchSize, maxDelayMicros, executor, null);
+    }
+
+    /**
+     * @param scorer the model requests are scored with.
+     * @param inputs the number of pixels expected per request.
+     * @param address address to listen on; port 0 picks a free port.
+     * @param maxBatchSize the largest number of requests scored together.
+     * @param maxDelayMicros the longest a request waits for a batch to fill.
+     * @param executor runs the request handlers; shut down by stop().
+     * @param cache cache consulted before scoring, or null for none.
+     * @throws IOException if the server cannot bind to address.
+     */
+    public ScoringServer(Scorer scorer, int inputs, InetSocketAddress address,
+                         int maxBatchSize, long maxDelayMicros,
+                         ExecutorService executor, PredictionCache cache) throws IOException {
+        this.inputs = inputs;
+        this.cache = cache;
+        this.registry = new MetricsRegistry("serving");
+        this.metrics = new LatencyRecorder(registry);
+        if (cache != null) {
+            cache.register(registry);
+        }
+        this.batcher = new MicroBatcher(scorer, maxBatchSize, maxDelayMicros, metrics);
+        this.executor = executor;
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/predict", this::predict);
+        this.server.createContext("/metrics", this::metrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and shuts the batcher down.
+     */
+    public void stop() {
+        server.stop(0);
+        batcher.close();
+        executor.shutdown();
+    }
+
+    /**
+     * @return the address the server is bound to.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Replaces the model requests are scored with, invalidating the cache.
+     *
+     * @param scorer the new model.
+     * @param version version of the new model.
+     */
+    public void replaceModel(Scorer scorer, long version) {
+        batcher.setScorer(scorer);
+        if (cache != null) {
+            cache.setModelVersion(version);
+        }
+    }
+
+    /**
+     * @return the server's prediction cache, or null if it has none.
+     */
+    public PredictionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the server's latency and batch statistics.
+     */
+    public LatencyRecorder getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the registry holding the server's metrics.
+     */
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    private void predict(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "Use POST\n");
+                return;
+            }
+
+            double[] sample;
+            try {
+                sample = parse(exchange);
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            byte[] quantized = null;
+            long version = 0;
+            if (cache != null) {
+                quantized = PredictionCache.quantize(sample);
+                version = cache.getModelVersion();
+                double[] cached = cache.get(quantized);
+                if (cached != null) {
+                    send(exchange, 200, toJson(cached));
+                    return;
+                }
+            }
+
+            double[] scores;
+            long started = System.nanoTime();
+            try {
+                scores = batcher.submit(sample).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "Interrupted\n");
+                return;
+            } catch (ExecutionException e) {
+                // the cause is logged (its class name if it has no message);
+                // clients only see that scoring failed.
+                System.err.println("Scoring failed: " + e.getCause());
+                send(exchange, 500, "Scoring failed\n");
+                return;
+            }
+            if (cache != null) {
+                cache.put(quantized, scores, System.nanoTime() - started, version);
+            }
+            send(exchange, 200, toJson(scores));
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            send(exchange, 200, registry.report() + MetricsRegistry.global().report());
+        }
+    }
+
+    /**
+     * Reads a request body into normalized (0 - 1) pixel values.
+     */
+    private double[] parse(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+
+        double[] sample = new double[inputs];
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type != null && type.startsWith("application/octet-stream")) {
+            if (body.length != inputs) {
+                throw new IllegalArgumentException("Expected " + inputs + " bytes");
+            }
+            for (int i = 0; i < inputs; i++) {
+                sample[i] = (double) (body[i] & 0xff) / 255;
+            }
+            return sample;
+        }
+
+        String[] values = new String(body, StandardCharsets.UTF_8)
+                .replaceAll("[\\[\\]]", " ").trim().split("[,\\s]+");
+        if (values.length != inputs) {
+            throw new IllegalArgumentException("Expected " + inputs + " pixel values");
+        }
+        for (int i = 0; i < inputs; i++) {
+            double value;
+            try {
+                value = Double.parseDouble(values[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed pixel value: " + values[i]);
+            }
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("Pixel values must be between 0 and 255");
+            }
+            sample[i] = value / 255;
+        }
+        return sample;
+    }
+
+    private static String toJson(double[] scores) {
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        StringBuilder json = new StringBuilder("{\"class\": ").append(best)
+                .append(", \"scores\": [");
+        for (int i = 0; i < scores.length; i++) {
+            json.append(i == 0 ? "" : ", ").append(scores[i]);
+        }
+        return json.append("]}\n").toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Serves a trained network on the loopback interface.
+     *
+     * @param args model file, then optionally port (8080), max batch size (32),
+     *             max batching delay in microseconds (2000), cache size in
+     *             samples (10000; 0 disables it) and cache ttl in milliseconds
+     *             (600000).
+     * @throws IOException if the model cannot be loaded or the port bound.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ScoringServer <model> [port] [maxBatch] [maxDelayMicros]" +
+                    " [cacheEntries] [cacheTtlMillis]");
+            return;
+        }
+        File model = new File(args[0]);
+        NeuralNetwork nn = NeuralNetwork.loadNetwork(model);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int maxBatch = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        long maxDelay = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+        int cacheEntries = args.length > 4 ? Integer.parseInt(args[4]) : 10_000;
+        long cacheTtl = args.length > 5 ? Long.parseLong(args[5]) : 600_000;
+
+        // the model file's modification time serves as its version.
+        PredictionCache cache = cacheEntries == 0 ? null
+                : new PredictionCache(cacheEntries, cacheTtl, model.lastModified());
+        ScoringServer server = new ScoringServer(Scorer.of(nn), nn.getInputNodes(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxBatch, maxDelay,
+                RequestExecutors.perRequest(), cache);
+        server.start();
+        try {
+            server.getRegistry().registerMBean();
+            MetricsRegistry.global().registerMBean();
+        } catch (JMException e) {
+            System.err.println("Metrics are not exported over JMX: " + e.getMessage());
+        }
+        System.out.println("Scoring on http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/predict");
+    }
+}
@@ -0,0 +1,237 @@
+package utils;
+
+import org.knowm.xchart.BitmapEncoder;
+import org.knowm.xchart.VectorGraphicsEncoder;
+import org.knowm.xchart.XYChart;
+import org.knowm.xchart.XYSeries;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Writes charts to files rather than Swing windows, so results can be
+ * reported from headless machines (see Metrics.setExporter()). Each chart
+ * is written as any of:
+ *
+ *   name.png   the chart rendered by xchart's BitmapEncoder.
+ *   name.svg   the chart rendered by xchart's VectorGraphicsEncoder.
+ *   name.csv   its series; one 'series,x,y' row per point.
+ *   name.json  its titles and series; {"title": ..., "series": [{"name":
+ *              ..., "x": [...], "y": [...]}]}, non-finite values as null.
+ *
+ * Rendering and writing happen on a single background thread, so export()
+ * returns at once and never holds up a training loop; the returned future
+ * completes, exceptionally with an UncheckedIOException on failure, once
+ * the files are written. close() waits for pending exports to finish.
+ *
+ * The thread is not a daemon, so a program that returns from main with
+ * exports still queued exits once they are written; it stops after a
+ * second without work, so an idle exporter never keeps the JVM alive.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class ChartExporter implements Closeable {
+
+    /**
+     * The file formats a chart can be written as.
+     */
+    public enum Format {PNG, SVG, CSV, JSON}
+
+    private final File directory;
+    private final Set<Format> formats;
+    private final ExecutorService executor;
+
+    /**
+     * Writes every format into directory.
+     *
+     * @param directory the directory charts are written to; created if missing.
+     */
+    public ChartExporter(File directory) {
+        this(directory, EnumSet.allOf(Format.class));
+    }
+
+    /**
+     * @param directory the directory charts are written to; created if missing.
+     * @param formats the formats each chart is written as.
+     */
+    public ChartExporter(File directory, Set<Format> formats) {
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("at least one format is required");
+        }
+        this.directory = directory;
+        this.formats = EnumSet.copyOf(formats);
+        // a single worker, started on demand and stopped once idle.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), (task) -> new Thread(task, "chart-exporter"));
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * @return the directory charts are written to.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Queues a chart to be written. The chart must not be changed afterwards.
+     *
+     * @param name the file name, without an extension, the chart is written under.
+     * @param chart the chart.
+     * @return a future completed once every file has been written.
+     */
+    public CompletableFuture<Void> export(String name, XYChart chart) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                write(name, chart);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Queues several charts, written as name-0, name-1 and so on.
+     *
+     * @param name the file name prefix.
+     * @param charts the charts.
+     * @return a future completed once every chart has been written.
+     */
+    public CompletableFuture<Void> export(String name, List<XYChart> charts) {
+        List<CompletableFuture<Void>> exports = new ArrayList<>();
+        for (int i = 0; i < charts.size(); i++) {
+            exports.add(export(name + "-" + i, charts.get(i)));
+        }
+        return CompletableFuture.allOf(exports.toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Waits for queued charts to be written and stops the background thread.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting; an export is still rendering.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String name, XYChart chart) throws IOException {
+        Files.createDirectories(directory.toPath());
+        String path = new File(directory, name).getPath();
+        if (formats.contains(Format.PNG)) {
+            BitmapEncoder.saveBitmap(chart, path, BitmapEncoder.BitmapFormat.PNG);
+        }
+        if (formats.contains(Format.SVG)) {
+            VectorGraphicsEncoder.saveVectorGraphic(chart, path,
+                    VectorGraphicsEncoder.VectorGraphicsFormat.SVG);
+        }
+        if (formats.contains(Format.CSV)) {
+            try (Writer writer = Files.newBufferedWriter(new File(path + ".csv").toPath(),
+                    StandardCharsets.UTF_8)) {
+                writer.write(toCsv(chart));
+            }
+        }
+        if (formats.contains(Format.JSON)) {
+            try (Writer writer = Files.newBufferedWriter(new File(path + ".json").toPath(),
+                    StandardCharsets.UTF_8)) {
+                writer.write(toJson(chart));
+            }
+        }
+    }
+
+    /**
+     * @param chart a chart.
+     * @return the chart's series as 'series,x,y' rows under a header.
+     */
+    static String toCsv(XYChart chart) {
+        StringBuilder csv = new StringBuilder("series,x,y\n");
+        for (XYSeries series : chart.getSeriesMap().values()) {
+            double[] x = series.getXData();
+            double[] y = series.getYData();
+            String name = csvField(series.getName());
+            for (int i = 0; i < x.length; i++) {
+                csv.append(name).append(',').append(x[i]).append(',').append(y[i]).append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @param chart a chart.
+     * @return the chart's titles and series as a JSON object.
+     */
+    static String toJson(XYChart chart) {
+        StringBuilder json = new StringBuilder("{\"title\": ").append(jsonString(chart.getTitle()))
+                .append(", \"x_axis\": ").append(jsonString(chart.getXAxisTitle()))
+                .append(", \"y_axis\": ").append(jsonString(chart.getYAxisTitle()))
+                .append(", \"series\": [");
+        String separator = "";
+        for (XYSeries series : chart.getSeriesMap().values()) {
+            json.append(separator).append("{\"name\": ").append(jsonString(series.getName()))
+                    .append(", \"x\": ");
+            appendArray(json, series.getXData());
+            json.append(", \"y\": ");
+            appendArray(json, series.getYData());
+            json.append('}');
+            separator = ", ";
+        }
+        return json.append("]}\n").toString();
+    }
+
+    private static void appendArray(StringBuilder json, double[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            double value = values[i];
+            json.append(i == 0 ? "" : ", ")
+                    .append(Double.isNaN(value) || Double.isInfinite(value)
+                            ? "null" : Double.toString(value));
+        }
+        json.append(']');
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String csvField(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,288 @@
+package utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * A streaming confusion matrix; predictions are added one at a time and
+ * precision, recall, F1 and accuracy computed from the counts on demand, so
+ * scoring millions of predictions never needs them held in memory.
+ *
+ * Each cell is a LongAdder, so any number of threads can add to the same
+ * matrix at once. Alternatively each thread (or shard) fills its own and
+ * the results are combined with merge():
+ *
+ *   ConfusionMatrix total = new ConfusionMatrix(classes);
+ *   for (ConfusionMatrix shard : shards) {
+ *       total.merge(shard);
+ *   }
+ *   System.out.println(total.report());
+ *
+ * Rows are actual classes and columns predicted classes, E.g.
+ *
+ *             class 0    class 1
+ *             predicted  predicted
+ *   class 0 [   TP         FN   ]
+ *   actual
+ *
+ *   class 1 [   FP         TN   ]
+ *   actual
+ *
+ * Reads taken while predictions are still being added are not a consistent
+ * snapshot; each count is exact once the adding threads have finished.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class ConfusionMatrix {
+
+    private final int classes;
+
+    /**
+     * Cell counts in row major order; cells[actual * classes + predicted].
+     */
+    private final LongAdder[] cells;
+
+    /**
+     * @param classes the number of classes a label can take; labels and
+     *                predictions are class indices 0 to classes - 1.
+     */
+    public ConfusionMatrix(int classes) {
+        if (classes < 1) {
+            throw new IllegalArgumentException("classes must be at least 1: " + classes);
+        }
+        this.classes = classes;
+        this.cells = new LongAdder[classes * classes];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts the predictions returned by a classifier's predict method.
+     *
+     * @param results row 0: actual labels, row 1: corresponding predictions.
+     * @param classes the number of classes a label can take.
+     * @return a matrix holding every prediction in results.
+     */
+    public static ConfusionMatrix of(int[][] results, int classes) {
+        ConfusionMatrix matrix = new ConfusionMatrix(classes);
+        matrix.addAll(results);
+        return matrix;
+    }
+
+    /**
+     * @return the number of classes a label can take.
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    /**
+     * Counts a single prediction.
+     *
+     * @param actual the sample's label.
+     * @param predicted the class predicted for the sample.
+     */
+    public void add(int actual, int predicted) {
+        cells[cell(actual, predicted)].increment();
+    }
+
+    /**
+     * Counts the predictions returned by a classifier's predict method.
+     *
+     * @param results row 0: actual labels, row 1: corresponding predictions.
+     */
+    public void addAll(int[][] results) {
+        if (results.length != 2 || results[0].length != results[1].length) {
+            throw new IllegalArgumentException("results must be two rows of equal length");
+        }
+        for (int i = 0; i < results[0].length; i++) {
+            add(results[0][i], results[1][i]);
+        }
+    }
+
+    /**
+     * Adds the counts of another matrix (E.g. one filled by another thread
+     * or from another shard of the test data) to this one.
+     *
+     * @param other a matrix over the same number of classes.
+     */
+    public void merge(ConfusionMatrix other) {
+        if (other.classes != classes) {
+            throw new IllegalArgumentException("cannot merge a matrix of " + other.classes
+                    + " classes into one of " + classes);
+        }
+        for (int i = 0; i < cells.length; i++) {
+            cells[i].add(other.cells[i].sum());
+        }
+    }
+
+    /**
+     * Clears every count.
+     */
+    public void reset() {
+        for (LongAdder cell : cells) {
+            cell.reset();
+        }
+    }
+
+    /**
+     * @param actual the samples' label.
+     * @param predicted the class predicted for the samples.
+     * @return the number of samples of class actual predicted as predicted.
+     */
+    public long getCount(int actual, int predicted) {
+        return cells[cell(actual, predicted)].sum();
+    }
+
+    /**
+     * @return a copy of the counts; rows are actual and columns predicted classes.
+     */
+    public long[][] toArray() {
+        long[][] counts = new long[classes][classes];
+        for (int i = 0; i < classes; i++) {
+            for (int j = 0; j < classes; j++) {
+                counts[i][j] = cells[i * classes + j].sum();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of predictions counted.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (LongAdder cell : cells) {
+            total += cell.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of correct predictions counted.
+     */
+    public long getCorrect() {
+        long correct = 0;
+        for (int i = 0; i < classes; i++) {
+            correct += cells[i * classes + i].sum();
+        }
+        return correct;
+    }
+
+    /**
+     * @param c a class index.
+     * @return the number of samples labelled c (the row sum).
+     */
+    public long getSupport(int c) {
+        checkClass(c);
+        long support = 0;
+        for (int j = 0; j < classes; j++) {
+            support += cells[c * classes + j].sum();
+        }
+        return support;
+    }
+
+    /**
+     * @param c a class index.
+     * @return the number of samples predicted as c (the column sum).
+     */
+    public long getPredicted(int c) {
+        checkClass(c);
+        long predicted = 0;
+        for (int i = 0; i < classes; i++) {
+            predicted += cells[i * classes + c].sum();
+        }
+        return predicted;
+    }
+
+    /**
+     * @return the fraction of predictions that were correct; 0 if there are none.
+     */
+    public double accuracy() {
+        long total = getTotal();
+        return total == 0 ? 0.0 : (double) getCorrect() / total;
+    }
+
+    /**
+     * @param c a class index.
+     * @return TP / (TP + FP); 0 if nothing was predicted as c.
+     */
+    public double precision(int c) {
+        long predicted = getPredicted(c);
+        return predicted == 0 ? 0.0 : (double) getCount(c, c) / predicted;
+    }
+
+    /**
+     * @param c a class index.
+     * @return TP / (TP + FN); 0 if no sample was labelled c.
+     */
+    public double recall(int c) {
+        long support = getSupport(c);
+        return support == 0 ? 0.0 : (double) getCount(c, c) / support;
+    }
+
+    /**
+     * @param c a class index.
+     * @return the harmonic mean of the class's precision and recall; 0 if both are 0.
+     */
+    public double f1(int c) {
+        double precision = precision(c);
+        double recall = recall(c);
+        return precision + recall == 0 ? 0.0 : 2 * precision * recall / (precision + recall);
+    }
+
+    /**
+     * @return the unweighted mean of every class's F1 score.
+     */
+    public double macroF1() {
+        double sum = 0.0;
+        for (int c = 0; c < classes; c++) {
+            sum += f1(c);
+        }
+        return sum / classes;
+    }
+
+    /**
+     * @return the matrix followed by the precision, recall and F1 of each
+     *         class and the overall accuracy.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        long[][] counts = toArray();
+        for (long[] row : counts) {
+            report.append('[');
+            for (long count : row) {
+                report.append(String.format("%8d", count));
+            }
+            report.append(" ]").append(System.lineSeparator());
+        }
+        report.append(String.format("============Report============%n"));
+        report.append(String.format("%18s%10s%10s%n", "Precision", "Recall", "F1"));
+        for (int c = 0; c < classes; c++) {
+            report.append(String.format("class %d  %9.4f %9.4f %9.4f%n", c,
+                    precision(c), recall(c), f1(c)));
+        }
+        report.append(String.format("%nModel accuracy: %.4f%n", accuracy()));
+        report.append(String.format("=============================="));
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+
+    private int cell(int actual, int predicted) {
+        checkClass(actual);
+        checkClass(predicted);
+        return actual * classes + predicted;
+    }
+
+    private void checkClass(int c) {
+        if (c < 0 || c >= classes) {
+            throw new IllegalArgumentException("class " + c + " is outside 0 - " + (classes - 1));
+        }
+    }
+}
@@ -9,8 +9,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 public class DataPrep {
 
@@ -32,6 +32,8 @@ public class DataPrep {
      * @throws IOException if method cannot access the data directory.
      */
     public static void packData(int sampleSize, int sampleStart, String filename) throws IOException {
+        DataPrepEvents.Pack event = new DataPrepEvents.Pack();
+        event.begin();
         File rawDirectory = new File(System.getProperty("user.dir") + "/data/raw/");
         File[] fileListing = rawDirectory.listFiles();
         System.out.println(Arrays.toString(fileListing));
@@ -52,6 +54,12 @@ public class DataPrep {
             } catch (Exception e) {
                 System.err.println("Directory no found");
             }
+            if (event.shouldCommit()) {
+                event.target = filename;
+                event.samples = result.length;
+                event.features = PIXELS;
+                event.commit();
+            }
         } else {
             throw new IOException("Directory not found.");
         }
@@ -116,6 +124,8 @@ public class DataPrep {
      * @throws IOException if parameter file cannot be found.
      */
     public static double[][] loadData(File filename) throws IOException {
+        DataPrepEvents.Load event = new DataPrepEvents.Load();
+        event.begin();
         double[][] result = null;
         try {
             FileInputStream fis = new FileInputStream(filename);
@@ -128,13 +138,21 @@ public class DataPrep {
         if (result == null) {
             throw new IOException("File not found");
         } else {
+            if (event.shouldCommit()) {
+                event.file = filename.getPath();
+                event.samples = result.length;
+                event.commit();
+            }
             return result;
         }
     }
 
     /**
      * Converts a 2d array of packed data into (feature, label) column matrix 
-     * tuples that can easily be processed by the neural network.
+     * tuples that can easily be processed by the neural network. Feature
+     * matrices are views over the rows of data (nothing is copied), so
+     * changing one changes data. Every sample has a one-hot label matrix of
+     * its own, since Matrix.add() and the like change their first argument.
      * 
      * @param data a double array of 'packed' data where each row represents a 
      *             flattened image.
@@ -142,23 +160,50 @@ public class DataPrep {
      * of vectorized matrices.
      */
     public static ArrayList<ArrayList<Matrix>> vectorize(double[][] data, int outputs) {
-        ArrayList<ArrayList<Matrix>> result = new ArrayList<>();
+        ArrayList<ArrayList<Matrix>> result = new ArrayList<>(data.length);
 
         for (double[] row : data) {
-            ArrayList<Matrix> annotation = new ArrayList<>();
-            Matrix features =
-                    Matrix.reshape(
-                            new Matrix(Arrays.copyOfRange(row, 0, row.length - 1)),
-                            row.length - 1, 1
-                    );
-            Matrix label = oneHotEncode(row[row.length - 1], outputs);
-            annotation.add(features);
-            annotation.add(label);
+            ArrayList<Matrix> annotation = new ArrayList<>(2);
+            annotation.add(Matrix.view(row, 0, row.length - 1, 1));
+            annotation.add(oneHotEncode(row[row.length - 1], outputs));
             result.add(annotation);
         }
         return result;
     }
 
+    /**
+     * Converts a 2d array of packed data into a DataSet; the features of every
+     * row are copied once into a single contiguous array and the labels are
+     * kept as class indices.
+     *
+     * @param data a double array of 'packed' data where each row represents a
+     *             flattened image followed by its label.
+     * @param outputs the number of classes a label can take.
+     * @return a DataSet holding the contents of data.
+     */
+    public static DataSet toDataSet(double[][] data, int outputs) {
+        DataPrepEvents.Pack event = new DataPrepEvents.Pack();
+        event.begin();
+        int featureCount = data.length == 0 ? PIXELS : data[0].length - 1;
+        double[] features = new double[data.length * featureCount];
+        int[] labels = new int[data.length];
+
+        for (int i = 0; i < data.length; i++) {
+            if (data[i].length != featureCount + 1) {
+                throw new IllegalArgumentException("Input data is malformed");
+            }
+            System.arraycopy(data[i], 0, features, i * featureCount, featureCount);
+            labels[i] = (int) data[i][featureCount];
+        }
+        if (event.shouldCommit()) {
+            event.target = "DataSet";
+            event.samples = data.length;
+            event.features = featureCount;
+            event.commit();
+        }
+        return new DataSet(features, labels, featureCount, outputs);
+    }
+
     /**
      * Partitions data into subsets.
      *
@@ -202,7 +247,7 @@ public class DataPrep {
         } else {
             double[] oneHot = new double[outputs];
             oneHot[(int)label] = 1.0;
-            return Matrix.reshape(new Matrix(oneHot),oneHot.length, 1);
+            return Matrix.view(oneHot, 0, oneHot.length, 1);
         }
     }
 
@@ -213,9 +258,26 @@ public class DataPrep {
      * @return the original array with the rows shuffled.
      */
     public static double[][] shuffleData(double[][] data) {
-        List<double[]> toList = Arrays.asList(data);
-        Collections.shuffle(toList);
-        return toList.toArray(new double[0][0]);
+        return shuffleData(data, new SplittableRandom());
+    }
+
+    /**
+     * Shuffles rows in a 2d array in place (Fisher-Yates); only the row
+     * references move. The same generator state gives the same order (see
+     * RandomSource).
+     *
+     * @param data a 2d array.
+     * @param random the generator the order is drawn from.
+     * @return the original array with the rows shuffled.
+     */
+    public static double[][] shuffleData(double[][] data, RandomGenerator random) {
+        for (int i = data.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double[] swap = data[i];
+            data[i] = data[j];
+            data[j] = swap;
+        }
+        return data;
     }
 
     /**
@@ -0,0 +1,49 @@
+package utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for loading and packing data (see
+ * neuralnetwork.NetworkEvents for how to record them).
+ *
+ * @author Joseph Adamson
+ */
+final class DataPrepEvents {
+
+    private DataPrepEvents() {
+    }
+
+    @Name("quickdraw.DataLoad")
+    @Label("Data Load")
+    @Category({"Quick, Draw!", "Data"})
+    @Description("Deserialization of a packed .dat file")
+    static final class Load extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Samples")
+        int samples;
+    }
+
+    @Name("quickdraw.DataPack")
+    @Label("Data Pack")
+    @Category({"Quick, Draw!", "Data"})
+    @Description("Packing of samples into a .dat file or a DataSet")
+    static final class Pack extends Event {
+
+        @Label("Target")
+        @Description("The .dat file written, or DataSet")
+        String target;
+
+        @Label("Samples")
+        int samples;
+
+        @Label("Features")
+        int features;
+    }
+}
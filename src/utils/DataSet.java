@@ -0,0 +1,117 @@
+package utils;
+
+/**
+ * <pre>
+ * A packed set of (feature, label) annotations. The features of every sample
+ * are stored back to back in one contiguous array and the labels are kept as
+ * plain class indices; E.g. three 784 pixel samples are stored as
+ *
+ *   features: [x0(0) ... x0(783), x1(0) ... x1(783), x2(0) ... x2(783)]
+ *   labels:   [2, 0, 4]
+ *
+ * Feature matrices handed to the network are views (see Matrix.view()) into
+ * the shared array and labels stay class indices throughout (see
+ * getLabel()), so no per-sample copies are made.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class DataSet {
+
+    /**
+     * Features of every sample, stored back to back.
+     */
+    private final double[] features;
+
+    /**
+     * Class index of every sample.
+     */
+    private final int[] labels;
+
+    /**
+     * The number of features per sample (E.g. 784 pixels).
+     */
+    private final int featureCount;
+
+    /**
+     * The number of classes a label can take.
+     */
+    private final int outputs;
+
+    /**
+     * Constructs a data set over already packed features and labels; neither
+     * array is copied.
+     *
+     * @param features features of every sample, stored back to back.
+     * @param labels class index of every sample.
+     * @param featureCount the number of features per sample.
+     * @param outputs the number of classes a label can take.
+     */
+    public DataSet(double[] features, int[] labels, int featureCount, int outputs) {
+        if (featureCount < 1 || features.length != labels.length * featureCount) {
+            throw new IllegalArgumentException("Features do not match the " +
+                    "number of labels");
+        }
+        for (int label : labels) {
+            if (label < 0 || label >= outputs) {
+                throw new IllegalArgumentException("label must be between 0 " +
+                        "and the provided outputs");
+            }
+        }
+        this.features = features;
+        this.labels = labels;
+        this.featureCount = featureCount;
+        this.outputs = outputs;
+    }
+
+    /**
+     * @return the number of samples in the set.
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * @return the number of features per sample.
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * @return the number of classes a label can take.
+     */
+    public int getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * @return the shared array holding the features of every sample.
+     */
+    public double[] getFeatureData() {
+        return features;
+    }
+
+    /**
+     * @return the class index of every sample.
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param i sample index.
+     * @return the class index of sample i.
+     */
+    public int getLabel(int i) {
+        return labels[i];
+    }
+
+    /**
+     * @param i sample index.
+     * @return a (featureCount x 1) column matrix viewing the features of sample i.
+     */
+    public Matrix getFeatures(int i) {
+        return Matrix.view(features, i * featureCount, featureCount, 1);
+    }
+}
@@ -0,0 +1,235 @@
+package utils;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * <pre>
+ * The order an epoch visits a data set's samples in, kept as a permutation
+ * of sample indices; shuffling moves ints, never the samples themselves:
+ *
+ *   EpochSampler sampler = new EpochSampler(training.size());
+ *   for (int epoch = 0; epoch < epochs; epoch++) {
+ *       int[] order = sampler.shuffle(random.stream(epoch));
+ *       for (int start = 0; start + batchSize <= order.length; start += batchSize) {
+ *           DataSet batch = sampler.gather(training, start, start + batchSize);
+ *           ...
+ *       }
+ *   }
+ *
+ * A stratified sampler (constructed from the labels) spreads every class
+ * evenly through the order, so each mini-batch holds the classes in about
+ * the proportions of the whole set. Each class's samples are shuffled
+ * among themselves, then the classes are interleaved with class c's k'th
+ * sample placed at (k + u) / count(c) along the order, u drawn once per
+ * class and epoch; O(samples x classes) per shuffle.
+ *
+ * The next order depends only on the current one and the generator, so the
+ * same seed gives the same orders every run, and a run restored with
+ * setOrder() continues exactly.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class EpochSampler {
+
+    /**
+     * The current order; a permutation of 0 .. size - 1.
+     */
+    private final int[] order;
+
+    /**
+     * The class of every sample and the samples of every class, in the
+     * order they appear in; null unless stratified.
+     */
+    private final int[] labels;
+    private final int[][] members;
+
+    /**
+     * Reused by gather().
+     */
+    private double[] features;
+    private int[] batchLabels;
+
+    /**
+     * Constructs a sampler visiting samples in the identity order until shuffled.
+     *
+     * @param samples the number of samples in the data set.
+     */
+    public EpochSampler(int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("samples cannot be negative");
+        }
+        this.order = identity(samples);
+        this.labels = null;
+        this.members = null;
+    }
+
+    /**
+     * Constructs a stratified sampler.
+     *
+     * @param labels the class index of every sample (E.g. DataSet.getLabels()).
+     * @param classes the number of classes a label can take.
+     */
+    public EpochSampler(int[] labels, int classes) {
+        int[] counts = new int[classes];
+        for (int label : labels) {
+            if (label < 0 || label >= classes) {
+                throw new IllegalArgumentException("label must be between 0 " +
+                        "and the provided classes");
+            }
+            counts[label]++;
+        }
+        this.order = identity(labels.length);
+        this.labels = labels.clone();
+        this.members = new int[classes][];
+        for (int c = 0; c < classes; c++) {
+            members[c] = new int[counts[c]];
+        }
+        collectMembers();
+    }
+
+    /**
+     * @return the number of samples.
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return true if every class is spread evenly through the order.
+     */
+    public boolean isStratified() {
+        return members != null;
+    }
+
+    /**
+     * @return the current order; the sampler's own array, changed by shuffle().
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Restores an order, E.g. one saved with a checkpoint.
+     *
+     * @param order a permutation of 0 .. size - 1.
+     */
+    public void setOrder(int[] order) {
+        if (order.length != this.order.length) {
+            throw new IllegalArgumentException("order has " + order.length
+                    + " samples, not " + this.order.length);
+        }
+        boolean[] seen = new boolean[order.length];
+        for (int index : order) {
+            if (index < 0 || index >= order.length || seen[index]) {
+                throw new IllegalArgumentException("order is not a permutation");
+            }
+            seen[index] = true;
+        }
+        System.arraycopy(order, 0, this.order, 0, order.length);
+        if (members != null) {
+            collectMembers();
+        }
+    }
+
+    /**
+     * Shuffles the order for the next epoch.
+     *
+     * @param random the generator the permutation is drawn from.
+     * @return the new order; the sampler's own array.
+     */
+    public int[] shuffle(RandomGenerator random) {
+        if (members == null) {
+            shuffle(order, order.length, random);
+            return order;
+        }
+        double[] phases = new double[members.length];
+        for (int c = 0; c < members.length; c++) {
+            shuffle(members[c], members[c].length, random);
+            phases[c] = random.nextDouble();
+        }
+        int[] taken = new int[members.length];
+        for (int i = 0; i < order.length; i++) {
+            // the class whose next sample falls earliest along the order.
+            int next = -1;
+            double earliest = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < members.length; c++) {
+                if (taken[c] < members[c].length) {
+                    double position = (taken[c] + phases[c]) / members[c].length;
+                    if (position < earliest) {
+                        earliest = position;
+                        next = c;
+                    }
+                }
+            }
+            order[i] = members[next][taken[next]++];
+        }
+        return order;
+    }
+
+    /**
+     * Copies samples from .. to - 1 of the order into contiguous buffers,
+     * back to back in that order.
+     *
+     * @param data the data set the order indexes.
+     * @param from the first position in the order.
+     * @param to the position after the last.
+     * @return a data set of the batch; its arrays are reused by the next
+     * gather of the same shape.
+     */
+    public DataSet gather(DataSet data, int from, int to) {
+        if (data.size() != order.length) {
+            throw new IllegalArgumentException("data has " + data.size()
+                    + " samples, not " + order.length);
+        }
+        if (from < 0 || to > order.length || from > to) {
+            throw new IllegalArgumentException("batch " + from + " .. " + to
+                    + " is outside the order");
+        }
+        int count = to - from;
+        int featureCount = data.getFeatureCount();
+        if (batchLabels == null || batchLabels.length != count
+                || features.length != count * featureCount) {
+            features = new double[count * featureCount];
+            batchLabels = new int[count];
+        }
+        double[] source = data.getFeatureData();
+        for (int j = 0; j < count; j++) {
+            int index = order[from + j];
+            System.arraycopy(source, index * featureCount, features, j * featureCount, featureCount);
+            batchLabels[j] = data.getLabel(index);
+        }
+        return new DataSet(features, batchLabels, featureCount, data.getOutputs());
+    }
+
+    private static int[] identity(int n) {
+        int[] identity = new int[n];
+        for (int i = 0; i < n; i++) {
+            identity[i] = i;
+        }
+        return identity;
+    }
+
+    /**
+     * Fills the samples of every class in the order they appear in.
+     */
+    private void collectMembers() {
+        int[] filled = new int[members.length];
+        for (int index : order) {
+            int c = labels[index];
+            members[c][filled[c]++] = index;
+        }
+    }
+
+    /**
+     * Shuffles the first length elements of an array in place (Fisher-Yates).
+     */
+    private static void shuffle(int[] array, int length, RandomGenerator random) {
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package utils;
+
+/**
+ * <pre>
+ * Single precision counterpart of Matrix. Elements are stored row by row in a
+ * flat float array, so a FloatMatrix takes half the memory (and half the
+ * memory traffic) of a Matrix of the same dimensions. Only the operations the
+ * network needs are provided, each mirroring its Matrix equivalent.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class FloatMatrix {
+
+    /**
+     * Elementwise float function; avoids boxing every element through
+     * Function&lt;Float, Float&gt;.
+     */
+    @FunctionalInterface
+    public interface FloatFunction {
+        float apply(float x);
+    }
+
+    /**
+     * Single precision versions of the network's default activation function
+     * and its derivative.
+     */
+    public static final FloatFunction SIGMOID = (x) -> 1f / (1f + (float) Math.exp(-x));
+    public static final FloatFunction SIGMOIDPRIME = (x) -> {
+        float s = 1f / (1f + (float) Math.exp(-x));
+        return s * (1f - s);
+    };
+
+    /**
+     * The dimensions of a matrix object.
+     */
+    private final int rows, cols;
+
+    /**
+     * Matrix elements stored row by row; element [i][j] lives at data[i * cols + j].
+     */
+    private final float[] data;
+
+    /**
+     * Constructs a new matrix of the specified dimensions, where all
+     * elements are zero.
+     *
+     * @param rows number of specified rows for the matrix.
+     * @param cols number of specified columns for the matrix.
+     */
+    public FloatMatrix(int rows, int cols) {
+        if (rows < 0 || cols < 0) {
+            throw new NegativeArraySizeException("A matrix cannot have" +
+                    " negative dimensions.");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.data = new float[rows * cols];
+    }
+
+    /**
+     * Constructs a single precision copy of a double precision matrix.
+     *
+     * @param A a matrix object.
+     */
+    public FloatMatrix(Matrix A) {
+        this(A.getRows(), A.getCols());
+        double[] backing = A.getBacking();
+        int offset = A.getOffset();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (float) backing[offset + i];
+        }
+    }
+
+    /**
+     * @return number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return the array the elements are stored in.
+     */
+    public float[] getBacking() {
+        return data;
+    }
+
+    /**
+     * @param i row index.
+     * @param j column index.
+     * @return element [i][j].
+     */
+    public float get(int i, int j) {
+        return data[i * cols + j];
+    }
+
+    /**
+     * @param i row index.
+     * @param j column index.
+     * @param value new value for element [i][j].
+     */
+    public void set(int i, int j, float value) {
+        data[i * cols + j] = value;
+    }
+
+    /**
+     * @return a double precision copy of the matrix.
+     */
+    public Matrix toMatrix() {
+        Matrix result = new Matrix(rows, cols);
+        double[] backing = result.getBacking();
+        for (int i = 0; i < data.length; i++) {
+            backing[i] = data[i];
+        }
+        return result;
+    }
+
+    /**
+     * Copies a double precision matrix's elements into A; the dimensions
+     * must match.
+     *
+     * @param A destination matrix.
+     * @param B source matrix.
+     */
+    public static void copy(FloatMatrix A, Matrix B) {
+        checkDimensions(A, B.getRows(), B.getCols(), "copy");
+        copy(A, B.getBacking(), B.getOffset());
+    }
+
+    /**
+     * Copies A's size worth of doubles, from values[offset] on, into A.
+     *
+     * @param A destination matrix.
+     * @param values array holding the source elements, row by row.
+     * @param offset index of the first source element.
+     */
+    public static void copy(FloatMatrix A, double[] values, int offset) {
+        if (offset < 0 || offset > values.length - A.data.length) {
+            throw new IllegalArgumentException("Source array is too short for copy.");
+        }
+        for (int i = 0; i < A.data.length; i++) {
+            A.data[i] = (float) values[offset + i];
+        }
+    }
+
+    /**
+     * Elementwise addition of matrices A and B.
+     *
+     * @param A a matrix object.
+     * @param B a matrix object.
+     * @return the sum of matrix A and B.
+     */
+    public static FloatMatrix add(FloatMatrix A, FloatMatrix B) {
+        checkDimensions(A, B.rows, B.cols, "add");
+        FloatMatrix result = new FloatMatrix(A.rows, A.cols);
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[i] + B.data[i];
+        }
+        return result;
+    }
+
+    /**
+     * Elementwise subtraction of matrices A and B.
+     *
+     * @param A a matrix object.
+     * @param B a matrix object.
+     * @return A - B.
+     */
+    public static FloatMatrix subtract(FloatMatrix A, FloatMatrix B) {
+        checkDimensions(A, B.rows, B.cols, "subtract");
+        FloatMatrix result = new FloatMatrix(A.rows, A.cols);
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[i] - B.data[i];
+        }
+        return result;
+    }
+
+    /**
+     * Dot product multiplication of A and B.
+     *
+     * @param A a matrix object.
+     * @param B a matrix object.
+     * @return a new matrix where each element is the dot product of row
+     * i in matrix A and col i in matrix B.
+     */
+    public static FloatMatrix dotProduct(FloatMatrix A, FloatMatrix B) {
+        if (A.cols != B.rows) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for multiplication.");
+        }
+        FloatMatrix result = new FloatMatrix(A.rows, B.cols);
+        if (B.cols == 1) {
+
+            // matrix . column vector (the forward pass); a plain running sum
+            // per row keeps the accumulator in a register.
+            for (int i = 0; i < A.rows; i++) {
+                int aRow = i * A.cols;
+                float elementSum = 0f;
+                for (int k = 0; k < A.cols; k++) {
+                    elementSum += A.data[aRow + k] * B.data[k];
+                }
+                result.data[i] = elementSum;
+            }
+            return result;
+        }
+        for (int i = 0; i < A.rows; i++) {
+            int aRow = i * A.cols;
+            int resultRow = i * result.cols;
+
+            // accumulate row i of the result one row of B at a time so both
+            // B and the result are walked sequentially.
+            for (int k = 0; k < A.cols; k++) {
+                float a = A.data[aRow + k];
+                int bRow = k * B.cols;
+                for (int j = 0; j < B.cols; j++) {
+                    result.data[resultRow + j] += a * B.data[bRow + j];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds column vector b to every column of A.
+     *
+     * @param A a (rows x n) matrix object.
+     * @param b a (rows x 1) column matrix.
+     * @return a matrix where each element is A[i][j] + b[i][0].
+     */
+    public static FloatMatrix addToColumns(FloatMatrix A, FloatMatrix b) {
+        if (A.rows != b.rows || b.cols != 1) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for add operation.");
+        }
+        FloatMatrix result = new FloatMatrix(A.rows, A.cols);
+        for (int i = 0; i < A.rows; i++) {
+            float bias = b.data[i];
+            for (int j = 0; j < A.cols; j++) {
+                result.data[i * A.cols + j] = A.data[i * A.cols + j] + bias;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fused dense layer; z = W . a + b and, if f is given, out = f(z),
+     * computed in a single pass over W into preallocated matrices. Rows are
+     * computed four at a time, each summed in the same order as dotProduct.
+     *
+     * @param W an (n x m) weight matrix.
+     * @param a an (m x 1) column matrix of inputs.
+     * @param b an (n x 1) column matrix of biases.
+     * @param f an activation function, or null to only compute z.
+     * @param z an (n x 1) column matrix receiving the weighted inputs.
+     * @param out an (n x 1) column matrix receiving the activations; may be z.
+     */
+    public static void dense(FloatMatrix W, FloatMatrix a, FloatMatrix b, FloatFunction f,
+                             FloatMatrix z, FloatMatrix out) {
+        if (W.cols != a.rows || a.cols != 1 || !isColumn(b, W.rows) || !isColumn(z, W.rows)
+                || (f != null && !isColumn(out, W.rows))) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for dense operation.");
+        }
+        int cols = W.cols;
+        int i = 0;
+        for (; i + 4 <= W.rows; i += 4) {
+            int r0 = i * cols, r1 = r0 + cols, r2 = r1 + cols, r3 = r2 + cols;
+            float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+            for (int k = 0; k < cols; k++) {
+                float x = a.data[k];
+                s0 += W.data[r0 + k] * x;
+                s1 += W.data[r1 + k] * x;
+                s2 += W.data[r2 + k] * x;
+                s3 += W.data[r3 + k] * x;
+            }
+            store(s0 + b.data[i], i, f, z, out);
+            store(s1 + b.data[i + 1], i + 1, f, z, out);
+            store(s2 + b.data[i + 2], i + 2, f, z, out);
+            store(s3 + b.data[i + 3], i + 3, f, z, out);
+        }
+        for (; i < W.rows; i++) {
+            int row = i * cols;
+            float elementSum = 0f;
+            for (int k = 0; k < cols; k++) {
+                elementSum += W.data[row + k] * a.data[k];
+            }
+            store(elementSum + b.data[i], i, f, z, out);
+        }
+    }
+
+    private static void store(float value, int i, FloatFunction f, FloatMatrix z, FloatMatrix out) {
+        z.data[i] = value;
+        if (f != null) {
+            out.data[i] = f.apply(value);
+        }
+    }
+
+    private static boolean isColumn(FloatMatrix A, int rows) {
+        return A != null && A.rows == rows && A.cols == 1;
+    }
+
+    /**
+     * Hadamard product multiplication of matrix A and B
+     * (elementwise multiplication).
+     *
+     * @param A a matrix object.
+     * @param B a matrix object.
+     * @return the Hadamard product of A and B.
+     */
+    public static FloatMatrix hadamardProduct(FloatMatrix A, FloatMatrix B) {
+        checkDimensions(A, B.rows, B.cols, "multiplication");
+        FloatMatrix result = new FloatMatrix(A.rows, A.cols);
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[i] * B.data[i];
+        }
+        return result;
+    }
+
+    /**
+     * Elementwise multiplication with a scalar number.
+     *
+     * @param A a matrix object.
+     * @param x the scalar number you want to multiply each element in A by.
+     * @return a matrix where each element is A[i][j] * x
+     */
+    public static FloatMatrix multiply(FloatMatrix A, float x) {
+        FloatMatrix result = new FloatMatrix(A.rows, A.cols);
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[i] * x;
+        }
+        return result;
+    }
+
+    /**
+     * In place A = A + (B * x); used to accumulate and apply updates without
+     * allocating.
+     *
+     * @param A the matrix to be updated.
+     * @param B a matrix object.
+     * @param x scalar applied to B.
+     */
+    public static void addScaled(FloatMatrix A, FloatMatrix B, float x) {
+        checkDimensions(A, B.rows, B.cols, "add");
+        for (int i = 0; i < A.data.length; i++) {
+            A.data[i] += B.data[i] * x;
+        }
+    }
+
+    /**
+     * Transposes matrix A.
+     *
+     * @param A the matrix to be transposed.
+     * @return A transposed.
+     */
+    public static FloatMatrix transpose(FloatMatrix A) {
+        FloatMatrix result = new FloatMatrix(A.cols, A.rows);
+        for (int i = 0; i < result.rows; i++) {
+            for (int j = 0; j < result.cols; j++) {
+                result.data[i * result.cols + j] = A.data[j * A.cols + i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Elementwise mapping of a function to A.
+     *
+     * @param f an activation function.
+     * @param A a matrix object.
+     * @return a matrix where each element is f(A[i][j]).
+     */
+    public static FloatMatrix map(FloatFunction f, FloatMatrix A) {
+        FloatMatrix result = new FloatMatrix(A.rows, A.cols);
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = f.apply(A.data[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the row containing the greatest value
+     * in a given matrix.
+     *
+     * @param A a matrix object
+     * @return an integer corresponding to a row index.
+     */
+    public static int argMaxRow(FloatMatrix A) {
+        int maxIndex = 0;
+        for (int i = 1; i < A.data.length; i++) {
+            if (A.data[i] > A.data[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex / A.cols;
+    }
+
+    /**
+     * Computes the sum of all elements in matrix A
+     *
+     * @param A a matrix object.
+     * @return the sum of all elements in A
+     */
+    public static double sum(FloatMatrix A) {
+        double sum = 0;
+        for (float element : A.data) {
+            sum += element;
+        }
+        return sum;
+    }
+
+    private static void checkDimensions(FloatMatrix A, int rows, int cols, String operation) {
+        if (A.rows != rows || A.cols != cols) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for " + operation + " operation.");
+        }
+    }
+}
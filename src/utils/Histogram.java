@@ -0,0 +1,132 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * Thread-safe histogram of non negative long values (E.g. latencies in
+ * nanoseconds), bucketed log-linearly in the manner of HdrHistogram:
+ *
+ *   values below 128 get a bucket each,
+ *   above that every power of two is split into 64 equal buckets,
+ *
+ * so any value is known to within 1/64 (1.6%) of itself, across the whole
+ * range of long, in a fixed 3712 buckets (29KB).
+ *
+ * Recording is a couple of atomic increments; it never allocates or locks,
+ * so it is cheap enough for inference hot paths. Percentiles are computed
+ * when asked for, from the counts at that moment.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class Histogram {
+
+    /**
+     * Significant bits kept per value; buckets per power of two is half of
+     * 2^SUB_BITS.
+     */
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF = SUB_COUNT / 2;
+    private static final int BUCKETS = (Long.SIZE - 1 - SUB_BITS) * HALF + SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value the value to record; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @return the bucket holding value.
+     */
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that falls in bucket index.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long sub = index % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of the values recorded.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if none were.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if none were.
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * @param percentile a value between 0 and 100.
+     * @return a value at least as large as the given percentage of the
+     * values recorded (and within 1.6% of the exact percentile), or 0 if
+     * nothing has been recorded.
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
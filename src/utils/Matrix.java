@@ -1,7 +1,13 @@
 package utils;
  
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.DoubleUnaryOperator;
+import java.util.random.RandomGenerator;
 import java.util.function.Function;
 
 /**
@@ -9,13 +15,17 @@ import java.util.function.Function;
  * Minimal matrix library supplying basic operations to be used in 
  * conjunction with my NeuralNetwork.Network class. Contains overloaded methods for 
  * each operation with different parameters (scalar, elementwise etc.) 
- * The indices of a matrix object's elements are zero indexed as it uses
- * a 2d array to internally store its data.
+ * The indices of a matrix object's elements are zero indexed; internally the
+ * elements are stored row by row in a single flat array.
  *
- * E.g. a 3 x 4 matrix would be represented as a traditional 2d array:
+ * E.g. a 3 x 4 matrix
  * [[0, 1, 0, 1]
  *  [1, 1, 0, 0]
  *  [0, 0, 1, 0]]
+ * is stored as [0, 1, 0, 1, 1, 1, 0, 0, 0, 0, 1, 0].
+ *
+ * Because of this a matrix can also be a 'view'; a window of rows x cols
+ * elements starting at some offset into a larger, shared array (see view()).
  * </pre>
  *
  * @author Joseph Adamson
@@ -23,15 +33,36 @@ import java.util.function.Function;
  */
 public class Matrix implements Serializable {
 
+    /**
+     * Pinned to the value of the original 2d array based class so previously
+     * serialized networks (e.g. data/networkModel.dat) can still be loaded.
+     */
+    private static final long serialVersionUID = 580341706844914249L;
+
+    /**
+     * The serialized form is kept as it always was; (cols, rows, double[][] data).
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("cols", int.class),
+            new ObjectStreamField("rows", int.class),
+            new ObjectStreamField("data", double[][].class)
+    };
+
     /**
      * The dimensions of a matrix object.
      */
-    private final int rows, cols;
+    private int rows, cols;
+
+    /**
+     * Matrix elements are stored row by row in a flat array; element [i][j]
+     * lives at data[offset + i * cols + j].
+     */
+    private transient double[] data;
 
     /**
-     * Matrix elements are stored in a 2d array.
+     * Index of the first element of the matrix in data; non zero for views.
      */
-    private final double[][] data;
+    private transient int offset;
 
     /**
      * Tolerance used for determining the equality of two
@@ -54,12 +85,10 @@ public class Matrix implements Serializable {
                 throw new IllegalArgumentException("Input data is malformed");
             }
         }
-        this.data = new double[rows][cols];
+        this.data = new double[rows * cols];
 
         for (int i = 0; i < this.rows; i++) {
-            for (int j = 0; j < this.cols; j++) {
-                this.data[i][j] = inputData[i][j];
-            }
+            System.arraycopy(inputData[i], 0, this.data, i * cols, cols);
         }
     }
 
@@ -71,11 +100,7 @@ public class Matrix implements Serializable {
     public Matrix(double[] inputData) {
         this.rows = 1;
         this.cols = inputData.length;
-        this.data = new double[rows][cols];
-
-        for (int i = 0; i < inputData.length; i++) {
-            this.data[0][i] = inputData[i];
-        }
+        this.data = inputData.clone();
     }
 
     /**
@@ -92,7 +117,7 @@ public class Matrix implements Serializable {
         } else {
             this.rows = rows;
             this.cols = cols;
-            this.data = new double[rows][cols];
+            this.data = new double[rows * cols];
         }
     }
 
@@ -105,6 +130,41 @@ public class Matrix implements Serializable {
         this.rows = toClone.rows;
         this.cols = toClone.cols;
         this.data = toClone.data;
+        this.offset = toClone.offset;
+    }
+
+    /**
+     * Constructs a matrix that reads and writes straight through to the
+     * backing array; nothing is copied.
+     */
+    private Matrix(double[] backing, int offset, int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = backing;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns a rows x cols matrix 'view' over a shared array; element [i][j]
+     * of the view is backing[offset + i * cols + j]. Used to treat a slice of
+     * a large contiguous array (E.g. one image in a packed data set) as a
+     * matrix without copying it.
+     *
+     * @param backing the shared array.
+     * @param offset index of the view's first element in backing.
+     * @param rows number of rows for the view.
+     * @param cols number of columns for the view.
+     * @return a matrix sharing its elements with backing.
+     */
+    public static Matrix view(double[] backing, int offset, int rows, int cols) {
+        if (rows < 0 || cols < 0) {
+            throw new NegativeArraySizeException("A matrix cannot have" +
+                    " negative dimensions.");
+        } else if (offset < 0 || offset + rows * cols > backing.length) {
+            throw new IllegalArgumentException("View does not fit inside the " +
+                    "backing array.");
+        }
+        return new Matrix(backing, offset, rows, cols);
     }
 
     /**
@@ -122,11 +182,51 @@ public class Matrix implements Serializable {
     }
 
     /**
-     * @return internal data of the matrix.
+     * Copies the matrix's elements out. They are stored in one flat array,
+     * not a 2d array, so writing to the result leaves the matrix unchanged;
+     * use set() to change an element, or getBacking() for the storage itself.
+     *
+     * @return a new rows x cols array holding the matrix's elements.
      */
     public double[][] getData() {
+        double[][] result = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(data, offset + i * cols, result[i], 0, cols);
+        }
+        return result;
+    }
+
+    /**
+     * @return the (possibly shared) array the elements are stored in.
+     */
+    public double[] getBacking() {
         return data;
     }
+
+    /**
+     * @return index of element [0][0] in the backing array.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @param i row index.
+     * @param j column index.
+     * @return element [i][j].
+     */
+    public double get(int i, int j) {
+        return data[offset + i * cols + j];
+    }
+
+    /**
+     * @param i row index.
+     * @param j column index.
+     * @param value new value for element [i][j].
+     */
+    public void set(int i, int j, double value) {
+        data[offset + i * cols + j] = value;
+    }
     
     /**
      * Returns a new matrix (rows x cols) of randomly generated values.
@@ -136,19 +236,27 @@ public class Matrix implements Serializable {
      * @return a new rows x cols matrix.
      */
     public static Matrix randomize(int rows, int cols) {
+        return randomize(rows, cols, new SplittableRandom());
+    }
+
+    /**
+     * Returns a new matrix (rows x cols) of values drawn from rand.
+     *
+     * @param rows number of specified rows for the matrix.
+     * @param cols number of specified columns for the matrix.
+     * @param rand the generator the values are drawn from.
+     * @return a new rows x cols matrix.
+     */
+    public static Matrix randomize(int rows, int cols, RandomGenerator rand) {
         if (rows < 0 || cols < 0 ) {
             throw new NegativeArraySizeException("A matrix cannot have" +
                     " negative dimensions.");
         } else {
-            Random rand = new Random();
-
             Matrix product = new Matrix(rows, cols);
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
+            for (int i = 0; i < product.data.length; i++) {
 
-                    // Values between initialised between -1 and 1.
-                    product.data[i][j] = (1 - (-1)) * rand.nextDouble() + (-1);
-                }
+                // Values between initialised between -1 and 1.
+                product.data[i] = (1 - (-1)) * rand.nextDouble() + (-1);
             }
             return product;
         }
@@ -174,21 +282,10 @@ public class Matrix implements Serializable {
             throw new NegativeArraySizeException("A matrix cannot have" +
                     " negative dimensions.");
         } else {
+            // elements are already stored row by row, so the new matrix
+            // is simply a copy of A's elements.
             final Matrix result = new Matrix(rows, cols);
-
-            int newRow = 0;
-            int newCol = 0;
-            for (int i = 0; i < A.data.length; i++) {
-                for (int j = 0; j < A.data[i].length; j++) {
-                    result.data[newRow][newCol] = A.data[i][j];
-                    newCol++;
-
-                    if (newCol == cols) {
-                        newCol = 0;
-                        newRow++;
-                    }
-                }
-            }
+            System.arraycopy(A.data, A.offset, result.data, 0, totalElements);
             return result;
         }
     }
@@ -206,15 +303,32 @@ public class Matrix implements Serializable {
                     "corresponding dimensions for add operation.");
         } else {
             Matrix result = new Matrix(A.rows, A.cols);
-            for (int i = 0; i < A.rows; i++) {
-                for (int j = 0; j < A.cols; j++) {
-                    result.data[i][j] = A.data[i][j] + B.data[i][j];
-                }
+            for (int i = 0; i < result.data.length; i++) {
+                result.data[i] = A.data[A.offset + i] + B.data[B.offset + i];
             }
             return result;
         }
     }
 
+    /**
+     * In place A = A + (B * x); used to accumulate gradients without
+     * allocating.
+     *
+     * @param A the matrix to be updated.
+     * @param B a matrix object.
+     * @param x scalar applied to B.
+     */
+    public static void addScaled(Matrix A, Matrix B, double x) {
+        if (A.rows != B.rows || A.cols != B.cols) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for add operation.");
+        }
+        int length = A.rows * A.cols;
+        for (int i = 0; i < length; i++) {
+            A.data[A.offset + i] += B.data[B.offset + i] * x;
+        }
+    }
+
     /**
      * Elementwise addition with a scalar number.
      *
@@ -224,10 +338,8 @@ public class Matrix implements Serializable {
      */
     public static Matrix add(Matrix A, double x) {
         Matrix result = new Matrix(A.rows, A.cols);
-        for (int i = 0; i < A.rows; i++) {
-            for (int j = 0; j < A.cols; j++) {
-                result.data[i][j] = A.data[i][j] += x;
-            }
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[A.offset + i] += x;
         }
         return result;
     }
@@ -245,10 +357,8 @@ public class Matrix implements Serializable {
                     "corresponding dimensions for subtract operation.");
         } else {
             Matrix result = new Matrix(A.rows, A.cols);
-            for (int i = 0; i < A.rows; i++) {
-                for (int j = 0; j < A.cols; j++) {
-                    result.data[i][j] = A.data[i][j] - B.data[i][j];
-                }
+            for (int i = 0; i < result.data.length; i++) {
+                result.data[i] = A.data[A.offset + i] - B.data[B.offset + i];
             }
             return result;
         }
@@ -262,10 +372,8 @@ public class Matrix implements Serializable {
      */
     public static Matrix subtract(Matrix A, double x) {
         Matrix result = new Matrix(A.rows, A.cols);
-        for (int i = 0; i < A.rows; i++) {
-            for (int j = 0; j < A.cols; j++) {
-                result.data[i][j] = A.data[i][j]  -= x;
-            }
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[A.offset + i]  -= x;
         }
         return result;
     }
@@ -287,25 +395,177 @@ public class Matrix implements Serializable {
                     "corresponding dimensions for multiplication.");
         } else {
             Matrix result = new Matrix(A.rows, B.cols);
-            for (int i = 0; i < result.rows; i++) {
-                for (int j = 0; j < result.cols; j++) {
+            if (B.cols == 1) {
 
+                // matrix . column vector (the forward pass); each element is
+                // a single running sum over a row of A.
+                for (int i = 0; i < result.rows; i++) {
+                    int aRow = A.offset + i * A.cols;
                     double elementSum = 0;
-                    
-                    // Each element in a given row of matrix A is multiplied elementwise
-                    // with the corresponding element in a given column in matrix B.
-                    // The result for [i][j] in our new array is the dot product of all
-                    // the row spots of the column in A and all the column spots in B.
                     for (int k = 0; k < A.cols; k++) {
-                        elementSum += (A.data[i][k] * B.data[k][j]);
+                        elementSum += A.data[aRow + k] * B.data[B.offset + k];
+                    }
+                    result.data[i] = elementSum;
+                }
+                return result;
+            }
+            for (int i = 0; i < result.rows; i++) {
+                int aRow = A.offset + i * A.cols;
+                int resultRow = i * result.cols;
+                
+                // Each element in a given row of matrix A is multiplied elementwise
+                // with the corresponding element in a given column in matrix B.
+                // Rather than walking down B's columns, row i of the result is
+                // built up one row of B at a time so every array is read in order;
+                // each element still sums its terms in the same (k) order.
+                for (int k = 0; k < A.cols; k++) {
+                    double a = A.data[aRow + k];
+                    int bRow = B.offset + k * B.cols;
+                    for (int j = 0; j < result.cols; j++) {
+                        result.data[resultRow + j] += a * B.data[bRow + j];
                     }
-                    result.data[i][j] = elementSum;
                 }
             }
             return result;
         }
     }
 
+    /**
+     * Adds column vector b to every column of A; used to add a layer's biases
+     * to a whole batch of weighted inputs at once.
+     *
+     * @param A a (rows x n) matrix object.
+     * @param b a (rows x 1) column matrix.
+     * @return a matrix where each element is A[i][j] + b[i][0].
+     */
+    public static Matrix addToColumns(Matrix A, Matrix b) {
+        if (A.rows != b.rows || b.cols != 1) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for add operation.");
+        }
+        Matrix result = new Matrix(A.rows, A.cols);
+        for (int i = 0; i < A.rows; i++) {
+            double bias = b.data[b.offset + i];
+            int row = i * A.cols;
+            for (int j = 0; j < A.cols; j++) {
+                result.data[row + j] = A.data[A.offset + row + j] + bias;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Elementwise, in place mapping of a primitive function to A; avoids
+     * boxing every element through Function&lt;Double, Double&gt;.
+     *
+     * @param f a function.
+     * @param A a matrix object; each element is replaced by f(A[i][j]).
+     */
+    public static void mapInPlace(DoubleUnaryOperator f, Matrix A) {
+        int end = A.offset + A.rows * A.cols;
+        for (int i = A.offset; i < end; i++) {
+            A.data[i] = f.applyAsDouble(A.data[i]);
+        }
+    }
+
+    /**
+     * Fused dense layer; z = W . a + b, computed in a single pass over W and
+     * written into a preallocated matrix.
+     *
+     * @param W an (n x m) weight matrix.
+     * @param a an (m x 1) column matrix of inputs.
+     * @param b an (n x 1) column matrix of biases.
+     * @param z an (n x 1) column matrix receiving the weighted inputs.
+     */
+    public static void dense(Matrix W, Matrix a, Matrix b, Matrix z) {
+        dense(W, a, b, null, z, null);
+    }
+
+    /**
+     * Fused dense layer; z = W . a + b and out = f(z), computed in a single
+     * pass over W (each element of out is written as soon as its weighted
+     * input is finished) into preallocated matrices.
+     *
+     * Rows are computed four at a time, so four independent sums are in
+     * flight and each input is loaded once per four rows; each row is still
+     * summed in the same order as dotProduct, so the results are identical
+     * to map(f, add(dotProduct(W, a), b)).
+     *
+     * @param W an (n x m) weight matrix.
+     * @param a an (m x 1) column matrix of inputs.
+     * @param b an (n x 1) column matrix of biases.
+     * @param f an activation function, or null to only compute z.
+     * @param z an (n x 1) column matrix receiving the weighted inputs.
+     * @param out an (n x 1) column matrix receiving the activations; may be z
+     *            itself when the weighted inputs are not needed afterwards.
+     */
+    public static void dense(Matrix W, Matrix a, Matrix b, DoubleUnaryOperator f,
+                             Matrix z, Matrix out) {
+        if (W.cols != a.rows || a.cols != 1) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for dense operation.");
+        }
+        dense(W, a.data, a.offset, b, f, z, out);
+    }
+
+    /**
+     * As dense(W, a, b, f, z, out), reading the inputs straight from an
+     * array; E.g. a sample's features in a packed data set, without
+     * allocating a view of them.
+     *
+     * @param W an (n x m) weight matrix.
+     * @param inputs array holding the m inputs back to back.
+     * @param offset index of the first input.
+     * @param b an (n x 1) column matrix of biases.
+     * @param f an activation function, or null to only compute z.
+     * @param z an (n x 1) column matrix receiving the weighted inputs.
+     * @param out an (n x 1) column matrix receiving the activations; may be z.
+     */
+    public static void dense(Matrix W, double[] inputs, int offset, Matrix b,
+                             DoubleUnaryOperator f, Matrix z, Matrix out) {
+        if (offset < 0 || offset > inputs.length - W.cols || !isColumn(b, W.rows)
+                || !isColumn(z, W.rows) || (f != null && !isColumn(out, W.rows))) {
+            throw new IllegalArgumentException("Parameter matrices do not have " +
+                    "corresponding dimensions for dense operation.");
+        }
+        int cols = W.cols;
+        int i = 0;
+        for (; i + 4 <= W.rows; i += 4) {
+            int r0 = W.offset + i * cols, r1 = r0 + cols, r2 = r1 + cols, r3 = r2 + cols;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int k = 0; k < cols; k++) {
+                double x = inputs[offset + k];
+                s0 += W.data[r0 + k] * x;
+                s1 += W.data[r1 + k] * x;
+                s2 += W.data[r2 + k] * x;
+                s3 += W.data[r3 + k] * x;
+            }
+            store(s0 + b.data[b.offset + i], i, f, z, out);
+            store(s1 + b.data[b.offset + i + 1], i + 1, f, z, out);
+            store(s2 + b.data[b.offset + i + 2], i + 2, f, z, out);
+            store(s3 + b.data[b.offset + i + 3], i + 3, f, z, out);
+        }
+        for (; i < W.rows; i++) {
+            int row = W.offset + i * cols;
+            double elementSum = 0;
+            for (int k = 0; k < cols; k++) {
+                elementSum += W.data[row + k] * inputs[offset + k];
+            }
+            store(elementSum + b.data[b.offset + i], i, f, z, out);
+        }
+    }
+
+    private static void store(double value, int i, DoubleUnaryOperator f, Matrix z, Matrix out) {
+        z.data[z.offset + i] = value;
+        if (f != null) {
+            out.data[out.offset + i] = f.applyAsDouble(value);
+        }
+    }
+
+    private static boolean isColumn(Matrix A, int rows) {
+        return A != null && A.rows == rows && A.cols == 1;
+    }
+
     /**
      * Hadamard product multiplication of matrix A and B 
      * (elementwise multiplication). 
@@ -320,10 +580,8 @@ public class Matrix implements Serializable {
                     "corresponding dimensions for multiplication.");
         } else {
             Matrix result = new Matrix(A.rows, B.cols);
-            for (int i = 0; i < A.rows; i++) {
-                for (int j = 0; j < A.cols; j++) {
-                    result.data[i][j] = A.data[i][j] *= B.data[i][j];
-                }
+            for (int i = 0; i < result.data.length; i++) {
+                result.data[i] = A.data[A.offset + i] *= B.data[B.offset + i];
             }
             return result;
         }
@@ -338,10 +596,8 @@ public class Matrix implements Serializable {
      */
     public static Matrix multiply(Matrix A, double x) {
         Matrix result = new Matrix(A.rows, A.cols);
-        for (int i = 0; i < A.rows; i++) {
-            for (int j = 0; j < A.cols; j++) {
-                result.data[i][j] = A.data[i][j] *= x;
-            }
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = A.data[A.offset + i] *= x;
         }
         return result;
     }
@@ -358,7 +614,7 @@ public class Matrix implements Serializable {
         Matrix result = new Matrix(A.cols, A.rows);
         for (int i = 0; i < result.rows; i++) {
             for (int j = 0; j < result.cols; j++) {
-                result.data[i][j] = A.data[j][i];
+                result.data[i * result.cols + j] = A.data[A.offset + j * A.cols + i];
             }
         }
         return result;
@@ -373,13 +629,13 @@ public class Matrix implements Serializable {
      */
     public static int argMaxRow(Matrix A) {
         int maxRow = 0;
-        double maxVal = A.data[0][0];
+        double maxVal = A.data[A.offset];
         
         for (int i = 0; i < A.rows; i++) {
            for (int j = 0; j < A.cols; j++) {
                
-               if (A.data[i][j] > maxVal) {
-                   maxVal = A.data[i][j];
+               if (A.get(i, j) > maxVal) {
+                   maxVal = A.get(i, j);
                    maxRow = i;
                }
            }
@@ -396,10 +652,9 @@ public class Matrix implements Serializable {
     public static double sum(Matrix A) {
         double sum = 0;
         
-        for (int i = 0; i < A.rows; i++) {
-            for (int j = 0; j < A.cols; j++) {
-                sum += A.data[i][j];
-            }
+        int end = A.offset + A.rows * A.cols;
+        for (int i = A.offset; i < end; i++) {
+            sum += A.data[i];
         }
         return sum;
     }
@@ -411,10 +666,8 @@ public class Matrix implements Serializable {
      */
     public static Matrix map(Function<Double, Double> f, Matrix A) {
         Matrix result = new Matrix(A.rows, A.cols);
-        for (int i = 0; i < result.rows; i++) {
-            for (int j = 0; j < result.cols; j++) {
-                result.data[i][j] = f.apply(A.data[i][j]);
-            }
+        for (int i = 0; i < result.data.length; i++) {
+            result.data[i] = f.apply(A.data[A.offset + i]);
         }
         return result;
     }
@@ -433,7 +686,7 @@ public class Matrix implements Serializable {
         } else {
             for (int i = 0; i < rows; i++) {
                 for(int j = 0; j < cols; j++) {
-                    if (Math.abs(this.data[i][j] - other.data[i][j]) > TOLERANCE) {
+                    if (Math.abs(this.get(i, j) - other.get(i, j)) > TOLERANCE) {
                         return false;
                     }
                 }
@@ -452,21 +705,21 @@ public class Matrix implements Serializable {
         StringBuilder result = new StringBuilder();
 
         result.append("[");
-        for (int i = 0; i < data.length; i++){
+        for (int i = 0; i < rows; i++){
             if (i == 0) {
                 result.append("[");
             } else {
                 result.append(" [");
             }
-            for (int j = 0; j < data[i].length; j++){
-                if (j == data[i].length - 1){
-                    if (i == data.length - 1) {
-                        result.append(data[i][j]).append("]");
+            for (int j = 0; j < cols; j++){
+                if (j == cols - 1){
+                    if (i == rows - 1) {
+                        result.append(get(i, j)).append("]");
                     } else {
-                        result.append(data[i][j]).append("]\n");
+                        result.append(get(i, j)).append("]\n");
                     }
                 } else {
-                    result.append(data[i][j]).append("\t ");
+                    result.append(get(i, j)).append("\t ");
                 }
             }
         }
@@ -474,6 +727,33 @@ public class Matrix implements Serializable {
         return result.toString();
     }
     
+    /**
+     * Writes the matrix in its original (rows, cols, double[][]) form.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("cols", cols);
+        fields.put("rows", rows);
+        fields.put("data", getData());
+        out.writeFields();
+    }
+
+    /**
+     * Reads a matrix serialized in the (rows, cols, double[][]) form and
+     * flattens its elements.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.rows = fields.get("rows", 0);
+        this.cols = fields.get("cols", 0);
+        double[][] grid = (double[][]) fields.get("data", null);
+        this.data = new double[rows * cols];
+        this.offset = 0;
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(grid[i], 0, data, i * cols, cols);
+        }
+    }
+    
     public static void main(String[] args) {
         Matrix test = new Matrix(3, 6);
         System.out.println(test);
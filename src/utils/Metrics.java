@@ -3,18 +3,52 @@ package utils;
 import org.knowm.xchart.*;
 import org.knowm.xchart.style.markers.SeriesMarkers;
 import java.awt.*;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * <pre>
  * Class provides simple plotting functions to allow output results 
  * from the models to be further analysed.
+ *
+ * Charts are displayed in Swing windows unless an exporter has been set
+ * (setExporter()), in which case they are written to files in the
+ * background instead. On a headless JVM (E.g. java.awt.headless=true on a
+ * training node) charts are always exported, by default to ./reports.
+ * </pre>
  * 
  * @author Joseph Adamson.
  */
 public class Metrics {
 
+    /**
+     * Where charts are written; null to display them.
+     */
+    private static volatile ChartExporter exporter;
+
+    /**
+     * Exporter used on a headless JVM when none has been set; created on first use.
+     */
+    private static ChartExporter headlessExporter;
+
+    /**
+     * Writes charts with exporter instead of displaying them.
+     *
+     * @param exporter the exporter charts are sent to; null to display them again.
+     */
+    public static void setExporter(ChartExporter exporter) {
+        Metrics.exporter = exporter;
+    }
+
+    /**
+     * @return the exporter charts are sent to; null if they are displayed.
+     */
+    public static ChartExporter getExporter() {
+        return exporter;
+    }
+
     /**
      * Plots a simple line graph.
      * 
@@ -23,8 +57,9 @@ public class Metrics {
      * @param yAxis title for the y axis
      * @param seriesName title for the series
      * @param yData y coordinates for the graph
+     * @return completes once the chart is written; already complete if it is displayed.
      */
-    public static void plotCrossValidationResults(String title, String xAxis, String yAxis,
+    public static CompletableFuture<Void> plotCrossValidationResults(String title, String xAxis, String yAxis,
                                                   String seriesName, double[] yData) {
 
         // Create the chart window
@@ -36,17 +71,17 @@ public class Metrics {
                 .yAxisTitle(yAxis)
                 .build();
 
-        // x axis information for the k-range (1 - 30) covered by the 
+        // x axis information for the k-range covered by the
         // kFoldCrossValidation method
-        double[] xData = new double[100];
-        for (int i = 0; i < 100; i++) {
+        double[] xData = new double[yData.length];
+        for (int i = 0; i < yData.length; i++) {
             xData[i] = i + 1;
         }
         
         chart.getStyler().setYAxisDecimalPattern("0.000");
         XYSeries series = chart.addSeries(seriesName, xData, yData);
         series.setMarker(SeriesMarkers.NONE);
-        new SwingWrapper<>(chart).displayChart();
+        return show("cross-validation", List.of(chart));
     }
 
     /**
@@ -54,8 +89,9 @@ public class Metrics {
      * 
      * @param epochs: x axis values
      * @param ySeries: a variable number of cost functions to be plotted.
+     * @return completes once the chart is written; already complete if it is displayed.
      */
-    public static void plotCostFunction(int epochs, double[][] ySeries) {
+    public static CompletableFuture<Void> plotCostFunction(int epochs, double[][] ySeries) {
 
         // getting points for the x axis.
         double[] xData = new double[epochs];
@@ -84,7 +120,7 @@ public class Metrics {
         costA2.setLineColor(Color.GREEN);
         costA2.setLineColor(Color.MAGENTA);
         charts.add(chart);
-        new SwingWrapper<>(charts).displayChartMatrix();
+        return show("cost-function", charts);
     }
 
     /**
@@ -93,8 +129,9 @@ public class Metrics {
      * 
      * @param epochs The number of passes through the full training data.
      * @param ySeries: double array containing y coordinates for the cost and accuracies.
+     * @return completes once the charts are written; already complete if they are displayed.
      */
-    public static void plotNetworkResults(int epochs, double[][] ySeries) {
+    public static CompletableFuture<Void> plotNetworkResults(int epochs, double[][] ySeries) {
 
         // getting points for the x axis.
         double[] xData = new double[epochs];
@@ -125,7 +162,37 @@ public class Metrics {
            
             charts.add(chart);
         }
-        new SwingWrapper<>(charts).displayChartMatrix();
+        return show("network-results", charts);
+    }
+
+    /**
+     * Displays charts in a Swing window, or sends them to the exporter.
+     *
+     * @param name file name charts are exported under.
+     * @param charts the charts.
+     * @return completes once the charts are written.
+     */
+    private static CompletableFuture<Void> show(String name, List<XYChart> charts) {
+        ChartExporter target = exporter;
+        if (target == null && GraphicsEnvironment.isHeadless()) {
+            target = headlessExporter();
+        }
+        if (target == null) {
+            if (charts.size() == 1) {
+                new SwingWrapper<>(charts.get(0)).displayChart();
+            } else {
+                new SwingWrapper<>(charts).displayChartMatrix();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return charts.size() == 1 ? target.export(name, charts.get(0)) : target.export(name, charts);
+    }
+
+    private static synchronized ChartExporter headlessExporter() {
+        if (headlessExporter == null) {
+            headlessExporter = new ChartExporter(new File(System.getProperty("user.dir"), "reports"));
+        }
+        return headlessExporter;
     }
 
     public static double modelAccuracy(int[][] results) {
@@ -153,6 +220,10 @@ public class Metrics {
      *
      *   class 2 [   FP         TN   ]
      *   actual
+     *
+     * The matrix is sized from the largest label or prediction seen, so a
+     * class missing from the test data still gets its row and column; use
+     * confusionMatrix(results, classes) when the number of classes is known.
      * </pre>
      * 
      * @param results a 2d array; first row containing actual labels for the test
@@ -161,90 +232,35 @@ public class Metrics {
      *         purely for testing purposes. 
      */
     public static double[][] confusionMatrix(int[][] results) {
-        
-        int[] testLabels = results[0];
-        int[] predictions = results[1];
-
-        // get the number of classes for the dimensions of the 
-        // confusion matrix, these will always be equal.
-        Set<Integer> classCount = new HashSet<>();
-        for (int label : testLabels) {
-            classCount.add(label);
-        }
-        int classes = classCount.size();
-
-        double[][] confusion = new double[classes][classes];
-
-        for (int i = 0; i < testLabels.length; i++) {
-            confusion[testLabels[i]][predictions[i]]++;
-        }
-
-            double confusionSum = Matrix.sum(new Matrix(confusion));
-
-            // Get true positives.
-            double[] TP = new double[classes];
-            for (int i = 0; i < confusion.length; i++) {
-                TP[i] += confusion[i][i];
+        int classes = 0;
+        for (int[] row : results) {
+            for (int label : row) {
+                classes = Math.max(classes, label + 1);
             }
+        }
+        return confusionMatrix(results, Math.max(classes, 1));
+    }
 
-            // obtaining the row and column sums of the confusion matrix
-            // is necessary to be able to compute, true negatives, false positives, 
-            // false negatives and overall accuracy.
-            double[] colSums = new double[classes];
-            double[] rowSums = new double[classes];
-            for (int i = 0; i < confusion.length; i++) {
-                double colSum = 0.0;
-                double rowSum = 0.0;
-                for (int j = 0; j < confusion.length; j++) {
-                    colSum += confusion[j][i];
-                    rowSum += confusion[i][j];
-                }
-                colSums[i] = colSum;
-                rowSums[i] = rowSum;
-            }
-            
-            double[] FP = new double[classes];
-            double[] FN = new double[classes];
-            double[] TN = new double[classes];
-            for (int i = 0; i < classes; i++) {
-                FP[i] = colSums[i] - TP[i];
-                FN[i] = rowSums[i] - TP[i];
-                TN[i] = confusionSum - (rowSums[i] - confusion[i][i]) - colSums[i];
-            }
+    /**
+     * Prints the confusion matrix and the precision, recall and F1 of each class
+     * (see ConfusionMatrix for accumulating predictions without holding them).
+     *
+     * @param results a 2d array; first row containing actual labels for the test
+     *                data the second, corresponding predictions made by a classifier.
+     * @param classes the number of classes a label can take.
+     * @return a 2d array representation of the confusion matrix.
+     */
+    public static double[][] confusionMatrix(int[][] results, int classes) {
+        ConfusionMatrix matrix = ConfusionMatrix.of(results, classes);
+        System.out.println("\n" + matrix.report());
 
-            double[] precision = new double[classes];
-            double[] recall = new double[classes];
-
-            // conditions to catch NaN values (caused by dividing by zero)
-            for (int i = 0; i < classes; i++) {
-                if (TP[i] == 0 && (TP[i] + FP[i]) == 0) {
-                    precision[i] = 0.0;
-                } else if (TP[i] == 0 && (TP[i] + FN[i]) == 0) {
-                    recall[i] = 0.0;
-                } else {
-                    precision[i] = TP[i] / (TP[i] + FP[i]);
-                    recall[i] = TP[i] / (TP[i] + FN[i]);
-                }
-            }
-            
-            // Total model accuracy.
-            double acc = Matrix.sum(new Matrix(TP)) / predictions.length; 
-            
-            // sanity check 
-            /*for (int i = 0; i < classes; i++) {
-                System.out.println((TP[i] + TN[i] + FP[i] + FN[i] == testLabels.length));
-            }*/
-         
-            System.out.println("\n" + new Matrix(confusion));
-            System.out.println("============Report============");
-            System.out.printf("%18s%10s%n", "Precision", "Recall");
-
-            for (int i = 0; i < classes; i++) {
-                System.out.printf("class %d  %9.4f %9.4f %n", i,
-                        precision[i], recall[i]);
+        long[][] counts = matrix.toArray();
+        double[][] confusion = new double[classes][classes];
+        for (int i = 0; i < classes; i++) {
+            for (int j = 0; j < classes; j++) {
+                confusion[i][j] = counts[i][j];
             }
-            System.out.printf("%nModel accuracy: %.4f%n", acc);
-            System.out.println("==============================");
-            return confusion;
         }
+        return confusion;
+    }
 }
@@ -0,0 +1,222 @@
+package utils;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * <pre>
+ * Named histograms, counters (LongAdders) and gauges, exported as plain
+ * 'name value' per line text (report()) and as a JMX MBean
+ * (registerMBean()).
+ *
+ * Metrics are looked up once, when a component is set up, and the handle
+ * kept; recording through a handle never touches the registry, so it costs
+ * no more than the histogram or counter itself:
+ *
+ *   private static final Histogram LATENCY =
+ *           MetricsRegistry.global().histogram("predict_nanos");
+ *   ...
+ *   LATENCY.record(System.nanoTime() - started);
+ *
+ * Each histogram is reported as name_count, name_mean, name_p50, name_p90,
+ * name_p99, name_p999 and name_max, in the unit it was recorded in.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry("quickdraw");
+
+    private final String name;
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name the registry's name; used in its MBean's ObjectName.
+     */
+    public MetricsRegistry(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the process wide registry the classifiers record into.
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @return the registry's name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the histogram's name.
+     * @return the histogram registered under name, created if there is none.
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, (key) -> new Histogram());
+    }
+
+    /**
+     * @param name the counter's name; by convention ending in _total.
+     * @return the counter registered under name, created if there is none.
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, (key) -> new LongAdder());
+    }
+
+    /**
+     * Registers (or replaces) a gauge; a value read whenever the registry is.
+     *
+     * @param name the gauge's name.
+     * @param value supplies the gauge's current value.
+     */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return every metric's current value by name; histograms are expanded
+     * into their summary statistics.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((key, counter) -> values.put(key, counter.sum()));
+        gauges.forEach((key, gauge) -> values.put(key, gauge.getAsDouble()));
+        histograms.forEach((key, histogram) -> {
+            values.put(key + "_count", histogram.getCount());
+            values.put(key + "_mean", histogram.getMean());
+            values.put(key + "_p50", histogram.percentile(50));
+            values.put(key + "_p90", histogram.percentile(90));
+            values.put(key + "_p99", histogram.percentile(99));
+            values.put(key + "_p999", histogram.percentile(99.9));
+            values.put(key + "_max", histogram.getMax());
+        });
+        return values;
+    }
+
+    /**
+     * @return every metric in a plain 'name value' per line text format,
+     * sorted by name.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        snapshot().forEach((key, value) -> report.append(key).append(' ')
+                .append(format(value)).append(System.lineSeparator()));
+        return report.toString();
+    }
+
+    private static String format(Number value) {
+        double v = value.doubleValue();
+        if (value instanceof Long || (v == Math.rint(v) && Math.abs(v) < 1e15)) {
+            return Long.toString(value.longValue());
+        }
+        return String.format("%.4f", v);
+    }
+
+    /**
+     * Registers the registry with the platform MBeanServer as
+     * quickdraw:type=Metrics,name=[name]; every metric in snapshot() is a
+     * read only attribute.
+     *
+     * @return the MBean's name.
+     * @throws JMException if the name is taken or the MBean is rejected.
+     */
+    public ObjectName registerMBean() throws JMException {
+        ObjectName objectName = objectName();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), objectName);
+        return objectName;
+    }
+
+    /**
+     * Removes the MBean added by registerMBean(), if registered.
+     *
+     * @throws JMException if it cannot be removed.
+     */
+    public void unregisterMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    private ObjectName objectName() throws JMException {
+        return ObjectName.getInstance("quickdraw:type=Metrics,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Read only view of the registry's snapshot for JMX.
+     */
+    private final class MBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Number> values = snapshot();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+            int i = 0;
+            for (Map.Entry<String, Number> entry : values.entrySet()) {
+                attributes[i++] = new MBeanAttributeInfo(entry.getKey(),
+                        entry.getValue().getClass().getName(), entry.getKey(),
+                        true, false, false);
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "Metrics of " + name,
+                    attributes, null, null, null);
+        }
+    }
+}
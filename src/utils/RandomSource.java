@@ -0,0 +1,91 @@
+package utils;
+
+import java.util.SplittableRandom;
+
+/**
+ * <pre>
+ * A seed that independent streams of random numbers are derived from, so
+ * a run can be reproduced bit for bit from one number:
+ *
+ *   RandomSource random = new RandomSource(42);
+ *   NeuralNetwork nn = new NeuralNetwork(random, 784, 90, 5);
+ *   KNearestNeighbours knn = new KNearestNeighbours(random.derive("knn"));
+ *
+ * derive(purpose) gives the source for one use of randomness (E.g. weight
+ * initialisation or shuffling) and stream(index) the index'th stream of a
+ * source (E.g. one per layer, epoch, fold or thread). Every source and
+ * stream is derived from the seed alone, never from another stream, so
+ * adding a use of randomness, or a thread, never changes the numbers any
+ * other sees.
+ *
+ * A source is immutable and can be shared between threads. Streams are
+ * SplittableRandoms, which are not; each thread draws from a stream of its
+ * own, so unlike a shared java.util.Random there is nothing to contend on.
+ * </pre>
+ *
+ * @author Joseph Adamson
+ */
+public final class RandomSource {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    /**
+     * @param seed the seed every stream is derived from.
+     */
+    public RandomSource(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return a source with a seed of its own; use getSeed() to reproduce it.
+     */
+    public static RandomSource random() {
+        return new RandomSource(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @return the seed every stream is derived from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param purpose names a use of randomness, E.g. "weights" or "shuffle".
+     * @return a source independent of this one and of every other purpose.
+     */
+    public RandomSource derive(String purpose) {
+        // 64 bit FNV-1a hash of the purpose.
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < purpose.length(); i++) {
+            hash = (hash ^ purpose.charAt(i)) * 0x100000001B3L;
+        }
+        return new RandomSource(mix64(seed ^ mix64(hash)));
+    }
+
+    /**
+     * @param index the stream's index, E.g. an epoch, fold or thread number.
+     * @return a new generator at the start of the index'th stream; the same
+     * numbers every time for the same seed and index.
+     */
+    public SplittableRandom stream(long index) {
+        // mixed first, so neighbouring seeds never share streams.
+        return new SplittableRandom(mix64(mix64(seed) + (index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * SplitMix64's finalizer; spreads every bit of z over the result.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return "RandomSource(" + seed + ")";
+    }
+}
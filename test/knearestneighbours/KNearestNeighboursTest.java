@@ -3,6 +3,7 @@ package knearestneighbours;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import utils.DataPrep;
+import utils.RandomSource;
 
 import java.io.File;
 import java.io.IOException;
@@ -156,6 +157,34 @@ class KNearestNeighboursTest {
         assertEquals(expected, actual);
     }
     
+    /**
+     * Every predict shuffles afresh, and a seeded classifier repeats the
+     * same sequence of shuffles.
+     */
+    @Test
+    public void predictTest() {
+        KNearestNeighbours seeded = new KNearestNeighbours(new RandomSource(3));
+        int[] first = seeded.predict(points(), points(), 1)[0];
+        int[] second = seeded.predict(points(), points(), 1)[0];
+        assertFalse(Arrays.equals(first, second));
+
+        KNearestNeighbours again = new KNearestNeighbours(new RandomSource(3));
+        assertArrayEquals(first, again.predict(points(), points(), 1)[0]);
+        assertArrayEquals(second, again.predict(points(), points(), 1)[0]);
+        assertFalse(Arrays.equals(knn.predict(points(), points(), 1)[0], knn.predict(points(), points(), 1)[0]));
+    }
+
+    /**
+     * @return 20 points labelled 0 - 19, in order; predict shuffles them in place.
+     */
+    private static double[][] points() {
+        double[][] points = new double[20][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[]{i, -i, i};
+        }
+        return points;
+    }
+
     @Test
     public void validationSplitTest() {
         double[][] samples = {
@@ -0,0 +1,89 @@
+package knearestneighbours;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NeighbourEventsTest {
+
+    private KNearestNeighbours knn;
+    private double[][] training;
+
+    @BeforeEach
+    public void init() {
+        knn = new KNearestNeighbours();
+        Random random = new Random(29);
+        training = new double[180][5];
+        for (double[] row : training) {
+            for (int j = 0; j < 4; j++) {
+                row[j] = random.nextDouble();
+            }
+            row[4] = random.nextInt(3);
+        }
+    }
+
+    private List<RecordedEvent> record(Runnable work) throws IOException {
+        Path file = Files.createTempFile("knn", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("quickdraw.KnnQuery");
+            recording.enable("quickdraw.KnnDistanceScan");
+            recording.enable("quickdraw.KnnCrossValidationFold");
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter((e) -> e.getEventType().getName().startsWith("quickdraw.Knn"))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter((e) -> e.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A query records itself and the distance scan it starts.
+     */
+    @Test
+    public void queryTest() throws IOException {
+        int[] label = new int[1];
+        List<RecordedEvent> events = record(() ->
+                label[0] = knn.classify(training, new double[]{0.5, 0.5, 0.5, 0.5, 0}, 3));
+        List<RecordedEvent> queries = named(events, "quickdraw.KnnQuery");
+        assertEquals(1, queries.size());
+        assertEquals(3, queries.get(0).getInt("k"));
+        assertEquals(180, queries.get(0).getInt("trainingSamples"));
+        assertEquals(label[0], queries.get(0).getInt("label"));
+        assertEquals(1, named(events, "quickdraw.KnnDistanceScan").size());
+    }
+
+    /**
+     * Cross validation records one event per fold.
+     */
+    @Test
+    public void foldTest() throws IOException {
+        List<RecordedEvent> events = record(() -> knn.kFoldCrossValidation(training, 3));
+        List<RecordedEvent> folds = named(events, "quickdraw.KnnCrossValidationFold");
+        assertEquals(3, folds.size());
+        for (RecordedEvent fold : folds) {
+            assertEquals(3, fold.getInt("folds"));
+            assertEquals(180, fold.getInt("trainingSamples") + fold.getInt("validationSamples"));
+        }
+        assertEquals(180, named(events, "quickdraw.KnnDistanceScan").size());
+    }
+}
@@ -0,0 +1,76 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.Test;
+import utils.Matrix;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivationTest {
+
+    /**
+     * Every elementwise derivative matches a numerical estimate, and every
+     * activation but SOFTMAX has an elementwise form.
+     */
+    @Test
+    public void derivativeTest() {
+        double eps = 1e-6;
+        for (Activation.Elementwise f : Activation.Elementwise.values()) {
+            for (double z = -3.1; z <= 3; z += 0.5) {
+                double numerical = (f.applyAsDouble(z + eps) - f.applyAsDouble(z - eps)) / (2 * eps);
+                assertEquals(numerical, f.derivative(z, f.applyAsDouble(z)), 1e-6);
+            }
+        }
+        for (Activation f : Activation.values()) {
+            assertEquals(f == Activation.SOFTMAX, f.getElementwise() == null);
+        }
+    }
+
+    /**
+     * Ids round trip, and unknown ids are rejected.
+     */
+    @Test
+    public void idTest() {
+        for (Activation f : Activation.values()) {
+            assertEquals(f, Activation.fromId(f.getId()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> {
+            Activation.fromId(99);
+        });
+    }
+
+    /**
+     * Softmax is applied per column and does not overflow for large inputs.
+     */
+    @Test
+    public void softmaxTest() {
+        Matrix z = new Matrix(new double[][]{
+                {1000, 1},
+                {1000, 2},
+        });
+        Activation.SOFTMAX.activate(z, z);
+        assertEquals(0.5, z.get(0, 0), 1e-12);
+        assertEquals(0.5, z.get(1, 0), 1e-12);
+        assertEquals(1 / (1 + Math.E), z.get(0, 1), 1e-12);
+    }
+
+    /**
+     * The array forms of activate match the matrix form, in both precisions.
+     */
+    @Test
+    public void activateTest() {
+        double[] values = {-2, 0.5, 3, -0.25};
+        for (Activation f : Activation.values()) {
+            Matrix z = new Matrix(new double[][]{{values[0]}, {values[1]}, {values[2]}, {values[3]}});
+            f.activate(z, z);
+            double[] doubles = {9, values[0], values[1], values[2], values[3]};
+            f.activate(doubles, 1, 4);
+            float[] floats = {(float) values[0], (float) values[1], (float) values[2], (float) values[3]};
+            f.activate(floats, 0, 4);
+            assertEquals(9, doubles[0]);
+            for (int i = 0; i < 4; i++) {
+                assertEquals(z.get(i, 0), doubles[i + 1], 1e-12);
+                assertEquals(z.get(i, 0), floats[i], 1e-6);
+            }
+        }
+    }
+}
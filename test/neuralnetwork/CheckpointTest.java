@@ -0,0 +1,282 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    private File initial;
+    private DataSet training;
+    private DataSet validation;
+
+    @BeforeEach
+    public void init() throws IOException {
+        initial = dir.resolve("initial.qdnn").toFile();
+        new NeuralNetwork(4, 6, 3).saveNetwork(initial);
+        training = dataSet(new Random(31), 60);
+        validation = dataSet(new Random(37), 20);
+    }
+
+    private static DataSet dataSet(Random random, int samples) {
+        double[] features = new double[samples * 4];
+        int[] labels = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            labels[i] = random.nextInt(3);
+            for (int j = 0; j < 4; j++) {
+                features[i * 4 + j] = random.nextDouble() + 0.3 * labels[i];
+            }
+        }
+        return new DataSet(features, labels, 4, 3);
+    }
+
+    /**
+     * @return a copy of the initial network set up for training.
+     */
+    private NeuralNetwork network(NeuralNetwork.Precision precision, Optimizer.Method method,
+                                  boolean stopping) throws IOException {
+        NeuralNetwork nn = new NeuralNetwork(NeuralNetwork.loadNetwork(initial).getLayers(), precision);
+        nn.setOptimizer(new Optimizer(method));
+        nn.setSeed(7L);
+        nn.setSchedule(LearningRateSchedule.cosine(0.1));
+        if (stopping) {
+            nn.setEarlyStopping(new EarlyStopping(EarlyStopping.Monitor.VALIDATION_COST, 100, 0));
+        }
+        return nn;
+    }
+
+    private static double[] parameters(NeuralNetwork nn) {
+        int size = 0;
+        for (NeuralNetwork.Layer layer : nn.getLayers()) {
+            size += layer.getOutputs() * (layer.getInputs() + 1);
+        }
+        double[] parameters = new double[size];
+        int k = 0;
+        for (NeuralNetwork.Layer layer : nn.getLayers()) {
+            Matrix weights = layer.getWeights();
+            Matrix bias = layer.getBias();
+            for (int i = 0; i < weights.getRows(); i++) {
+                for (int j = 0; j < weights.getCols(); j++) {
+                    parameters[k++] = weights.get(i, j);
+                }
+                parameters[k++] = bias.get(i, 0);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Trains a network that is killed after crashAfter epochs, leaving its
+     * last checkpoint behind.
+     */
+    private Checkpoint crash(NeuralNetwork nn, int epochs, int interval, int crashAfter)
+            throws IOException {
+        File file = dir.resolve("run.qdck").toFile();
+        Checkpointer checkpointer = new Checkpointer(file, interval);
+        nn.setCheckpointer(checkpointer);
+        LearningRateSchedule schedule = nn.getSchedule();
+        nn.setSchedule((alpha, progress, total) -> {
+            if (progress >= crashAfter) {
+                throw new IllegalStateException("killed");
+            }
+            return schedule.rate(alpha, progress, total);
+        });
+        assertThrows(IllegalStateException.class,
+                () -> nn.mbgd(training, epochs, 10, 0.05, 0.5, validation));
+        checkpointer.close();
+        return Checkpoint.read(file.toPath());
+    }
+
+    /**
+     * A run resumed from a checkpoint ends with exactly the parameters and
+     * metrics of one that was never interrupted.
+     */
+    @Test
+    public void resumeTest1() throws IOException {
+        NeuralNetwork uninterrupted = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.ADAM, true);
+        double[][] expected = uninterrupted.mbgd(training, 7, 10, 0.05, 0.5, validation);
+
+        Checkpoint checkpoint = crash(network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.ADAM, true),
+                7, 2, 5);
+        assertEquals(4, checkpoint.getEpoch());
+        assertEquals(7, checkpoint.getEpochs());
+        assertEquals(7L, checkpoint.getSeed());
+        assertFalse(checkpoint.isFinished());
+
+        NeuralNetwork resumed = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.ADAM, true);
+        resumed.setSeed(null);
+        double[][] actual = resumed.resume(checkpoint, training, validation);
+
+        assertArrayEquals(parameters(uninterrupted), parameters(resumed));
+        for (int k = 0; k < 4; k++) {
+            assertArrayEquals(expected[k], actual[k]);
+        }
+        assertEquals(uninterrupted.getOptimizer().getSteps(), resumed.getOptimizer().getSteps());
+        assertEquals(uninterrupted.getEarlyStopping().getBestEpoch(),
+                resumed.getEarlyStopping().getBestEpoch());
+    }
+
+    /**
+     * Single precision runs resume exactly too.
+     */
+    @Test
+    public void resumeTest2() throws IOException {
+        NeuralNetwork uninterrupted = network(NeuralNetwork.Precision.FLOAT, Optimizer.Method.MOMENTUM, false);
+        uninterrupted.mbgd(training, 5, 10, 0.05, 0.5, validation);
+
+        Checkpoint checkpoint = crash(network(NeuralNetwork.Precision.FLOAT, Optimizer.Method.MOMENTUM, false),
+                5, 1, 3);
+        assertEquals(3, checkpoint.getEpoch());
+
+        NeuralNetwork resumed = network(NeuralNetwork.Precision.FLOAT, Optimizer.Method.MOMENTUM, false);
+        resumed.resume(checkpoint, training, validation);
+        for (int l = 0; l < resumed.getLayers().length; l++) {
+            assertArrayEquals(uninterrupted.getLayers()[l].getFloatWeights().getBacking(),
+                    resumed.getLayers()[l].getFloatWeights().getBacking());
+            assertArrayEquals(uninterrupted.getLayers()[l].getFloatBias().getBacking(),
+                    resumed.getLayers()[l].getFloatBias().getBacking());
+        }
+    }
+
+    /**
+     * Stratified runs resume exactly too.
+     */
+    @Test
+    public void resumeTest3() throws IOException {
+        NeuralNetwork uninterrupted = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        uninterrupted.setStratified(true);
+        uninterrupted.mbgd(training, 4, 10, 0.05, 0.5, validation);
+
+        NeuralNetwork crashed = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        crashed.setStratified(true);
+        Checkpoint checkpoint = crash(crashed, 4, 1, 2);
+
+        NeuralNetwork resumed = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        resumed.setStratified(true);
+        resumed.resume(checkpoint, training, validation);
+        assertArrayEquals(parameters(uninterrupted), parameters(resumed));
+    }
+
+    /**
+     * The final epoch is always checkpointed, and resuming a finished run
+     * changes nothing.
+     */
+    @Test
+    public void finishedTest() throws IOException {
+        File file = dir.resolve("run.qdck").toFile();
+        NeuralNetwork nn = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        try (Checkpointer checkpointer = new Checkpointer(file, 10)) {
+            nn.setCheckpointer(checkpointer);
+            nn.mbgd(training, 3, 10, 0.05, 0.5, validation);
+        }
+        Checkpoint checkpoint = Checkpoint.read(file.toPath());
+        assertEquals(3, checkpoint.getEpoch());
+        assertTrue(checkpoint.isFinished());
+        assertFalse(Files.exists(dir.resolve("run.qdck.tmp")));
+
+        NeuralNetwork resumed = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        double[][] results = resumed.resume(checkpoint, training, validation);
+        assertEquals(3, results[0].length);
+        assertArrayEquals(parameters(nn), parameters(resumed));
+    }
+
+    /**
+     * Training returns only once its last checkpoint is on disk, which is
+     * little-endian like the model format, and a failed write is reported.
+     */
+    @Test
+    public void flushTest() throws IOException {
+        File file = dir.resolve("run.qdck").toFile();
+        NeuralNetwork nn = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        Checkpointer checkpointer = new Checkpointer(file, 1);
+        nn.setCheckpointer(checkpointer);
+        nn.mbgd(training, 2, 10, 0.05, 0.5, validation);
+        assertEquals(2, Checkpoint.read(file.toPath()).getEpoch());
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(Checkpoint.MAGIC, header.getInt());
+        assertEquals(Checkpoint.VERSION, header.getShort());
+        assertEquals("QDCK", new String(Files.readAllBytes(file.toPath()), 0, 4, StandardCharsets.US_ASCII));
+        checkpointer.close();
+
+        File missing = dir.resolve("missing").resolve("run.qdck").toFile();
+        try (Checkpointer failing = new Checkpointer(missing, 10)) {
+            nn.setCheckpointer(failing);
+            assertThrows(UncheckedIOException.class, () -> nn.mbgd(training, 2, 10, 0.05, 0.5, validation));
+        }
+    }
+
+    /**
+     * A corrupt epoch count is read without allocating for it, then
+     * rejected by the checksum.
+     */
+    @Test
+    public void headerTest() throws IOException {
+        File file = dir.resolve("run.qdck").toFile();
+        NeuralNetwork nn = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.SGD, false);
+        try (Checkpointer checkpointer = new Checkpointer(file, 1)) {
+            nn.setCheckpointer(checkpointer);
+            nn.mbgd(training, 1, 10, 0.05, 0.5, validation);
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // epochs follows magic, version, dtype, flags, seed and epoch.
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(20, Integer.MAX_VALUE);
+        Files.write(file.toPath(), bytes);
+        IOException e = assertThrows(IOException.class, () -> Checkpoint.read(file.toPath()));
+        assertEquals("Checkpoint checksum does not match", e.getMessage());
+    }
+
+    /**
+     * Corrupt checkpoints and mismatched networks are rejected.
+     */
+    @Test
+    public void invalidTest() throws IOException {
+        File file = dir.resolve("run.qdck").toFile();
+        NeuralNetwork nn = network(NeuralNetwork.Precision.DOUBLE, Optimizer.Method.ADAM, false);
+        try (Checkpointer checkpointer = new Checkpointer(file, 1)) {
+            nn.setCheckpointer(checkpointer);
+            nn.mbgd(training, 1, 10, 0.05, 0.5, validation);
+        }
+        Checkpoint checkpoint = Checkpoint.read(file.toPath());
+
+        assertThrows(IllegalArgumentException.class, () -> network(NeuralNetwork.Precision.DOUBLE,
+                Optimizer.Method.SGD, false).resume(checkpoint, training, validation));
+        assertThrows(IllegalArgumentException.class, () -> network(NeuralNetwork.Precision.DOUBLE,
+                Optimizer.Method.ADAM, true).resume(checkpoint, training, validation));
+        assertThrows(IllegalArgumentException.class, () -> network(NeuralNetwork.Precision.FLOAT,
+                Optimizer.Method.ADAM, false).resume(checkpoint, training, validation));
+        assertThrows(IllegalArgumentException.class, () -> network(NeuralNetwork.Precision.DOUBLE,
+                Optimizer.Method.ADAM, false).resume(checkpoint, validation, validation));
+        assertThrows(IllegalArgumentException.class, () -> new Checkpointer(file, 0));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 1);
+        }
+        assertThrows(IOException.class, () -> Checkpoint.read(file.toPath()));
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 20));
+        assertThrows(IOException.class, () -> Checkpoint.read(file.toPath()));
+    }
+}
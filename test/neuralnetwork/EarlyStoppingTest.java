@@ -0,0 +1,82 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EarlyStoppingTest {
+
+    private NeuralNetwork nn;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(4, 3, 2);
+    }
+
+    /**
+     * Training stops after patience epochs without improvement.
+     */
+    @Test
+    public void patienceTest() {
+        EarlyStopping stopping = new EarlyStopping(2);
+        assertFalse(stopping.update(nn, 0, 1, 0.5));
+        assertFalse(stopping.update(nn, 1, 1, 0.6));
+        assertFalse(stopping.update(nn, 2, 1, 0.6));
+        assertTrue(stopping.update(nn, 3, 1, 0.55));
+        assertEquals(1, stopping.getBestEpoch());
+        assertEquals(0.6, stopping.getBest());
+    }
+
+    /**
+     * Improvements smaller than minDelta do not count, and a falling cost is
+     * an improvement.
+     */
+    @Test
+    public void minDeltaTest() {
+        EarlyStopping stopping = new EarlyStopping(EarlyStopping.Monitor.VALIDATION_COST, 1, 0.1);
+        assertFalse(stopping.update(nn, 0, 1.0, 0));
+        assertFalse(stopping.update(nn, 1, 0.8, 0));
+        assertTrue(stopping.update(nn, 2, 0.75, 0));
+        assertEquals(1, stopping.getBestEpoch());
+    }
+
+    /**
+     * The parameters of the best epoch are copied back into the network.
+     */
+    @Test
+    public void restoreTest() {
+        EarlyStopping stopping = new EarlyStopping(1);
+        Matrix weights = nn.getLayers()[0].getWeights();
+        double best = weights.get(0, 0);
+        stopping.update(nn, 0, 1, 0.9);
+        weights.set(0, 0, best + 1);
+        stopping.update(nn, 1, 1, 0.8);
+        stopping.restore(nn);
+        assertEquals(best, weights.get(0, 0));
+    }
+
+    /**
+     * mbgd returns one column of performance per epoch actually run.
+     */
+    @Test
+    public void mbgdTest() {
+        Random random = new Random(5);
+        double[] features = new double[16 * 4];
+        int[] labels = new int[16];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = random.nextDouble();
+        }
+        DataSet data = new DataSet(features, labels, 4, 2);
+
+        // every label is 0, so accuracy soon reaches 1 and can improve no further.
+        nn.setEarlyStopping(new EarlyStopping(2));
+        double[][] performance = nn.mbgd(data, 20, 4, 1, 0, data);
+        assertTrue(nn.getEarlyStopping().isStopped());
+        assertEquals(nn.getEarlyStopping().getBestEpoch() + 3, performance[0].length);
+    }
+}
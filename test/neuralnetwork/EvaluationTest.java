@@ -0,0 +1,128 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.ConfusionMatrix;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluationTest {
+
+    private NeuralNetwork nn;
+    private DataSet data;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(4, 5, 3);
+        Random random = new Random(11);
+        int samples = 40;
+        double[] features = new double[samples * 4];
+        int[] labels = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            labels[i] = random.nextInt(3);
+            for (int j = 0; j < 4; j++) {
+                features[i * 4 + j] = random.nextDouble();
+            }
+        }
+        data = new DataSet(features, labels, 4, 3);
+    }
+
+    /**
+     * The fused pass agrees with the cost and accuracy computed sample by sample.
+     */
+    @Test
+    public void evaluateTest1() {
+        Evaluation evaluation = nn.evaluate(data, 0);
+        double cost = 0;
+        int correct = 0;
+        for (int i = 0; i < data.size(); i++) {
+            Matrix yHat = nn.forwardProp(data.getFeatures(i));
+            cost += NeuralNetwork.crossEntropyCost(yHat, data.getLabel(i));
+            if (Matrix.argMaxRow(yHat) == data.getLabel(i)) {
+                correct++;
+            }
+        }
+        assertEquals(cost / data.size(), evaluation.getCost(), 1e-12);
+        assertEquals((double) correct / data.size(), evaluation.getAccuracy());
+        assertEquals(data.size(), evaluation.getSamples());
+    }
+
+    /**
+     * Per-class counts add up to the number of samples and correct predictions.
+     */
+    @Test
+    public void evaluateTest2() {
+        Evaluation evaluation = nn.evaluate(data, 0);
+        int support = 0, predicted = 0, correct = 0;
+        for (int c = 0; c < 3; c++) {
+            support += evaluation.getSupport()[c];
+            predicted += evaluation.getPredicted()[c];
+            correct += evaluation.getCorrect()[c];
+        }
+        assertEquals(data.size(), support);
+        assertEquals(data.size(), predicted);
+        assertEquals(evaluation.getAccuracy(), (double) correct / data.size());
+    }
+
+    /**
+     * Streaming predictions into a confusion matrix counts the same
+     * predictions as predict and agrees with evaluate's per-class counts.
+     */
+    @Test
+    public void confusionTest() {
+        ConfusionMatrix confusion = new ConfusionMatrix(3);
+        nn.predict(data, confusion);
+        assertArrayEquals(ConfusionMatrix.of(nn.predict(data), 3).toArray(), confusion.toArray());
+
+        Evaluation evaluation = nn.evaluate(data, 0);
+        assertEquals(evaluation.getAccuracy(), confusion.accuracy(), 1e-12);
+        for (int c = 0; c < 3; c++) {
+            assertEquals(evaluation.getSupport()[c], confusion.getSupport(c));
+            assertEquals(evaluation.getPredicted()[c], confusion.getPredicted(c));
+        }
+    }
+
+    /**
+     * Regularization adds λ/2n∑ w^2 over every layer's weights.
+     */
+    @Test
+    public void regularizationTest() {
+        double wSquaredSum = 0;
+        for (NeuralNetwork.Layer layer : nn.getLayers()) {
+            Matrix w = layer.getWeights();
+            for (int i = 0; i < w.getRows(); i++) {
+                for (int j = 0; j < w.getCols(); j++) {
+                    wSquaredSum += w.get(i, j) * w.get(i, j);
+                }
+            }
+        }
+        double difference = nn.evaluateCost(data, 0.5) - nn.evaluateCost(data, 0);
+        assertEquals(0.5 * (0.5 / data.size()) * wSquaredSum, difference, 1e-12);
+    }
+
+    /**
+     * Subsampled and running training metrics are reported, evaluation can
+     * be skipped between epochs and metrics can be turned off.
+     */
+    @Test
+    public void policyTest() {
+        nn.setEvaluationPolicy(new EvaluationPolicy(1, EvaluationPolicy.TrainingMetrics.SUBSAMPLE, 10));
+        double[][] performance = nn.mbgd(data, 1, 8, 0.1, 0, data);
+        assertFalse(Double.isNaN(performance[2][0]));
+
+        nn.setEvaluationPolicy(new EvaluationPolicy(1, EvaluationPolicy.TrainingMetrics.RUNNING, 0));
+        performance = nn.mbgd(data, 1, 8, 0.1, 0, data);
+        assertFalse(Double.isNaN(performance[0][0]));
+
+        nn.setEvaluationPolicy(new EvaluationPolicy(2, EvaluationPolicy.TrainingMetrics.NONE, 0));
+        performance = nn.mbgd(data, 3, 8, 0.1, 0, data);
+        assertTrue(Double.isNaN(performance[3][0]));
+        assertFalse(Double.isNaN(performance[3][1]));
+        assertFalse(Double.isNaN(performance[3][2]));
+        assertTrue(Double.isNaN(performance[2][2]));
+    }
+}
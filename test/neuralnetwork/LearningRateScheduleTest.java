@@ -0,0 +1,44 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LearningRateScheduleTest {
+
+    /**
+     * Step decay only changes the rate at multiples of its interval.
+     */
+    @Test
+    public void stepTest() {
+        LearningRateSchedule schedule = LearningRateSchedule.step(2, 0.5);
+        assertEquals(0.1, schedule.rate(0.1, 0, 10), 1e-15);
+        assertEquals(0.1, schedule.rate(0.1, 1.9, 10), 1e-15);
+        assertEquals(0.05, schedule.rate(0.1, 2, 10), 1e-15);
+        assertEquals(0.025, schedule.rate(0.1, 5.5, 10), 1e-15);
+    }
+
+    /**
+     * Cosine annealing starts at the base rate, halves midway and ends at
+     * the minimum.
+     */
+    @Test
+    public void cosineTest() {
+        LearningRateSchedule schedule = LearningRateSchedule.cosine(0);
+        assertEquals(0.1, schedule.rate(0.1, 0, 10), 1e-15);
+        assertEquals(0.05, schedule.rate(0.1, 5, 10), 1e-15);
+        assertEquals(0, schedule.rate(0.1, 10, 10), 1e-15);
+    }
+
+    /**
+     * Warmup ramps up linearly, then hands over to the following schedule
+     * from its start.
+     */
+    @Test
+    public void warmupTest() {
+        LearningRateSchedule schedule = LearningRateSchedule.warmup(2, LearningRateSchedule.cosine(0));
+        assertEquals(0.025, schedule.rate(0.1, 0.5, 10), 1e-15);
+        assertEquals(0.1, schedule.rate(0.1, 2, 10), 1e-15);
+        assertEquals(0.05, schedule.rate(0.1, 6, 10), 1e-15);
+    }
+}
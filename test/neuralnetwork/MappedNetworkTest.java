@@ -0,0 +1,77 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.Matrix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedNetworkTest {
+
+    @TempDir
+    Path dir;
+
+    private NeuralNetwork nn;
+    private double[] features;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(4, 6, 3);
+        features = new double[]{9.0, 0.1, 0.7, 0.3, 0.9};
+    }
+
+    /**
+     * Outputs read through the mapped file match those of the original network.
+     */
+    @Test
+    public void forwardPropTest1() throws IOException {
+        Path file = dir.resolve("model.qdnn");
+        nn.saveNetwork(file.toFile());
+        MappedNetwork mapped = MappedNetwork.open(file);
+
+        Matrix expected = nn.forwardProp(Matrix.view(features, 1, 4, 1));
+        double[] actual = mapped.forwardProp(features, 1);
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertEquals(expected.get(i, 0), actual[i], 1e-12);
+        }
+        assertEquals(Matrix.argMaxRow(expected), mapped.classify(features, 1));
+    }
+
+    /**
+     * float32 model files can be mapped too.
+     */
+    @Test
+    public void forwardPropTest2() throws IOException {
+        NeuralNetwork floatNN = new NeuralNetwork(nn.getLayers(), NeuralNetwork.Precision.FLOAT);
+        Path file = dir.resolve("model.qdnn");
+        floatNN.saveNetwork(file.toFile());
+        MappedNetwork mapped = MappedNetwork.open(file);
+
+        Matrix expected = floatNN.forwardProp(Matrix.view(features, 1, 4, 1));
+        double[] actual = mapped.forwardProp(features, 1);
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertEquals(expected.get(i, 0), actual[i], 1e-5);
+        }
+    }
+
+    /**
+     * Corrupted files are rejected when mapped.
+     */
+    @Test
+    public void openTest() throws IOException {
+        Path file = dir.resolve("model.qdnn");
+        nn.saveNetwork(file.toFile());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 20] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> {
+            MappedNetwork.open(file);
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelFormatTest {
+
+    @TempDir
+    Path dir;
+
+    private NeuralNetwork nn;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(6, 4, 3);
+    }
+
+    /**
+     * Parameters survive a save/load round trip unchanged.
+     */
+    @Test
+    public void roundTripTest1() throws IOException {
+        File file = dir.resolve("model.qdnn").toFile();
+        nn.saveNetwork(file);
+        NeuralNetwork loaded = NeuralNetwork.loadNetwork(file);
+
+        assertEquals(nn.getInputNodes(), loaded.getInputNodes());
+        assertEquals(nn.getOutputNodes(), loaded.getOutputNodes());
+        for (int l = 0; l < nn.getLayers().length; l++) {
+            assertTrue(nn.getLayers()[l].getWeights().equals(loaded.getLayers()[l].getWeights()));
+            assertTrue(nn.getLayers()[l].getBias().equals(loaded.getLayers()[l].getBias()));
+        }
+    }
+
+    /**
+     * Single precision networks are saved (and loaded) as float32.
+     */
+    @Test
+    public void roundTripTest2() throws IOException {
+        NeuralNetwork floatNN = new NeuralNetwork(nn.getLayers(), NeuralNetwork.Precision.FLOAT);
+        File file = dir.resolve("model.qdnn").toFile();
+        floatNN.saveNetwork(file);
+
+        NeuralNetwork loaded = NeuralNetwork.loadNetwork(file);
+        assertEquals(NeuralNetwork.Precision.FLOAT, loaded.getPrecision());
+        assertArrayEquals(floatNN.getLayers()[0].getFloatWeights().getBacking(),
+                loaded.getLayers()[0].getFloatWeights().getBacking());
+    }
+
+    /**
+     * Each layer's activation is saved and restored.
+     */
+    @Test
+    public void roundTripTest3() throws IOException {
+        NeuralNetwork relu = new NeuralNetwork(NeuralNetwork.Precision.DOUBLE, 6,
+                new int[]{4, 3}, new Activation[]{Activation.RELU, Activation.SOFTMAX});
+        File file = dir.resolve("model.qdnn").toFile();
+        relu.saveNetwork(file);
+
+        NeuralNetwork loaded = NeuralNetwork.loadNetwork(file);
+        assertEquals(Activation.RELU, loaded.getLayers()[0].getActivation());
+        assertEquals(Activation.SOFTMAX, loaded.getLayers()[1].getActivation());
+    }
+
+    /**
+     * A corrupted file fails its checksum.
+     */
+    @Test
+    public void checksumTest() throws IOException {
+        Path file = dir.resolve("model.qdnn");
+        nn.saveNetwork(file.toFile());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> {
+            ModelFormat.read(file);
+        });
+    }
+
+    /**
+     * A file that is not a model is rejected.
+     */
+    @Test
+    public void magicTest() throws IOException {
+        Path file = dir.resolve("other.qdnn");
+        Files.write(file, new byte[64]);
+
+        assertFalse(ModelFormat.isModelFile(file.toFile()));
+        assertThrows(IOException.class, () -> {
+            ModelFormat.read(file);
+        });
+    }
+
+    /**
+     * A layer count whose header size would overflow an int is rejected,
+     * rather than read as a small header.
+     */
+    @Test
+    public void headerTest() throws IOException {
+        Path file = dir.resolve("model.qdnn");
+        nn.saveNetwork(file.toFile());
+        byte[] bytes = Files.readAllBytes(file);
+        for (int layerCount : new int[]{Integer.MAX_VALUE / 8 + 1, 1 << 29, Integer.MAX_VALUE}) {
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(8, layerCount);
+            Files.write(file, bytes);
+
+            IOException e = assertThrows(IOException.class, () -> {
+                ModelFormat.read(file);
+            });
+            assertEquals("Malformed model header", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package neuralnetwork;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.DataSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkEventsTest {
+
+    private NeuralNetwork nn;
+    private DataSet data;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(4, 5, 3);
+        Random random = new Random(23);
+        int samples = 24;
+        double[] features = new double[samples * 4];
+        int[] labels = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            labels[i] = random.nextInt(3);
+            for (int j = 0; j < 4; j++) {
+                features[i * 4 + j] = random.nextDouble();
+            }
+        }
+        data = new DataSet(features, labels, 4, 3);
+    }
+
+    private List<RecordedEvent> record(boolean perSample, Runnable work) throws IOException {
+        Path file = Files.createTempFile("network", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("quickdraw.Epoch");
+            recording.enable("quickdraw.BatchUpdate");
+            if (perSample) {
+                recording.enable("quickdraw.Forward");
+                recording.enable("quickdraw.Backward");
+            }
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter((e) -> e.getEventType().getName().startsWith("quickdraw."))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long count(List<RecordedEvent> events, String name) {
+        return events.stream().filter((e) -> e.getEventType().getName().equals(name)).count();
+    }
+
+    /**
+     * mbgd records an event per epoch and per batch, with their fields set.
+     */
+    @Test
+    public void trainingTest() throws IOException {
+        List<RecordedEvent> events = record(false, () -> nn.mbgd(data, 2, 8, 0.1, 0, data));
+        assertEquals(2, count(events, "quickdraw.Epoch"));
+        assertEquals(6, count(events, "quickdraw.BatchUpdate"));
+        assertEquals(0, count(events, "quickdraw.Forward"));
+
+        RecordedEvent epoch = events.stream()
+                .filter((e) -> e.getEventType().getName().equals("quickdraw.Epoch"))
+                .filter((e) -> e.getInt("epoch") == 1).findFirst().orElseThrow();
+        assertEquals(24, epoch.getInt("samples"));
+        assertTrue(epoch.getDouble("validationAccuracy") >= 0);
+        RecordedEvent batch = events.stream()
+                .filter((e) -> e.getEventType().getName().equals("quickdraw.BatchUpdate"))
+                .findFirst().orElseThrow();
+        assertEquals(8, batch.getInt("batchSize"));
+        assertEquals(0.1, batch.getDouble("alpha"));
+    }
+
+    /**
+     * Forward and backward passes are recorded per sample once enabled.
+     */
+    @Test
+    public void perSampleTest() throws IOException {
+        List<RecordedEvent> events = record(true, () -> {
+            for (int start = 0; start < 24; start += 8) {
+                nn.updateWithBatch(data, List.of(start, start + 1, start + 2, start + 3,
+                        start + 4, start + 5, start + 6, start + 7), 0.1, 0, 24);
+            }
+        });
+        assertEquals(3, count(events, "quickdraw.BatchUpdate"));
+        assertEquals(24, count(events, "quickdraw.Forward"));
+        assertEquals(24, count(events, "quickdraw.Backward"));
+    }
+}
@@ -1,10 +1,16 @@
 package neuralnetwork;
 
+import utils.DataPrep;
+import utils.DataSet;
 import utils.Matrix;
+import utils.RandomSource;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -152,5 +158,316 @@ class NeuralNetworkTest {
         double expected = -(Math.log(1));
         double actual = NeuralNetwork.crossEntropyCost(yHat, y);
     }
-    
-}
\ No newline at end of file
+
+    //-----precision-----
+
+    /**
+     * Networks are double precision unless asked otherwise.
+     */
+    @Test
+    public void precisionTest1() {
+        assertEquals(NeuralNetwork.Precision.DOUBLE, nn.getPrecision());
+    }
+
+    /**
+     * A single precision copy of a network gives (almost) the same outputs.
+     */
+    @Test
+    public void precisionTest2() {
+        NeuralNetwork floatNN = new NeuralNetwork(nn.getLayers(), NeuralNetwork.Precision.FLOAT);
+        assertEquals(NeuralNetwork.Precision.FLOAT, floatNN.getPrecision());
+
+        double[][] input = {
+                {0.2},
+                {0.7},
+                {0.1}
+        };
+        Matrix expected = nn.forwardProp(new Matrix(input));
+        Matrix actual = floatNN.forwardProp(new Matrix(input));
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertEquals(expected.get(i, 0), actual.get(i, 0), 1e-5);
+        }
+    }
+
+    //-----infer-----
+
+    /**
+     * infer gives the same outputs as forwardProp.
+     */
+    @Test
+    public void inferTest1() {
+        double[][] input = {
+                {0.2},
+                {0.7},
+                {0.1}
+        };
+        Matrix expected = nn.forwardProp(new Matrix(input));
+        Matrix actual = nn.infer(new Matrix(input));
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertEquals(expected.get(i, 0), actual.get(i, 0));
+        }
+        assertEquals(Matrix.argMaxRow(expected), nn.classify(new Matrix(input)));
+    }
+
+    /**
+     * Concurrent infer calls do not interfere with each other.
+     */
+    @Test
+    public void inferTest2() throws InterruptedException {
+        Matrix[] inputs = new Matrix[8];
+        Matrix[] expected = new Matrix[inputs.length];
+        for (int t = 0; t < inputs.length; t++) {
+            inputs[t] = new Matrix(new double[][]{{t / 8.0}, {1 - t / 8.0}, {0.5}});
+            expected[t] = nn.infer(inputs[t]);
+        }
+
+        boolean[] matched = new boolean[inputs.length];
+        Thread[] threads = new Thread[inputs.length];
+        for (int t = 0; t < threads.length; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                boolean same = true;
+                for (int r = 0; r < 1000; r++) {
+                    Matrix actual = nn.infer(inputs[index]);
+                    for (int i = 0; i < actual.getRows(); i++) {
+                        same &= actual.get(i, 0) == expected[index].get(i, 0);
+                    }
+                }
+                matched[index] = same;
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean same : matched) {
+            assertTrue(same);
+        }
+    }
+
+    //-----classify-----
+
+    /**
+     * The argmax only path agrees with the full forward pass, and reports the
+     * predicted class's output activation as its confidence.
+     */
+    @Test
+    public void classifyTest1() {
+        NeuralNetwork deep = new NeuralNetwork(3, 7, 5, 4);
+        NeuralNetwork.Scratch scratch = deep.newScratch();
+        double[] features = {0.9, 0.2, 0.7, 0.1, 0.4};
+        for (int offset = 0; offset <= 2; offset++) {
+            Matrix output = deep.forwardProp(Matrix.view(features, offset, 3, 1));
+            int expected = Matrix.argMaxRow(output);
+            assertEquals(expected, deep.classify(features, offset, scratch));
+            assertEquals(output.get(expected, 0), scratch.getConfidence(), 1e-12);
+        }
+    }
+
+    /**
+     * Scratch from a narrower network is rejected.
+     */
+    @Test
+    public void classifyTest2() {
+        NeuralNetwork wide = new NeuralNetwork(3, 10, 9);
+        assertThrows(IllegalArgumentException.class, () -> {
+            wide.classify(new double[]{0.1, 0.2, 0.3}, 0, nn.newScratch());
+        });
+    }
+
+    /**
+     * Classifying reads features in place; after warming up calls allocate
+     * (next to) nothing, in either precision, and a short array is rejected.
+     */
+    @Test
+    public void classifyTest3() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        double[] features = {0.1, 0.2, 0.3, 0.9, 0.8, 0.7};
+        for (NeuralNetwork.Precision precision : NeuralNetwork.Precision.values()) {
+            NeuralNetwork network = new NeuralNetwork(precision, 3, 6, 2);
+            NeuralNetwork.Scratch scratch = network.newScratch();
+            assertEquals(network.classify(new Matrix(new double[][]{{0.9}, {0.8}, {0.7}})),
+                    network.classify(features, 3, scratch));
+            for (int i = 0; i < 1000; i++) {
+                network.classify(features, 3 * (i % 2), scratch);
+            }
+            // a view of the features alone would be tens of bytes a call.
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 10000; i++) {
+                network.classify(features, 3 * (i % 2), scratch);
+            }
+            assertTrue(threads.getCurrentThreadAllocatedBytes() - before < 10000);
+            assertThrows(IllegalArgumentException.class, () -> network.classify(features, 4, scratch));
+        }
+    }
+
+    /**
+     * forwardProp's output belongs to the caller; the next pass leaves it alone.
+     */
+    @Test
+    public void forwardPropTest() {
+        for (NeuralNetwork.Precision precision : NeuralNetwork.Precision.values()) {
+            NeuralNetwork network = new NeuralNetwork(precision, 3, 6, 2);
+            Matrix first = network.forwardProp(new Matrix(new double[][]{{0.1}, {0.2}, {0.3}}));
+            double[] kept = {first.get(0, 0), first.get(1, 0)};
+            network.forwardProp(new Matrix(new double[][]{{9}, {-9}, {9}}));
+            assertArrayEquals(kept, new double[]{first.get(0, 0), first.get(1, 0)});
+        }
+    }
+
+    /**
+     * Both predicts use the inference path, whatever the training sigmoid;
+     * RATIONAL would tie two outputs saturated in training.
+     */
+    @Test
+    public void predictTest() {
+        NeuralNetwork network = new NeuralNetwork(2, 2);
+        NeuralNetwork.Layer layer = network.getLayers()[0];
+        layer.getWeights().set(0, 0, 12);
+        layer.getWeights().set(1, 0, 15);
+        for (int i = 0; i < 2; i++) {
+            layer.getWeights().set(i, 1, 0);
+            layer.getBias().set(i, 0, 0);
+        }
+        network.setTrainingSigmoid(Sigmoid.RATIONAL);
+        double[][] packed = {{1, 0, 1}, {0, 1, 0}};
+        int[][] annotated = network.predict(DataPrep.vectorize(packed, 2));
+        assertArrayEquals(new int[]{1, 0}, annotated[1]);
+        assertArrayEquals(annotated[1], network.predict(DataPrep.toDataSet(packed, 2))[1]);
+    }
+
+    //-----activations-----
+
+    /**
+     * Softmax is only allowed on the output layer.
+     */
+    @Test
+    public void activationTest1() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new NeuralNetwork(NeuralNetwork.Precision.DOUBLE, 3, new int[]{4, 2},
+                    new Activation[]{Activation.SOFTMAX, Activation.SIGMOID});
+        });
+    }
+
+    /**
+     * A softmax output is a probability distribution.
+     */
+    @Test
+    public void activationTest2() {
+        NeuralNetwork softmax = new NeuralNetwork(NeuralNetwork.Precision.DOUBLE, 3, new int[]{4, 5},
+                new Activation[]{Activation.TANH, Activation.SOFTMAX});
+        Matrix output = softmax.forwardProp(new Matrix(new double[][]{{0.2}, {0.7}, {0.1}}));
+        assertEquals(1.0, Matrix.sum(output), 1e-12);
+    }
+
+    /**
+     * Output layers other than SIGMOID and SOFTMAX are rejected; their
+     * outputs would make the cross entropy cost infinite or NaN.
+     */
+    @Test
+    public void activationTest4() {
+        for (Activation output : new Activation[]{Activation.RELU, Activation.LEAKY_RELU, Activation.TANH}) {
+            assertThrows(IllegalArgumentException.class, () -> new NeuralNetwork(
+                    NeuralNetwork.Precision.DOUBLE, 3, new int[]{6, 2},
+                    new Activation[]{Activation.SIGMOID, output}));
+            NeuralNetwork.Layer[] layers = {new NeuralNetwork.Layer(3, 6),
+                    new NeuralNetwork.Layer(6, 2, NeuralNetwork.Precision.DOUBLE, output)};
+            assertThrows(IllegalArgumentException.class, () -> new NeuralNetwork(layers));
+        }
+    }
+
+    /**
+     * The fused softmax and cross entropy gradient matches a numerical
+     * estimate of the cost's gradient.
+     */
+    @Test
+    public void activationTest3() {
+        NeuralNetwork relu = new NeuralNetwork(NeuralNetwork.Precision.DOUBLE, 3, new int[]{6, 4},
+                new Activation[]{Activation.LEAKY_RELU, Activation.SOFTMAX});
+        Matrix x = new Matrix(new double[][]{{0.3}, {-0.8}, {0.5}});
+        int label = 1;
+        relu.forwardProp(x);
+        Matrix[] deltas = relu.backProp(label);
+
+        Matrix w = relu.getLayers()[0].getWeights();
+        double eps = 1e-6;
+        for (int i = 0; i < w.getRows(); i++) {
+            for (int j = 0; j < w.getCols(); j++) {
+                double original = w.get(i, j);
+                w.set(i, j, original + eps);
+                double plus = NeuralNetwork.softmaxCost(relu.infer(x), label);
+                w.set(i, j, original - eps);
+                double minus = NeuralNetwork.softmaxCost(relu.infer(x), label);
+                w.set(i, j, original);
+                assertEquals((plus - minus) / (2 * eps), deltas[0].get(i, j), 1e-7);
+            }
+        }
+    }
+
+    //-----seed tests------
+
+    /**
+     * Networks built from the same source start with the same weights and
+     * seed; other seeds give other weights.
+     */
+    @Test
+    public void seedTest1() {
+        NeuralNetwork a = new NeuralNetwork(new RandomSource(5), 3, 6, 2);
+        NeuralNetwork b = new NeuralNetwork(new RandomSource(5), 3, 6, 2);
+        NeuralNetwork c = new NeuralNetwork(new RandomSource(6), 3, 6, 2);
+        for (int l = 0; l < a.getLayers().length; l++) {
+            assertArrayEquals(a.getLayers()[l].getWeights().getBacking(),
+                    b.getLayers()[l].getWeights().getBacking());
+            assertArrayEquals(a.getLayers()[l].getBias().getBacking(),
+                    b.getLayers()[l].getBias().getBacking());
+        }
+        assertFalse(Arrays.equals(a.getLayers()[0].getWeights().getBacking(),
+                c.getLayers()[0].getWeights().getBacking()));
+        assertEquals(a.getSeed(), b.getSeed());
+        assertNotNull(a.getSeed());
+        assertNull(nn.getSeed());
+    }
+
+    /**
+     * Training from the same source, subsampled training metrics included,
+     * gives exactly the same network and metrics on both kinds of data.
+     */
+    @Test
+    public void seedTest2() {
+        Random random = new Random(3);
+        double[][] rows = new double[30][4];
+        double[] features = new double[30 * 3];
+        int[] labels = new int[30];
+        for (int i = 0; i < rows.length; i++) {
+            labels[i] = random.nextInt(2);
+            for (int j = 0; j < 3; j++) {
+                features[i * 3 + j] = random.nextDouble() + 0.5 * labels[i];
+                rows[i][j] = features[i * 3 + j];
+            }
+            rows[i][3] = labels[i];
+        }
+        DataSet packed = new DataSet(features, labels, 3, 2);
+
+        double[][][] performance = new double[2][][];
+        double[][][] backings = new double[2][][];
+        for (int run = 0; run < 2; run++) {
+            NeuralNetwork a = new NeuralNetwork(new RandomSource(9), 3, 6, 2);
+            a.setEvaluationPolicy(new EvaluationPolicy(1, EvaluationPolicy.TrainingMetrics.SUBSAMPLE, 8));
+            performance[run] = a.mbgd(packed, 3, 5, 0.5, 0.1, packed);
+
+            NeuralNetwork b = new NeuralNetwork(new RandomSource(9), 3, 6, 2);
+            ArrayList<ArrayList<Matrix>> data = DataPrep.vectorize(rows, 2);
+            b.mbgd(data, 3, 5, 0.5, 0.1, data);
+            backings[run] = new double[][]{a.getLayers()[0].getWeights().getBacking().clone(),
+                    b.getLayers()[0].getWeights().getBacking().clone()};
+        }
+        for (int k = 0; k < 4; k++) {
+            assertArrayEquals(performance[0][k], performance[1][k]);
+        }
+        assertArrayEquals(backings[0][0], backings[1][0]);
+        assertArrayEquals(backings[0][1], backings[1][1]);
+        // both kinds of data share one epoch loop, so they train alike.
+        assertArrayEquals(backings[0][0], backings[0][1]);
+    }
+}
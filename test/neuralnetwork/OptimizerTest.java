@@ -0,0 +1,121 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.Test;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerTest {
+
+    private static double[] step(Optimizer optimizer, double[] w, double[] g, double alpha, double decay) {
+        optimizer.step();
+        optimizer.update(0, w, 0, g, 0, w.length, alpha, decay);
+        return w;
+    }
+
+    /**
+     * SGD scales the parameters by the decay and steps against the gradient.
+     */
+    @Test
+    public void sgdTest() {
+        double[] w = step(new Optimizer(Optimizer.Method.SGD), new double[]{1, 2},
+                new double[]{0.5, -1}, 0.1, 0.9);
+        assertArrayEquals(new double[]{0.85, 1.9}, w, 1e-12);
+    }
+
+    /**
+     * Momentum accumulates a velocity across steps.
+     */
+    @Test
+    public void momentumTest() {
+        Optimizer optimizer = new Optimizer(Optimizer.Method.MOMENTUM);
+        double[] w = {0};
+        step(optimizer, w, new double[]{1}, 0.1, 1);
+        step(optimizer, w, new double[]{1}, 0.1, 1);
+
+        // v1 = 1, v2 = 0.9 + 1
+        assertEquals(-0.1 * (1 + 1.9), w[0], 1e-12);
+    }
+
+    /**
+     * Nesterov steps along the gradient plus the updated velocity.
+     */
+    @Test
+    public void nesterovTest() {
+        double[] w = step(new Optimizer(Optimizer.Method.NESTEROV), new double[]{0},
+                new double[]{1}, 0.1, 1);
+        assertEquals(-0.1 * (1 + 0.9), w[0], 1e-12);
+    }
+
+    /**
+     * Adam's first (bias corrected) step moves every parameter by about
+     * alpha, whatever the gradient's scale; as does RMSProp's, by alpha / √(1 - ρ).
+     */
+    @Test
+    public void adaptiveTest() {
+        double[] w = step(new Optimizer(Optimizer.Method.ADAM), new double[]{0, 0},
+                new double[]{1e-3, -250}, 0.01, 1);
+        assertArrayEquals(new double[]{-0.01, 0.01}, w, 1e-7);
+
+        w = step(new Optimizer(Optimizer.Method.RMSPROP), new double[]{0, 0},
+                new double[]{0.1, -250}, 0.01, 1);
+        assertArrayEquals(new double[]{-0.01 / Math.sqrt(0.1), 0.01 / Math.sqrt(0.1)}, w, 1e-7);
+    }
+
+    /**
+     * Decay rates outside [0, 1) are rejected.
+     */
+    @Test
+    public void hyperparameterTest() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Optimizer(Optimizer.Method.ADAM, 1, 0.999, 1e-8);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Optimizer(Optimizer.Method.ADAM, 0.9, 0.999, 0);
+        });
+    }
+
+    /**
+     * Every optimizer, in both precisions, updates the network's parameters
+     * in place and lowers the cost on a separable problem.
+     */
+    @Test
+    public void networkTest() {
+        Random random = new Random(3);
+        int samples = 64;
+        double[] features = new double[samples * 4];
+        int[] labels = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            labels[i] = random.nextInt(2);
+            for (int j = 0; j < 4; j++) {
+                features[i * 4 + j] = random.nextDouble() * 0.5 + (j % 2 == labels[i] ? 0.5 : 0);
+            }
+        }
+        DataSet data = new DataSet(features, labels, 4, 2);
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < samples; i++) {
+            batch.add(i);
+        }
+
+        for (NeuralNetwork.Precision precision : NeuralNetwork.Precision.values()) {
+            for (Optimizer.Method method : Optimizer.Method.values()) {
+                NeuralNetwork nn = new NeuralNetwork(precision, 4, 6, 2);
+                nn.setOptimizer(new Optimizer(method));
+                Matrix weights = nn.getLayers()[0].getWeights();
+                double before = nn.evaluateCost(data, 0);
+                for (int i = 0; i < 20; i++) {
+                    nn.updateWithBatch(data, batch, 0.01, 0, samples);
+                }
+                assertTrue(nn.evaluateCost(data, 0) < before, precision + " " + method);
+                if (precision == NeuralNetwork.Precision.DOUBLE) {
+                    assertSame(weights, nn.getLayers()[0].getWeights());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.DataPrep;
+import utils.DataSet;
+import utils.Matrix;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedNetworkTest {
+
+    private NeuralNetwork nn;
+    private DataSet data;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(784, 30, 5);
+
+        // random 8-bit 'images'
+        Random rand = new Random(7);
+        double[][] packed = new double[200][785];
+        for (double[] row : packed) {
+            for (int i = 0; i < 784; i++) {
+                row[i] = rand.nextInt(256) / 255.0;
+            }
+            row[784] = rand.nextInt(5);
+        }
+        data = DataPrep.toDataSet(packed, 5);
+    }
+
+    /**
+     * Quantized outputs stay close to those of the original network.
+     */
+    @Test
+    public void forwardPropTest() {
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(nn, data, 100);
+        for (int s = 0; s < 20; s++) {
+            Matrix expected = nn.forwardProp(data.getFeatures(s));
+            float[] actual = quantized.forwardProp(data.getFeatureData(), s * 784);
+            for (int i = 0; i < expected.getRows(); i++) {
+                assertEquals(expected.get(i, 0), actual[i], 0.05);
+            }
+        }
+    }
+
+    /**
+     * Predictions (almost always) agree with those of the original network.
+     */
+    @Test
+    public void predictTest() {
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(nn, data, 100);
+        int[][] expected = nn.predict(data);
+        int[][] actual = quantized.predict(data);
+
+        int agree = 0;
+        for (int i = 0; i < data.size(); i++) {
+            if (expected[1][i] == actual[1][i]) {
+                agree++;
+            }
+        }
+        assertArrayEquals(expected[0], actual[0]);
+        assertTrue(agree >= 0.95 * data.size());
+    }
+
+    /**
+     * int8 weights take (roughly) an eighth of the memory of doubles.
+     */
+    @Test
+    public void parameterBytesTest() {
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(nn, data, 100);
+        long doubleBytes = 8L * (30 * 785 + 5 * 31);
+        assertTrue(quantized.getParameterBytes() < doubleBytes / 6);
+    }
+
+    /**
+     * Calibration needs at least one sample.
+     */
+    @Test
+    public void calibrationTest() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            QuantizedNetwork.quantize(nn, data, 0);
+        });
+    }
+}
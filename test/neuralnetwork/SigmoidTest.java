@@ -0,0 +1,125 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.Test;
+import utils.DataSet;
+import utils.RandomSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SigmoidTest {
+
+    private static double exact(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    private static double maxError(Sigmoid sigmoid) {
+        double max = 0;
+        for (double x = -40; x <= 40; x += 1.0 / 1024) {
+            max = Math.max(max, Math.abs(sigmoid.applyAsDouble(x) - exact(x)));
+        }
+        return max;
+    }
+
+    /**
+     * The table interpolated sigmoid stays within its documented error.
+     */
+    @Test
+    public void tableTest() {
+        assertTrue(maxError(Sigmoid.TABLE) <= Sigmoid.MAX_ERROR_TABLE);
+    }
+
+    /**
+     * The rational approximation stays within its documented error.
+     */
+    @Test
+    public void rationalTest() {
+        assertTrue(maxError(Sigmoid.RATIONAL) <= Sigmoid.MAX_ERROR_RATIONAL);
+    }
+
+    /**
+     * The approximations saturate rather than overflow for extreme inputs.
+     */
+    @Test
+    public void saturationTest() {
+        for (Sigmoid sigmoid : Sigmoid.values()) {
+            assertEquals(1.0, sigmoid.applyAsDouble(1e6), 1e-6);
+            assertEquals(0.0, sigmoid.applyAsDouble(-1e6), 1e-6);
+        }
+    }
+
+    /**
+     * The approximations never reach exactly 0 or 1, and RATIONAL's held
+     * tails join the approximant without a step.
+     */
+    @Test
+    public void tailTest() {
+        for (Sigmoid sigmoid : new Sigmoid[]{Sigmoid.TABLE, Sigmoid.RATIONAL}) {
+            assertTrue(sigmoid.applyAsDouble(1e6) < 1);
+            assertTrue(sigmoid.applyAsDouble(-1e6) > 0);
+            assertTrue(sigmoid.apply(1e6f) < 1);
+            assertTrue(sigmoid.apply(-1e6f) > 0);
+        }
+        double previous = 0;
+        for (double x = 9.5; x <= 10.5; x += 1.0 / 1024) {
+            double value = Sigmoid.RATIONAL.applyAsDouble(x);
+            assertTrue(value >= previous);
+            previous = value;
+        }
+    }
+
+    /**
+     * Training with RATIONAL until the outputs saturate keeps every cost
+     * finite, even for samples labelled against the saturated outputs.
+     */
+    @Test
+    public void trainingTest() {
+        Random random = new Random(5);
+        double[] features = new double[40 * 4];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = random.nextDouble();
+        }
+        DataSet training = new DataSet(features, new int[40], 4, 3);
+        int[] ones = new int[40];
+        Arrays.fill(ones, 1);
+        DataSet validation = new DataSet(features, ones, 4, 3);
+        for (NeuralNetwork.Precision precision : NeuralNetwork.Precision.values()) {
+            NeuralNetwork nn = new NeuralNetwork(new RandomSource(3), precision, 4, new int[]{6, 3},
+                    new Activation[]{Activation.SIGMOID, Activation.SIGMOID});
+            nn.setTrainingSigmoid(Sigmoid.RATIONAL);
+            double[][] performance = nn.mbgd(training, 30, 10, 50.0, 0, validation);
+            for (double[] row : performance) {
+                for (double value : row) {
+                    assertTrue(Double.isFinite(value));
+                }
+            }
+            assertTrue(performance[1][29] > 10);
+        }
+    }
+
+    /**
+     * The derivative written in terms of the output matches the original
+     * definition in terms of x.
+     */
+    @Test
+    public void derivativeTest() {
+        for (double x = -10; x <= 10; x += 0.25) {
+            assertEquals(NeuralNetwork.SIGMOIDPRIME.apply(x), Sigmoid.derivative(exact(x)), 1e-12);
+        }
+    }
+
+    /**
+     * A network predicting with an approximate sigmoid agrees with the exact one.
+     */
+    @Test
+    public void networkTest() {
+        NeuralNetwork nn = new NeuralNetwork(6, 8, 3);
+        NeuralNetwork.Scratch scratch = nn.newScratch();
+        double[] features = {0.1, 0.9, 0.4, 0.0, 0.7, 0.3};
+        int expected = nn.classify(features, 0, scratch);
+        nn.setInferenceSigmoid(Sigmoid.TABLE);
+        assertEquals(expected, nn.classify(features, 0, scratch));
+    }
+}
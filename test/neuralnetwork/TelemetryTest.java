@@ -0,0 +1,134 @@
+package neuralnetwork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.DataSet;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryTest {
+
+    private NeuralNetwork nn;
+    private DataSet data;
+    private List<EpochTelemetry> epochs;
+    private int[] lifecycle;
+
+    @BeforeEach
+    public void init() {
+        nn = new NeuralNetwork(4, 5, 3);
+        Random random = new Random(17);
+        int samples = 40;
+        double[] features = new double[samples * 4];
+        int[] labels = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            labels[i] = random.nextInt(3);
+            for (int j = 0; j < 4; j++) {
+                features[i * 4 + j] = random.nextDouble();
+            }
+        }
+        data = new DataSet(features, labels, 4, 3);
+
+        epochs = new ArrayList<>();
+        lifecycle = new int[2];
+        nn.addTrainingListener(new TrainingListener() {
+            @Override
+            public void trainingStarted(NeuralNetwork network, int epochCount, int sampleCount) {
+                lifecycle[0] = epochCount;
+            }
+
+            @Override
+            public void epochFinished(EpochTelemetry telemetry) {
+                epochs.add(telemetry);
+            }
+
+            @Override
+            public void trainingFinished(NeuralNetwork network, int completed) {
+                lifecycle[1] = completed;
+            }
+        });
+    }
+
+    /**
+     * Every epoch is reported, with its metrics and phases that fit in its wall time.
+     */
+    @Test
+    public void listenerTest() {
+        double[][] performance = nn.mbgd(data, 3, 8, 0.1, 0, data);
+        assertEquals(3, lifecycle[0]);
+        assertEquals(3, lifecycle[1]);
+        assertEquals(3, epochs.size());
+        for (int i = 0; i < epochs.size(); i++) {
+            EpochTelemetry telemetry = epochs.get(i);
+            assertEquals(i, telemetry.getEpoch());
+            assertEquals(40, telemetry.getSamples());
+            assertEquals(5, telemetry.getBatches());
+            assertEquals(performance[1][i], telemetry.getValidationCost());
+            assertEquals(performance[2][i], telemetry.getTrainingAccuracy());
+
+            long phases = 0;
+            for (EpochTelemetry.Phase phase : EpochTelemetry.Phase.values()) {
+                phases += telemetry.getNanos(phase);
+            }
+            assertTrue(phases <= telemetry.getNanos());
+            assertTrue(telemetry.getNanos(EpochTelemetry.Phase.FORWARD) > 0);
+            assertTrue(telemetry.getNanos(EpochTelemetry.Phase.BACKWARD) > 0);
+            assertTrue(telemetry.getNanos(EpochTelemetry.Phase.EVALUATION) > 0);
+            assertTrue(telemetry.getSamplesPerSecond() > 0);
+        }
+    }
+
+    /**
+     * Epochs that are not evaluated are reported without metrics or evaluation time.
+     */
+    @Test
+    public void evaluationPolicyTest() {
+        nn.setEvaluationPolicy(new EvaluationPolicy(2, EvaluationPolicy.TrainingMetrics.FULL, 0));
+        nn.mbgd(data, 3, 8, 0.1, 0, data);
+        assertFalse(epochs.get(0).isEvaluated());
+        assertTrue(Double.isNaN(epochs.get(0).getValidationAccuracy()));
+        assertEquals(0, epochs.get(0).getNanos(EpochTelemetry.Phase.EVALUATION));
+        assertTrue(epochs.get(1).isEvaluated());
+        assertTrue(epochs.get(2).isEvaluated());
+    }
+
+    /**
+     * The log writes one JSON object per epoch, with unmeasured metrics as null.
+     */
+    @Test
+    public void logTest() {
+        StringWriter out = new StringWriter();
+        nn.addTrainingListener(new TelemetryLog(out));
+        nn.setEvaluationPolicy(new EvaluationPolicy(2, EvaluationPolicy.TrainingMetrics.NONE, 0));
+        nn.mbgd(data, 2, 8, 0.1, 0, data);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i].startsWith("{\"epoch\": " + i + ","));
+            assertTrue(lines[i].endsWith("}"));
+            assertTrue(lines[i].contains("\"phases\": {\"shuffle\": "));
+        }
+        assertTrue(lines[0].contains("\"validation_accuracy\": null"));
+        assertTrue(lines[1].contains("\"training_cost\": null"));
+        assertFalse(lines[1].contains("\"validation_accuracy\": null"));
+    }
+
+    /**
+     * Removed listeners are no longer called.
+     */
+    @Test
+    public void removeTest() {
+        StringWriter out = new StringWriter();
+        TelemetryLog log = new TelemetryLog(out);
+        nn.addTrainingListener(log);
+        nn.removeTrainingListener(log);
+        nn.mbgd(data, 1, 8, 0.1, 0, data);
+        assertEquals(1, epochs.size());
+        assertEquals("", out.toString());
+    }
+}
@@ -0,0 +1,169 @@
+package serving;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+
+    /**
+     * Dummy model; scores each sample with its own features doubled.
+     */
+    private final Scorer doubler = (samples) -> {
+        double[][] scores = new double[samples.length][];
+        for (int i = 0; i < samples.length; i++) {
+            scores[i] = new double[]{samples[i][0] * 2};
+        }
+        return scores;
+    };
+
+    /**
+     * Every request gets back its own scores.
+     */
+    @Test
+    public void submitTest1() throws ExecutionException, InterruptedException {
+        try (MicroBatcher batcher = new MicroBatcher(doubler, 8, 1000, new LatencyRecorder())) {
+            List<CompletableFuture<double[]>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                results.add(batcher.submit(new double[]{i}));
+            }
+            for (int i = 0; i < 50; i++) {
+                assertEquals(2.0 * i, results.get(i).get()[0]);
+            }
+        }
+    }
+
+    /**
+     * Requests waiting together are scored together, never more than the
+     * maximum batch size at once.
+     */
+    @Test
+    public void submitTest2() throws ExecutionException, InterruptedException {
+        AtomicInteger largest = new AtomicInteger();
+        Scorer recording = (samples) -> {
+            largest.accumulateAndGet(samples.length, Math::max);
+            return doubler.score(samples);
+        };
+        LatencyRecorder metrics = new LatencyRecorder();
+        try (MicroBatcher batcher = new MicroBatcher(recording, 8, 50_000, metrics)) {
+            List<CompletableFuture<double[]>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(batcher.submit(new double[]{i}));
+            }
+            for (CompletableFuture<double[]> result : results) {
+                result.get();
+            }
+        }
+        assertEquals(8, largest.get());
+        assertEquals(64, metrics.getRequests());
+        assertTrue(metrics.getBatches() < 64);
+    }
+
+    /**
+     * A failing model fails the requests in its batch.
+     */
+    @Test
+    public void submitTest3() {
+        Scorer failing = (samples) -> {
+            throw new IllegalArgumentException("bad batch");
+        };
+        try (MicroBatcher batcher = new MicroBatcher(failing, 8, 0, new LatencyRecorder())) {
+            CompletableFuture<double[]> result = batcher.submit(new double[]{1});
+            assertThrows(ExecutionException.class, result::get);
+        }
+    }
+
+    /**
+     * An Error thrown by the model fails its batch without stopping the
+     * worker.
+     */
+    @Test
+    public void submitTest4() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Scorer erratic = (samples) -> {
+            if (calls.getAndIncrement() == 0) {
+                throw new OutOfMemoryError("simulated");
+            }
+            return doubler.score(samples);
+        };
+        try (MicroBatcher batcher = new MicroBatcher(erratic, 8, 0, new LatencyRecorder())) {
+            assertThrows(ExecutionException.class, () -> batcher.submit(new double[]{1}).get(5, TimeUnit.SECONDS));
+            assertEquals(4.0, batcher.submit(new double[]{2}).get(5, TimeUnit.SECONDS)[0]);
+        }
+    }
+
+    /**
+     * A sample of the wrong length fails on its own, not with its batch.
+     */
+    @Test
+    public void submitTest5() throws Exception {
+        Scorer sized = new Scorer() {
+            @Override
+            public double[][] score(double[][] samples) {
+                return doubler.score(samples);
+            }
+
+            @Override
+            public int getInputs() {
+                return 1;
+            }
+        };
+        try (MicroBatcher batcher = new MicroBatcher(sized, 8, 50_000, new LatencyRecorder())) {
+            CompletableFuture<double[]> good = batcher.submit(new double[]{3});
+            CompletableFuture<double[]> bad = batcher.submit(new double[]{3, 4});
+            ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            assertEquals(6.0, good.get(5, TimeUnit.SECONDS)[0]);
+        }
+    }
+
+    /**
+     * Requests racing close() are all completed, scored or failed.
+     */
+    @Test
+    public void closeTest2() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            MicroBatcher batcher = new MicroBatcher(doubler, 8, 100, new LatencyRecorder());
+            List<CompletableFuture<double[]>> results = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    CompletableFuture<double[]> result = batcher.submit(new double[]{i});
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            });
+            submitter.start();
+            Thread.sleep(1);
+            batcher.close();
+            submitter.join();
+            for (CompletableFuture<double[]> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IllegalStateException.class, e.getCause());
+                } catch (TimeoutException e) {
+                    fail("a request was never completed");
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests made after closing are rejected.
+     */
+    @Test
+    public void closeTest() {
+        MicroBatcher batcher = new MicroBatcher(doubler, 8, 0, new LatencyRecorder());
+        batcher.close();
+        assertThrows(ExecutionException.class, () -> batcher.submit(new double[]{1}).get());
+    }
+}
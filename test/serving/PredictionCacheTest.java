@@ -0,0 +1,86 @@
+package serving;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PredictionCacheTest {
+
+    private PredictionCache cache;
+    private byte[] sample;
+
+    @BeforeEach
+    public void init() {
+        cache = new PredictionCache(2, 60_000, 1);
+        sample = PredictionCache.quantize(new double[]{0, 0.5, 1, 0.25});
+    }
+
+    /**
+     * A stored sample hits; a new one misses.
+     */
+    @Test
+    public void getTest1() {
+        assertNull(cache.get(sample));
+        cache.put(sample, new double[]{0.1, 0.9}, 1000, 1);
+        assertArrayEquals(new double[]{0.1, 0.9}, cache.get(sample));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.hitRate());
+    }
+
+    /**
+     * Samples that quantize to the same bytes share an entry.
+     */
+    @Test
+    public void getTest2() {
+        cache.put(sample, new double[]{0.3}, 1000, 1);
+        byte[] close = PredictionCache.quantize(new double[]{0.0001, 0.5001, 0.9999, 0.2501});
+        assertEquals(PredictionCache.hash(sample), PredictionCache.hash(close));
+        assertArrayEquals(new double[]{0.3}, cache.get(close));
+    }
+
+    /**
+     * The least recently used entry is evicted once the cache is full.
+     */
+    @Test
+    public void evictionTest1() {
+        byte[] second = PredictionCache.quantize(new double[]{1, 1, 1, 1});
+        byte[] third = PredictionCache.quantize(new double[]{0, 0, 0, 0});
+        cache.put(sample, new double[]{1}, 0, 1);
+        cache.put(second, new double[]{2}, 0, 1);
+        cache.get(sample);
+        cache.put(third, new double[]{3}, 0, 1);
+
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(sample));
+        assertNotNull(cache.get(third));
+    }
+
+    /**
+     * Entries expire after the ttl.
+     */
+    @Test
+    public void expiryTest1() throws InterruptedException {
+        PredictionCache shortLived = new PredictionCache(2, 1, 1);
+        shortLived.put(sample, new double[]{1}, 0, 1);
+        Thread.sleep(5);
+        assertNull(shortLived.get(sample));
+        assertEquals(1, shortLived.getExpirations());
+    }
+
+    /**
+     * Changing the model version drops every entry and ignores scores
+     * computed by the old model.
+     */
+    @Test
+    public void versionTest1() {
+        cache.put(sample, new double[]{1}, 0, 1);
+        cache.setModelVersion(2);
+        assertEquals(0, cache.size());
+
+        cache.put(sample, new double[]{1}, 0, 1);
+        assertNull(cache.get(sample));
+    }
+}
@@ -0,0 +1,132 @@
+package serving;
+
+import neuralnetwork.NeuralNetwork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoringServerTest {
+
+    private ScoringServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void init() throws IOException {
+        NeuralNetwork nn = new NeuralNetwork(4, 3, 2);
+        server = new ScoringServer(Scorer.of(nn), 4,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 8, 1000);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> post(String path, HttpRequest.BodyPublisher body, String type)
+            throws IOException, InterruptedException {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        return client.send(HttpRequest.newBuilder(uri).header("Content-Type", type).POST(body).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Text pixel values are scored.
+     */
+    @Test
+    public void predictTest1() throws IOException, InterruptedException {
+        HttpResponse<String> response =
+                post("/predict", HttpRequest.BodyPublishers.ofString("[0, 12, 255, 40]"), "text/plain");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"scores\""));
+    }
+
+    /**
+     * Raw pixel bytes are scored.
+     */
+    @Test
+    public void predictTest2() throws IOException, InterruptedException {
+        byte[] pixels = {0, 12, (byte) 255, 40};
+        HttpResponse<String> response = post("/predict",
+                HttpRequest.BodyPublishers.ofByteArray(pixels), "application/octet-stream");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith("{\"class\": "));
+    }
+
+    /**
+     * The wrong number of pixels is a bad request.
+     */
+    @Test
+    public void predictTest3() throws IOException, InterruptedException {
+        HttpResponse<String> response =
+                post("/predict", HttpRequest.BodyPublishers.ofString("1, 2, 3"), "text/plain");
+        assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * A scorer failure is a server error with a fixed body, whatever the
+     * exception says (or doesn't).
+     */
+    @Test
+    public void predictTest4() throws IOException, InterruptedException {
+        for (RuntimeException failure : new RuntimeException[]{
+                new IllegalStateException(), new IllegalStateException("secret internals")}) {
+            ScoringServer failing = new ScoringServer((samples) -> {
+                throw failure;
+            }, 4, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 8, 1000);
+            failing.start();
+            try {
+                URI uri = URI.create("http://127.0.0.1:" + failing.getAddress().getPort() + "/predict");
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri)
+                                .POST(HttpRequest.BodyPublishers.ofString("[0, 12, 255, 40]")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(500, response.statusCode());
+                assertEquals("Scoring failed\n", response.body());
+            } finally {
+                failing.stop();
+            }
+        }
+    }
+
+    /**
+     * Served requests show up in the metrics.
+     */
+    @Test
+    public void metricsTest() throws IOException, InterruptedException {
+        post("/predict", HttpRequest.BodyPublishers.ofString("0 0 0 0"), "text/plain");
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+        String body = client.send(HttpRequest.newBuilder(uri).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        assertTrue(body.contains("requests_total 1"));
+        assertTrue(body.contains("latency_p99_micros"));
+    }
+
+    /**
+     * A repeated sample is answered from the cache without being scored again.
+     */
+    @Test
+    public void cacheTest() throws IOException, InterruptedException {
+        server.stop();
+        server = new ScoringServer(Scorer.of(new NeuralNetwork(4, 3, 2)), 4,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 8, 1000,
+                RequestExecutors.perRequest(), new PredictionCache(100, 60_000, 1));
+        server.start();
+
+        String first = post("/predict", HttpRequest.BodyPublishers.ofString("1 2 3 4"), "text/plain").body();
+        String second = post("/predict", HttpRequest.BodyPublishers.ofString("1 2 3 4"), "text/plain").body();
+        assertEquals(first, second);
+        assertEquals(1, server.getCache().getHits());
+        assertEquals(1, server.getMetrics().getRequests());
+    }
+}
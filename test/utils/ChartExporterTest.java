@@ -0,0 +1,96 @@
+package utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchart.XYChart;
+import org.knowm.xchart.XYChartBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChartExporterTest {
+
+    private Path directory;
+    private XYChart chart;
+
+    @BeforeEach
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("charts");
+        chart = new XYChartBuilder().width(200).height(100)
+                .title("Cost").xAxisTitle("epochs").yAxisTitle("cost").build();
+        chart.addSeries("training", new double[]{0, 1, 2}, new double[]{0.9, 0.5, Double.NaN});
+        chart.addSeries("validation, held out", new double[]{0, 1, 2}, new double[]{1.0, 0.7, 0.6});
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Metrics.setExporter(null);
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Every format is written under the chart's name.
+     */
+    @Test
+    public void exportTest() throws Exception {
+        try (ChartExporter exporter = new ChartExporter(directory.resolve("out").toFile())) {
+            exporter.export("cost", chart).get();
+        }
+        for (String extension : new String[]{"png", "svg", "csv", "json"}) {
+            File file = directory.resolve("out").resolve("cost." + extension).toFile();
+            assertTrue(file.length() > 0, file.getName());
+        }
+    }
+
+    /**
+     * Series are written one point per row, and as arrays with NaN as null.
+     */
+    @Test
+    public void seriesTest() {
+        String csv = ChartExporter.toCsv(chart);
+        assertEquals("series,x,y\n"
+                + "training,0.0,0.9\n"
+                + "training,1.0,0.5\n"
+                + "training,2.0,NaN\n"
+                + "\"validation, held out\",0.0,1.0\n"
+                + "\"validation, held out\",1.0,0.7\n"
+                + "\"validation, held out\",2.0,0.6\n", csv);
+
+        String json = ChartExporter.toJson(chart);
+        assertEquals("{\"title\": \"Cost\", \"x_axis\": \"epochs\", \"y_axis\": \"cost\", \"series\": ["
+                + "{\"name\": \"training\", \"x\": [0.0, 1.0, 2.0], \"y\": [0.9, 0.5, null]}, "
+                + "{\"name\": \"validation, held out\", \"x\": [0.0, 1.0, 2.0], \"y\": [1.0, 0.7, 0.6]}"
+                + "]}\n", json);
+    }
+
+    /**
+     * With an exporter set, plots are written instead of displayed.
+     */
+    @Test
+    public void metricsTest() throws Exception {
+        ChartExporter exporter = new ChartExporter(directory.toFile(),
+                EnumSet.of(ChartExporter.Format.CSV));
+        Metrics.setExporter(exporter);
+        double[][] results = {{0.9, 0.5}, {1.0, 0.7}, {0.4, 0.6}, {0.3, 0.5}};
+        Metrics.plotNetworkResults(2, results).get();
+        Metrics.plotCrossValidationResults("Error", "k", "error", "error", new double[]{0.2, 0.1}).get();
+        exporter.close();
+
+        assertTrue(Files.exists(directory.resolve("network-results-0.csv")));
+        assertTrue(Files.exists(directory.resolve("network-results-1.csv")));
+        assertTrue(Files.readString(directory.resolve("cross-validation.csv")).endsWith("error,2.0,0.1\n"));
+        assertFalse(Files.exists(directory.resolve("cross-validation.png")));
+    }
+}
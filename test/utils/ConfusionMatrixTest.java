@@ -0,0 +1,138 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfusionMatrixTest {
+
+    private ConfusionMatrix matrix;
+
+    @BeforeEach
+    public void init() {
+        matrix = new ConfusionMatrix(3);
+    }
+
+    /**
+     * Counts land in the row of the label and the column of the prediction.
+     */
+    @Test
+    public void countTest() {
+        int[][] results = {
+                {0, 0, 1, 2, 2, 2},
+                {0, 1, 1, 2, 2, 0}
+        };
+        matrix.addAll(results);
+
+        long[][] expected = {{1, 1, 0}, {0, 1, 0}, {1, 0, 2}};
+        assertArrayEquals(expected, matrix.toArray());
+        assertEquals(6, matrix.getTotal());
+        assertEquals(4, matrix.getCorrect());
+        assertEquals(2, matrix.getSupport(0));
+        assertEquals(2, matrix.getPredicted(0));
+    }
+
+    /**
+     * Precision, recall, F1 and accuracy follow from the counts.
+     */
+    @Test
+    public void scoreTest() {
+        int[][] results = {
+                {0, 0, 1, 2, 2, 2},
+                {0, 1, 1, 2, 2, 0}
+        };
+        matrix.addAll(results);
+
+        assertEquals(4.0 / 6, matrix.accuracy(), 1e-12);
+        assertEquals(0.5, matrix.precision(0), 1e-12);
+        assertEquals(0.5, matrix.recall(0), 1e-12);
+        assertEquals(0.5, matrix.precision(1), 1e-12);
+        assertEquals(1.0, matrix.recall(1), 1e-12);
+        assertEquals(2 * 0.5 / 1.5, matrix.f1(1), 1e-12);
+        assertEquals(1.0, matrix.precision(2), 1e-12);
+        assertEquals(2.0 / 3, matrix.recall(2), 1e-12);
+        assertEquals((0.5 + 2.0 / 3 + 0.8) / 3, matrix.macroF1(), 1e-12);
+    }
+
+    /**
+     * A class that is never seen scores 0 rather than NaN.
+     */
+    @Test
+    public void missingClassTest() {
+        matrix.add(0, 0);
+        matrix.add(2, 0);
+
+        assertEquals(0.0, matrix.precision(1));
+        assertEquals(0.0, matrix.recall(1));
+        assertEquals(0.0, matrix.f1(1));
+        assertEquals(0.0, matrix.precision(2));
+        assertEquals(0.0, new ConfusionMatrix(2).accuracy());
+    }
+
+    /**
+     * Labels outside the matrix and mismatched merges are rejected.
+     */
+    @Test
+    public void invalidTest() {
+        assertThrows(IllegalArgumentException.class, () -> new ConfusionMatrix(0));
+        assertThrows(IllegalArgumentException.class, () -> matrix.add(3, 0));
+        assertThrows(IllegalArgumentException.class, () -> matrix.add(0, -1));
+        assertThrows(IllegalArgumentException.class, () -> matrix.merge(new ConfusionMatrix(2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> matrix.addAll(new int[][]{{0, 1}, {0}}));
+    }
+
+    /**
+     * Matrices filled by separate threads merge into the same counts as
+     * threads adding to one matrix, which match a single threaded count.
+     */
+    @Test
+    public void concurrentTest() throws Exception {
+        int threads = 4;
+        int perThread = 30_000;
+        ConfusionMatrix shared = new ConfusionMatrix(3);
+        List<ConfusionMatrix> shards = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                ConfusionMatrix shard = new ConfusionMatrix(3);
+                shards.add(shard);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        shared.add(i % 3, (i / 3) % 3);
+                        shard.add(i % 3, (i / 3) % 3);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (ConfusionMatrix shard : shards) {
+            matrix.merge(shard);
+        }
+
+        ConfusionMatrix expected = new ConfusionMatrix(3);
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                expected.add(i % 3, (i / 3) % 3);
+            }
+        }
+        assertArrayEquals(expected.toArray(), shared.toArray());
+        assertArrayEquals(expected.toArray(), matrix.toArray());
+        assertEquals(threads * perThread, matrix.getTotal());
+
+        matrix.reset();
+        assertEquals(0, matrix.getTotal());
+    }
+}
@@ -199,6 +199,20 @@ class DataPrepTest {
          }
     }
     
+    /**
+     * Samples of the same class have label matrices of their own, so
+     * changing one leaves the others alone.
+     */
+    @Test
+    public void vectorizeTest5() {
+        double[][] twins = {{0.5, 0.25, 1}, {0.75, 0.0, 1}};
+        ArrayList<ArrayList<Matrix>> vectors = DataPrep.vectorize(twins, 2);
+        Matrix.add(vectors.get(0).get(1), 1.0);
+        assertEquals(2.0, vectors.get(0).get(1).get(1, 0));
+        assertEquals(1.0, vectors.get(1).get(1).get(1, 0));
+        assertEquals(0.0, vectors.get(1).get(1).get(0, 0));
+    }
+
     //------split------
 
     /**
@@ -300,6 +314,55 @@ class DataPrepTest {
         }
     }
     
+    //-----toDataSet-----
+
+    /**
+     * Features are packed back to back and labels kept as class indices.
+     */
+    @Test
+    public void toDataSetTest1() {
+        double[][] packed = {
+                {0.1, 0.2, 0.3, 1},
+                {0.4, 0.5, 0.6, 0}
+        };
+        DataSet dataSet = DataPrep.toDataSet(packed, 2);
+
+        double[] expected = {0.1, 0.2, 0.3, 0.4, 0.5, 0.6};
+        assertArrayEquals(expected, dataSet.getFeatureData());
+        assertArrayEquals(new int[]{1, 0}, dataSet.getLabels());
+    }
+
+    /**
+     * Sample features are (featureCount x 1) views into the packed features.
+     */
+    @Test
+    public void toDataSetTest2() {
+        double[][] packed = {
+                {0.1, 0.2, 0.3, 1},
+                {0.4, 0.5, 0.6, 0}
+        };
+        DataSet dataSet = DataPrep.toDataSet(packed, 2);
+        Matrix features = dataSet.getFeatures(1);
+
+        assertEquals(3, features.getRows());
+        assertEquals(1, features.getCols());
+        assertSame(dataSet.getFeatureData(), features.getBacking());
+        assertEquals(0.5, features.get(1, 0));
+    }
+
+    /**
+     * Labels must fall inside the number of outputs.
+     */
+    @Test
+    public void toDataSetTest3() {
+        double[][] packed = {
+                {0.1, 0.2, 0.3, 4}
+        };
+        assertThrows(IllegalArgumentException.class, () -> {
+            DataPrep.toDataSet(packed, 2);
+        });
+    }
+    
     //-----append-----
     // Note: only ever used in the context of split
     // so testing for variable sized rows is not necessary.
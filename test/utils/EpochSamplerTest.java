@@ -0,0 +1,125 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EpochSamplerTest {
+
+    private int[] labels;
+    private DataSet data;
+
+    @BeforeEach
+    public void init() {
+        // 60 samples of class 0, 30 of class 1 and 10 of class 2, grouped by class.
+        labels = new int[100];
+        Arrays.fill(labels, 60, 90, 1);
+        Arrays.fill(labels, 90, 100, 2);
+        double[] features = new double[100 * 2];
+        for (int i = 0; i < 100; i++) {
+            features[2 * i] = i;
+            features[2 * i + 1] = -i;
+        }
+        data = new DataSet(features, labels, 2, 3);
+    }
+
+    private static void assertPermutation(int[] order) {
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    /**
+     * Shuffles are permutations, and the same seed gives the same orders.
+     */
+    @Test
+    public void shuffleTest() {
+        EpochSampler a = new EpochSampler(100);
+        EpochSampler b = new EpochSampler(100);
+        assertPermutation(a.getOrder());
+        RandomSource random = new RandomSource(8);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            int[] order = a.shuffle(random.stream(epoch));
+            assertSame(a.getOrder(), order);
+            assertPermutation(order);
+            assertArrayEquals(order, b.shuffle(random.stream(epoch)));
+        }
+        assertFalse(a.isStratified());
+        assertEquals(100, a.size());
+    }
+
+    /**
+     * Every batch of a stratified order holds the classes in about the
+     * proportions of the whole set.
+     */
+    @Test
+    public void stratifiedTest() {
+        EpochSampler sampler = new EpochSampler(labels, 3);
+        assertTrue(sampler.isStratified());
+        RandomSource random = new RandomSource(2);
+        for (int epoch = 0; epoch < 5; epoch++) {
+            int[] order = sampler.shuffle(random.stream(epoch));
+            assertPermutation(order);
+            for (int start = 0; start < 100; start += 10) {
+                int[] counts = new int[3];
+                for (int k = start; k < start + 10; k++) {
+                    counts[labels[order[k]]]++;
+                }
+                assertEquals(6, counts[0], 1);
+                assertEquals(3, counts[1], 1);
+                assertEquals(1, counts[2], 1);
+            }
+        }
+    }
+
+    /**
+     * A sampler restored from an order shuffles exactly as the original.
+     */
+    @Test
+    public void restoreTest() {
+        for (EpochSampler original : new EpochSampler[]{new EpochSampler(100), new EpochSampler(labels, 3)}) {
+            RandomSource random = new RandomSource(4);
+            original.shuffle(random.stream(0));
+            EpochSampler restored = original.isStratified() ? new EpochSampler(labels, 3) : new EpochSampler(100);
+            restored.setOrder(original.getOrder());
+            assertArrayEquals(original.shuffle(random.stream(1)), restored.shuffle(random.stream(1)));
+        }
+    }
+
+    /**
+     * Batches are gathered contiguously in the sampler's order.
+     */
+    @Test
+    public void gatherTest() {
+        EpochSampler sampler = new EpochSampler(100);
+        int[] order = sampler.shuffle(new RandomSource(1).stream(0));
+        DataSet batch = sampler.gather(data, 20, 30);
+        assertEquals(10, batch.size());
+        for (int j = 0; j < 10; j++) {
+            assertEquals(order[20 + j], batch.getFeatureData()[2 * j]);
+            assertEquals(-order[20 + j], batch.getFeatureData()[2 * j + 1]);
+            assertEquals(labels[order[20 + j]], batch.getLabel(j));
+        }
+        assertSame(batch.getFeatureData(), sampler.gather(data, 30, 40).getFeatureData());
+    }
+
+    /**
+     * Invalid arguments are rejected.
+     */
+    @Test
+    public void invalidTest() {
+        EpochSampler sampler = new EpochSampler(100);
+        assertThrows(IllegalArgumentException.class, () -> new EpochSampler(-1));
+        assertThrows(IllegalArgumentException.class, () -> new EpochSampler(labels, 2));
+        assertThrows(IllegalArgumentException.class, () -> sampler.setOrder(new int[99]));
+        assertThrows(IllegalArgumentException.class, () -> sampler.setOrder(new int[100]));
+        assertThrows(IllegalArgumentException.class, () -> sampler.gather(data, 95, 101));
+        assertThrows(IllegalArgumentException.class,
+                () -> new EpochSampler(10).gather(data, 0, 5));
+    }
+}
@@ -0,0 +1,113 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FloatMatrixTest {
+
+    private Matrix m1;
+    private Matrix m4;
+    private Matrix m5;
+
+    @BeforeEach
+    public void init() {
+        double[][] data1 = {
+                {11.0, 5.0, 19.0, 3.6},
+                {7.0, 6.0, 2.0, 2.0},
+                {55.0, 3.0, 9.0, 1.0}
+        };
+        m1 = new Matrix(data1);
+        double[] data4 = {1.3, 2.0, 3.4};
+        m4 = new Matrix(data4);
+        double[][] data5 = {
+                {0.4},
+                {5.0},
+                {6.7}
+        };
+        m5 = new Matrix(data5);
+    }
+
+    /**
+     * Converting to float and back keeps values within float precision.
+     */
+    @Test
+    public void conversionTest() {
+        Matrix actual = new FloatMatrix(m1).toMatrix();
+        for (int i = 0; i < m1.getRows(); i++) {
+            for (int j = 0; j < m1.getCols(); j++) {
+                assertEquals(m1.get(i, j), actual.get(i, j), 1e-5);
+            }
+        }
+    }
+
+    /**
+     * [1 x 3] . [3 x 1] = [1 x 1]
+     */
+    @Test
+    public void dotTest1() {
+        FloatMatrix actual = FloatMatrix.dotProduct(new FloatMatrix(m4), new FloatMatrix(m5));
+        assertEquals(33.3f, actual.get(0, 0), 1e-4);
+    }
+
+    /**
+     * [3 x 1] . [1 x 3] = [3 x 3]; agrees with the double precision result.
+     */
+    @Test
+    public void dotTest2() {
+        Matrix expected = Matrix.dotProduct(m5, m4);
+        FloatMatrix actual = FloatMatrix.dotProduct(new FloatMatrix(m5), new FloatMatrix(m4));
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), 1e-4);
+            }
+        }
+    }
+
+    /**
+     * A.cols != B.rows
+     */
+    @Test
+    public void dotTest3() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            FloatMatrix.dotProduct(new FloatMatrix(m1), new FloatMatrix(m1));
+        });
+    }
+
+    /**
+     * Single precision sigmoid agrees with the double precision version.
+     */
+    @Test
+    public void sigmoidTest() {
+        for (float x = -10f; x <= 10f; x += 0.5f) {
+            assertEquals(1 / (1 + Math.exp(-x)), FloatMatrix.SIGMOID.apply(x), 1e-6);
+        }
+    }
+
+    /**
+     * Index of the row containing the greatest value.
+     */
+    @Test
+    public void argMaxRowTest() {
+        assertEquals(2, FloatMatrix.argMaxRow(new FloatMatrix(m1)));
+    }
+
+    /**
+     * The fused kernel matches dotProduct, add and map done separately.
+     */
+    @Test
+    public void denseTest() {
+        FloatMatrix W = new FloatMatrix(Matrix.randomize(6, 9));
+        FloatMatrix a = new FloatMatrix(Matrix.randomize(9, 1));
+        FloatMatrix b = new FloatMatrix(Matrix.randomize(6, 1));
+        FloatMatrix expected = FloatMatrix.map(FloatMatrix.SIGMOID,
+                FloatMatrix.add(FloatMatrix.dotProduct(W, a), b));
+
+        FloatMatrix z = new FloatMatrix(6, 1);
+        FloatMatrix.dense(W, a, b, FloatMatrix.SIGMOID, z, z);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(expected.get(i, 0), z.get(i, 0));
+        }
+    }
+}
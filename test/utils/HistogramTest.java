@@ -0,0 +1,77 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    private Histogram histogram;
+
+    @BeforeEach
+    public void init() {
+        histogram = new Histogram();
+    }
+
+    /**
+     * Buckets are contiguous and every value lies within its bucket's range.
+     */
+    @Test
+    public void indexTest() {
+        for (int i = 0; i < 3711; i++) {
+            assertEquals(i, Histogram.index(Histogram.highestValue(i)));
+            assertEquals(i + 1, Histogram.index(Histogram.highestValue(i) + 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+        Random random = new Random(5);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = Histogram.index(value);
+            assertTrue(value <= Histogram.highestValue(index));
+            assertTrue(index == 0 || value > Histogram.highestValue(index - 1));
+        }
+    }
+
+    /**
+     * Percentiles are within 1/64 of the exact percentile of the values.
+     */
+    @Test
+    public void percentileTest() {
+        Random random = new Random(9);
+        long[] values = new long[20_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextGaussian() * 2 + 10);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{1, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long estimate = histogram.percentile(p);
+            assertTrue(estimate >= exact);
+            assertTrue(estimate - exact <= exact / 64 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.percentile(100));
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(Arrays.stream(values).sum(), histogram.getSum());
+    }
+
+    /**
+     * An empty histogram reports zeros; negative values count as zero.
+     */
+    @Test
+    public void recordTest() {
+        assertEquals(0, histogram.percentile(99));
+        assertEquals(0, histogram.getMean());
+        histogram.record(-5);
+        histogram.record(10);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(99));
+        assertEquals(5, histogram.getMean());
+    }
+}
@@ -90,6 +90,18 @@ class MatrixTest {
         });
     }
     
+    /**
+     * getData returns a copy; writing to it leaves the matrix unchanged.
+     */
+    @Test
+    public void getDataTest() {
+        double[][] data = m1.getData();
+        assertEquals(5.0, data[0][1]);
+        data[0][1] = 42.0;
+        assertEquals(5.0, m1.get(0, 1));
+        assertNotSame(data, m1.getData());
+    }
+
     //---------arithmetic operations-----------
 
     /**
@@ -544,4 +556,89 @@ class MatrixTest {
         Matrix actual = Matrix.map(simple, m3);
         assertTrue(expected.equals(actual));
     }
-}
\ No newline at end of file
+    
+    //-----------------views------------------
+
+    /**
+     * A view reads the elements of its backing array in place.
+     */
+    @Test
+    public void viewTest1() {
+        double[] backing = {1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0};
+        double[][] data = {
+                {3.0},
+                {4.0},
+                {5.0}
+        };
+        Matrix expected = new Matrix(data);
+        Matrix actual = Matrix.view(backing, 2, 3, 1);
+        assertTrue(expected.equals(actual));
+    }
+
+    /**
+     * Writes to a view go straight through to the backing array.
+     */
+    @Test
+    public void viewTest2() {
+        double[] backing = {1.0, 2.0, 3.0, 4.0};
+        Matrix view = Matrix.view(backing, 2, 1, 2);
+        view.set(0, 1, 9.0);
+        assertEquals(9.0, backing[3]);
+    }
+
+    /**
+     * A view cannot run past the end of its backing array.
+     */
+    @Test
+    public void viewTest3() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Matrix.view(new double[4], 2, 3, 1);
+        });
+    }
+
+    /**
+     * Operations on views behave as they do on regular matrices.
+     */
+    @Test
+    public void viewTest4() {
+        double[] backing = {0.0, 1.3, 2.0, 3.4};
+        Matrix view = Matrix.view(backing, 1, 1, 3);
+        double[] data = {33.3};
+        Matrix expected = new Matrix(data);
+        Matrix actual = Matrix.dotProduct(view, m5);
+        assertTrue(expected.equals(actual));
+    }
+
+    //-----dense-----
+
+    /**
+     * The fused kernel matches dotProduct, add and map done separately,
+     * including the rows left over after the blocks of four.
+     */
+    @Test
+    public void denseTest1() {
+        Matrix W = Matrix.randomize(7, 5);
+        Matrix a = Matrix.randomize(5, 1);
+        Matrix b = Matrix.randomize(7, 1);
+        Matrix expectedZ = Matrix.add(Matrix.dotProduct(W, a), b);
+        Matrix expectedOut = Matrix.map((x) -> x * 2, expectedZ);
+
+        Matrix z = new Matrix(7, 1);
+        Matrix out = new Matrix(7, 1);
+        Matrix.dense(W, a, b, (x) -> x * 2, z, out);
+        for (int i = 0; i < 7; i++) {
+            assertEquals(expectedZ.get(i, 0), z.get(i, 0));
+            assertEquals(expectedOut.get(i, 0), out.get(i, 0));
+        }
+    }
+
+    /**
+     * Mismatched buffers are rejected.
+     */
+    @Test
+    public void denseTest2() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Matrix.dense(new Matrix(3, 2), new Matrix(2, 1), new Matrix(3, 1), new Matrix(2, 1));
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    private MetricsRegistry registry;
+
+    @BeforeEach
+    public void init() {
+        registry = new MetricsRegistry("test");
+    }
+
+    /**
+     * Looking a metric up twice returns the same one.
+     */
+    @Test
+    public void lookupTest() {
+        assertSame(registry.histogram("latency_nanos"), registry.histogram("latency_nanos"));
+        assertSame(registry.counter("requests_total"), registry.counter("requests_total"));
+        assertNotSame(registry.histogram("a"), registry.histogram("b"));
+    }
+
+    /**
+     * Counters, gauges and histogram statistics all appear in the report.
+     */
+    @Test
+    public void reportTest() {
+        registry.counter("requests_total").add(3);
+        registry.gauge("hit_rate", () -> 0.25);
+        Histogram latency = registry.histogram("latency_nanos");
+        latency.record(100);
+        latency.record(300);
+
+        Map<String, Number> snapshot = registry.snapshot();
+        assertEquals(3L, snapshot.get("requests_total"));
+        assertEquals(0.25, snapshot.get("hit_rate"));
+        assertEquals(2L, snapshot.get("latency_nanos_count"));
+        assertEquals(200.0, snapshot.get("latency_nanos_mean"));
+        assertEquals(300L, snapshot.get("latency_nanos_max"));
+
+        String report = registry.report();
+        assertTrue(report.contains("requests_total 3"));
+        assertTrue(report.contains("hit_rate 0.2500"));
+        assertTrue(report.contains("latency_nanos_count 2"));
+        assertTrue(report.contains("latency_nanos_p99 300"));
+    }
+
+    /**
+     * The MBean exposes the snapshot as attributes.
+     */
+    @Test
+    public void mbeanTest() throws JMException {
+        registry.counter("requests_total").increment();
+        ObjectName name = registry.registerMBean();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "requests_total"));
+            registry.counter("requests_total").increment();
+            assertEquals(2L, server.getAttribute(name, "requests_total"));
+            assertEquals(1, server.getMBeanInfo(name).getAttributes().length);
+        } finally {
+            registry.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
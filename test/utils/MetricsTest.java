@@ -1,5 +1,7 @@
 package utils;
 
+import org.junit.jupiter.api.Test;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MetricsTest {
@@ -45,4 +47,19 @@ class MetricsTest {
         
     }
 
-}
\ No newline at end of file
+    /**
+     * The matrix is sized from the largest label, not the number of distinct
+     * labels, so a class missing from the test data does not break it.
+     */
+    @Test
+    public void confusionMissingClassTest() {
+        int[][] results = {
+                {0, 2, 2, 0},
+                {0, 2, 1, 1}
+        };
+
+        double[][] expected = {{1, 1, 0}, {0, 0, 0}, {0, 1, 1}};
+        assertArrayEquals(expected, Metrics.confusionMatrix(results));
+        assertEquals(4, Metrics.confusionMatrix(results, 4).length);
+    }
+}
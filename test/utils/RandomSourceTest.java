@@ -0,0 +1,59 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomSourceTest {
+
+    private RandomSource random;
+
+    @BeforeEach
+    public void init() {
+        random = new RandomSource(42);
+    }
+
+    private static long[] draw(SplittableRandom stream, int n) {
+        long[] values = new long[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = stream.nextLong();
+        }
+        return values;
+    }
+
+    /**
+     * Streams depend on the seed and index alone.
+     */
+    @Test
+    public void streamTest() {
+        assertArrayEquals(draw(random.stream(3), 100), draw(new RandomSource(42).stream(3), 100));
+        assertEquals(42, random.getSeed());
+
+        // the first values of neighbouring streams, seeds and purposes all differ.
+        Set<Long> firsts = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            firsts.add(random.stream(i).nextLong());
+            firsts.add(new RandomSource(-1 - i).stream(0).nextLong());
+        }
+        firsts.add(random.derive("weights").stream(0).nextLong());
+        firsts.add(random.derive("shuffle").stream(0).nextLong());
+        assertEquals(2002, firsts.size());
+    }
+
+    /**
+     * Derived sources are reproducible and independent of each other.
+     */
+    @Test
+    public void deriveTest() {
+        assertEquals(random.derive("weights").getSeed(), new RandomSource(42).derive("weights").getSeed());
+        assertNotEquals(random.derive("weights").getSeed(), random.derive("shuffle").getSeed());
+        assertNotEquals(random.derive("weights").getSeed(),
+                new RandomSource(43).derive("weights").getSeed());
+        assertNotEquals(random.getSeed(), RandomSource.random().getSeed());
+    }
+}